@@ -36,6 +36,7 @@ public interface Progress {
     String RELOAD_BOOK_LIST = "RELOAD_BOOK_LIST";
     String DOWNLOAD_SEARCH_INDEX = "DOWNLOAD_SEARCH_INDEX-%s";
     String CREATE_INDEX = "CREATE_INDEX-%s";
+    String EXPORT_BOOK = "EXPORT_BOOK-%s";
 
     /**
      * Start the task measured from 0 to 100. It is the caller's responsibility to compute percentages.
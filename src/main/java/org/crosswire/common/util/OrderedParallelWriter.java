@@ -0,0 +1,246 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.common.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.crosswire.common.progress.Progress;
+
+/**
+ * Writes text that is produced in pieces on several threads, in the order
+ * that the pieces were asked for. Each piece is rendered by a Callable on a
+ * pool of threads while the caller goes on to ask for the next. Only a bounded
+ * number of pieces are in hand at once: when the bound is reached, the caller
+ * waits for the oldest piece and writes it out.
+ *
+ * <p>
+ * The text is encoded into a reused buffer and written to a channel in large
+ * writes. The writer does not close the channel.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class OrderedParallelWriter implements Closeable {
+    /**
+     * Create a writer that renders pieces on the given number of threads.
+     *
+     * @param channel where the text is written
+     * @param charset the encoding of the text
+     * @param threads the number of threads rendering pieces
+     * @param job the job whose work is advanced as each piece is written, may be null
+     */
+    public OrderedParallelWriter(WritableByteChannel channel, Charset charset, int threads, Progress job) {
+        this.channel = channel;
+        this.job = job;
+        this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.maxPending = Math.max(1, threads) * PENDING_PER_THREAD;
+        this.pending = new ArrayDeque<Piece>();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "jsword-export");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Ask for a piece of text to be rendered and written after the pieces
+     * asked for before it. If too many pieces are in hand, this waits for the
+     * oldest one and writes it out.
+     *
+     * @param piece renders the text, returning null for nothing
+     * @param work the amount of work the piece stands for
+     * @return false if the job has been cancelled, in which case the piece was not taken
+     * @throws IOException if a piece could not be rendered or written
+     */
+    public boolean write(Callable<? extends CharSequence> piece, int work) throws IOException {
+        if (isCancelled()) {
+            return false;
+        }
+
+        while (pending.size() >= maxPending) {
+            writeOldest();
+        }
+        pending.add(new Piece(executor.submit(piece), work));
+        return true;
+    }
+
+    /**
+     * Write out all the pieces in hand and flush the buffer to the channel.
+     * Pieces are abandoned if the job has been cancelled.
+     *
+     * @throws IOException if a piece could not be rendered or written
+     */
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            if (isCancelled()) {
+                abandon();
+                break;
+            }
+            writeOldest();
+        }
+        drain();
+    }
+
+    /**
+     * Write out the pieces in hand and stop the threads. The channel is not closed.
+     *
+     * @throws IOException if a piece could not be rendered or written
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            abandon();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return whether the job has been cancelled
+     */
+    public boolean isCancelled() {
+        return job != null && job.isFinished();
+    }
+
+    /**
+     * Wait for the oldest piece and write it.
+     */
+    private void writeOldest() throws IOException {
+        Piece oldest = pending.remove();
+        CharSequence text;
+        try {
+            text = oldest.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            abandon();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            IOException ex = new IOException(String.valueOf(cause));
+            ex.initCause(cause);
+            throw ex;
+        }
+
+        if (text != null && text.length() > 0) {
+            encode(text);
+        }
+        if (job != null && oldest.work > 0) {
+            job.incrementWorkDone(oldest.work);
+        }
+    }
+
+    /**
+     * Encode the text into the buffer, writing the buffer out as it fills.
+     */
+    private void encode(CharSequence text) throws IOException {
+        CharBuffer in = CharBuffer.wrap(text);
+        while (true) {
+            CoderResult result = encoder.encode(in, buffer, false);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                break;
+            }
+        }
+        // Pieces are whole, so nothing is left over for the next one
+        while (encoder.encode(CharBuffer.allocate(0), buffer, true).isOverflow()) {
+            drain();
+        }
+        encoder.reset();
+    }
+
+    /**
+     * Write the buffer to the channel.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Drop the pieces in hand, stopping those not yet rendered.
+     */
+    private void abandon() {
+        for (Piece piece : pending) {
+            piece.future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    /**
+     * A piece of text being rendered, along with the work it stands for.
+     */
+    private static final class Piece {
+        Piece(Future<? extends CharSequence> future, int work) {
+            this.future = future;
+            this.work = work;
+        }
+
+        final Future<? extends CharSequence> future;
+        final int work;
+    }
+
+    /**
+     * The size of the buffer between the encoder and the channel.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * How many pieces per thread may be in hand, so that threads do not wait
+     * on a slow piece at the head of the line.
+     */
+    private static final int PENDING_PER_THREAD = 2;
+
+    private final WritableByteChannel channel;
+    private final Progress job;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer buffer;
+    private final int maxPending;
+    private final Queue<Piece> pending;
+    private final ExecutorService executor;
+}
@@ -0,0 +1,277 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.common.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache that many threads can use at once. The entries are spread
+ * by the hash of their key over a number of segments, each of which is an
+ * access ordered map with its own lock, so threads only wait for each other
+ * when they use the same segment. Since even a get changes the order of an
+ * access ordered map, a read lock would not do.
+ *
+ * <p>
+ * Each entry has a weight, which is 1 unless {@link #weigh(Object)} is
+ * overridden. Each segment holds an equal share of the maximum weight and
+ * evicts its least recently used entries to stay within it. So eviction is
+ * least recently used within a segment, and only roughly so across the cache.
+ * An entry that weighs more than a segment's share is not cached at all.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class SegmentedCache<K, V> {
+    /**
+     * Create a cache of entries whose total weight is at most maxWeight.
+     *
+     * @param segmentCount the number of independently locked segments, rounded up to a power of 2
+     * @param maxWeight the upper bound of the total weight of the entries
+     */
+    @SuppressWarnings("unchecked")
+    public SegmentedCache(int segmentCount, long maxWeight) {
+        int count = 1;
+        while (count < segmentCount) {
+            count <<= 1;
+        }
+        segments = new SegmentedCache.Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+        this.maxWeight = maxWeight;
+        this.evictions = new AtomicLong();
+    }
+
+    /**
+     * Get an entry from the cache, making it the most recently used of its
+     * segment.
+     *
+     * @param key the key of the entry
+     * @return the value or null if it is not cached
+     */
+    public V get(K key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.entries.get(key);
+        }
+    }
+
+    /**
+     * Determine whether an entry is cached, without counting as a use of it.
+     *
+     * @param key the key of the entry
+     * @return true if the entry is cached
+     */
+    public boolean containsKey(K key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.entries.containsKey(key);
+        }
+    }
+
+    /**
+     * Put an entry into the cache, evicting the least recently used entries
+     * of its segment to make room for it. An entry that is too heavy to be
+     * cached replaces nothing.
+     *
+     * @param key the key of the entry
+     * @param value the value of the entry
+     */
+    public void put(K key, V value) {
+        long weight = weigh(value);
+        long bound = getSegmentWeight();
+        if (weight > bound) {
+            return;
+        }
+
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            V previous = segment.entries.put(key, value);
+            if (previous != null) {
+                segment.weight -= weigh(previous);
+            }
+            segment.weight += weight;
+            segment.trim(bound);
+        }
+    }
+
+    /**
+     * Remove an entry from the cache.
+     *
+     * @param key the key of the entry
+     */
+    public void remove(K key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            V previous = segment.entries.remove(key);
+            if (previous != null) {
+                segment.weight -= weigh(previous);
+            }
+        }
+    }
+
+    /**
+     * Remove the entries whose keys pass a filter.
+     *
+     * @param filter the test of which entries are to be removed
+     */
+    public void removeAll(Filter<K> filter) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Iterator<Map.Entry<K, V>> iter = segment.entries.entrySet().iterator();
+                while (iter.hasNext()) {
+                    Map.Entry<K, V> entry = iter.next();
+                    if (filter.test(entry.getKey())) {
+                        segment.weight -= weigh(entry.getValue());
+                        iter.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all the entries from the cache.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    /**
+     * @return the upper bound of the total weight of the entries
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Change the upper bound of the total weight, evicting entries if needed.
+     * A bound of 0 turns the cache off.
+     *
+     * @param maxWeight the upper bound of the total weight of the entries
+     */
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        long bound = getSegmentWeight();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.trim(bound);
+            }
+        }
+    }
+
+    /**
+     * @return the total weight of the entries that are currently cached
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * @return the number of entries that are currently cached
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of entries evicted to make room for others
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Get the weight of a value, which is 1 unless overridden.
+     *
+     * @param value the value to weigh
+     * @return the weight of the value
+     */
+    protected long weigh(V value) {
+        return 1;
+    }
+
+    /**
+     * @return the share of the maximum weight that each segment may hold
+     */
+    private long getSegmentWeight() {
+        return maxWeight / segments.length;
+    }
+
+    private Segment segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    /**
+     * One independently locked part of the cache. All access is done while
+     * holding its lock.
+     */
+    private final class Segment {
+        Segment() {
+            entries = new LinkedHashMap<K, V>(INITIAL_CAPACITY, 0.75f, true);
+        }
+
+        /**
+         * Evict the least recently used entries until the segment fits.
+         */
+        void trim(long bound) {
+            Iterator<V> iter = entries.values().iterator();
+            while (weight > bound && iter.hasNext()) {
+                weight -= weigh(iter.next());
+                iter.remove();
+                evictions.incrementAndGet();
+            }
+        }
+
+        private final Map<K, V> entries;
+        private long weight;
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments;
+    private final AtomicLong evictions;
+    private volatile long maxWeight;
+}
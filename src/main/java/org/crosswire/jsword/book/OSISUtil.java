@@ -765,34 +765,47 @@ public final class OSISUtil {
 
         for (Content content : getDeepContent(root, OSISUtil.OSIS_ELEMENT_W)) {
             Element ele = (Element) content;
-            String attr = ele.getAttributeValue(OSISUtil.ATTRIBUTE_W_LEMMA);
-            if (attr != null) {
-                Matcher matcher = strongsNumberPattern.matcher(attr);
-                while (matcher.find()) {
-                    String strongsNum = matcher.group(1);
-                    if (buffer.length() > 0) {
-                        buffer.append(' ');
-                    }
+            appendLexicalInformation(buffer, ele.getAttributeValue(OSISUtil.ATTRIBUTE_W_LEMMA), ele.getAttributeValue(OSISUtil.ATTRIBUTE_W_MORPH), includeMorphology);
+        }
 
-                    if (includeMorphology) {
-                        //if including morphology, we want 1 big field, separated with '@'
-                        strongsNum = strongsNum.replace(SPACE_SEPARATOR, MORPH_INFO_SEPARATOR);
-                    }
-                    buffer.append(strongsNum);
-
-                    if (includeMorphology) {
-                        //also include morphology if available
-                        String morph = ele.getAttributeValue(OSISUtil.ATTRIBUTE_W_MORPH);
-                        if (morph != null && morph.length() != 0) {
-                            buffer.append(MORPH_INFO_SEPARATOR);
-                            buffer.append(morph.replace(SPACE_SEPARATOR, MORPH_INFO_SEPARATOR));
-                        }
-                    }
+        return buffer.toString().trim();
+    }
+
+    /**
+     * Append the Strong's numbers of a single w element, and optionally its
+     * morphology, in the form used by {@link #getLexicalInformation(Element, boolean)}.
+     * 
+     * @param buffer the lexical information gathered so far
+     * @param lemma the lemma attribute of the w element, possibly null
+     * @param morph the morph attribute of the w element, possibly null
+     * @param includeMorphology whether to include morphology
+     */
+    public static void appendLexicalInformation(StringBuilder buffer, String lemma, String morph, boolean includeMorphology) {
+        if (lemma == null) {
+            return;
+        }
+
+        Matcher matcher = strongsNumberPattern.matcher(lemma);
+        while (matcher.find()) {
+            String strongsNum = matcher.group(1);
+            if (buffer.length() > 0) {
+                buffer.append(' ');
+            }
+
+            if (includeMorphology) {
+                //if including morphology, we want 1 big field, separated with '@'
+                strongsNum = strongsNum.replace(SPACE_SEPARATOR, MORPH_INFO_SEPARATOR);
+            }
+            buffer.append(strongsNum);
+
+            if (includeMorphology) {
+                //also include morphology if available
+                if (morph != null && morph.length() != 0) {
+                    buffer.append(MORPH_INFO_SEPARATOR);
+                    buffer.append(morph.replace(SPACE_SEPARATOR, MORPH_INFO_SEPARATOR));
                 }
             }
         }
-
-        return buffer.toString().trim();
     }
 
     /**
@@ -806,18 +819,37 @@ public final class OSISUtil {
      * @return The references in the text
      */
     public static String getReferences(Book book, Key key, Versification v11n, Element root) {
-        PassageKeyFactory keyf = PassageKeyFactory.instance();
-        Key collector = keyf.createEmptyKeyList(v11n);
-
+        List<String> refs = new ArrayList<String>();
         for (Content content : getDeepContent(root, OSISUtil.OSIS_ELEMENT_REFERENCE)) {
             Element ele = (Element) content;
             String attr = ele.getAttributeValue(OSISUtil.OSIS_ATTR_REF);
             if (attr != null) {
-                try {
-                    collector.addAll(keyf.getKey(v11n, attr));
-                } catch (NoSuchKeyException e) {
-                    DataPolice.report(book, key, "Unable to parse: " + attr + " - No such reference:" + e.getMessage());
-                }
+                refs.add(attr);
+            }
+        }
+
+        return getReferences(book, key, v11n, refs);
+    }
+
+    /**
+     * A space separate string containing the osisIDs of the given osisRefs.
+     * References that are not valid are reported and otherwise ignored.
+     *
+     * @param book the book to which the references refer
+     * @param key the verse containing the cross references
+     * @param v11n the versification
+     * @param osisRefs the osisRef attributes of the reference elements
+     * @return The references in the text
+     */
+    public static String getReferences(Book book, Key key, Versification v11n, Collection<String> osisRefs) {
+        PassageKeyFactory keyf = PassageKeyFactory.instance();
+        Key collector = keyf.createEmptyKeyList(v11n);
+
+        for (String attr : osisRefs) {
+            try {
+                collector.addAll(keyf.getKey(v11n, attr));
+            } catch (NoSuchKeyException e) {
+                DataPolice.report(book, key, "Unable to parse: " + attr + " - No such reference:" + e.getMessage());
             }
         }
 
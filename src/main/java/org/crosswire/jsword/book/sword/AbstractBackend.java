@@ -129,6 +129,55 @@ public abstract class AbstractBackend<T extends OpenFileState> implements Statef
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.Backend#appendRawText(org.crosswire.jsword.passage.Key, java.lang.StringBuilder)
+     */
+    public void appendRawText(Key key, StringBuilder dest) throws BookException {
+        T state = null;
+        try {
+            state = initState();
+            appendRawContent(state, key, dest);
+        } catch (IOException e) {
+            throw new BookException("Unable to obtain raw content from backend for key='" + key + '\'', e);
+        } finally {
+            OpenFileStateManager.instance().release(state);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.StatefulFileBackedBackend#appendRawContent(org.crosswire.jsword.book.sword.state.OpenFileState, org.crosswire.jsword.passage.Key, java.lang.StringBuilder)
+     */
+    public void appendRawContent(T state, Key key, StringBuilder dest) throws BookException, IOException {
+        // By default, there is nothing to be saved over reading the text.
+        dest.append(readRawContent(state, key));
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.StatefulFileBackedBackend#readRawRange(org.crosswire.jsword.book.sword.state.OpenFileState, org.crosswire.jsword.passage.VerseRange)
+     */
+    public String[] readRawRange(T state, VerseRange range) throws BookException, IOException {
+        // By default, read the range verse by verse.
+        return readRawRangeByVerse(state, range);
+    }
+
+    /**
+     * Read the raw text of each verse in a range, one verse at a time.
+     * 
+     * @param state the open file state
+     * @param range the verses that are sought
+     * @return the raw text of each verse of the range, in order
+     * @throws BookException
+     * @throws IOException
+     */
+    protected final String[] readRawRangeByVerse(T state, VerseRange range) throws BookException, IOException {
+        final String[] texts = new String[range.getCardinality()];
+        int i = 0;
+        for (Key verse : range) {
+            texts[i++] = readRawContent(state, verse);
+        }
+        return texts;
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.book.sword.Backend#setAliasKey(org.crosswire.jsword.passage.Key, org.crosswire.jsword.passage.Key)
      */
@@ -247,11 +296,25 @@ public abstract class AbstractBackend<T extends OpenFileState> implements Statef
             VerseRange range = rit.next();
             processor.preRange(range, content);
 
-            // FIXME(CJB): can this now be optimized since we can calculate
-            // the buffer size of what to read?
+            // Read the whole range at once, so that the index is read once
+            // and each block is only looked up once.
+            String[] rawTexts = null;
+            try {
+                rawTexts = readRawRange(openFileState, range);
+            } catch (IOException e) {
+                // fall back to reading verse by verse to find the culprit
+                LOGGER.debug("Unable to read {} at once", range.getName(), e);
+            }
+
             // now iterate through all verses in range
+            int i = 0;
             for (Key verseInRange : range) {
                 currentVerse = KeyUtil.getVerse(verseInRange);
+                if (rawTexts != null) {
+                    processor.postVerse(verseInRange, content, rawTexts[i++]);
+                    continue;
+                }
+
                 try {
                     String rawText = readRawContent(openFileState, currentVerse);
                     processor.postVerse(verseInRange, content, rawText);
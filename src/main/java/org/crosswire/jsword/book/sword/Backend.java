@@ -85,6 +85,17 @@ public interface Backend<T extends OpenFileState> {
      */
     String getRawText(Key key) throws BookException;
 
+    /**
+     * Append the text as it is found in the Book for the given key to the
+     * caller's buffer. When reading many keys, reusing one buffer makes far
+     * less garbage than getting each text as a String.
+     * 
+     * @param key the key for which the raw text is desired.
+     * @param dest the buffer to which the text is appended
+     * @throws BookException 
+     */
+    void appendRawText(Key key, StringBuilder dest) throws BookException;
+
     void setAliasKey(Key alias, Key source) throws BookException;
 
     /**
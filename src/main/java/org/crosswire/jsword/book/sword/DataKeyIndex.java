@@ -0,0 +1,225 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * An in-memory table of the keys of a dictionary, along with the location of
+ * each entry in the data file. It allows a key to be found without touching
+ * the index or the data file.
+ *
+ * <p>
+ * The position of an entry is its position in the index file. The table keeps
+ * the positions sorted by normalized key, so that exact and prefix lookups are
+ * a binary search. Entries without data are not searchable. A second ordering,
+ * ignoring case, is built the first time it is needed.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+final class DataKeyIndex {
+    /**
+     * Build the key table. All arrays are indexed by position in the index file.
+     *
+     * @param keys the key of each entry, as found in the data file
+     * @param normalized the key of each entry, normalized for searching
+     * @param offsets the offset of each entry in the data file
+     * @param sizes the size of each entry in the data file
+     */
+    DataKeyIndex(String[] keys, String[] normalized, int[] offsets, int[] sizes) {
+        this.keys = keys;
+        this.normalized = normalized;
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.sorted = sort(normalized);
+    }
+
+    /**
+     * @return the number of entries in the index file, including empty ones
+     */
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * @param pos the position of the entry
+     * @return the key of the entry as found in the data file
+     */
+    String getKey(int pos) {
+        return keys[pos];
+    }
+
+    /**
+     * @param pos the position of the entry
+     * @return the offset and size of the entry in the data file
+     */
+    DataIndex getIndex(int pos) {
+        return new DataIndex(offsets[pos], sizes[pos]);
+    }
+
+    /**
+     * Get the normalized key of an entry near the middle of the dictionary.
+     * The front of a dictionary often has introductory entries that do not
+     * follow the pattern of the keys of the rest of the dictionary.
+     *
+     * @return a typical normalized key or the empty string if there are none
+     */
+    String getTypicalKey() {
+        if (sorted.length == 0) {
+            return "";
+        }
+        return normalized[sorted[sorted.length >>> 1]];
+    }
+
+    /**
+     * Find an entry by its normalized key.
+     *
+     * @param key the normalized key
+     * @return the position of the entry or, if not found, (-pos - 1) where pos
+     *         is the position of the next greater key
+     */
+    int find(String key) {
+        int low = lowerBound(sorted, normalized, key);
+        if (low < sorted.length) {
+            int pos = sorted[low];
+            if (normalized[pos].equals(key)) {
+                return pos;
+            }
+            return -pos - 1;
+        }
+        return -keys.length - 1;
+    }
+
+    /**
+     * Find an entry by its key without regard to case.
+     *
+     * @param key the key
+     * @return the position of the entry or -1 if not found
+     */
+    int findIgnoreCase(String key) {
+        String sought = key.toUpperCase(Locale.US);
+        int[] order = getFoldedOrder();
+        int low = lowerBound(order, folded, sought);
+        if (low < order.length && folded[order[low]].equals(sought)) {
+            return order[low];
+        }
+        return -1;
+    }
+
+    /**
+     * Find all the entries whose normalized keys start with the prefix.
+     *
+     * @param prefix the normalized prefix
+     * @return the positions of the entries in key order
+     */
+    int[] findPrefix(String prefix) {
+        int low = lowerBound(sorted, normalized, prefix);
+        int high = low;
+        while (high < sorted.length && normalized[sorted[high]].startsWith(prefix)) {
+            high++;
+        }
+        return Arrays.copyOfRange(sorted, low, high);
+    }
+
+    /**
+     * Get the positions sorted by the case folded keys, building them if needed.
+     */
+    private synchronized int[] getFoldedOrder() {
+        if (foldedSorted == null) {
+            String[] upper = new String[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                upper[i] = keys[i] == null ? null : keys[i].toUpperCase(Locale.US);
+            }
+            folded = upper;
+            foldedSorted = sort(upper);
+        }
+        return foldedSorted;
+    }
+
+    /**
+     * Sort the positions of the searchable entries by their keys. The sort is
+     * stable so that duplicates are found in file order.
+     */
+    private int[] sort(final String[] byKey) {
+        int count = 0;
+        for (int i = 0; i < byKey.length; i++) {
+            if (isSearchable(i)) {
+                count++;
+            }
+        }
+
+        Integer[] order = new Integer[count];
+        int j = 0;
+        for (int i = 0; i < byKey.length; i++) {
+            if (isSearchable(i)) {
+                order[j++] = Integer.valueOf(i);
+            }
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return byKey[o1.intValue()].compareTo(byKey[o2.intValue()]);
+            }
+        });
+
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = order[i].intValue();
+        }
+        return result;
+    }
+
+    /**
+     * Occasionally there's a bogus index entry (size == 0), these are skipped.
+     */
+    private boolean isSearchable(int pos) {
+        return sizes[pos] > 0 && keys[pos] != null && keys[pos].length() > 0;
+    }
+
+    /**
+     * Find the first position in order whose key is not less than the sought key.
+     */
+    private static int lowerBound(int[] order, String[] byKey, String sought) {
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            // use >>> to keep mid always in range
+            int mid = (low + high) >>> 1;
+            if (byKey[order[mid]].compareTo(sought) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private final String[] keys;
+    private final String[] normalized;
+    private final int[] offsets;
+    private final int[] sizes;
+    private final int[] sorted;
+    private String[] folded;
+    private int[] foldedSorted;
+}
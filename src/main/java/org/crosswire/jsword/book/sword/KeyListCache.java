@@ -0,0 +1,298 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.crosswire.common.util.CWProject;
+import org.crosswire.common.util.IOUtil;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.BookMetaData;
+import org.crosswire.jsword.passage.BitwisePassage;
+import org.crosswire.jsword.passage.OrdinalVisitor;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.RocketPassage;
+import org.crosswire.jsword.versification.Versification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of the verses present in verse based books. Finding them means
+ * scanning the whole of the index of a book, so once found they are kept in
+ * memory and saved in the JSword project directory. They are used again for
+ * as long as the files of the book keep the same names, sizes and
+ * modification times.
+ *
+ * <p>
+ * The passages handed out are copies, which the caller is free to change, as
+ * a backend has always returned a passage of its own.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+final class KeyListCache {
+    /**
+     * Prevent instantiation
+     */
+    private KeyListCache() {
+    }
+
+    /**
+     * Get the verses of a book, if they have been found before and the book
+     * has not changed since.
+     *
+     * @param bmd the book
+     * @param v11n the versification of the book
+     * @return a copy of the verses of the book or null if not cached
+     */
+    static Passage get(BookMetaData bmd, Versification v11n) {
+        String signature = getSignature(bmd, v11n);
+        if (signature == null) {
+            return null;
+        }
+
+        Entry entry = entries.get(bmd.getInitials());
+        if (entry != null && signature.equals(entry.signature)) {
+            return (Passage) entry.passage.clone();
+        }
+
+        BitSet ordinals = load(bmd, signature);
+        if (ordinals == null) {
+            return null;
+        }
+
+        BitwisePassage loaded = new RocketPassage(v11n);
+        loaded.raiseEventSuppresion();
+        loaded.raiseNormalizeProtection();
+        for (int ordinal = ordinals.nextSetBit(0); ordinal >= 0; ordinal = ordinals.nextSetBit(ordinal + 1)) {
+            loaded.addVersifiedOrdinal(ordinal);
+        }
+        loaded.lowerNormalizeProtection();
+        loaded.lowerEventSuppressionAndTest();
+
+        remember(bmd, signature, loaded);
+        return (Passage) loaded.clone();
+    }
+
+    /**
+     * Keep the verses of a book and save them for next time.
+     *
+     * @param bmd the book
+     * @param v11n the versification of the book
+     * @param passage the verses found in the book, which remain the caller's
+     * @return the passage
+     */
+    static Passage put(BookMetaData bmd, Versification v11n, Passage passage) {
+        String signature = getSignature(bmd, v11n);
+        if (signature == null) {
+            return passage;
+        }
+
+        final BitSet ordinals = new BitSet(v11n.maximumOrdinal() + 1);
+        passage.visitOrdinals(new OrdinalVisitor() {
+            public void visitOrdinal(int ordinal) {
+                ordinals.set(ordinal);
+            }
+        });
+        save(bmd, signature, ordinals);
+
+        remember(bmd, signature, (Passage) passage.clone());
+        return passage;
+    }
+
+    /**
+     * Forget the verses of a book. This needs to be called when a book is
+     * removed or replaced.
+     *
+     * @param bmd the book
+     */
+    static void invalidate(BookMetaData bmd) {
+        entries.remove(bmd.getInitials());
+        File file = getCacheFile(bmd);
+        if (file != null && file.exists() && !file.delete()) {
+            log.debug("Unable to delete {}", file.getPath());
+        }
+    }
+
+    /**
+     * Keep a passage that only this cache has, so it is never changed.
+     */
+    private static void remember(BookMetaData bmd, String signature, Passage passage) {
+        entries.put(bmd.getInitials(), new Entry(signature, passage));
+    }
+
+    /**
+     * Describe the files of a book, so that a change to any of them can be
+     * noticed.
+     *
+     * @return the signature or null if the files cannot be found
+     */
+    private static String getSignature(BookMetaData bmd, Versification v11n) {
+        File dir;
+        try {
+            dir = new File(SwordUtil.getExpandedDataPath(bmd).getPath());
+        } catch (BookException e) {
+            return null;
+        }
+
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+
+        Arrays.sort(files);
+        StringBuilder buf = new StringBuilder();
+        buf.append(v11n.getName());
+        for (File file : files) {
+            buf.append('|').append(file.getAbsolutePath());
+            buf.append(':').append(file.length());
+            buf.append(':').append(file.lastModified());
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Read the saved verses of a book.
+     *
+     * @return the ordinals of the verses or null if they were not saved for this signature
+     */
+    private static BitSet load(BookMetaData bmd, String signature) {
+        File file = getCacheFile(bmd);
+        if (file == null || !file.canRead()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || !signature.equals(in.readUTF())) {
+                return null;
+            }
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            return BitSet.valueOf(words);
+        } catch (IOException e) {
+            log.debug("Unable to read {}", file.getPath(), e);
+            return null;
+        } finally {
+            IOUtil.close(in);
+        }
+    }
+
+    /**
+     * Save the verses of a book. Failure to do so only costs a scan of the
+     * index next time.
+     */
+    private static void save(BookMetaData bmd, String signature, BitSet ordinals) {
+        File file = getCacheFile(bmd);
+        if (file == null) {
+            return;
+        }
+
+        // Write to the side and then move into place, so that a reader never sees half a file.
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeUTF(signature);
+            long[] words = ordinals.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                // Windows will not rename over an existing file
+                if (!file.delete() || !temp.renameTo(file)) {
+                    log.debug("Unable to save {}", file.getPath());
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Unable to save {}", file.getPath(), e);
+        } finally {
+            IOUtil.close(out);
+            if (temp.exists() && !temp.delete()) {
+                log.debug("Unable to delete {}", temp.getPath());
+            }
+        }
+    }
+
+    /**
+     * @return the file in which the verses of the book are saved or null if there is nowhere to save them
+     */
+    private static File getCacheFile(BookMetaData bmd) {
+        try {
+            URI dir = CWProject.instance().getWritableProjectSubdir(DIR_KEYLIST, true);
+            String name = bmd.getInitials().toLowerCase().replaceAll("[^a-z0-9_.-]", "_");
+            return new File(new File(dir.getPath()), name + EXTENSION_KEYLIST);
+        } catch (IOException e) {
+            log.debug("No directory for key lists", e);
+            return null;
+        }
+    }
+
+    /**
+     * The verses of a book along with the signature of the files they were found in.
+     */
+    private static final class Entry {
+        Entry(String signature, Passage passage) {
+            this.signature = signature;
+            this.passage = passage;
+        }
+
+        final String signature;
+        final Passage passage;
+    }
+
+    /**
+     * The directory, within the JSword project directory, holding the key lists.
+     */
+    private static final String DIR_KEYLIST = "keylist";
+    private static final String EXTENSION_KEYLIST = ".keys";
+
+    /**
+     * Marks a key list file, including the version of its layout.
+     */
+    private static final int MAGIC = 0x4B455931;
+
+    private static final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * The log stream
+     */
+    private static final Logger log = LoggerFactory.getLogger(KeyListCache.class);
+}
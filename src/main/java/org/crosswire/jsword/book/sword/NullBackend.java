@@ -78,6 +78,12 @@ public class NullBackend implements Backend {
         return "";
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.Backend#appendRawText(org.crosswire.jsword.passage.Key, java.lang.StringBuilder)
+     */
+    public void appendRawText(Key key, StringBuilder dest) throws BookException {
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.book.sword.Backend#setAliasKey(org.crosswire.jsword.passage.Key, org.crosswire.jsword.passage.Key)
      */
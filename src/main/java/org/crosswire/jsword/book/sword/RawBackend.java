@@ -21,17 +21,21 @@ package org.crosswire.jsword.book.sword;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.Arrays;
 
 import org.crosswire.jsword.JSMsg;
 import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.BookMetaData;
 import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
 import org.crosswire.jsword.book.sword.state.RawBackendState;
+import org.crosswire.jsword.book.sword.state.SharedFile;
 import org.crosswire.jsword.passage.BitwisePassage;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.Passage;
 import org.crosswire.jsword.passage.RocketPassage;
 import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
 import org.crosswire.jsword.versification.Testament;
 import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.system.Versifications;
@@ -85,6 +89,11 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
             Testament testament = v11n.getTestament(index);
             index = v11n.getTestamentOrdinal(index);
             initState = initState();
+            SharedFile sharedIdx = initState.getSharedIdx(testament);
+            if (sharedIdx != null) {
+                return getIndex(sharedIdx, index).getSize();
+            }
+
             RandomAccessFile idxRaf = initState.getIdxRaf(testament);
 
             // If this is a single testament Bible, return nothing.
@@ -106,13 +115,19 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
 
     @Override
     public Key getGlobalKeyList() throws BookException {
+        String v11nName = getBookMetaData().getProperty(BookMetaData.KEY_VERSIFICATION);
+        Versification v11n = Versifications.instance().getVersification(v11nName);
+
+        // Scanning the index is expensive, so use the verses found last time if the book has not changed
+        Passage cached = KeyListCache.get(getBookMetaData(), v11n);
+        if (cached != null) {
+            return cached;
+        }
+
         RawBackendState rafBook = null;
         try {
             rafBook = initState();
 
-            String v11nName = getBookMetaData().getProperty(BookMetaData.KEY_VERSIFICATION);
-            Versification v11n = Versifications.instance().getVersification(v11nName);
-
             Testament[] testaments = new Testament[] {
                     Testament.OLD, Testament.NEW
             };
@@ -122,10 +137,11 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
             passage.raiseNormalizeProtection();
 
             for (Testament currentTestament : testaments) {
+                SharedFile sharedIdx = rafBook.getSharedIdx(currentTestament);
                 RandomAccessFile idxRaf = rafBook.getIdxRaf(currentTestament);
 
                 // If Bible does not contain the desired testament, then false
-                if (idxRaf == null) {
+                if (sharedIdx == null && idxRaf == null) {
                     // no keys in this testament
                     continue;
                 }
@@ -135,7 +151,7 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
                 int maxCount = v11n.getCount(currentTestament) + 1;
 
                 // Read in the whole index, a few hundred Kb at most.
-                byte[] temp = SwordUtil.readRAF(idxRaf, 0, entrysize * maxCount);
+                byte[] temp = sharedIdx != null ? sharedIdx.read(0, entrysize * maxCount) : SwordUtil.readRAF(idxRaf, 0, entrysize * maxCount);
 
                 // For each entry of entrysize bytes, the length of the verse in bytes
                 // is in the last datasize bytes. If all bytes are 0, then there is no content.
@@ -165,7 +181,7 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
             passage.lowerNormalizeProtection();
             passage.lowerEventSuppressionAndTest();
 
-            return passage;
+            return KeyListCache.put(getBookMetaData(), v11n, passage);
         } catch (IOException e) {
             throw new BookException(JSMsg.gettext("Unable to read key list from book."));
         } finally {
@@ -204,6 +220,88 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.AbstractBackend#readRawRange(org.crosswire.jsword.book.sword.state.OpenFileState, org.crosswire.jsword.passage.VerseRange)
+     */
+    @Override
+    public String[] readRawRange(RawBackendState state, VerseRange range) throws BookException, IOException {
+        final String v11nName = getBookMetaData().getProperty(BookMetaData.KEY_VERSIFICATION);
+        final Versification v11n = Versifications.instance().getVersification(v11nName);
+        final int startOrdinal = range.getStart().getOrdinal();
+        final Testament testament = v11n.getTestament(startOrdinal);
+
+        // A range that spans the testaments is read from two sets of files.
+        if (testament != v11n.getTestament(range.getEnd().getOrdinal())) {
+            return super.readRawRange(state, range);
+        }
+
+        final int count = range.getCardinality();
+        final String[] texts = new String[count];
+        Arrays.fill(texts, "");
+
+        final RandomAccessFile idxRaf = state.getIdxRaf(testament);
+        final SharedFile sharedIdx = state.getSharedIdx(testament);
+
+        // It may be that this is a single testament Bible
+        if (idxRaf == null && sharedIdx == null) {
+            return texts;
+        }
+
+        // Read the index entries for the whole range in one go.
+        final long first = 1L * v11n.getTestamentOrdinal(startOrdinal) * entrysize;
+        final byte[] temp = sharedIdx != null ? sharedIdx.read(first, count * entrysize) : SwordUtil.readRAF(idxRaf, first, count * entrysize);
+
+        // Find the extent of the text for the range.
+        final int available = temp.length / entrysize;
+        final int[] offsets = new int[available];
+        final int[] sizes = new int[available];
+        long spanStart = Long.MAX_VALUE;
+        long spanEnd = 0;
+        long total = 0;
+        for (int i = 0; i < available; i++) {
+            offsets[i] = SwordUtil.decodeLittleEndian32(temp, i * entrysize);
+            sizes[i] = datasize == 2 ? SwordUtil.decodeLittleEndian16(temp, i * entrysize + 4) : SwordUtil.decodeLittleEndian32(temp, i * entrysize + 4);
+            if (sizes[i] < 0) {
+                LOGGER.error("In {}: Verse {} has a bad index size of {}", getBookMetaData().getInitials(), range.getName(), Integer.toString(sizes[i]));
+                sizes[i] = 0;
+            }
+            if (sizes[i] > 0) {
+                spanStart = Math.min(spanStart, offsets[i]);
+                spanEnd = Math.max(spanEnd, (long) offsets[i] + sizes[i]);
+                total += sizes[i];
+            }
+        }
+
+        if (total == 0) {
+            return texts;
+        }
+
+        // Verses are normally stored in order, so the text is one span.
+        // When they are scattered, reading the gaps is a waste.
+        if (spanEnd - spanStart > 2 * total) {
+            return readRawRangeByVerse(state, range);
+        }
+
+        final int spanSize = (int) (spanEnd - spanStart);
+        final byte[] data = sharedIdx != null ? state.getSharedText(testament).read(spanStart, spanSize) : SwordUtil.readRAF(state.getTextRaf(testament), spanStart, spanSize);
+        final String charset = getBookMetaData().getBookCharset();
+        final String name = range.getName();
+        for (int i = 0; i < available; i++) {
+            final int start = (int) (offsets[i] - spanStart);
+            if (sizes[i] == 0 || start + sizes[i] > data.length) {
+                continue;
+            }
+
+            // Each verse is enciphered on its own.
+            final byte[] verseData = new byte[sizes[i]];
+            System.arraycopy(data, start, verseData, 0, sizes[i]);
+            decipher(verseData);
+            texts[i] = SwordUtil.decode(name, verseData, charset);
+        }
+
+        return texts;
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.book.sword.AbstractBackend#setRawText(org.crosswire.jsword.passage.Key, java.lang.String)
      */
@@ -262,6 +360,36 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
         return new DataIndex(entryOffset, entrySize);
     }
 
+    /**
+     * Get the Index (that is offset and size) for an entry, decoding it
+     * straight from a shared index file.
+     * 
+     * @param map the shared index file
+     * @param entry the entry in the index
+     * @return the index for the entry
+     * @throws IOException
+     */
+    protected DataIndex getIndex(SharedFile map, long entry) throws IOException {
+        long offset = entry * entrysize;
+        if (!map.contains(offset, entrysize)) {
+            return new DataIndex(0, 0);
+        }
+
+        int entryOffset = map.getInt(offset);
+        int entrySize = -1;
+        switch (datasize) {
+        case 2:
+            entrySize = map.getUnsignedShort(offset + 4);
+            break;
+        case 4:
+            entrySize = map.getInt(offset + 4);
+            break;
+        default:
+            assert false : datasize;
+        }
+        return new DataIndex(entryOffset, entrySize);
+    }
+
     /**
      * Get the text for an indexed entry in the book.
      * @param state 
@@ -279,15 +407,17 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
     protected String getEntry(RawBackendState state, String name, Testament testament, long index) throws IOException {
         final RandomAccessFile idxRaf;
         final RandomAccessFile txtRaf;
+        final SharedFile sharedIdx;
         idxRaf = state.getIdxRaf(testament);
         txtRaf = state.getTextRaf(testament);
+        sharedIdx = state.getSharedIdx(testament);
 
         // It may be that this is a single testament Bible
-        if (idxRaf == null) {
+        if (idxRaf == null && sharedIdx == null) {
             return "";
         }
 
-        DataIndex dataIndex = getIndex(idxRaf, index);
+        DataIndex dataIndex = sharedIdx != null ? getIndex(sharedIdx, index) : getIndex(idxRaf, index);
 
         int size = dataIndex.getSize();
         if (size == 0) {
@@ -299,7 +429,12 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
             return "";
         }
 
-        byte[] data = SwordUtil.readRAF(txtRaf, dataIndex.getOffset(), size);
+        byte[] data;
+        if (sharedIdx != null) {
+            data = state.getSharedText(testament).read(dataIndex.getOffset(), size);
+        } else {
+            data = SwordUtil.readRAF(txtRaf, dataIndex.getOffset(), size);
+        }
 
         decipher(data);
 
@@ -36,6 +36,7 @@ import org.crosswire.jsword.book.sword.state.RawFileBackendState;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
 import org.crosswire.jsword.versification.Testament;
 import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.system.Versifications;
@@ -107,6 +108,15 @@ public class RawFileBackend extends RawBackend<RawFileBackendState> {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.RawBackend#readRawRange(org.crosswire.jsword.book.sword.state.RawBackendState, org.crosswire.jsword.passage.VerseRange)
+     */
+    @Override
+    public String[] readRawRange(RawBackendState state, VerseRange range) throws BookException, IOException {
+        // Each verse is in a file of its own, so nothing is gained by reading the range at once.
+        return readRawRangeByVerse(state, range);
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.book.sword.RawBackend#setRawText(org.crosswire.jsword.passage.Key, java.lang.String)
      * 
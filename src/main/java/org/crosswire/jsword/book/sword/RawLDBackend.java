@@ -21,17 +21,23 @@ package org.crosswire.jsword.book.sword;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.text.DecimalFormat;
 import java.text.MessageFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.crosswire.common.icu.DateFormatter;
+import org.crosswire.common.util.OrderedParallelWriter;
 import org.crosswire.common.util.StringUtil;
 import org.crosswire.jsword.JSMsg;
 import org.crosswire.jsword.book.BookCategory;
@@ -40,8 +46,11 @@ import org.crosswire.jsword.book.BookMetaData;
 import org.crosswire.jsword.book.FeatureType;
 import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
 import org.crosswire.jsword.book.sword.state.RawLDBackendState;
+import org.crosswire.jsword.passage.DefaultKeyList;
 import org.crosswire.jsword.passage.DefaultLeafKeyList;
 import org.crosswire.jsword.passage.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * An implementation AbstractKeyBackend to read RAW format files.
@@ -137,6 +146,10 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
             state = initState();
 
             if (index < getCardinality()) {
+                DataKeyIndex keyIndex = getKeyIndex(state);
+                if (keyIndex != null) {
+                    return new DefaultLeafKeyList(internal2external(keyIndex.getKey(index)));
+                }
                 DataIndex dataIndex = getIndex(state, index);
                 DataEntry entry = getEntry(state, getBookMetaData().getInitials(), dataIndex);
                 String keytitle = internal2external(entry.getKey());
@@ -180,6 +193,11 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
         try {
             state = initState();
             int entry = search(state, key.getName());
+            DataKeyIndex keyIndex = getKeyIndex(state);
+            if (keyIndex != null) {
+                return entry < 0 ? 0 : keyIndex.getIndex(entry).getSize();
+            }
+
             // Read the offset and size for this key from the index
             byte[] buffer = SwordUtil.readRAF(state.getIdxRaf(), entry * entrysize, entrysize);
             int entrySize = 0;
@@ -212,6 +230,12 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
      * @throws IOException
      */
     protected DataIndex getIndex(RawLDBackendState state, long entry) throws IOException {
+        // The key table already knows where the entry is.
+        DataKeyIndex index = keyIndex;
+        if (index != null && entry < index.size()) {
+            return index.getIndex((int) entry);
+        }
+
         // Read the offset and size for this key from the index
         byte[] buffer = SwordUtil.readRAF(state.getIdxRaf(), entry * entrysize, entrysize);
         int entryOffset = SwordUtil.decodeLittleEndian32(buffer, 0);
@@ -269,6 +293,11 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
      * @throws IOException
      */
     private int search(RawLDBackendState state, String key) throws IOException {
+        DataKeyIndex index = getKeyIndex(state);
+        if (index != null) {
+            return search(index, key);
+        }
+
         // Note: In some dictionaries, the first element is out of order and
         // represents the title of the work.
         // So, do the bin search from 1 to end and if not found, check the
@@ -344,6 +373,158 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
         return -(high + 1);
     }
 
+    /**
+     * Find a matching entry using the in-memory key table. This follows the
+     * same rules as the search of the files.
+     * 
+     * @param index the key table
+     * @param key the key to find
+     * @return the match or (-pos - 1) where pos is the insertion point
+     */
+    private int search(DataKeyIndex index, String key) {
+        String suppliedKey = normalizeForSearch(external2internal(key, index.getTypicalKey()));
+        int match = index.find(suppliedKey);
+        if (match >= 0) {
+            return match;
+        }
+
+        // It wasn't found so see if it is present exactly as given if case sensitive keys are used.
+        if (isCaseSensitive()) {
+            int exact = index.find(key);
+            if (exact >= 0) {
+                return exact;
+            }
+        }
+
+        return match;
+    }
+
+    /**
+     * Find the keys in this dictionary that begin with the given prefix. The
+     * prefix is compared in the same way as a key being looked up, so for a
+     * dictionary without case sensitive keys, the case of the prefix does not
+     * matter. No data is read from disk beyond building the key table.
+     * 
+     * @param prefix the start of the keys
+     * @return the matching keys in sorted order, possibly empty
+     * @throws BookException if the dictionary cannot be read
+     */
+    public Key getKeysStartingWith(String prefix) throws BookException {
+        Key result = new DefaultKeyList();
+        RawLDBackendState state = null;
+        try {
+            state = initState();
+            DataKeyIndex index = getKeyIndex(state);
+            if (index == null) {
+                return result;
+            }
+            for (int pos : index.findPrefix(normalizeForSearch(prefix))) {
+                result.addAll(new DefaultLeafKeyList(internal2external(index.getKey(pos))));
+            }
+            return result;
+        } finally {
+            OpenFileStateManager.instance().release(state);
+        }
+    }
+
+    /**
+     * Find a key in this dictionary without regard to case, even when the
+     * dictionary has case sensitive keys.
+     * 
+     * @param key the key to find
+     * @return the key as found in the dictionary or null if it is not present
+     * @throws BookException if the dictionary cannot be read
+     */
+    public Key getKeyIgnoreCase(String key) throws BookException {
+        RawLDBackendState state = null;
+        try {
+            state = initState();
+            DataKeyIndex index = getKeyIndex(state);
+            if (index == null) {
+                return null;
+            }
+            int pos = index.findIgnoreCase(key);
+            if (pos < 0) {
+                return null;
+            }
+            return new DefaultLeafKeyList(internal2external(index.getKey(pos)));
+        } finally {
+            OpenFileStateManager.instance().release(state);
+        }
+    }
+
+    /**
+     * Get the in-memory key table, building it on first use.
+     * 
+     * @param state the open files of the dictionary
+     * @return the key table or null if it could not be built
+     */
+    private DataKeyIndex getKeyIndex(RawLDBackendState state) {
+        DataKeyIndex index = keyIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = keyIndex;
+                if (index == null) {
+                    try {
+                        index = buildKeyIndex(state);
+                        keyIndex = index;
+                    } catch (IOException e) {
+                        log.error("Unable to build the key table for {}", getBookMetaData().getInitials(), e);
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Read the whole index and the key of each entry in the data file.
+     * Only the start of each entry is read, since the key is at its front.
+     * 
+     * @param state the open files of the dictionary
+     * @return the key table
+     * @throws IOException
+     */
+    private DataKeyIndex buildKeyIndex(RawLDBackendState state) throws IOException {
+        RandomAccessFile idxRaf = state.getIdxRaf();
+        RandomAccessFile datRaf = state.getDatRaf();
+        if (idxRaf == null || datRaf == null) {
+            throw new IOException("Dictionary files are not open");
+        }
+
+        int total = (int) (idxRaf.length() / entrysize);
+        byte[] buffer = SwordUtil.readRAF(idxRaf, 0, total * entrysize);
+        total = buffer.length / entrysize;
+
+        String charset = getBookMetaData().getBookCharset();
+        String[] keys = new String[total];
+        String[] normalized = new String[total];
+        int[] offsets = new int[total];
+        int[] sizes = new int[total];
+        for (int i = 0; i < total; i++) {
+            offsets[i] = SwordUtil.decodeLittleEndian32(buffer, i * entrysize);
+            sizes[i] = datasize == 2 ? SwordUtil.decodeLittleEndian16(buffer, i * entrysize + 4) : SwordUtil.decodeLittleEndian32(buffer, i * entrysize + 4);
+            if (sizes[i] <= 0) {
+                keys[i] = "";
+                normalized[i] = "";
+                continue;
+            }
+
+            byte[] data = SwordUtil.readRAF(datRaf, offsets[i], Math.min(sizes[i], KEY_PROBE_SIZE));
+            if (sizes[i] > KEY_PROBE_SIZE && SwordUtil.findByte(data, (byte) '\n') < 0) {
+                data = SwordUtil.readRAF(datRaf, offsets[i], sizes[i]);
+            }
+            keys[i] = new DataEntry(Integer.toString(i), data, charset).getKey();
+            normalized[i] = normalizeForSearch(keys[i]);
+        }
+
+        return new DataKeyIndex(keys, normalized, offsets, sizes);
+    }
+
+    private boolean isCaseSensitive() {
+        return "true".equalsIgnoreCase(getBookMetaData().getProperty(SwordBookMetaData.KEY_CASE_SENSITIVE_KEYS));
+    }
+
     /**
      * Convert the supplied key to something that can be understood by the module.
      * Use firstKey to determine the pattern for Strong's numbers.
@@ -573,44 +754,93 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
         }
     }
 
-    /** 
-     * Experimental code.
+    /**
+     * Write the dictionary in SWORD's imp format to standard out.
      */
     public void toIMP() {
+        try {
+            System.out.flush();
+            toIMP(Channels.newChannel(System.out), Charset.defaultCharset(), Runtime.getRuntime().availableProcessors());
+        } catch (IOException e) {
+            log.error("Unable to write {} as imp", getBookMetaData().getInitials(), e);
+        } catch (BookException e) {
+            log.error("Unable to write {} as imp", getBookMetaData().getInitials(), e);
+        }
+    }
+
+    /**
+     * Write the dictionary in SWORD's imp format. The entries are read and
+     * decoded in runs on several threads and written in the order of the index.
+     * 
+     * @param out where the imp is written, which is not closed
+     * @param charset the encoding of the imp
+     * @param threads the number of threads reading entries
+     * @throws IOException if the dictionary could not be read or the imp could not be written
+     * @throws BookException if the dictionary could not be opened
+     */
+    public void toIMP(WritableByteChannel out, Charset charset, int threads) throws IOException, BookException {
         RawLDBackendState state = null;
-        long end = -1;
+        int end = -1;
         try {
             state = initState();
             end = getCardinality();
+            // Build the key table up front so the runs need not read the index.
+            getKeyIndex(state);
+        } finally {
+            OpenFileStateManager.instance().release(state);
+        }
+
+        OrderedParallelWriter writer = new OrderedParallelWriter(out, charset, threads, null);
+        try {
+            for (int start = 0; start < end; start += IMP_RUN_SIZE) {
+                final int first = start;
+                final int last = Math.min(start + IMP_RUN_SIZE, end);
+                writer.write(new Callable<String>() {
+                    public String call() throws IOException, BookException {
+                        return toIMP(first, last);
+                    }
+                }, last - first);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Render the entries at the given positions of the index in imp format.
+     * 
+     * @param first the position of the first entry
+     * @param last the position after the last entry
+     * @return the entries as imp
+     */
+    private String toIMP(int first, int last) throws IOException, BookException {
+        RawLDBackendState state = null;
+        try {
+            state = initState();
             StringBuilder buf = new StringBuilder();
-            for (long i = 0; i < end; ++i) {
+            for (int i = first; i < last; ++i) {
                 DataIndex index = getIndex(state, i);
                 int offset = index.getOffset();
                 int size   = index.getSize();
-                buf.setLength(0);
                 buf.append("$$$");
                 if (size > 0) {
                     // Now read the data file for this key using the offset and size
                     byte[] data = SwordUtil.readRAF(state.getDatRaf(), offset, size);
-                    DataEntry entry = new DataEntry(Long.toString(i), data, getBookMetaData().getBookCharset());
+                    DataEntry entry = new DataEntry(Integer.toString(i), data, getBookMetaData().getBookCharset());
                     String key = entry.getKey();
                     String raw = getRawText(entry);
                     buf.append(key);
                     buf.append("\n");
                     buf.append(raw);
                 }
-                System.out.println(buf.toString());
+                buf.append(NEWLINE);
             }
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        } catch (BookException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            return buf.toString();
         } finally {
             OpenFileStateManager.instance().release(state);
         }
     }
+
     /**
      * Date formatter
      */
@@ -627,6 +857,31 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
      */
     private static final Pattern DEVOTION_PATTERN = Pattern.compile("^\\d\\d\\.\\d\\d$");
 
+    /**
+     * The number of bytes read from the front of an entry in the hope of finding its key.
+     */
+    private static final int KEY_PROBE_SIZE = 256;
+
+    /**
+     * The most entries read by a thread at a time when writing imp.
+     */
+    private static final int IMP_RUN_SIZE = 256;
+
+    /**
+     * Entries end as they would with println.
+     */
+    private static final String NEWLINE = System.getProperty("line.separator");
+
+    /**
+     * The in-memory table of keys, built on first use.
+     */
+    private transient volatile DataKeyIndex keyIndex;
+
+    /**
+     * The log stream
+     */
+    private static final Logger log = LoggerFactory.getLogger(RawLDBackend.class);
+
     /**
      * The number of bytes in the size count in the index
      */
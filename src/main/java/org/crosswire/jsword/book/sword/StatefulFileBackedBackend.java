@@ -24,6 +24,7 @@ import java.io.IOException;
 import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.sword.state.OpenFileState;
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.VerseRange;
 
 /**
  * Indicates that there is a stateful backend
@@ -56,6 +57,40 @@ public interface StatefulFileBackedBackend<T extends OpenFileState> {
      */
      String readRawContent(T state, Key key) throws BookException, IOException;
 
+     /**
+      * Append the raw text of a key to the caller's buffer. Implementations
+      * may decode the text straight into the buffer, rather than making a
+      * String of it first.
+      * 
+      * @param state
+      *            the state object containing all the open random access files
+      * @param key
+      *            the verse that is sought
+      * @param dest
+      *            the buffer to which the raw text is appended
+      * @throws BookException 
+      * @throws IOException
+      *             something went wrong when reading the verse
+      */
+     void appendRawContent(T state, Key key, StringBuilder dest) throws BookException, IOException;
+
+     /**
+      * Read the raw text of each verse in a range. Implementations may read
+      * the index of the whole range at once and get each block only once,
+      * rather than looking up each verse on its own.
+      * 
+      * @param state
+      *            the state object containing all the open random access files
+      * @param range
+      *            the verses that are sought
+      * @return the raw text of each verse of the range, in order. A verse
+      *         that is not in the book has the empty string.
+      * @throws BookException 
+      * @throws IOException
+      *             something went wrong when reading the range
+      */
+     String[] readRawRange(T state, VerseRange range) throws BookException, IOException;
+
      /**
       * Set the text allotted for the given verse
       * 
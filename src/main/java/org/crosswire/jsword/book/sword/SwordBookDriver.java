@@ -37,6 +37,8 @@ import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.BookMetaData;
 import org.crosswire.jsword.book.Books;
 import org.crosswire.jsword.book.basic.AbstractBookDriver;
+import org.crosswire.jsword.book.sword.state.BlockCache;
+import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
 import org.crosswire.jsword.index.IndexManager;
 import org.crosswire.jsword.index.IndexManagerFactory;
 import org.crosswire.jsword.index.IndexStatus;
@@ -167,8 +169,12 @@ public class SwordBookDriver extends AbstractBookDriver {
             URI loc = sbmd.getLocation();
             if (loc != null) {
                 File bookDir = new File(loc.getPath());
+                // the shared state holds the files open
+                OpenFileStateManager.instance().discardShared(sbmd);
                 failures = FileUtil.delete(bookDir);
                 Books.installed().removeBook(dead);
+                BlockCache.instance().invalidate(sbmd);
+                KeyListCache.invalidate(sbmd);
             }
 
         }
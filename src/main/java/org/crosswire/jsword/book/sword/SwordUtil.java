@@ -23,6 +23,11 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 
 import org.crosswire.common.util.NetUtil;
 import org.crosswire.jsword.JSOtherMsg;
@@ -357,6 +362,136 @@ public final class SwordUtil {
         return txt;
     }
 
+    /**
+     * Transform a slice of a byte array into a string given the encoding.
+     * Unlike {@link #decode(String, byte[], int, int, String)}, this never
+     * modifies data, so it can be used on shared data, such as an uncompressed
+     * block, without first copying out the slice. The decoder of the calling
+     * thread is reused.
+     * 
+     * @param key the key
+     * @param data
+     *            The byte array to be converted
+     * @param offset
+     *            The starting position in the byte array
+     * @param length
+     *            The number of bytes to use.
+     * @param charset
+     *            The encoding of the byte array
+     * @return the decoded text or the empty string if the slice is not within data
+     */
+    public static String decodeSlice(String key, byte[] data, int offset, int length, String charset) {
+        CharBuffer chars = decodeShared(key, data, offset, length, charset);
+        if (chars == null) {
+            return "";
+        }
+        return new String(chars.array(), 0, chars.limit());
+    }
+
+    /**
+     * Transform a slice of a byte array, given the encoding, and append it to
+     * the caller's buffer. This never modifies data and, apart from the
+     * buffer growing, allocates nothing once the calling thread's decoder
+     * has warmed up.
+     * 
+     * @param key the key
+     * @param data
+     *            The byte array to be converted
+     * @param offset
+     *            The starting position in the byte array
+     * @param length
+     *            The number of bytes to use.
+     * @param charset
+     *            The encoding of the byte array
+     * @param dest
+     *            The buffer to which the text is appended
+     */
+    public static void decodeSlice(String key, byte[] data, int offset, int length, String charset, StringBuilder dest) {
+        CharBuffer chars = decodeShared(key, data, offset, length, charset);
+        if (chars != null) {
+            dest.append(chars.array(), 0, chars.limit());
+        }
+    }
+
+    /**
+     * Decode a slice into the calling thread's char buffer, which is only
+     * good until the thread's next decode.
+     */
+    private static CharBuffer decodeShared(String key, byte[] data, int offset, int length, String charset) {
+        if (offset < 0 || length <= 0 || offset + length > data.length) {
+            return null;
+        }
+
+        CharBuffer chars = DECODERS.get().decode(key, data, offset, length, charset);
+        if ("WINDOWS-1252".equals(charset)) {
+            clean1252(key, chars);
+        }
+        return chars;
+    }
+
+    /**
+     * Remove rogue characters after decoding, in the same way as
+     * {@link #clean1252(String, byte[], int, int)} does before. The bytes that
+     * are undefined in cp1252 have been decoded as the replacement character.
+     */
+    private static void clean1252(String key, CharBuffer chars) {
+        char[] buf = chars.array();
+        int end = chars.limit();
+        for (int i = 0; i < end; i++) {
+            char c = buf[i];
+            if ((c < 0x20 && c != 0x09 && c != 0x0A && c != 0x0D) || c == '\uFFFD') {
+                buf[i] = ' ';
+                log.error("{} has bad character 0x{} at position {} in input.", key, Integer.toString(c, 16), Integer.toString(i));
+            }
+        }
+    }
+
+    /**
+     * A CharsetDecoder and its output buffer, kept by each thread so that
+     * they need not be created for every verse. SWORD modules use only a
+     * few encodings, so the decoder is rarely replaced.
+     */
+    private static final class ThreadDecoder {
+        CharBuffer decode(String key, byte[] data, int offset, int length, String charset) {
+            if (!charset.equals(charsetName)) {
+                decoder = newDecoder(key, charset);
+                charsetName = charset;
+            }
+
+            int needed = (int) Math.ceil(length * (double) decoder.maxCharsPerByte());
+            if (chars == null || chars.capacity() < needed) {
+                chars = CharBuffer.allocate(needed);
+            }
+
+            chars.clear();
+            decoder.reset();
+            ByteBuffer bytes = ByteBuffer.wrap(data, offset, length);
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+            chars.flip();
+            return chars;
+        }
+
+        private static CharsetDecoder newDecoder(String key, String charset) {
+            Charset cs;
+            try {
+                cs = Charset.forName(charset);
+            } catch (IllegalArgumentException ex) {
+                // It is impossible! In case, use system default...
+                log.error("{}: Encoding {} not supported.", key, charset, ex);
+                cs = Charset.defaultCharset();
+            }
+            // Behave as new String(...) does on bad input
+            return cs.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        private String charsetName;
+        private CharsetDecoder decoder;
+        private CharBuffer chars;
+    }
+
     /**
      * Remove rogue characters in the source. These are characters that are not
      * valid in cp1252 aka WINDOWS-1252 and in UTF-8 or are non-printing control
@@ -397,6 +532,16 @@ public final class SwordUtil {
         return loc;
     }
 
+    /**
+     * The decoder of each thread
+     */
+    private static final ThreadLocal<ThreadDecoder> DECODERS = new ThreadLocal<ThreadDecoder>() {
+        @Override
+        protected ThreadDecoder initialValue() {
+            return new ThreadDecoder();
+        }
+    };
+
     /**
      * The log stream
      */
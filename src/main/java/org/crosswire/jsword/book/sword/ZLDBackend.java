@@ -24,6 +24,7 @@ import java.io.ObjectInputStream;
 
 import org.crosswire.common.compress.CompressorType;
 import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.sword.state.BlockCache;
 import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
 import org.crosswire.jsword.book.sword.state.RawLDBackendState;
 import org.crosswire.jsword.book.sword.state.ZLDBackendState;
@@ -77,6 +78,11 @@ public class ZLDBackend extends RawLDBackend<ZLDBackendState> {
         if (blockNum == state.getLastBlockNum()) {
             uncompressed = state.getLastUncompressed();
         } else {
+            // Perhaps another state has already uncompressed it
+            uncompressed = BlockCache.instance().get(getBookMetaData(), null, blockNum);
+        }
+
+        if (uncompressed == null) {
             byte[] temp;
             try {
                 temp = SwordUtil.readRAF(state.getZdxRaf(), blockNum * ZDX_ENTRY_SIZE, ZDX_ENTRY_SIZE);
@@ -94,14 +100,17 @@ public class ZLDBackend extends RawLDBackend<ZLDBackendState> {
                 String compressType = getBookMetaData().getProperty(SwordBookMetaData.KEY_COMPRESS_TYPE);
                 uncompressed = CompressorType.fromString(compressType).getCompressor(temp).uncompress().toByteArray();
 
-                // cache the uncompressed data for next time
-                state.setLastBlockNum(blockNum);
-                state.setLastUncompressed(uncompressed);
+                // share the uncompressed data with all other states
+                BlockCache.instance().put(getBookMetaData(), null, blockNum, uncompressed);
             } catch (IOException e) {
                 return new DataEntry(entry.getName(), new byte[0], entry.getCharset());
             }
         }
 
+        // cache the uncompressed data for next time
+        state.setLastBlockNum(blockNum);
+        state.setLastUncompressed(uncompressed);
+
         // get the "entry" from this block.
         int entryCount = SwordUtil.decodeLittleEndian32(uncompressed, 0);
         if (blockEntry >= entryCount) {
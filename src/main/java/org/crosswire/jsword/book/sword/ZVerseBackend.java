@@ -21,18 +21,24 @@ package org.crosswire.jsword.book.sword;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.Arrays;
 
 import org.crosswire.common.compress.CompressorType;
 import org.crosswire.jsword.JSMsg;
 import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.BookMetaData;
+import org.crosswire.jsword.book.sword.state.BlockCache;
 import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
+import org.crosswire.jsword.book.sword.state.ReadAhead;
+import org.crosswire.jsword.book.sword.state.SharedFile;
 import org.crosswire.jsword.book.sword.state.ZVerseBackendState;
 import org.crosswire.jsword.passage.BitwisePassage;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.Passage;
 import org.crosswire.jsword.passage.RocketPassage;
 import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
 import org.crosswire.jsword.versification.Testament;
 import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.system.Versifications;
@@ -173,6 +179,19 @@ public class ZVerseBackend extends AbstractBackend<ZVerseBackendState> {
             Testament testament = v11n.getTestament(index);
             index = v11n.getTestamentOrdinal(index);
 
+            SharedFile sharedIdx = rafBook.getSharedIdx(testament);
+            if (sharedIdx != null) {
+                // Decode the verseSize straight from the shared index
+                long offset = 1L * index * entrysize;
+                if (!sharedIdx.contains(offset, entrysize)) {
+                    return 0;
+                }
+                if (datasize == 2) {
+                    return sharedIdx.getUnsignedShort(offset + 8);
+                }
+                return sharedIdx.getInt(offset + 8);
+            }
+
             RandomAccessFile idxRaf = rafBook.getIdxRaf(testament);
 
             // If Bible does not contain the desired testament, then false
@@ -214,13 +233,19 @@ public class ZVerseBackend extends AbstractBackend<ZVerseBackendState> {
      */
     @Override
     public Key getGlobalKeyList() throws BookException {
+        String v11nName = getBookMetaData().getProperty(BookMetaData.KEY_VERSIFICATION);
+        Versification v11n = Versifications.instance().getVersification(v11nName);
+
+        // Scanning the index is expensive, so use the verses found last time if the book has not changed
+        Passage cached = KeyListCache.get(getBookMetaData(), v11n);
+        if (cached != null) {
+            return cached;
+        }
+
         ZVerseBackendState rafBook = null;
         try {
             rafBook = initState();
 
-            String v11nName = getBookMetaData().getProperty(BookMetaData.KEY_VERSIFICATION);
-            Versification v11n = Versifications.instance().getVersification(v11nName);
-
             Testament[] testaments = new Testament[] {
                     Testament.OLD, Testament.NEW
             };
@@ -230,10 +255,11 @@ public class ZVerseBackend extends AbstractBackend<ZVerseBackendState> {
             passage.raiseNormalizeProtection();
 
             for (Testament currentTestament : testaments) {
+                SharedFile sharedIdx = rafBook.getSharedIdx(currentTestament);
                 RandomAccessFile idxRaf = rafBook.getIdxRaf(currentTestament);
 
                 // If Bible does not contain the desired testament, then false
-                if (idxRaf == null) {
+                if (sharedIdx == null && idxRaf == null) {
                     // no keys in this testament
                     continue;
                 }
@@ -243,7 +269,7 @@ public class ZVerseBackend extends AbstractBackend<ZVerseBackendState> {
                 int maxCount = v11n.getCount(currentTestament)  + 1;
 
                 // Read in the whole index, a few hundred Kb at most.
-                byte[] temp = SwordUtil.readRAF(idxRaf, 0, entrysize * maxCount);
+                byte[] temp = sharedIdx != null ? sharedIdx.read(0, entrysize * maxCount) : SwordUtil.readRAF(idxRaf, 0, entrysize * maxCount);
 
                 // For each entry of entrysize bytes, the length of the verse in bytes
                 // is in the last datasize bytes. If both bytes are 0, then there is no content.
@@ -275,7 +301,7 @@ public class ZVerseBackend extends AbstractBackend<ZVerseBackendState> {
             passage.lowerNormalizeProtection();
             passage.lowerEventSuppressionAndTest();
 
-            return passage;
+            return KeyListCache.put(getBookMetaData(), v11n, passage);
         } catch (IOException e) {
             throw new BookException(JSMsg.gettext("Unable to read key list from book."));
         } finally {
@@ -294,11 +320,38 @@ public class ZVerseBackend extends AbstractBackend<ZVerseBackendState> {
      * @see org.crosswire.jsword.book.sword.StatefulFileBackedBackend#readRawContent(org.crosswire.jsword.book.sword.state.OpenFileState, org.crosswire.jsword.passage.Key)
      */
     public String readRawContent(ZVerseBackendState rafBook, Key key) throws IOException {
+        final int[] slice = new int[2];
+        final byte[] uncompressed = findVerse(rafBook, key, slice);
+        if (uncompressed == null) {
+            return "";
+        }
 
-        BookMetaData bookMetaData = getBookMetaData();
-        final String charset = bookMetaData.getBookCharset();
-        final String compressType = bookMetaData.getProperty(SwordBookMetaData.KEY_COMPRESS_TYPE);
+        // Decode the required section straight from the shared block.
+        return SwordUtil.decodeSlice(key.getName(), uncompressed, slice[0], slice[1], getBookMetaData().getBookCharset());
+    }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.AbstractBackend#appendRawContent(org.crosswire.jsword.book.sword.state.OpenFileState, org.crosswire.jsword.passage.Key, java.lang.StringBuilder)
+     */
+    @Override
+    public void appendRawContent(ZVerseBackendState rafBook, Key key, StringBuilder dest) throws IOException {
+        final int[] slice = new int[2];
+        final byte[] uncompressed = findVerse(rafBook, key, slice);
+        if (uncompressed != null) {
+            SwordUtil.decodeSlice(key.getName(), uncompressed, slice[0], slice[1], getBookMetaData().getBookCharset(), dest);
+        }
+    }
+
+    /**
+     * Find the uncompressed block holding a verse and where the verse is in it.
+     *
+     * @param rafBook the open files of the book
+     * @param key the verse
+     * @param slice receives the start and the size of the verse in the block
+     * @return the shared uncompressed block or null if the verse is not in the book
+     * @throws IOException
+     */
+    private byte[] findVerse(ZVerseBackendState rafBook, Key key, int[] slice) throws IOException {
         final String v11nName = getBookMetaData().getProperty(BookMetaData.KEY_VERSIFICATION);
         final Versification v11n = Versifications.instance().getVersification(v11nName);
         Verse verse = KeyUtil.getVerse(key);
@@ -307,76 +360,285 @@ public class ZVerseBackend extends AbstractBackend<ZVerseBackendState> {
         final Testament testament = v11n.getTestament(index);
         index = v11n.getTestamentOrdinal(index);
         final RandomAccessFile idxRaf;
-        final RandomAccessFile compRaf;
-        final RandomAccessFile textRaf;
 
         idxRaf = rafBook.getIdxRaf(testament);
-        compRaf = rafBook.getCompRaf(testament);
-        textRaf = rafBook.getTextRaf(testament);
+        final SharedFile sharedIdx = rafBook.getSharedIdx(testament);
 
         // If Bible does not contain the desired testament, return nothing.
-        if (idxRaf == null) {
-            return "";
+        if (idxRaf == null && sharedIdx == null) {
+            return null;
         }
 
         //dumpIdxRaf(v11n, 0, compRaf);
         //dumpCompRaf(idxRaf);
-        // entrysize because the index is entrysize bytes long for each verse
-        byte[] temp = SwordUtil.readRAF(idxRaf, 1L * index * entrysize, entrysize);
+        final long blockNum;
+        final int verseStart;
+        final int verseSize;
+        if (sharedIdx != null) {
+            // Decode the entry straight from the shared index.
+            // If the Bible does not contain the desired verse, return nothing.
+            final long offset = 1L * index * entrysize;
+            if (!sharedIdx.contains(offset, entrysize)) {
+                return null;
+            }
 
-        // If the Bible does not contain the desired verse, return nothing.
-        // Some Bibles have different versification, so the requested verse
+            blockNum = sharedIdx.getInt(offset);
+            verseStart = sharedIdx.getInt(offset + 4);
+            if (datasize == 2) {
+                verseSize = sharedIdx.getUnsignedShort(offset + 8);
+            } else { // datasize == 4:
+                verseSize = sharedIdx.getInt(offset + 8);
+            }
+        } else {
+            // entrysize because the index is entrysize bytes long for each verse
+            byte[] temp = SwordUtil.readRAF(idxRaf, 1L * index * entrysize, entrysize);
+
+            // If the Bible does not contain the desired verse, return nothing.
+            // Some Bibles have different versification, so the requested verse
+            // may not exist.
+            if (temp == null || temp.length == 0) {
+                return null;
+            }
+
+            // The data is little endian - extract the blockNum, verseStart
+            // and
+            // verseSize
+            blockNum = SwordUtil.decodeLittleEndian32(temp, 0);
+            verseStart = SwordUtil.decodeLittleEndian32(temp, 4);
+            if (datasize == 2) {
+                verseSize = SwordUtil.decodeLittleEndian16(temp, 8);
+            } else { // datasize == 4:
+                verseSize = SwordUtil.decodeLittleEndian32(temp, 8);
+            }
+        }
+
+        slice[0] = verseStart;
+        slice[1] = verseSize;
+        return getUncompressedBlock(rafBook, testament, blockNum);
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.AbstractBackend#readRawRange(org.crosswire.jsword.book.sword.state.OpenFileState, org.crosswire.jsword.passage.VerseRange)
+     */
+    @Override
+    public String[] readRawRange(ZVerseBackendState rafBook, VerseRange range) throws BookException, IOException {
+        final String v11nName = getBookMetaData().getProperty(BookMetaData.KEY_VERSIFICATION);
+        final Versification v11n = Versifications.instance().getVersification(v11nName);
+        final int startOrdinal = range.getStart().getOrdinal();
+        final Testament testament = v11n.getTestament(startOrdinal);
+
+        // A range that spans the testaments is read from two sets of files.
+        if (testament != v11n.getTestament(range.getEnd().getOrdinal())) {
+            return super.readRawRange(rafBook, range);
+        }
+
+        final int count = range.getCardinality();
+        final String[] texts = new String[count];
+        Arrays.fill(texts, "");
+
+        final RandomAccessFile idxRaf = rafBook.getIdxRaf(testament);
+        final SharedFile sharedIdx = rafBook.getSharedIdx(testament);
+
+        // If Bible does not contain the desired testament, return nothing.
+        if (idxRaf == null && sharedIdx == null) {
+            return texts;
+        }
+
+        // Read the index entries for the whole range in one go.
+        final long first = 1L * v11n.getTestamentOrdinal(startOrdinal) * entrysize;
+        final byte[] temp = sharedIdx != null ? sharedIdx.read(first, count * entrysize) : SwordUtil.readRAF(idxRaf, first, count * entrysize);
+
+        // Some Bibles have different versification, so the trailing verses
         // may not exist.
-        if (temp == null || temp.length == 0) {
-            return "";
+        final int available = temp.length / entrysize;
+        final String charset = getBookMetaData().getBookCharset();
+        final String name = range.getName();
+
+        // Consecutive verses almost always share a block, so each block
+        // is found just once.
+        long lastBlockNum = -1;
+        byte[] uncompressed = null;
+        for (int i = 0; i < available; i++) {
+            final int offset = i * entrysize;
+            final int verseSize = datasize == 2 ? SwordUtil.decodeLittleEndian16(temp, offset + 8) : SwordUtil.decodeLittleEndian32(temp, offset + 8);
+            if (verseSize <= 0) {
+                continue;
+            }
+
+            final long blockNum = SwordUtil.decodeLittleEndian32(temp, offset);
+            final int verseStart = SwordUtil.decodeLittleEndian32(temp, offset + 4);
+            if (blockNum != lastBlockNum || uncompressed == null) {
+                uncompressed = getUncompressedBlock(rafBook, testament, blockNum);
+                lastBlockNum = blockNum;
+            }
+
+            if (uncompressed == null) {
+                continue;
+            }
+
+            // Decode the required section straight from the shared block.
+            texts[i] = SwordUtil.decodeSlice(name, uncompressed, verseStart, verseSize, charset);
         }
 
-        // The data is little endian - extract the blockNum, verseStart
-        // and
-        // verseSize
-        final long blockNum = SwordUtil.decodeLittleEndian32(temp, 0);
-        final int verseStart = SwordUtil.decodeLittleEndian32(temp, 4);
-        final int verseSize;
-        if (datasize == 2) {
-            verseSize = SwordUtil.decodeLittleEndian16(temp, 8);
-        } else { // datasize == 4:
-            verseSize = SwordUtil.decodeLittleEndian32(temp, 8);
+        return texts;
+    }
+
+    /**
+     * Get an uncompressed block, either from the state's last block, the
+     * shared BlockCache or by reading and uncompressing it.
+     * The returned block is shared and must not be modified.
+     *
+     * @param rafBook the open files of the book
+     * @param testament the testament of the block
+     * @param blockNum the number of the block
+     * @return the uncompressed block or null if the block does not exist
+     * @throws IOException
+     */
+    private byte[] getUncompressedBlock(ZVerseBackendState rafBook, Testament testament, long blockNum) throws IOException {
+        BookMetaData bookMetaData = getBookMetaData();
+
+        // A reader walking through the book will want the next blocks soon
+        if (rafBook.isNextBlock(testament, blockNum)) {
+            readAhead(testament, blockNum);
         }
 
         // Can we get the data from the cache
-        byte[] uncompressed = null;
-        if (blockNum == rafBook.getLastBlockNum() && testament == rafBook.getLastTestament()) {
-            uncompressed = rafBook.getLastUncompressed();
+        boolean shared = rafBook.isShared();
+        if (!shared && blockNum == rafBook.getLastBlockNum() && testament == rafBook.getLastTestament()) {
+            return rafBook.getLastUncompressed();
+        }
+
+        // Perhaps another state has already uncompressed it
+        byte[] uncompressed = BlockCache.instance().get(bookMetaData, testament, blockNum);
+
+        if (uncompressed == null) {
+            uncompressed = uncompressBlock(rafBook, testament, blockNum, false);
+        }
+
+        // cache the uncompressed data for next time
+        if (!shared) {
+            rafBook.setLastBlockNum(blockNum);
+            rafBook.setLastTestament(testament);
+            rafBook.setLastUncompressed(uncompressed);
+        }
+        return uncompressed;
+    }
+
+    /**
+     * Read a block, uncompress it and put it in the shared BlockCache.
+     *
+     * @param rafBook the open files of the book
+     * @param testament the testament of the block
+     * @param blockNum the number of the block
+     * @param ahead whether the block is being read ahead, in which case it is skipped if there is no room for it
+     * @return the uncompressed block or null if the block does not exist or was skipped
+     * @throws IOException
+     */
+    private byte[] uncompressBlock(ZVerseBackendState rafBook, Testament testament, long blockNum, boolean ahead) throws IOException {
+        BookMetaData bookMetaData = getBookMetaData();
+        final int blockStart;
+        final int blockSize;
+        final int uncompressedSize;
+        final SharedFile sharedComp = rafBook.getSharedComp(testament);
+        if (sharedComp != null) {
+            // Then decode the block entry straight from the shared comp file
+            final long offset = blockNum * COMP_ENTRY_SIZE;
+            if (!sharedComp.contains(offset, COMP_ENTRY_SIZE)) {
+                return null;
+            }
+
+            blockStart = sharedComp.getInt(offset);
+            blockSize = sharedComp.getInt(offset + 4);
+            uncompressedSize = sharedComp.getInt(offset + 8);
         } else {
             // Then seek using this index into the idx file
-            temp = SwordUtil.readRAF(compRaf, blockNum * COMP_ENTRY_SIZE, COMP_ENTRY_SIZE);
+            byte[] temp = SwordUtil.readRAF(rafBook.getCompRaf(testament), blockNum * COMP_ENTRY_SIZE, COMP_ENTRY_SIZE);
             if (temp == null || temp.length == 0) {
-                return "";
+                return null;
             }
 
-            final int blockStart = SwordUtil.decodeLittleEndian32(temp, 0);
-            final int blockSize = SwordUtil.decodeLittleEndian32(temp, 4);
-            final int uncompressedSize = SwordUtil.decodeLittleEndian32(temp, 8);
+            blockStart = SwordUtil.decodeLittleEndian32(temp, 0);
+            blockSize = SwordUtil.decodeLittleEndian32(temp, 4);
+            uncompressedSize = SwordUtil.decodeLittleEndian32(temp, 8);
+        }
 
-            // Read from the data file.
-            final byte[] data = SwordUtil.readRAF(textRaf, blockStart, blockSize);
+        ReadAhead readAhead = ReadAhead.instance();
+        if (ahead && !readAhead.reserveBytes(uncompressedSize)) {
+            return null;
+        }
+
+        try {
+            final byte[] data;
+            if (sharedComp != null) {
+                // Copy from the shared data file, as it is deciphered in place.
+                data = rafBook.getSharedText(testament).read(blockStart, blockSize);
+            } else {
+                // Read from the data file.
+                data = SwordUtil.readRAF(rafBook.getTextRaf(testament), blockStart, blockSize);
+            }
 
             decipher(data);
 
-            uncompressed = CompressorType.fromString(compressType).getCompressor(data).uncompress(uncompressedSize).toByteArray();
+            final String compressType = bookMetaData.getProperty(SwordBookMetaData.KEY_COMPRESS_TYPE);
+            byte[] uncompressed = CompressorType.fromString(compressType).getCompressor(data).uncompress(uncompressedSize).toByteArray();
 
-            // cache the uncompressed data for next time
-            rafBook.setLastBlockNum(blockNum);
-            rafBook.setLastTestament(testament);
-            rafBook.setLastUncompressed(uncompressed);
+            // share the uncompressed data with all other states
+            BlockCache.instance().put(bookMetaData, testament, blockNum, uncompressed);
+            return uncompressed;
+        } finally {
+            if (ahead) {
+                readAhead.releaseBytes(uncompressedSize);
+            }
+        }
+    }
+
+    /**
+     * Uncompress the blocks following the given one in the background, so
+     * that they are in the BlockCache by the time the reader gets to them.
+     * A block is only read ahead when a state of the book is to be had
+     * without waiting for the files of one.
+     *
+     * @param testament the testament of the block
+     * @param blockNum the number of the block being read
+     */
+    private void readAhead(final Testament testament, long blockNum) {
+        final ReadAhead readAhead = ReadAhead.instance();
+        if (!readAhead.isEnabled()) {
+            return;
         }
 
-        // and cut out the required section.
-        final byte[] chopped = new byte[verseSize];
-        System.arraycopy(uncompressed, verseStart, chopped, 0, verseSize);
+        final BookMetaData bookMetaData = getBookMetaData();
+        final int count = readAhead.getBlocksAhead();
+        for (int i = 1; i <= count; i++) {
+            final long next = blockNum + i;
+            if (BlockCache.instance().contains(bookMetaData, testament, next)) {
+                continue;
+            }
 
-        return SwordUtil.decode(key.getName(), chopped, charset);
+            readAhead.submit(bookMetaData, testament, next, new Runnable() {
+                public void run() {
+                    // the block may have been read while this waited
+                    if (BlockCache.instance().contains(bookMetaData, testament, next)) {
+                        return;
+                    }
 
+                    ZVerseBackendState state = null;
+                    try {
+                        // Rather than wait for files, leave the block to the reader.
+                        state = OpenFileStateManager.instance().getAvailableZVerseBackendState(bookMetaData, blockType);
+                        if (state != null) {
+                            uncompressBlock(state, testament, next, true);
+                        }
+                    } catch (BookException e) {
+                        LOGGER.debug("Unable to read ahead in {}", bookMetaData.getInitials(), e);
+                    } catch (IOException e) {
+                        LOGGER.debug("Unable to read ahead in {}", bookMetaData.getInitials(), e);
+                    } finally {
+                        OpenFileStateManager.instance().release(state);
+                    }
+                }
+            });
+        }
     }
 
     /* (non-Javadoc)
@@ -19,6 +19,8 @@
  */
 package org.crosswire.jsword.book.sword.state;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.crosswire.jsword.book.BookMetaData;
 
 /**
@@ -37,7 +39,7 @@ public abstract class AbstractOpenFileState implements OpenFileState {
         lastAccess = System.currentTimeMillis();
     }
 
-    private long lastAccess = System.currentTimeMillis();
+    private volatile long lastAccess = System.currentTimeMillis();
 
     /**
      * Allows us to decide whether to release the resources or continue using them
@@ -46,6 +48,67 @@ public abstract class AbstractOpenFileState implements OpenFileState {
         OpenFileStateManager.instance().release(this);
     }
 
+    /**
+     * Whether this state is used by many threads at once rather than being
+     * handed to one thread at a time from a pool. A shared state stays open
+     * when it is released.
+     *
+     * @return true if the state is shared
+     */
+    public boolean isShared() {
+        return false;
+    }
+
+    /**
+     * Start a use of a shared state. A shared state counts its uses, as well
+     * as the hold the OpenFileStateManager has on it while handing it out, and
+     * is closed when the last of these ends. Once that has happened, the state
+     * cannot be used again.
+     *
+     * @return true if the state may be used, false if it has been closed
+     */
+    boolean acquire() {
+        while (true) {
+            int count = uses.get();
+            if (count == 0) {
+                return false;
+            }
+            if (uses.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * End a use of a shared state, or the hold of the OpenFileStateManager on it.
+     *
+     * @return true if that was the last, so that the state is to be closed
+     */
+    boolean releaseUse() {
+        return uses.decrementAndGet() == 0;
+    }
+
+    /**
+     * @return the number of uses of a shared state, counting the hold of the OpenFileStateManager
+     */
+    int getUseCount() {
+        return uses.get();
+    }
+
+    /**
+     * @return the number of files this state counts against the budget of the OpenFileStateManager
+     */
+    int getBudgetedFiles() {
+        return budgetedFiles;
+    }
+
+    /**
+     * @param budgetedFiles the number of files this state counts against the budget
+     */
+    void setBudgetedFiles(int budgetedFiles) {
+        this.budgetedFiles = budgetedFiles;
+    }
+
     /**
      * Get the BookMetaData for this OpenFileState.
      * 
@@ -72,4 +135,14 @@ public abstract class AbstractOpenFileState implements OpenFileState {
      * The BookMetaData for this OpenFileState. Used to locate files.
      */
     private BookMetaData bookMetaData;
+
+    /**
+     * The uses of a shared state. It starts with the one of whoever opened it.
+     */
+    private final AtomicInteger uses = new AtomicInteger(1);
+
+    /**
+     * The files counted against the budget of the OpenFileStateManager.
+     */
+    private volatile int budgetedFiles;
 }
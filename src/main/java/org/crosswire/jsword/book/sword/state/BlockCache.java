@@ -0,0 +1,264 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword.state;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.crosswire.common.util.Filter;
+import org.crosswire.common.util.SegmentedCache;
+import org.crosswire.jsword.book.BookMetaData;
+import org.crosswire.jsword.versification.Testament;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A process wide cache of uncompressed blocks of compressed modules. Each
+ * OpenFileState only remembers the last block that it uncompressed, and since
+ * the states are pooled, two threads reading alternately from different parts
+ * of a book would uncompress the same blocks over and over. This cache is
+ * shared by all states of all books.
+ *
+ * <p>
+ * The cache is bounded by the total number of uncompressed bytes that it holds
+ * and evicts the least recently used blocks first. It is split into segments
+ * that are locked separately, so that readers of different blocks seldom wait
+ * for each other. Each segment holds an equal share of the bytes, and a block
+ * that is larger than that share is not cached at all. The blocks handed out
+ * by the cache are shared and must not be modified.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public final class BlockCache {
+    /**
+     * Create a cache holding at most maxBytes of uncompressed data.
+     *
+     * @param maxBytes the upper bound of the cache size in bytes
+     */
+    private BlockCache(long maxBytes) {
+        this.blocks = new SegmentedCache<BlockKey, byte[]>(SEGMENTS, maxBytes) {
+            @Override
+            protected long weigh(byte[] block) {
+                return block.length;
+            }
+        };
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Allow the caller to initialize with their own settings. Should the
+     * BlockCache already be initialized a no-op will occur.
+     *
+     * @param maxBytes the upper bound of the cache size in bytes
+     */
+    public static synchronized void init(long maxBytes) {
+        if (cache == null) {
+            cache = new BlockCache(maxBytes);
+        } else {
+            LOGGER.warn("The BlockCache has already been initialised, potentially with its default settings. The following value was ignored: maxBytes [{}]", Long.toString(maxBytes));
+        }
+    }
+
+    /**
+     * Singleton instance method to return the one and only block cache
+     *
+     * @return the singleton
+     */
+    public static BlockCache instance() {
+        if (cache == null) {
+            init(DEFAULT_MAX_BYTES);
+        }
+        return cache;
+    }
+
+    /**
+     * Get an uncompressed block from the cache.
+     *
+     * @param bmd the book to which the block belongs
+     * @param testament the testament of the block or null if the book is not split by testament
+     * @param blockNum the number of the block
+     * @return the uncompressed block or null if it is not cached
+     */
+    public byte[] get(BookMetaData bmd, Testament testament, long blockNum) {
+        byte[] block = blocks.get(new BlockKey(bmd, testament, blockNum));
+
+        if (block == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return block;
+    }
+
+    /**
+     * Determine whether a block is in the cache, without counting as a use
+     * of it.
+     *
+     * @param bmd the book to which the block belongs
+     * @param testament the testament of the block or null if the book is not split by testament
+     * @param blockNum the number of the block
+     * @return true if the block is cached
+     */
+    public boolean contains(BookMetaData bmd, Testament testament, long blockNum) {
+        return blocks.containsKey(new BlockKey(bmd, testament, blockNum));
+    }
+
+    /**
+     * Put an uncompressed block into the cache, evicting the least recently
+     * used blocks to make room for it.
+     *
+     * @param bmd the book to which the block belongs
+     * @param testament the testament of the block or null if the book is not split by testament
+     * @param blockNum the number of the block
+     * @param block the uncompressed block
+     */
+    public void put(BookMetaData bmd, Testament testament, long blockNum, byte[] block) {
+        if (block != null) {
+            blocks.put(new BlockKey(bmd, testament, blockNum), block);
+        }
+    }
+
+    /**
+     * Remove all the blocks of a book from the cache. This needs to be called
+     * when a book is removed or replaced.
+     *
+     * @param bmd the book whose blocks are to be removed
+     */
+    public void invalidate(final BookMetaData bmd) {
+        blocks.removeAll(new Filter<BlockKey>() {
+            public boolean test(BlockKey key) {
+                return key.bmd.equals(bmd);
+            }
+        });
+    }
+
+    /**
+     * Remove all the blocks from the cache.
+     */
+    public void clear() {
+        blocks.clear();
+    }
+
+    /**
+     * @return the upper bound of the cache size in bytes
+     */
+    public long getMaxBytes() {
+        return blocks.getMaxWeight();
+    }
+
+    /**
+     * Change the upper bound of the cache size, evicting blocks if needed.
+     *
+     * @param maxBytes the upper bound of the cache size in bytes
+     */
+    public void setMaxBytes(long maxBytes) {
+        blocks.setMaxWeight(maxBytes);
+    }
+
+    /**
+     * @return the number of uncompressed bytes that are currently cached
+     */
+    public long getSize() {
+        return blocks.getWeight();
+    }
+
+    /**
+     * @return the number of blocks that are currently cached
+     */
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * @return the number of requests that were found in the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of requests that were not found in the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of blocks evicted to make room for others
+     */
+    public long getEvictions() {
+        return blocks.getEvictions();
+    }
+
+    /**
+     * The key of a cached block.
+     */
+    private static final class BlockKey {
+        BlockKey(BookMetaData bmd, Testament testament, long blockNum) {
+            this.bmd = bmd;
+            this.testament = testament;
+            this.blockNum = blockNum;
+            int result = bmd.hashCode();
+            result = 31 * result + (testament == null ? 0 : testament.ordinal() + 1);
+            this.hash = 31 * result + (int) (blockNum ^ (blockNum >>> 32));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey that = (BlockKey) obj;
+            return blockNum == that.blockNum && testament == that.testament && bmd.equals(that.bmd);
+        }
+
+        private final BookMetaData bmd;
+        private final Testament testament;
+        private final long blockNum;
+        private final int hash;
+    }
+
+    /**
+     * The default upper bound of the cache: 16MB.
+     */
+    private static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * The number of separately locked parts of the cache.
+     */
+    private static final int SEGMENTS = 16;
+
+    private final SegmentedCache<BlockKey, byte[]> blocks;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    private static volatile BlockCache cache;
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlockCache.class);
+}
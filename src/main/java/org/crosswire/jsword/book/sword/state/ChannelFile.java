@@ -0,0 +1,175 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword.state;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.common.util.IOUtil;
+
+/**
+ * A module file read with positional reads on a single FileChannel. Positional
+ * reads do not move the position of the channel, so any number of threads may
+ * read from it at once with one file descriptor.
+ *
+ * <p>
+ * Interrupting a thread that is reading from a FileChannel closes the channel
+ * for every thread. The interrupted thread gets its exception, the others
+ * reopen the channel and carry on.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public final class ChannelFile extends SharedFile {
+    /**
+     * Open the file for positional reads.
+     *
+     * @param file the file to read
+     * @throws IOException if the file cannot be opened or is larger than 2GB
+     */
+    ChannelFile(File file) throws IOException {
+        this(file, new RandomAccessFile(file, FileUtil.MODE_READ));
+    }
+
+    private ChannelFile(File file, RandomAccessFile raf) throws IOException {
+        super(file, sizeOf(file, raf));
+        this.channel = raf.getChannel();
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.SharedFile#getInt(long)
+     */
+    @Override
+    public int getInt(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(buffer, offset);
+        return buffer.getInt(0);
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.SharedFile#getUnsignedShort(long)
+     */
+    @Override
+    public int getUnsignedShort(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(buffer, offset);
+        return buffer.getShort(0) & 0xFFFF;
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.SharedFile#read(long, int)
+     */
+    @Override
+    public byte[] read(long offset, int theSize) throws IOException {
+        byte[] read = new byte[clip(offset, theSize)];
+        if (read.length > 0) {
+            readFully(ByteBuffer.wrap(read), offset);
+        }
+        return read;
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.SharedFile#close()
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        IOUtil.close(channel);
+    }
+
+    /**
+     * Fill the buffer from the given position in the file.
+     */
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        int retries = 0;
+        while (buffer.hasRemaining()) {
+            try {
+                if (getChannel().read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException(getFile().getPath());
+                }
+            } catch (ClosedByInterruptException e) {
+                // This thread was interrupted, it is up to the caller to stop.
+                throw e;
+            } catch (ClosedChannelException e) {
+                // Another thread was interrupted while reading.
+                if (closed || ++retries > MAX_RETRIES) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the channel, reopening it if an interrupt has closed it.
+     */
+    private FileChannel getChannel() throws IOException {
+        FileChannel current = channel;
+        if (current.isOpen()) {
+            return current;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            if (!channel.isOpen()) {
+                channel = new RandomAccessFile(getFile(), FileUtil.MODE_READ).getChannel();
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * Get the size of the file, closing it if it is too large.
+     */
+    private static int sizeOf(File file, RandomAccessFile raf) throws IOException {
+        boolean ok = false;
+        try {
+            long size = raf.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + file.getPath());
+            }
+            ok = true;
+            return (int) size;
+        } finally {
+            if (!ok) {
+                IOUtil.close(raf);
+            }
+        }
+    }
+
+    /**
+     * The number of times a read is retried after another thread's
+     * interrupt closed the channel.
+     */
+    private static final int MAX_RETRIES = 3;
+
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+}
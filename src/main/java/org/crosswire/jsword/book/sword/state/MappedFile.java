@@ -0,0 +1,128 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword.state;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.common.util.IOUtil;
+
+/**
+ * A read-only memory mapping of a whole module file. The mapping is made once
+ * and may be shared by any number of threads, since all the accessors use
+ * absolute positions and never move the position of the underlying buffer.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public final class MappedFile extends SharedFile {
+    /**
+     * Map the whole of the file read-only. The file descriptor is closed
+     * as soon as the mapping is made, the mapping remains valid until the
+     * MappedFile is garbage collected.
+     *
+     * @param file the file to map
+     * @throws IOException if the file cannot be mapped or is larger than 2GB
+     */
+    MappedFile(File file) throws IOException {
+        this(file, file.lastModified(), new RandomAccessFile(file, FileUtil.MODE_READ));
+    }
+
+    private MappedFile(File file, long lastModified, RandomAccessFile raf) throws IOException {
+        super(file, sizeOf(file, raf));
+        this.lastModified = lastModified;
+        try {
+            MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            this.buffer = mapped;
+        } finally {
+            IOUtil.close(raf);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.SharedFile#getInt(long)
+     */
+    @Override
+    public int getInt(long offset) {
+        return buffer.getInt((int) offset);
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.SharedFile#getUnsignedShort(long)
+     */
+    @Override
+    public int getUnsignedShort(long offset) {
+        return buffer.getShort((int) offset) & 0xFFFF;
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.SharedFile#read(long, int)
+     */
+    @Override
+    public byte[] read(long offset, int theSize) {
+        int size = clip(offset, theSize);
+        byte[] read = new byte[size];
+        if (size > 0) {
+            ByteBuffer view = buffer.duplicate();
+            view.position((int) offset);
+            view.get(read);
+        }
+        return read;
+    }
+
+    /**
+     * Determine whether the file has changed since it was mapped.
+     *
+     * @return true if the mapping no longer reflects the file
+     */
+    boolean isStale() {
+        File file = getFile();
+        return file.lastModified() != lastModified || file.length() != length();
+    }
+
+    /**
+     * Get the size of the file, closing it if it is too large to map.
+     */
+    private static int sizeOf(File file, RandomAccessFile raf) throws IOException {
+        boolean ok = false;
+        try {
+            long size = raf.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + file.getPath());
+            }
+            ok = true;
+            return (int) size;
+        } finally {
+            if (!ok) {
+                IOUtil.close(raf);
+            }
+        }
+    }
+
+    private final long lastModified;
+    private final ByteBuffer buffer;
+}
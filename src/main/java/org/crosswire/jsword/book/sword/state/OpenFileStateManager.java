@@ -19,15 +19,18 @@
  */
 package org.crosswire.jsword.book.sword.state;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.io.File;
+import java.io.IOException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.BookMetaData;
@@ -52,7 +55,21 @@ import org.slf4j.LoggerFactory;
  * In order to avoid many file references piling up in memory, we implement a background cleaning thread which will clean
  * up redundant keys every so often.
  *
+ * <p>
+ * The pool is bounded in two ways. Only a few idle states are kept for each
+ * book, any more are closed when they are released. And there is a budget for
+ * the number of files held open at once across all books. Each kind of state
+ * counts against it the most files it opens, from one for a general book to
+ * six for a compressed Bible. When the budget is used up, the least recently
+ * used idle state of any book is closed. If none is idle, the request waits a
+ * while for one to be released before opening a state beyond the budget.
+ * </p>
  *
+ * <p>
+ * In shared mode, compressed and raw verse modules instead get a single state
+ * per book that reads with positional reads and is used by all threads at
+ * once, so getting and releasing it costs next to nothing.
+ * </p>
  * 
  * @see gnu.lgpl.License The GNU Lesser General Public License for details.
  * 
@@ -78,22 +95,37 @@ public final class OpenFileStateManager {
                 // the heap.
                 long currentTime = System.currentTimeMillis();
 
-                for (Queue<OpenFileState> e : OpenFileStateManager.this.metaToStates.values()) {
-                    for (Iterator<OpenFileState> iterator = e.iterator(); iterator.hasNext(); ) {
-                        final OpenFileState state = iterator.next();
-                        if (state.getLastAccess() + maxExpiry * 1000 < currentTime) {
+                for (Deque<OpenFileState> e : OpenFileStateManager.this.metaToStates.values()) {
+                    for (OpenFileState state : e) {
+                        // Only release it if no other thread has taken it in the meantime
+                        if (state.getLastAccess() + maxExpiry * 1000L < currentTime && e.removeFirstOccurrence(state)) {
                             //release resources
-                            state.releaseResources();
-
-                            //remove from the queues
-                            iterator.remove();
+                            closeState(state);
                         }
                     }
                 }
+
+                sweepShared(currentTime - maxExpiry * 1000L);
             }
         }, 0, cleanupIntervalSeconds, TimeUnit.SECONDS);
     }
 
+    /**
+     * Close the shared states that are not in use and were last used before
+     * the given time. A shared state is released all the time, so this only
+     * catches books no longer read.
+     *
+     * @param expiry the time before which a state is unused for too long
+     */
+    void sweepShared(long expiry) {
+        for (AbstractOpenFileState state : sharedStates.values()) {
+            // only the hold of the manager is left when nobody is using it
+            if (state.getUseCount() == 1 && state.getLastAccess() < expiry) {
+                retireShared(state);
+            }
+        }
+    }
+
     /**
      * Allow the caller to initialize with their own settings. Should the OpenFileStateManager already be initialized
      * a no-op will occur. No need for double-checked locking here
@@ -124,88 +156,210 @@ public final class OpenFileStateManager {
         return manager;
     }
 
-    public RawBackendState getRawBackendState(BookMetaData metadata) throws BookException {
-        ensureNotShuttingDown();
-
-        RawBackendState state = getInstance(metadata);
-        if (state == null) {
-            LOGGER.trace("Initializing: {}", metadata.getInitials());
-            return new RawBackendState(metadata);
+    public RawBackendState getRawBackendState(final BookMetaData metadata) throws BookException {
+        if (sharedMode) {
+            return getSharedState(metadata, RawBackendState.class, RAW_FILES, new StateFactory<RawBackendState>() {
+                public RawBackendState create() throws BookException {
+                    return new RawBackendState(metadata, true);
+                }
+            });
         }
 
-        LOGGER.trace("Reusing: {}", metadata.getInitials());
-        return state;
+        return getState(metadata, RAW_FILES, new StateFactory<RawBackendState>() {
+            public RawBackendState create() throws BookException {
+                return new RawBackendState(metadata);
+            }
+        });
     }
 
-    public RawFileBackendState getRawFileBackendState(BookMetaData metadata) throws BookException {
-        ensureNotShuttingDown();
+    public RawFileBackendState getRawFileBackendState(final BookMetaData metadata) throws BookException {
+        return getState(metadata, RAW_FILES, new StateFactory<RawFileBackendState>() {
+            public RawFileBackendState create() throws BookException {
+                return new RawFileBackendState(metadata);
+            }
+        });
+    }
 
-        RawFileBackendState state = getInstance(metadata);
-        if (state == null) {
-            LOGGER.trace("Initializing: {}", metadata.getInitials());
-            return new RawFileBackendState(metadata);
-        }
+    public GenBookBackendState getGenBookBackendState(final BookMetaData metadata) throws BookException {
+        return getState(metadata, GEN_BOOK_FILES, new StateFactory<GenBookBackendState>() {
+            public GenBookBackendState create() throws BookException {
+                return new GenBookBackendState(metadata);
+            }
+        });
+    }
 
-        LOGGER.trace("Reusing: {}", metadata.getInitials());
-        return state;
+    public RawLDBackendState getRawLDBackendState(final BookMetaData metadata) throws BookException {
+        return getState(metadata, RAW_LD_FILES, new StateFactory<RawLDBackendState>() {
+            public RawLDBackendState create() throws BookException {
+                return new RawLDBackendState(metadata);
+            }
+        });
     }
 
-    public GenBookBackendState getGenBookBackendState(BookMetaData metadata) throws BookException {
-        ensureNotShuttingDown();
+    public ZLDBackendState getZLDBackendState(final BookMetaData metadata) throws BookException {
+        return getState(metadata, ZLD_FILES, new StateFactory<ZLDBackendState>() {
+            public ZLDBackendState create() throws BookException {
+                return new ZLDBackendState(metadata);
+            }
+        });
+    }
 
-        GenBookBackendState state = getInstance(metadata);
-        if (state == null) {
-            LOGGER.trace("Initializing: {}", metadata.getInitials());
-            return new GenBookBackendState(metadata);
+    public ZVerseBackendState getZVerseBackendState(final BookMetaData metadata, final BlockType blockType) throws BookException {
+        if (sharedMode) {
+            return getSharedState(metadata, ZVerseBackendState.class, ZVERSE_FILES, new StateFactory<ZVerseBackendState>() {
+                public ZVerseBackendState create() throws BookException {
+                    return new ZVerseBackendState(metadata, blockType, true);
+                }
+            });
         }
 
-        LOGGER.trace("Reusing: {}", metadata.getInitials());
-        return state;
+        return getState(metadata, ZVERSE_FILES, new StateFactory<ZVerseBackendState>() {
+            public ZVerseBackendState create() throws BookException {
+                return new ZVerseBackendState(metadata, blockType);
+            }
+        });
     }
 
-    public RawLDBackendState getRawLDBackendState(BookMetaData metadata) throws BookException {
+    /**
+     * Get a state of a compressed book for work that may as well be skipped,
+     * such as reading ahead, without waiting for room or going over the
+     * budget of open files. In shared mode this is the shared state of the
+     * book, otherwise an idle state of the book or a new one if the budget
+     * has room for it. A state that is handed out is to be given back by
+     * {@link #release(OpenFileState)}.
+     *
+     * @param metadata the book
+     * @param blockType the size of the blocks of the book
+     * @return the state or null if there is none to be had without waiting
+     * @throws BookException
+     */
+    public ZVerseBackendState getAvailableZVerseBackendState(final BookMetaData metadata, final BlockType blockType) throws BookException {
         ensureNotShuttingDown();
 
-        RawLDBackendState state = getInstance(metadata);
-        if (state == null) {
-            LOGGER.trace("Initializing: {}", metadata.getInitials());
-            return new RawLDBackendState(metadata);
+        if (sharedMode) {
+            return acquireShared(metadata, ZVerseBackendState.class);
         }
 
-        LOGGER.trace("Reusing: {}", metadata.getInitials());
-        return state;
+        ZVerseBackendState state = getInstance(metadata);
+        if (state != null || !tryReserveFiles(ZVERSE_FILES)) {
+            return state;
+        }
+
+        return openState(ZVERSE_FILES, new StateFactory<ZVerseBackendState>() {
+            public ZVerseBackendState create() throws BookException {
+                return new ZVerseBackendState(metadata, blockType);
+            }
+        });
     }
 
-    public ZLDBackendState getZLDBackendState(BookMetaData metadata) throws BookException {
+    /**
+     * Reuse an idle state for the book or create a new one within the budget
+     * of open files.
+     */
+    private <T extends AbstractOpenFileState> T getState(BookMetaData metadata, int files, StateFactory<T> factory) throws BookException {
         ensureNotShuttingDown();
 
-        ZLDBackendState state = getInstance(metadata);
-        if (state == null) {
-            LOGGER.trace("Initializing: {}", metadata.getInitials());
-            return new ZLDBackendState(metadata);
+        T state = getInstance(metadata);
+        if (state != null) {
+            LOGGER.trace("Reusing: {}", metadata.getInitials());
+            return state;
         }
 
-        LOGGER.trace("Reusing: {}", metadata.getInitials());
+        LOGGER.trace("Initializing: {}", metadata.getInitials());
+        return createState(files, factory);
+    }
+
+    /**
+     * Create a new state within the budget of open files.
+     *
+     * @param files the most files the state opens
+     */
+    private <T extends AbstractOpenFileState> T createState(int files, StateFactory<T> factory) throws BookException {
+        reserveFiles(files);
+        return openState(files, factory);
+    }
+
+    /**
+     * Create a new state whose files have been counted against the budget.
+     *
+     * @param files the most files the state opens
+     */
+    private <T extends AbstractOpenFileState> T openState(int files, StateFactory<T> factory) throws BookException {
+        T state = null;
+        try {
+            state = factory.create();
+            state.setBudgetedFiles(files);
+            openStates.incrementAndGet();
+        } finally {
+            if (state == null) {
+                // the state could not be created, so it does not count against the budget
+                openFiles.addAndGet(-files);
+            }
+        }
         return state;
     }
 
-    public ZVerseBackendState getZVerseBackendState(BookMetaData metadata, BlockType blockType) throws BookException {
+    /**
+     * Get the one state of the book that is shared by all threads, opening it
+     * if needed. Should the files of the book not allow sharing, the state
+     * that was opened is handed out as a pooled one. Each state that is
+     * handed out is to be given back by {@link #release(OpenFileState)}, as it
+     * stays open until the last thread using it has done so.
+     */
+    private <T extends AbstractOpenFileState> T getSharedState(BookMetaData metadata, Class<T> type, int files, StateFactory<T> factory) throws BookException {
         ensureNotShuttingDown();
 
-        ZVerseBackendState state = getInstance(metadata);
-        if (state == null) {
-            LOGGER.trace("Initializing: {}", metadata.getInitials());
-            return new ZVerseBackendState(metadata, blockType);
+        T state = acquireShared(metadata, type);
+        if (state != null) {
+            return state;
         }
 
-        LOGGER.trace("Reusing: {}", metadata.getInitials());
-        return state;
+        synchronized (sharedLock) {
+            state = acquireShared(metadata, type);
+            if (state != null) {
+                return state;
+            }
+
+            LOGGER.trace("Sharing: {}", metadata.getInitials());
+            state = createState(files, factory);
+            if (state.isShared() && sharedStates.get(metadata) == null) {
+                // One use for the caller and one for the hold of the manager.
+                state.acquire();
+                sharedStates.put(metadata, state);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Start a use of the shared state of the book.
+     *
+     * @return the state or null if there is none of the type or it is being closed
+     */
+    private <T extends AbstractOpenFileState> T acquireShared(BookMetaData metadata, Class<T> type) {
+        AbstractOpenFileState shared = sharedStates.get(metadata);
+        if (type.isInstance(shared) && shared.acquire()) {
+            shared.setLastAccess(System.currentTimeMillis());
+            return type.cast(shared);
+        }
+        return null;
+    }
+
+    /**
+     * Stop handing out a shared state. It is closed now if nobody is using
+     * it, otherwise when the last thread using it releases it.
+     */
+    private void retireShared(AbstractOpenFileState state) {
+        if (sharedStates.remove(state.getBookMetaData(), state) && state.releaseUse()) {
+            closeState(state);
+        }
     }
 
     @SuppressWarnings("unchecked")
     private <T extends OpenFileState> T getInstance(BookMetaData metadata) {
-        Queue<OpenFileState> availableStates = getQueueForMeta(metadata);
-        final T state = (T) availableStates.poll();
+        Deque<OpenFileState> availableStates = getQueueForMeta(metadata);
+        // The most recently released state is the one most likely to have useful caches.
+        final T state = (T) availableStates.pollFirst();
 
         //while not strictly necessary, the documentation suggests that iterating through the collection
         //gives you a snapshot at some point in time, though not necessarily consistent, so just in case this remains
@@ -217,12 +371,13 @@ public final class OpenFileStateManager {
         return state;
     }
 
-    private Queue<OpenFileState> getQueueForMeta(BookMetaData metadata) {
-        Queue<OpenFileState> availableStates = metaToStates.get(metadata);
+    private Deque<OpenFileState> getQueueForMeta(BookMetaData metadata) {
+        Deque<OpenFileState> availableStates = metaToStates.get(metadata);
         if (availableStates == null) {
-            synchronized (OpenFileState.class) {
-                availableStates = new ConcurrentLinkedQueue<OpenFileState>();
-                metaToStates.put(metadata, availableStates);
+            Deque<OpenFileState> fresh = new ConcurrentLinkedDeque<OpenFileState>();
+            availableStates = metaToStates.putIfAbsent(metadata, fresh);
+            if (availableStates == null) {
+                availableStates = fresh;
             }
         }
         return availableStates;
@@ -237,17 +392,30 @@ public final class OpenFileStateManager {
 
         fileState.setLastAccess(System.currentTimeMillis());
 
+        // a shared state stays open for the other threads using it
+        if (fileState instanceof AbstractOpenFileState && ((AbstractOpenFileState) fileState).isShared()) {
+            if (((AbstractOpenFileState) fileState).releaseUse()) {
+                closeState(fileState);
+            }
+            return;
+        }
+
         // instead of releasing, we add to our queue
         BookMetaData bmd = fileState.getBookMetaData();
-        Queue<OpenFileState> queueForMeta = getQueueForMeta(bmd);
-        LOGGER.trace("Offering to releasing: {}", bmd.getInitials());
-        boolean offered = queueForMeta.offer(fileState);
+        Deque<OpenFileState> queueForMeta = getQueueForMeta(bmd);
 
-        // ignore if we couldn't offer to the queue
-        if (!offered) {
+        // ignore if there are enough idle states for the book already
+        if (shuttingDown || queueForMeta.size() >= maxIdlePerBook) {
             LOGGER.trace("Released: {}", bmd.getInitials());
-            fileState.releaseResources();
+            closeState(fileState);
+            return;
         }
+
+        LOGGER.trace("Offering to releasing: {}", bmd.getInitials());
+        queueForMeta.offerFirst(fileState);
+
+        // an idle state can be evicted by a thread waiting for room
+        signalWaiters();
     }
 
     /**
@@ -256,11 +424,378 @@ public final class OpenFileStateManager {
     public void shutDown() {
         shuttingDown = true;
         this.monitoringThread.cancel(true);
-        for (Queue<OpenFileState> e : metaToStates.values()) {
+        closeIdleStates();
+        ReadAhead.instance().shutDown();
+        closeSharedStates();
+        mappedFiles.clear();
+    }
+
+    /**
+     * Close the states of all books that are not in use.
+     */
+    void closeIdleStates() {
+        for (Deque<OpenFileState> e : metaToStates.values()) {
             OpenFileState state = null;
             while ((state = e.poll()) != null) {
-                state.releaseResources();
+                closeState(state);
+            }
+        }
+    }
+
+    /**
+     * Close the shared state of a book, if it has one. This needs to be
+     * called when a book is removed or replaced. Threads that are reading
+     * the book carry on with the state, which is closed when the last of
+     * them releases it.
+     *
+     * @param metadata the book whose shared state is to be closed
+     */
+    public void discardShared(BookMetaData metadata) {
+        AbstractOpenFileState state = sharedStates.get(metadata);
+        if (state != null) {
+            retireShared(state);
+        }
+    }
+
+    /**
+     * Close the shared states of all books.
+     */
+    private void closeSharedStates() {
+        for (BookMetaData metadata : sharedStates.keySet()) {
+            discardShared(metadata);
+        }
+    }
+
+    /**
+     * @return the maximum number of idle states kept for each book
+     */
+    public int getMaxIdlePerBook() {
+        return maxIdlePerBook;
+    }
+
+    /**
+     * Set the maximum number of idle states kept for each book. States
+     * released beyond this are closed at once. Default: 4.
+     *
+     * @param maxIdlePerBook the maximum number of idle states per book
+     */
+    public void setMaxIdlePerBook(int maxIdlePerBook) {
+        this.maxIdlePerBook = maxIdlePerBook;
+    }
+
+    /**
+     * @return the maximum number of files that may be held open at once across all books
+     */
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    /**
+     * Set the maximum number of files that may be held open at once across
+     * all books, which bounds the file descriptors used for reading books.
+     * Each state counts the most files it opens. When the budget is used up,
+     * the least recently used idle state of any book is closed to make room.
+     * Default: 512.
+     *
+     * @param maxOpenFiles the maximum number of open files
+     */
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        this.maxOpenFiles = maxOpenFiles;
+        signalWaiters();
+    }
+
+    /**
+     * @return how long, in milliseconds, a request waits for room when all states are in use
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Set how long, in milliseconds, a request for a new state waits for
+     * another to be released when the budget is used up by states in use. After this
+     * it opens a state beyond the budget rather than fail. Use 0 to never
+     * wait. Default: 500.
+     *
+     * @param maxWait the time to wait in milliseconds
+     */
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * @return the number of states that are currently open, whether in use or idle
+     */
+    public int getOpenStateCount() {
+        return openStates.get();
+    }
+
+    /**
+     * @return the number of files counted against the budget for the states that are currently open
+     */
+    public int getOpenFileCount() {
+        return openFiles.get();
+    }
+
+    /**
+     * @return the number of states that are currently open and idle
+     */
+    public int getIdleStateCount() {
+        int count = 0;
+        for (Deque<OpenFileState> e : metaToStates.values()) {
+            count += e.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of idle states that were closed to make room for others
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of states that were opened beyond the budget
+     */
+    public long getOverBudgetCount() {
+        return overBudget.get();
+    }
+
+    /**
+     * Count the files of a state that is about to be opened against the
+     * budget, making room if needed.
+     *
+     * @param files the most files the state opens
+     */
+    private void reserveFiles(int files) {
+        final long deadline = System.currentTimeMillis() + maxWait;
+        while (true) {
+            int open = openFiles.get();
+            // A state bigger than the whole budget is let in on its own.
+            if (open + files <= maxOpenFiles || open == 0) {
+                if (openFiles.compareAndSet(open, open + files)) {
+                    return;
+                }
+                continue;
+            }
+
+            // At the cap: close the least recently used idle state of any book
+            if (evictLeastRecentlyUsed()) {
+                continue;
+            }
+
+            // Everything is in use, wait for a state to be released.
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 || shuttingDown) {
+                LOGGER.warn("All {} open files are in use, opening more beyond the budget", Integer.toString(maxOpenFiles));
+                overBudget.incrementAndGet();
+                openFiles.addAndGet(files);
+                return;
+            }
+
+            synchronized (budgetLock) {
+                try {
+                    // wait in slices, in case a release was missed
+                    budgetLock.wait(Math.min(remaining, WAIT_SLICE));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    overBudget.incrementAndGet();
+                    openFiles.addAndGet(files);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the files of a state that is about to be opened against the
+     * budget, if there is room for them.
+     *
+     * @param files the most files the state opens
+     * @return true if the files were counted
+     */
+    private boolean tryReserveFiles(int files) {
+        while (true) {
+            int open = openFiles.get();
+            if (open + files > maxOpenFiles) {
+                return false;
+            }
+            if (openFiles.compareAndSet(open, open + files)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Close the idle state, across all books, that was used longest ago.
+     *
+     * @return true if a state was closed
+     */
+    private boolean evictLeastRecentlyUsed() {
+        Deque<OpenFileState> oldestQueue = null;
+        long oldest = Long.MAX_VALUE;
+        for (Deque<OpenFileState> e : metaToStates.values()) {
+            OpenFileState candidate = e.peekLast();
+            if (candidate != null && candidate.getLastAccess() < oldest) {
+                oldest = candidate.getLastAccess();
+                oldestQueue = e;
+            }
+        }
+
+        if (oldestQueue == null) {
+            return false;
+        }
+
+        OpenFileState victim = oldestQueue.pollLast();
+        if (victim == null) {
+            // someone else took it, the caller will try again
+            return true;
+        }
+
+        LOGGER.trace("Evicting: {}", victim.getBookMetaData().getInitials());
+        evictions.incrementAndGet();
+        closeState(victim);
+        return true;
+    }
+
+    /**
+     * Release the resources of a state and return its files to the budget.
+     */
+    private void closeState(OpenFileState state) {
+        state.releaseResources();
+        openStates.decrementAndGet();
+        if (state instanceof AbstractOpenFileState) {
+            openFiles.addAndGet(-((AbstractOpenFileState) state).getBudgetedFiles());
+        }
+        signalWaiters();
+    }
+
+    private void signalWaiters() {
+        synchronized (budgetLock) {
+            budgetLock.notifyAll();
+        }
+    }
+
+    /**
+     * Creates a new state for a book.
+     *
+     * @param <T> the type of state
+     */
+    private interface StateFactory<T extends OpenFileState> {
+        T create() throws BookException;
+    }
+
+    /**
+     * Whether module files that support it are memory mapped rather than read
+     * through a RandomAccessFile.
+     *
+     * @return true if mapped mode is on
+     */
+    public boolean isMappedMode() {
+        return mappedMode;
+    }
+
+    /**
+     * Turn memory mapped reading of module files on or off. This only affects
+     * file states that are created after the call. When on, the index and data
+     * files of compressed and raw verse modules are mapped once and shared by
+     * all threads, rather than each file state opening its own files.
+     * Default: false.
+     *
+     * @param mappedMode true to memory map module files
+     */
+    public void setMappedMode(boolean mappedMode) {
+        this.mappedMode = mappedMode;
+        if (!mappedMode) {
+            mappedFiles.clear();
+        }
+    }
+
+    /**
+     * Whether compressed and raw verse modules get a single state per book
+     * that is shared by all threads.
+     *
+     * @return true if shared mode is on
+     */
+    public boolean isSharedMode() {
+        return sharedMode;
+    }
+
+    /**
+     * Turn shared states on or off. When on, each compressed or raw verse
+     * module has a single state that is used by all threads at once. It
+     * reads through memory mapped files in mapped mode and otherwise with
+     * positional reads on a FileChannel, so it needs only one file descriptor
+     * per file however many threads read the book. When turned off, the
+     * shared states are closed once the threads reading them are done, so
+     * this should be set before books are read.
+     * Default: false.
+     *
+     * @param sharedMode true to share one state per book
+     */
+    public void setSharedMode(boolean sharedMode) {
+        this.sharedMode = sharedMode;
+        if (!sharedMode) {
+            closeSharedStates();
+        }
+    }
+
+    /**
+     * Get a file that may be read by many threads at once. In mapped mode
+     * this is the shared mapping of the file. Otherwise, or should mapping
+     * fail, a file that is to be read concurrently is opened for positional
+     * reads.
+     *
+     * @param file the file to read
+     * @param concurrent whether the file must be safe to read from many threads
+     * @return the shared file or null if it could not be opened
+     */
+    SharedFile getSharedFile(File file, boolean concurrent) {
+        if (mappedMode) {
+            SharedFile mapped = getMappedFile(file);
+            if (mapped != null || !concurrent) {
+                return mapped;
+            }
+        } else if (!concurrent) {
+            return null;
+        }
+
+        try {
+            LOGGER.trace("Opening for positional reads: {}", file.getPath());
+            return new ChannelFile(file);
+        } catch (IOException e) {
+            LOGGER.error("Unable to open {}", file.getPath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the shared read-only mapping of a file, mapping it if needed.
+     * If the file has changed on disk since it was mapped, it is mapped afresh.
+     *
+     * @param file the file to map
+     * @return the mapped file or null if it could not be mapped
+     */
+    MappedFile getMappedFile(File file) {
+        String path = file.getAbsolutePath();
+        MappedFile mapped = mappedFiles.get(path);
+        if (mapped != null && !mapped.isStale()) {
+            return mapped;
+        }
+
+        try {
+            LOGGER.trace("Mapping: {}", path);
+            MappedFile fresh = new MappedFile(file);
+            if (mapped == null) {
+                mapped = mappedFiles.putIfAbsent(path, fresh);
+                return mapped == null ? fresh : mapped;
             }
+            mappedFiles.put(path, fresh);
+            return fresh;
+        } catch (IOException e) {
+            LOGGER.error("Unable to map {}", path, e);
+            return null;
         }
     }
 
@@ -271,8 +806,35 @@ public final class OpenFileStateManager {
     }
 
     private final ScheduledFuture<?> monitoringThread;
-    private final Map<BookMetaData, Queue<OpenFileState>> metaToStates = new HashMap<BookMetaData, Queue<OpenFileState>>();
+    private final ConcurrentMap<BookMetaData, Deque<OpenFileState>> metaToStates = new ConcurrentHashMap<BookMetaData, Deque<OpenFileState>>();
+    private final AtomicInteger openStates = new AtomicInteger();
+    private final AtomicInteger openFiles = new AtomicInteger();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final Object budgetLock = new Object();
+    private volatile int maxIdlePerBook = DEFAULT_MAX_IDLE_PER_BOOK;
+    private volatile int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    private volatile long maxWait = DEFAULT_MAX_WAIT;
+    private final ConcurrentMap<String, MappedFile> mappedFiles = new ConcurrentHashMap<String, MappedFile>();
+    private final ConcurrentMap<BookMetaData, AbstractOpenFileState> sharedStates = new ConcurrentHashMap<BookMetaData, AbstractOpenFileState>();
+    private final Object sharedLock = new Object();
     private volatile boolean shuttingDown;
+    private volatile boolean mappedMode;
+    private volatile boolean sharedMode;
+
+    private static final int DEFAULT_MAX_IDLE_PER_BOOK = 4;
+    private static final int DEFAULT_MAX_OPEN_FILES = 512;
+    private static final long DEFAULT_MAX_WAIT = 500;
+    private static final long WAIT_SLICE = 50;
+
+    // The most files each kind of state holds open: an index and a text
+    // file, for each testament of a Bible, and a compressed block index
+    // as well for a compressed Bible.
+    private static final int RAW_FILES = 4;
+    private static final int ZVERSE_FILES = 6;
+    private static final int RAW_LD_FILES = 2;
+    private static final int ZLD_FILES = 4;
+    private static final int GEN_BOOK_FILES = 1;
 
     private static volatile OpenFileStateManager manager;
     private static final Logger LOGGER = LoggerFactory.getLogger(OpenFileStateManager.class);
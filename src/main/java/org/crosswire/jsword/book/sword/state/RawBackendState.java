@@ -58,6 +58,20 @@ public class RawBackendState extends AbstractOpenFileState {
      *            the appropriate metadata for the book
      */
     RawBackendState(BookMetaData bookMetaData) throws BookException {
+        this(bookMetaData, false);
+    }
+
+    /**
+     * Create a state that, when shared is true, is read by many threads at
+     * once. Such a state reads through shared files rather than random
+     * access files.
+     *
+     * @param bookMetaData
+     *            the appropriate metadata for the book
+     * @param shared
+     *            whether the state will be used by many threads at once
+     */
+    RawBackendState(BookMetaData bookMetaData, boolean shared) throws BookException {
         super(bookMetaData);
         URI path = SwordUtil.getExpandedDataPath(bookMetaData);
 
@@ -78,6 +92,11 @@ public class RawBackendState extends AbstractOpenFileState {
             throw prob;
         }
 
+        if ((shared || OpenFileStateManager.instance().isMappedMode()) && isMappable() && openSharedFiles(shared)) {
+            this.shared = shared;
+            return;
+        }
+
         String fileMode = isWritable() ? FileUtil.MODE_WRITE : FileUtil.MODE_READ;
 
         if (otIdxFile.canRead()) {
@@ -131,6 +150,45 @@ public class RawBackendState extends AbstractOpenFileState {
         return otIdxFile.canRead() || ntIdxFile.canRead();
     }
 
+    /**
+     * Whether this state may read from shared files. Shared files are
+     * read-only, so this is only possible when the module is not going to be
+     * written.
+     *
+     * @return true if the files may be shared
+     */
+    protected boolean isMappable() {
+        return !isWritable();
+    }
+
+    /**
+     * Open the shared files for each testament that is present.
+     *
+     * @param concurrent whether the files will be read by many threads at once
+     * @return true if all present files could be opened
+     */
+    private boolean openSharedFiles(boolean concurrent) {
+        OpenFileStateManager manager = OpenFileStateManager.instance();
+        if (otIdxFile.canRead()) {
+            otIdxShared = manager.getSharedFile(otIdxFile, concurrent);
+            otTextShared = manager.getSharedFile(otTextFile, concurrent);
+            if (otIdxShared == null || otTextShared == null) {
+                releaseResources();
+                return false;
+            }
+        }
+
+        if (ntIdxFile.canRead()) {
+            ntIdxShared = manager.getSharedFile(ntIdxFile, concurrent);
+            ntTextShared = manager.getSharedFile(ntTextFile, concurrent);
+            if (ntIdxShared == null || ntTextShared == null) {
+                releaseResources();
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void releaseResources() {
         IOUtil.close(ntIdxRaf);
         IOUtil.close(ntTextRaf);
@@ -140,6 +198,42 @@ public class RawBackendState extends AbstractOpenFileState {
         ntTextRaf = null;
         otIdxRaf = null;
         otTextRaf = null;
+        IOUtil.close(ntIdxShared);
+        IOUtil.close(ntTextShared);
+        IOUtil.close(otIdxShared);
+        IOUtil.close(otTextShared);
+        ntIdxShared = null;
+        ntTextShared = null;
+        otIdxShared = null;
+        otTextShared = null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.AbstractOpenFileState#isShared()
+     */
+    @Override
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Get the shared index file for the given testament.
+     * 
+     * @param testament the testament for the file
+     * @return the shared file for the testament or null if not shared
+     */
+    public SharedFile getSharedIdx(Testament testament) {
+        return testament == Testament.NEW ? ntIdxShared : otIdxShared;
+    }
+
+    /**
+     * Get the shared text file for the given testament.
+     * 
+     * @param testament the testament for the file
+     * @return the shared file for the testament or null if not shared
+     */
+    public SharedFile getSharedText(Testament testament) {
+        return testament == Testament.NEW ? ntTextShared : otTextShared;
     }
 
     /**
@@ -200,10 +294,15 @@ public class RawBackendState extends AbstractOpenFileState {
     protected RandomAccessFile ntIdxRaf;
     protected RandomAccessFile otTextRaf;
     protected RandomAccessFile ntTextRaf;
+    protected SharedFile otIdxShared;
+    protected SharedFile ntIdxShared;
+    protected SharedFile otTextShared;
+    protected SharedFile ntTextShared;
     protected File ntIdxFile;
     protected File ntTextFile;
     protected File otIdxFile;
     protected File otTextFile;
+    private boolean shared;
 
     /**
      * The log stream
@@ -56,6 +56,15 @@ public class RawFileBackendState extends RawBackendState {
         incfileValue = -1;
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.RawBackendState#isMappable()
+     */
+    @Override
+    protected boolean isMappable() {
+        // The index is updated in place, so it must not be mapped read-only.
+        return false;
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.book.sword.AbstractBackend#isWritable()
      */
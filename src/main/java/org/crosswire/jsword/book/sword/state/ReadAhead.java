@@ -0,0 +1,341 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword.state;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.crosswire.jsword.book.BookMetaData;
+import org.crosswire.jsword.versification.Testament;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uncompresses blocks of compressed modules in the background, ahead of a
+ * reader that is walking through a book, so that the reader finds them in the
+ * {@link BlockCache}. It is off by default.
+ *
+ * <p>
+ * The work is bounded in two ways: the number of blocks waiting to be read
+ * ahead, beyond which requests are dropped, and the number of uncompressed
+ * bytes being produced at once. Blocks that are read ahead are kept by the
+ * BlockCache, so they are bounded by it once done.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public final class ReadAhead {
+    /**
+     * Create the read-ahead with its default settings.
+     */
+    private ReadAhead() {
+        this.pending = new ConcurrentHashMap<String, Boolean>();
+        this.queued = new AtomicInteger();
+        this.bytesInFlight = new AtomicLong();
+        this.submitted = new AtomicLong();
+        this.dropped = new AtomicLong();
+    }
+
+    /**
+     * Singleton instance method to return the one and only read-ahead
+     *
+     * @return the singleton
+     */
+    public static ReadAhead instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return whether blocks are read ahead of sequential readers
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turn reading ahead on or off. Default: false.
+     *
+     * @param enabled true to read ahead
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the number of blocks read ahead of a sequential reader
+     */
+    public int getBlocksAhead() {
+        return blocksAhead;
+    }
+
+    /**
+     * Set how many blocks beyond the current one are read ahead of a
+     * sequential reader. Default: 1.
+     *
+     * @param blocksAhead the number of blocks to read ahead
+     */
+    public void setBlocksAhead(int blocksAhead) {
+        this.blocksAhead = blocksAhead;
+    }
+
+    /**
+     * @return the maximum number of blocks waiting to be read ahead
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Set the maximum number of blocks, across all books, that may be
+     * waiting to be read ahead. Further requests are dropped. Default: 8.
+     *
+     * @param queueDepth the maximum number of waiting blocks
+     */
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * @return the maximum number of uncompressed bytes being read ahead at once
+     */
+    public long getMaxBytesInFlight() {
+        return maxBytesInFlight;
+    }
+
+    /**
+     * Set the maximum number of uncompressed bytes that may be produced by
+     * reading ahead at once. A block that does not fit is not read ahead.
+     * Default: 1MB.
+     *
+     * @param maxBytesInFlight the upper bound in bytes
+     */
+    public void setMaxBytesInFlight(long maxBytesInFlight) {
+        this.maxBytesInFlight = maxBytesInFlight;
+    }
+
+    /**
+     * @return the number of threads that read ahead
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set the number of background threads that read ahead. This only takes
+     * effect if set before the first block is read ahead. Default: 1.
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Ask for a block to be read ahead. The request is dropped if the block
+     * has already been asked for or the queue is full.
+     *
+     * @param bmd the book to which the block belongs
+     * @param testament the testament of the block or null if the book is not split by testament
+     * @param blockNum the number of the block
+     * @param loader the work of reading the block into the BlockCache
+     * @return true if the block will be read ahead
+     */
+    public boolean submit(BookMetaData bmd, Testament testament, long blockNum, final Runnable loader) {
+        if (!enabled) {
+            return false;
+        }
+
+        final String key = bmd.getInitials() + '/' + testament + '/' + blockNum;
+        if (pending.putIfAbsent(key, Boolean.TRUE) != null) {
+            return false;
+        }
+
+        if (queued.incrementAndGet() > queueDepth) {
+            finish(key);
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        try {
+            getExecutor().execute(new Request(key, loader));
+        } catch (RejectedExecutionException e) {
+            finish(key);
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        submitted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Claim room for a block that is about to be uncompressed.
+     *
+     * @param size the uncompressed size of the block
+     * @return true if there is room, in which case {@link #releaseBytes(long)} must follow
+     */
+    public boolean reserveBytes(long size) {
+        while (true) {
+            long current = bytesInFlight.get();
+            if (current + size > maxBytesInFlight) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (bytesInFlight.compareAndSet(current, current + size)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back the room claimed for a block.
+     *
+     * @param size the uncompressed size of the block
+     */
+    public void releaseBytes(long size) {
+        bytesInFlight.addAndGet(-size);
+    }
+
+    /**
+     * @return the number of blocks waiting to be or being read ahead
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * @return the number of uncompressed bytes being read ahead
+     */
+    public long getBytesInFlight() {
+        return bytesInFlight.get();
+    }
+
+    /**
+     * @return the number of blocks that were asked to be read ahead
+     */
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * @return the number of blocks that were not read ahead for lack of room
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stop reading ahead, abandoning the waiting blocks.
+     */
+    public synchronized void shutDown() {
+        enabled = false;
+        if (executor != null) {
+            // The waiting blocks will never run, so give back their places in the queue.
+            for (Runnable abandoned : executor.shutdownNow()) {
+                if (abandoned instanceof Request) {
+                    finish(((Request) abandoned).key);
+                }
+            }
+            executor = null;
+        }
+    }
+
+    /**
+     * Give back the place in the queue of a block that has been read ahead
+     * or will not be.
+     */
+    private void finish(String key) {
+        queued.decrementAndGet();
+        pending.remove(key);
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "jsword-read-ahead");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+            // let the threads go when nothing is being read
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+
+    /**
+     * A block waiting to be read ahead.
+     */
+    private final class Request implements Runnable {
+        Request(String key, Runnable loader) {
+            this.key = key;
+            this.loader = loader;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            try {
+                loader.run();
+            } catch (RuntimeException e) {
+                // reading ahead is only a hint, the reader will find out for itself
+                LOGGER.debug("Unable to read ahead {}", key, e);
+            } finally {
+                finish(key);
+            }
+        }
+
+        private final String key;
+        private final Runnable loader;
+    }
+
+    private static final long KEEP_ALIVE = 30;
+    private static final int DEFAULT_BLOCKS_AHEAD = 1;
+    private static final int DEFAULT_QUEUE_DEPTH = 8;
+    private static final long DEFAULT_MAX_BYTES_IN_FLIGHT = 1024L * 1024;
+
+    private final ConcurrentMap<String, Boolean> pending;
+    private final AtomicInteger queued;
+    private final AtomicLong bytesInFlight;
+    private final AtomicLong submitted;
+    private final AtomicLong dropped;
+    private ExecutorService executor;
+    private volatile boolean enabled;
+    private volatile int blocksAhead = DEFAULT_BLOCKS_AHEAD;
+    private volatile int queueDepth = DEFAULT_QUEUE_DEPTH;
+    private volatile long maxBytesInFlight = DEFAULT_MAX_BYTES_IN_FLIGHT;
+    private volatile int threads = 1;
+
+    private static final ReadAhead INSTANCE = new ReadAhead();
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadAhead.class);
+}
@@ -0,0 +1,133 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword.state;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A read-only module file that may be read by any number of threads at once.
+ * Unlike a RandomAccessFile, a SharedFile has no file pointer: every read
+ * names the position it reads from.
+ *
+ * <p>
+ * Like the rest of SWORD, all numbers are little endian. Reads that fall
+ * outside of the file are treated the same way as
+ * {@link org.crosswire.jsword.book.sword.SwordUtil} treats them for a
+ * RandomAccessFile: they are clipped to the end of the file or return nothing.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public abstract class SharedFile implements Closeable {
+    /**
+     * @param file the file that is read
+     * @param length the length of the file in bytes
+     */
+    protected SharedFile(File file, int length) {
+        this.file = file;
+        this.length = length;
+    }
+
+    /**
+     * @return the file that is read
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the length of the file in bytes
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Determine whether the whole of the requested region lies within the file.
+     *
+     * @param offset the start of the region
+     * @param size the number of bytes in the region
+     * @return true if the region can be read in full
+     */
+    public boolean contains(long offset, int size) {
+        return offset >= 0 && size >= 0 && offset + size <= length;
+    }
+
+    /**
+     * Decode a 32-bit little endian number at the given offset.
+     *
+     * @param offset the position in the file
+     * @return the decoded number
+     * @throws IOException if the file cannot be read
+     */
+    public abstract int getInt(long offset) throws IOException;
+
+    /**
+     * Decode an unsigned 16-bit little endian number at the given offset.
+     *
+     * @param offset the position in the file
+     * @return the decoded number
+     * @throws IOException if the file cannot be read
+     */
+    public abstract int getUnsignedShort(long offset) throws IOException;
+
+    /**
+     * Copy a region of the file into a new byte array. The copy is needed
+     * since the data may be deciphered or uncompressed in place.
+     *
+     * @param offset the start of the region
+     * @param size the number of bytes to read
+     * @return the read data, clipped to the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    public abstract byte[] read(long offset, int size) throws IOException;
+
+    /**
+     * Release the operating system resources held by this file. Files that
+     * hold none need not override this.
+     */
+    public void close() {
+        // Nothing to release by default
+    }
+
+    /**
+     * Compute the part of a region that lies within the file.
+     *
+     * @param offset the start of the region
+     * @param size the number of bytes requested
+     * @return the number of bytes that can be read, which may be 0
+     */
+    protected int clip(long offset, int size) {
+        if (size <= 0 || offset < 0 || offset >= length) {
+            return 0;
+        }
+
+        if (offset + size > length) {
+            return (int) (length - offset);
+        }
+        return size;
+    }
+
+    private final File file;
+    private final int length;
+}
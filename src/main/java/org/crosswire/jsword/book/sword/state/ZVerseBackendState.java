@@ -56,6 +56,19 @@ public class ZVerseBackendState extends AbstractOpenFileState {
      * @param bookMetaData the appropriate metadata for the book
      */
     ZVerseBackendState(BookMetaData bookMetaData, BlockType blockType) throws BookException {
+        this(bookMetaData, blockType, false);
+    }
+
+    /**
+     * Create a state that, when shared is true, is read by many threads at
+     * once. Such a state reads through shared files rather than random
+     * access files.
+     *
+     * @param bookMetaData the appropriate metadata for the book
+     * @param blockType the size of the compressed blocks
+     * @param shared whether the state will be used by many threads at once
+     */
+    ZVerseBackendState(BookMetaData bookMetaData, BlockType blockType, boolean shared) throws BookException {
         super(bookMetaData);
         URI path = SwordUtil.getExpandedDataPath(bookMetaData);
         String otAllButLast = NetUtil.lengthenURI(path, File.separator + SwordConstants.FILE_OT + '.' + blockType.getIndicator() + SUFFIX_PART1).getPath();
@@ -68,6 +81,11 @@ public class ZVerseBackendState extends AbstractOpenFileState {
         File ntTextFile = new File(ntAllButLast + SUFFIX_TEXT);
         File ntCompFile = new File(ntAllButLast + SUFFIX_COMP);
 
+        if ((shared || OpenFileStateManager.instance().isMappedMode()) && openSharedFiles(shared, otIdxFile, otTextFile, otCompFile, ntIdxFile, ntTextFile, ntCompFile)) {
+            this.shared = shared;
+            return;
+        }
+
         // check whether exists to swallow any exception as before
         if (otIdxFile.canRead()) {
             try {
@@ -104,6 +122,39 @@ public class ZVerseBackendState extends AbstractOpenFileState {
         }
     }
 
+    /**
+     * Open the shared files for each testament that is present. Note that the
+     * naming of the files is the reverse of the naming of the accessors: the
+     * "idx" file holds the block index and the "comp" file holds the verse
+     * index.
+     *
+     * @param concurrent whether the files will be read by many threads at once
+     * @return true if all present files could be opened
+     */
+    private boolean openSharedFiles(boolean concurrent, File otIdxFile, File otTextFile, File otCompFile, File ntIdxFile, File ntTextFile, File ntCompFile) {
+        OpenFileStateManager manager = OpenFileStateManager.instance();
+        if (otIdxFile.canRead()) {
+            otCompShared = manager.getSharedFile(otIdxFile, concurrent);
+            otTextShared = manager.getSharedFile(otTextFile, concurrent);
+            otIdxShared = manager.getSharedFile(otCompFile, concurrent);
+            if (otCompShared == null || otTextShared == null || otIdxShared == null) {
+                releaseResources();
+                return false;
+            }
+        }
+
+        if (ntIdxFile.canRead()) {
+            ntCompShared = manager.getSharedFile(ntIdxFile, concurrent);
+            ntTextShared = manager.getSharedFile(ntTextFile, concurrent);
+            ntIdxShared = manager.getSharedFile(ntCompFile, concurrent);
+            if (ntCompShared == null || ntTextShared == null || ntIdxShared == null) {
+                releaseResources();
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void releaseResources() {
         IOUtil.close(ntCompRaf);
         IOUtil.close(ntTextRaf);
@@ -117,6 +168,56 @@ public class ZVerseBackendState extends AbstractOpenFileState {
         otCompRaf = null;
         otTextRaf = null;
         otIdxRaf = null;
+        IOUtil.close(ntCompShared);
+        IOUtil.close(ntTextShared);
+        IOUtil.close(ntIdxShared);
+        IOUtil.close(otCompShared);
+        IOUtil.close(otTextShared);
+        IOUtil.close(otIdxShared);
+        ntCompShared = null;
+        ntTextShared = null;
+        ntIdxShared = null;
+        otCompShared = null;
+        otTextShared = null;
+        otIdxShared = null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.AbstractOpenFileState#isShared()
+     */
+    @Override
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Get the shared compression file for the given testament.
+     * 
+     * @param testament the testament for the index
+     * @return the shared index for the testament or null if not shared
+     */
+    public SharedFile getSharedComp(Testament testament) {
+        return testament == Testament.NEW ? ntCompShared : otCompShared;
+    }
+
+    /**
+     * Get the shared text file for the given testament.
+     * 
+     * @param testament the testament for the index
+     * @return the shared text for the testament or null if not shared
+     */
+    public SharedFile getSharedText(Testament testament) {
+        return testament == Testament.NEW ? ntTextShared : otTextShared;
+    }
+
+    /**
+     * Get the shared index file for the given testament.
+     * 
+     * @param testament the testament for the index
+     * @return the shared index for the testament or null if not shared
+     */
+    public SharedFile getSharedIdx(Testament testament) {
+        return testament == Testament.NEW ? ntIdxShared : otIdxShared;
     }
 
     /**
@@ -150,6 +251,26 @@ public class ZVerseBackendState extends AbstractOpenFileState {
     }
 
     /**
+     * Note that a block has been asked for, and determine whether the reader
+     * has just moved on from the block before it, as happens when a book is
+     * read from start to end. For a shared state this is only a guess, as
+     * the requests of many readers are mixed together.
+     *
+     * @param testament the testament of the block
+     * @param blockNum the number of the block
+     * @return true if the previous request was for the block before this one
+     */
+    public boolean isNextBlock(Testament testament, long blockNum) {
+        boolean next = testament == requestedTestament && blockNum == requestedBlockNum + 1;
+        requestedTestament = testament;
+        requestedBlockNum = blockNum;
+        return next;
+    }
+
+    /**
+     * The last block is only remembered by states that are not shared, as
+     * the threads using a shared state would overwrite each other's.
+     *
      * @return the lastTestament
      */
     public Testament getLastTestament() {
@@ -216,9 +337,23 @@ public class ZVerseBackendState extends AbstractOpenFileState {
      */
     private RandomAccessFile otIdxRaf;
     private RandomAccessFile ntIdxRaf;
+
+    /**
+     * The shared files, used instead of the random access files when the
+     * OpenFileStateManager is in mapped mode or the state is shared.
+     */
+    private SharedFile otCompShared;
+    private SharedFile ntCompShared;
+    private SharedFile otTextShared;
+    private SharedFile ntTextShared;
+    private SharedFile otIdxShared;
+    private SharedFile ntIdxShared;
+    private boolean shared;
     private Testament lastTestament;
     private long lastBlockNum = -1;
     private byte[] lastUncompressed;
+    private Testament requestedTestament;
+    private long requestedBlockNum = -1;
 
     /**
      * The log stream
@@ -19,11 +19,25 @@
  */
 package org.crosswire.jsword.bridge;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.crosswire.common.progress.JobManager;
+import org.crosswire.common.progress.Progress;
+import org.crosswire.common.util.OrderedParallelWriter;
+import org.crosswire.jsword.JSMsg;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookCategory;
 import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.Books;
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
 import org.crosswire.jsword.versification.BookName;
 
 /**
@@ -37,9 +51,46 @@ public class BookExporter {
 
     public BookExporter(Book book) {
         this.book = book;
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return the number of threads reading the book
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set the number of threads that read and decode the book while it is
+     * being exported. Default: the number of processors.
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
     }
 
+    /**
+     * Export the book to standard out.
+     *
+     * @throws BookException if the book could not be read
+     */
     public void mod2imp() throws BookException {
+        System.out.flush();
+        mod2imp(Channels.newChannel(System.out), Charset.defaultCharset());
+    }
+
+    /**
+     * Export the book. The entries are read and decoded in runs, by Bible book
+     * or by a fixed number of keys, on several threads, and written in the
+     * order of the book. The export shows up as a job that can be cancelled.
+     *
+     * @param out where the imp is written, which is not closed
+     * @param charset the encoding of the imp
+     * @throws BookException if the book could not be read or the imp could not be written
+     */
+    public void mod2imp(WritableByteChannel out, Charset charset) throws BookException {
         // Use short key names for Bibles.
         if (BookCategory.BIBLE.equals(book.getBookCategory())) {
             BookName.setFullBookName(false);
@@ -47,19 +98,84 @@ public class BookExporter {
 
         Key keys = book.getGlobalKeyList();
 
-        StringBuilder buf = new StringBuilder();
-        for (Key key : keys) {
-            //FIXME(CJB) iteration should be pushed down to benefit from performance improvement
-            String rawText = book.getRawText(key);
-            if (rawText != null && rawText.trim().length() > 0) {
-                buf.delete(0, buf.length());
-                buf.append("$$$").append(key).append('\n').append(rawText);
-                System.out.println(buf.toString());
+        String jobName = JSMsg.gettext("Exporting {0}", book.getInitials());
+        Progress job = JobManager.createJob(String.format(Progress.EXPORT_BOOK, book.getInitials()), jobName, Thread.currentThread());
+        job.beginJob(jobName, keys.getCardinality());
+
+        OrderedParallelWriter writer = new OrderedParallelWriter(out, charset, threads, job);
+        try {
+            List<Key> run = new ArrayList<Key>();
+            BibleBook runBook = null;
+            for (Key key : keys) {
+                BibleBook keyBook = key instanceof Verse ? ((Verse) key).getBook() : null;
+                if (run.size() >= RUN_SIZE || (!run.isEmpty() && keyBook != runBook)) {
+                    if (!writer.write(new RunRenderer(run), run.size())) {
+                        return;
+                    }
+                    run = new ArrayList<Key>();
+                }
+                runBook = keyBook;
+                run.add(key);
+            }
+            if (!run.isEmpty()) {
+                writer.write(new RunRenderer(run), run.size());
+            }
+            writer.close();
+        } catch (IOException e) {
+            if (writer.isCancelled()) {
+                return;
+            }
+            if (e.getCause() instanceof BookException) {
+                throw (BookException) e.getCause();
+            }
+            throw new BookException(JSMsg.gettext("Unable to export {0}", book.getInitials()), e);
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // the first failure has already been reported
+            }
+            job.done();
+        }
+    }
+
+    /**
+     * Renders a run of entries as imp.
+     */
+    private final class RunRenderer implements Callable<String> {
+        RunRenderer(List<Key> run) {
+            this.run = run;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Callable#call()
+         */
+        public String call() throws BookException {
+            StringBuilder buf = new StringBuilder();
+            for (Key key : run) {
+                String rawText = book.getRawText(key);
+                if (rawText != null && rawText.trim().length() > 0) {
+                    buf.append("$$$").append(key).append('\n').append(rawText).append(NEWLINE);
+                }
             }
+            return buf.toString();
         }
+
+        private final List<Key> run;
     }
 
+    /**
+     * The most keys read by a thread at a time.
+     */
+    private static final int RUN_SIZE = 256;
+
+    /**
+     * Entries end as they would with println.
+     */
+    private static final String NEWLINE = System.getProperty("line.separator");
+
     private Book book;
+    private int threads;
 
     /**
      * Call with &lt;operation&gt; book. Where operation can be one of:
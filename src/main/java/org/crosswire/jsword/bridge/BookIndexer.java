@@ -24,6 +24,7 @@ import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.Books;
 import org.crosswire.jsword.index.IndexManager;
 import org.crosswire.jsword.index.IndexManagerFactory;
+import org.crosswire.jsword.index.IndexScheduler;
 import org.crosswire.jsword.index.IndexStatus;
 import org.crosswire.jsword.index.IndexStatusEvent;
 import org.crosswire.jsword.index.IndexStatusListener;
@@ -74,12 +75,11 @@ public class BookIndexer {
             if (isIndexed()) {
                 deleteIndex();
             }
-            Thread work = new Thread(new Runnable() {
-                public void run() {
-                    indexManager.scheduleIndexCreation(book);
-                }
-            });
-            work.start();
+            IndexScheduler scheduler = indexManager.getIndexScheduler();
+            if (!scheduler.schedule(book, IndexScheduler.Priority.INTERACTIVE) && !scheduler.isScheduled(book)) {
+                // The scheduler has been shut down, so build it here.
+                indexManager.scheduleIndexCreation(book);
+            }
             while (!done) {
                 try {
                     Thread.sleep(100);
@@ -0,0 +1,201 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.examples;
+
+import java.io.File;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.index.IndexPolicyAdapter;
+import org.crosswire.jsword.index.IndexStatus;
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.crosswire.jsword.index.lucene.QueryCache;
+import org.crosswire.jsword.index.search.DefaultSearchModifier;
+import org.crosswire.jsword.passage.Key;
+
+/**
+ * IndexTradeOff is a command line utility that measures what a compact index,
+ * one that does not keep the text of the book, saves in disk space and what
+ * it costs in search time. It builds both kinds of index of an installed book
+ * in a temporary directory, runs the same searches against each, reading the
+ * text of every verse found as a highlighter would, and prints the results.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public final class IndexTradeOff {
+    private IndexTradeOff() {
+    }
+
+    /**
+     * Measure the index of a book.
+     *
+     * @param args the initials of the book, followed by optional Lucene searches
+     * @throws BookException if the book could not be indexed or searched
+     */
+    public static void main(String[] args) throws BookException {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+
+        Book book = Books.installed().getBook(args[0]);
+        if (book == null) {
+            System.out.println("No installed book called " + args[0]);
+            return;
+        }
+
+        String[] searches = DEFAULT_SEARCHES;
+        if (args.length > 1) {
+            searches = new String[args.length - 1];
+            System.arraycopy(args, 1, searches, 0, searches.length);
+        }
+
+        IndexStatus status = book.getIndexStatus();
+        try {
+            Measure full = measure(book, true, searches);
+            Measure compact = measure(book, false, searches);
+
+            System.out.println("Index of " + book.getInitials());
+            System.out.println("          size/KB  build/ms  search/ms  text/ms");
+            print("full", full);
+            print("compact", compact);
+            if (full.size > 0) {
+                System.out.println("The compact index is " + (100 - compact.size * 100 / full.size) + "% smaller.");
+            }
+        } finally {
+            book.setIndexStatus(status);
+        }
+    }
+
+    /**
+     * Build an index of a book and time searches against it.
+     */
+    private static Measure measure(Book book, final boolean textStored, String[] searches) throws BookException {
+        File storage = new File(System.getProperty("java.io.tmpdir"), "jsword-" + book.getInitials() + (textStored ? "-full" : "-compact"));
+        FileUtil.delete(storage);
+
+        Measure measure = new Measure();
+        long start = System.currentTimeMillis();
+        LuceneIndex index = new LuceneIndex(book, storage.toURI(), new IndexPolicyAdapter() {
+            @Override
+            public boolean isTextStored() {
+                return textStored;
+            }
+        });
+        measure.build = System.currentTimeMillis() - start;
+
+        try {
+            measure.size = sizeOf(storage);
+
+            DefaultSearchModifier modifier = new DefaultSearchModifier();
+            modifier.setRanked(true);
+            modifier.setMaxResults(MAX_RESULTS);
+            index.setSearchModifier(modifier);
+
+            // The first round warms up the JVM and the page cache.
+            for (int round = 0; round <= ROUNDS; round++) {
+                for (String search : searches) {
+                    // Otherwise all but the first search would be answered from the cache.
+                    QueryCache.instance().invalidate(book);
+
+                    start = System.nanoTime();
+                    Key results = index.find(search);
+                    long found = System.nanoTime();
+                    for (Key verse : results) {
+                        index.getText(verse);
+                    }
+                    long read = System.nanoTime();
+
+                    if (round > 0) {
+                        measure.search += found - start;
+                        measure.text += read - found;
+                    }
+                }
+            }
+        } finally {
+            index.close();
+            FileUtil.delete(storage);
+        }
+        return measure;
+    }
+
+    /**
+     * @return the number of bytes in the files of a directory
+     */
+    private static long sizeOf(File file) {
+        if (!file.isDirectory()) {
+            return file.length();
+        }
+
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += sizeOf(child);
+            }
+        }
+        return size;
+    }
+
+    private static void print(String label, Measure measure) {
+        System.out.println(String.format("%-8s %8d %9d %10.1f %8.1f", label, Long.valueOf(measure.size / 1024), Long.valueOf(measure.build),
+                Double.valueOf(measure.search / ROUNDS / 1e6), Double.valueOf(measure.text / ROUNDS / 1e6)));
+    }
+
+    /**
+     * Print a usage message to stdout
+     */
+    private static void usage() {
+        System.out.println("Usage: IndexTradeOff <book> [<search>...]");
+        System.out.println("  where <book> is the initials of an installed book");
+        System.out.println("  and each <search> is in Lucene's syntax, e.g. \"love AND faith\".");
+    }
+
+    /**
+     * What was measured of one index. Times are in nanoseconds, except the build.
+     */
+    private static final class Measure {
+        long size;
+        long build;
+        long search;
+        long text;
+    }
+
+    /**
+     * The number of times that the searches are timed.
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * The number of verses found by each search.
+     */
+    private static final int MAX_RESULTS = 50;
+
+    private static final String[] DEFAULT_SEARCHES = {
+        "god",
+        "love AND faith",
+        "\"in the beginning\"",
+        "jerusalem -temple",
+        "bless*",
+    };
+}
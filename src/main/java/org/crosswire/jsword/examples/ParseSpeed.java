@@ -0,0 +1,125 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.examples;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.PassageType;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+
+/**
+ * ParseSpeed is a command line utility that measures how fast references are
+ * turned into Passages of the type that PassageSpeedTest tests. It times
+ * references that are seen for the first time, those that are seen again and
+ * so come from the PassageKeyFactory's cache, and a list of references
+ * converted at once.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public final class ParseSpeed {
+    private ParseSpeed() {
+    }
+
+    /**
+     * Time the parsing of references.
+     *
+     * @param args optional references to parse instead of the built in ones
+     * @throws NoSuchKeyException if a reference could not be understood
+     */
+    public static void main(String[] args) throws NoSuchKeyException {
+        List<String> references = Arrays.asList(args.length > 0 ? args : DEFAULT_REFERENCES);
+        Versification v11n = Versifications.instance().getVersification("KJV");
+        PassageKeyFactory keyf = PassageKeyFactory.instance();
+        PassageKeyFactory.setDefaultType(PassageType.SPEED);
+
+        // A user's references repeat, so the bulk list has each several times.
+        List<String> bulk = new ArrayList<String>();
+        for (int i = 0; i < BULK_REPEATS; i++) {
+            bulk.addAll(references);
+        }
+
+        long first = 0;
+        long again = 0;
+        long together = 0;
+        // The first round warms up the JVM.
+        for (int round = 0; round <= ROUNDS; round++) {
+            keyf.clearCache();
+            long start = System.nanoTime();
+            for (String reference : references) {
+                keyf.getKey(v11n, reference);
+            }
+            long parsed = System.nanoTime();
+            for (String reference : references) {
+                keyf.getKey(v11n, reference);
+            }
+            long cached = System.nanoTime();
+            keyf.clearCache();
+            keyf.getKeys(v11n, bulk);
+            long end = System.nanoTime();
+
+            if (round > 0) {
+                first += parsed - start;
+                again += cached - parsed;
+                together += end - cached;
+            }
+        }
+
+        int count = references.size() * ROUNDS;
+        System.out.println("Parsing " + references.size() + " references into " + PassageType.SPEED + " Passages");
+        print("first time", first, count);
+        print("cached", again, count);
+        print("in bulk", together, count * BULK_REPEATS);
+    }
+
+    private static void print(String label, long nanos, int count) {
+        System.out.println(String.format("%-10s %8.2f us/reference", label, Double.valueOf(nanos / 1e3 / count)));
+    }
+
+    /**
+     * The number of times that the references are timed.
+     */
+    private static final int ROUNDS = 200;
+
+    /**
+     * The number of times each reference is in the bulk list.
+     */
+    private static final int BULK_REPEATS = 10;
+
+    private static final String[] DEFAULT_REFERENCES = {
+        "Gen 1:1",
+        "jn 3:16",
+        "Rom 8:28-39",
+        "Ps 23",
+        "1 cor 13",
+        "Matt 5-7",
+        "Gen 1:1, Gen 1:3, Gen 1:5",
+        "Exo 2:1-10, Exo 3:1-11",
+        "Gen-Rev 22:21",
+        "Ge 1:26  3:22  11:7  20:13  31:7, 53  35:7",
+        "Gen 6:8, 19:19, 32:5, 33:8, 10, 15, 39:4, 47:25, 29, 50:4, Exo 33:12-13, 16-17, 34:9, Num 32:5, Judg 6:17, Rut 2:2, 10, 1Sa 1:18, 20:3, 27:5",
+        "Act 4:33, 11:23, 13:43, 14:3, 26, 15:11, 40, 18:27, 20:24, 32, Rom 1:5, 7, 3:24, 4:4, 16, 5:2, 15, 17, 20-6:1, 6:14-15, 11:5-6, 12:3, 6, 15:15, 16:20, 24",
+    };
+}
@@ -72,6 +72,15 @@ public interface IndexManager {
      */
     void scheduleIndexCreation(Book book);
 
+    /**
+     * Get the scheduler that builds the indexes of this IndexManager in the
+     * background, those asked for by the user first. This is to be preferred
+     * to calling {@link #scheduleIndexCreation(Book)} on a thread of one's own.
+     * 
+     * @return the scheduler of this IndexManager
+     */
+    IndexScheduler getIndexScheduler();
+
     /**
      * We have downloaded a search index to a zip file. It should be installed
      * from here.
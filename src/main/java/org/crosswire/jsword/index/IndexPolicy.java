@@ -86,4 +86,35 @@ public interface IndexPolicy {
      * @return whether there can only be one Book indexed at a time.
      */
     boolean isSerial();
+
+    /**
+     * The number of threads that extract the text of a Book while it is
+     * being indexed. With more than one, the Book is split into runs, by
+     * Bible book where it has them, which are indexed at the same time.
+     * Adapter default: 1.
+     * 
+     * @return the number of threads used to index a Book.
+     */
+    int getParallelism();
+
+    /**
+     * Indicates whether the words of the text should also be indexed
+     * backwards, so that searches for words by their ending, such as *salem,
+     * are as fast as those by their beginning. This makes the index larger.
+     * Adapter default: false.
+     * 
+     * @return true if the words should also be indexed backwards
+     */
+    boolean isReversedIndexed();
+
+    /**
+     * Indicates whether the text of verses, introductions and headings should
+     * be kept in the index as well as be searchable. The text is already in
+     * the Book, so a compact index that does not keep it is smaller and more
+     * of it stays in memory. The text is then read from the Book when it is
+     * asked of the index. Adapter default: true.
+     * 
+     * @return true if the text should be kept in the index
+     */
+    boolean isTextStored();
 }
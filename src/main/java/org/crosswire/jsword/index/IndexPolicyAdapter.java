@@ -80,4 +80,25 @@ public class IndexPolicyAdapter implements IndexPolicy {
         return false;
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.index.IndexPolicy#getParallelism()
+     */
+    public int getParallelism() {
+        return 1;
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.index.IndexPolicy#isReversedIndexed()
+     */
+    public boolean isReversedIndexed() {
+        return false;
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.index.IndexPolicy#isTextStored()
+     */
+    public boolean isTextStored() {
+        return true;
+    }
+
 }
@@ -0,0 +1,527 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.crosswire.common.progress.JobManager;
+import org.crosswire.common.progress.Progress;
+import org.crosswire.common.progress.WorkEvent;
+import org.crosswire.common.progress.WorkListener;
+import org.crosswire.jsword.book.Book;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds indexes in the background, so that asking for an index does not tie
+ * up the caller for the minutes it takes to build one.
+ *
+ * <p>
+ * Requests are queued and built by a bounded number of workers, those of the
+ * user first. Asking for a book that is already waiting or being built does
+ * nothing more, other than to make it more urgent. Bulk requests, such as
+ * reindexing every installed book, are only started while the machine has
+ * processors and memory to spare. A request of the user is never held back by
+ * them: it may run in a worker of its own should all the others be busy.
+ * </p>
+ *
+ * <p>
+ * Each index is built by {@link IndexManager#scheduleIndexCreation(Book)} on a
+ * pool of daemon threads. For several to be built at once, the
+ * {@link IndexPolicy} must not be serial. A build is cancelled through its
+ * CREATE_INDEX {@link Progress}, which the scheduler picks up as soon as the
+ * build creates it, so a cancel that comes before then is not lost.
+ * </p>
+ *
+ * <p>
+ * The scheduler of an IndexManager is had from
+ * {@link IndexManager#getIndexScheduler()}.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class IndexScheduler {
+    /**
+     * How soon a book needs its index.
+     */
+    public enum Priority {
+        /**
+         * The user is waiting for it.
+         */
+        INTERACTIVE,
+
+        /**
+         * It is part of a bulk request.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * Create a scheduler that builds indexes with the given manager.
+     *
+     * @param manager the manager that builds the indexes
+     * @param workers the number of indexes built at once
+     */
+    public IndexScheduler(IndexManager manager, int workers) {
+        this.manager = manager;
+        this.workers = Math.max(1, workers);
+        this.queue = new PriorityQueue<Task>();
+        this.running = new HashMap<Book, Task>();
+        this.lock = new Object();
+        this.maxLoad = DEFAULT_MAX_LOAD;
+        this.minFreeMemory = DEFAULT_MIN_FREE_MEMORY;
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "jsword-index-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.cancelHook = new WorkListener() {
+            public void workProgressed(WorkEvent ev) {
+                attach(ev.getJob());
+            }
+
+            public void workStateChanged(WorkEvent ev) {
+                attach(ev.getJob());
+            }
+        };
+        JobManager.addWorkListener(cancelHook);
+    }
+
+    /**
+     * Ask for the index of a book to be built.
+     *
+     * @param book the book to index
+     * @param priority how soon the index is needed
+     * @return false if the book was already waiting or being built, or the scheduler is shut down
+     */
+    public boolean schedule(Book book, Priority priority) {
+        synchronized (lock) {
+            if (shutdown || running.containsKey(book)) {
+                return false;
+            }
+
+            Task queued = find(book);
+            if (queued != null) {
+                if (priority.compareTo(queued.priority) < 0) {
+                    queue.remove(queued);
+                    queue.add(new Task(book, priority, queued.previous, queued.sequence));
+                    lock.notifyAll();
+                }
+                return false;
+            }
+
+            queue.add(new Task(book, priority, book.getIndexStatus(), sequence++));
+            book.setIndexStatus(IndexStatus.SCHEDULED);
+            startDispatcher();
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Stop the building of an index. A book that is waiting is taken off of
+     * the queue. A book that is being built has its Progress cancelled, should
+     * it still be possible to cancel it. When the build has not yet created
+     * its Progress, it is cancelled as soon as it does.
+     *
+     * @param book the book whose index is no longer wanted
+     * @return false if the book was neither waiting nor being built
+     */
+    public boolean cancel(Book book) {
+        Progress job;
+        synchronized (lock) {
+            Task task = find(book);
+            if (task != null) {
+                queue.remove(task);
+                book.setIndexStatus(task.previous);
+                return true;
+            }
+
+            task = running.get(book);
+            if (task == null) {
+                return false;
+            }
+            task.cancelled = true;
+            job = task.job;
+        }
+
+        // Otherwise the job is cancelled when it is attached.
+        if (job != null) {
+            cancelJob(job);
+        }
+        return true;
+    }
+
+    /**
+     * @param book the book
+     * @return whether the book is waiting or being built
+     */
+    public boolean isScheduled(Book book) {
+        synchronized (lock) {
+            return running.containsKey(book) || find(book) != null;
+        }
+    }
+
+    /**
+     * @return the books that are waiting, most urgent first
+     */
+    public List<Book> getQueue() {
+        synchronized (lock) {
+            PriorityQueue<Task> copy = new PriorityQueue<Task>(queue);
+            List<Book> books = new ArrayList<Book>(copy.size());
+            while (!copy.isEmpty()) {
+                books.add(copy.poll().book);
+            }
+            return books;
+        }
+    }
+
+    /**
+     * @return the books that are being built
+     */
+    public List<Book> getRunning() {
+        synchronized (lock) {
+            return new ArrayList<Book>(running.keySet());
+        }
+    }
+
+    /**
+     * @return the number of indexes built at once
+     */
+    public int getWorkers() {
+        synchronized (lock) {
+            return workers;
+        }
+    }
+
+    /**
+     * Change the number of indexes built at once. Builds that are under way
+     * are not stopped when it is lowered.
+     *
+     * @param workers the number of indexes built at once
+     */
+    public void setWorkers(int workers) {
+        synchronized (lock) {
+            this.workers = Math.max(1, workers);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the system load, per processor, above which background builds wait
+     */
+    public double getMaxLoad() {
+        synchronized (lock) {
+            return maxLoad;
+        }
+    }
+
+    /**
+     * Set how busy the machine may be for a background build to start. The
+     * load is the system load average divided by the number of processors,
+     * so 1.0 is every processor being busy. Where the load is not known, as on
+     * Windows, it is not taken into account.
+     *
+     * @param maxLoad the load per processor or 0 for no limit
+     */
+    public void setMaxLoad(double maxLoad) {
+        synchronized (lock) {
+            this.maxLoad = maxLoad;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the memory that needs to be free for a background build to start
+     */
+    public long getMinFreeMemory() {
+        synchronized (lock) {
+            return minFreeMemory;
+        }
+    }
+
+    /**
+     * Set how much of the memory that the JVM may use has to be free for a
+     * background build to start.
+     *
+     * @param minFreeMemory the memory in bytes or 0 for no limit
+     */
+    public void setMinFreeMemory(long minFreeMemory) {
+        synchronized (lock) {
+            this.minFreeMemory = minFreeMemory;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stop scheduling. Books that are waiting are dropped; builds that are
+     * under way run to completion unless cancelled.
+     */
+    public void shutDown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (Task task : queue) {
+                task.book.setIndexStatus(task.previous);
+            }
+            queue.clear();
+            executor.shutdown();
+            lock.notifyAll();
+        }
+        JobManager.removeWorkListener(cancelHook);
+    }
+
+    /**
+     * Start builds as workers become free, until shut down.
+     */
+    private void dispatch() {
+        synchronized (lock) {
+            while (!shutdown) {
+                Task next = queue.peek();
+                if (next != null && canStart(next)) {
+                    queue.poll();
+                    running.put(next.book, next);
+                    start(next);
+                    continue;
+                }
+
+                try {
+                    // When held back by the load, look again in a while.
+                    lock.wait(next == null ? 0 : THROTTLE_WAIT);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            dispatcher = null;
+        }
+    }
+
+    /**
+     * Whether a book can be built now. The caller must hold the lock.
+     */
+    private boolean canStart(Task task) {
+        if (task.priority == Priority.INTERACTIVE) {
+            // The user always has a worker of their own.
+            return running.size() < workers + 1;
+        }
+        return running.size() < workers && !isThrottled();
+    }
+
+    /**
+     * @return whether the machine is too busy for a background build
+     */
+    private boolean isThrottled() {
+        if (maxLoad > 0) {
+            double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+            if (load >= 0 && load / Runtime.getRuntime().availableProcessors() > maxLoad) {
+                log.debug("Holding back indexing, the load is {}", Double.toString(load));
+                return true;
+            }
+        }
+
+        if (minFreeMemory > 0) {
+            Runtime rt = Runtime.getRuntime();
+            long free = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+            if (free < minFreeMemory) {
+                log.debug("Holding back indexing, only {} bytes are free", Long.toString(free));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Build an index on a thread of the pool. The caller must hold the lock.
+     */
+    private void start(final Task task) {
+        executor.execute(new Runnable() {
+            public void run() {
+                Thread worker = Thread.currentThread();
+                worker.setPriority(task.priority == Priority.INTERACTIVE ? Thread.NORM_PRIORITY : Thread.MIN_PRIORITY);
+                try {
+                    if (task.cancelled) {
+                        task.book.setIndexStatus(task.previous);
+                    } else {
+                        manager.scheduleIndexCreation(task.book);
+                    }
+                } finally {
+                    worker.setPriority(Thread.NORM_PRIORITY);
+                    synchronized (lock) {
+                        running.remove(task.book);
+                        lock.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Give a build that is under way the Progress that it has created, so that
+     * it can be cancelled. Should the build have been cancelled before it had
+     * one, it is cancelled now.
+     */
+    private void attach(Progress job) {
+        if (job.isFinished()) {
+            return;
+        }
+
+        boolean cancelled = false;
+        synchronized (lock) {
+            for (Task task : running.values()) {
+                if (task.job == null && task.jobID.equals(job.getJobID())) {
+                    task.job = job;
+                    cancelled = task.cancelled;
+                    break;
+                }
+            }
+        }
+
+        if (cancelled) {
+            cancelJob(job);
+        }
+    }
+
+    private void cancelJob(Progress job) {
+        if (job.isCancelable()) {
+            job.cancel();
+        } else {
+            log.debug("Too late to cancel {}", job.getJobName());
+        }
+    }
+
+    /**
+     * The caller must hold the lock.
+     */
+    private void startDispatcher() {
+        if (dispatcher == null && !shutdown) {
+            dispatcher = new Thread(new Runnable() {
+                public void run() {
+                    dispatch();
+                }
+            }, "jsword-index-scheduler");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+    }
+
+    /**
+     * The caller must hold the lock.
+     */
+    private Task find(Book book) {
+        for (Task task : queue) {
+            if (task.book.equals(book)) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A book to be indexed. The most urgent come first, and those equally
+     * urgent in the order they were asked for.
+     */
+    private static final class Task implements Comparable<Task> {
+        Task(Book book, Priority priority, IndexStatus previous, long sequence) {
+            this.book = book;
+            this.priority = priority;
+            this.previous = previous;
+            this.sequence = sequence;
+            this.jobID = String.format(Progress.CREATE_INDEX, book.getInitials());
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Comparable#compareTo(java.lang.Object)
+         */
+        public int compareTo(Task o) {
+            int result = priority.compareTo(o.priority);
+            if (result == 0) {
+                result = sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+            }
+            return result;
+        }
+
+        final Book book;
+        final Priority priority;
+
+        /**
+         * The status of the book's index before it was scheduled, restored if it is cancelled.
+         */
+        final IndexStatus previous;
+        final long sequence;
+
+        /**
+         * The ID of the Progress of the build.
+         */
+        final String jobID;
+        volatile boolean cancelled;
+
+        /**
+         * The Progress of the build, once it has one. Guarded by the lock.
+         */
+        Progress job;
+    }
+
+    /**
+     * How long to wait before looking again whether the machine is still too busy, in milliseconds.
+     */
+    private static final long THROTTLE_WAIT = 5000;
+
+    /**
+     * By default background builds wait while every processor is busy.
+     */
+    private static final double DEFAULT_MAX_LOAD = 1.0;
+
+    /**
+     * By default background builds wait while less than 32MB is free.
+     */
+    private static final long DEFAULT_MIN_FREE_MEMORY = 32L * 1024 * 1024;
+
+    private final IndexManager manager;
+    private final PriorityQueue<Task> queue;
+    private final Map<Book, Task> running;
+    private final Object lock;
+    private final ExecutorService executor;
+    private final WorkListener cancelHook;
+    private int workers;
+    private double maxLoad;
+    private long minFreeMemory;
+    private long sequence;
+    private boolean shutdown;
+    private Thread dispatcher;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    /**
+     * The log stream
+     */
+    private static final Logger log = LoggerFactory.getLogger(IndexScheduler.class);
+}
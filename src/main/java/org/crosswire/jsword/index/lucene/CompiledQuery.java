@@ -0,0 +1,176 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.index.Index;
+import org.crosswire.jsword.index.query.AndNotQuery;
+import org.crosswire.jsword.index.query.AndQuery;
+import org.crosswire.jsword.index.query.BaseQuery;
+import org.crosswire.jsword.index.query.BinaryQuery;
+import org.crosswire.jsword.index.query.BlurQuery;
+import org.crosswire.jsword.index.query.OrQuery;
+import org.crosswire.jsword.index.query.Query;
+import org.crosswire.jsword.index.query.RangeQuery;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.RestrictionType;
+
+/**
+ * A query tree that is handed to Lucene as a whole when searching a
+ * LuceneIndex. Rather than each part finding all of its verses and the parts
+ * being combined afterwards:
+ * <ul>
+ * <li>AND, OR and AND NOT of plain queries become a single Lucene query.</li>
+ * <li>A range, or its exclusion, becomes a filter applied while searching.</li>
+ * <li>Only a blur is combined afterwards, since Lucene knows nothing of
+ * neighboring verses.</li>
+ * </ul>
+ * Any other index is searched with the query tree as usual.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+final class CompiledQuery implements Query {
+    /**
+     * Wrap a query tree to be searched as a whole.
+     *
+     * @param tree
+     *            the query tree
+     */
+    CompiledQuery(Query tree) {
+        this.tree = tree;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.crosswire.jsword.index.query.Query#find(org.crosswire.jsword.index
+     * .Index)
+     */
+    public Key find(Index index) throws BookException {
+        if (index instanceof LuceneIndex) {
+            return find((LuceneIndex) index, tree, null, false);
+        }
+        return tree.find(index);
+    }
+
+    /**
+     * @return the query tree
+     */
+    Query getTree() {
+        return tree;
+    }
+
+    /**
+     * Search for a part of the tree within, or outside of, a passage.
+     */
+    private static Key find(LuceneIndex index, Query query, Key restriction, boolean excluded) throws BookException {
+        if (restriction == null && query instanceof AndQuery) {
+            AndQuery and = (AndQuery) query;
+            if (and.getLeftQuery() instanceof RangeQuery) {
+                Key range = and.getLeftQuery().find(index);
+                if (range.isEmpty()) {
+                    return range;
+                }
+                return find(index, and.getRightQuery(), range, false);
+            }
+        }
+
+        if (restriction == null && query instanceof AndNotQuery) {
+            AndNotQuery andNot = (AndNotQuery) query;
+            if (andNot.getRightQuery() instanceof RangeQuery) {
+                Key range = andNot.getRightQuery().find(index);
+                if (range.isEmpty()) {
+                    return find(index, andNot.getLeftQuery(), null, false);
+                }
+                return find(index, andNot.getLeftQuery(), range, true);
+            }
+        }
+
+        if (query instanceof BlurQuery) {
+            BlurQuery blur = (BlurQuery) query;
+            // The restriction applies to what is found, not to what it is near.
+            Key left = find(index, blur.getLeftQuery(), restriction, excluded);
+            if (left.isEmpty()) {
+                return left;
+            }
+
+            Key right = find(index, blur.getRightQuery(), null, false);
+            if (right.isEmpty()) {
+                return right;
+            }
+
+            right.blur(blur.getFactor(), RestrictionType.getDefaultBlurRestriction());
+            left.retainAll(right);
+            return left;
+        }
+
+        String lucene = toLucene(query);
+        if (lucene != null) {
+            return index.find(lucene, restriction, excluded);
+        }
+
+        // Lucene cannot do this part, so do it as usual and restrict the results.
+        Key found = query.find(index);
+        if (restriction != null) {
+            if (excluded) {
+                found.removeAll(restriction);
+            } else {
+                found.retainAll(restriction);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Express a part of the tree in Lucene's query syntax.
+     *
+     * @return the Lucene query or null if it cannot be expressed
+     */
+    private static String toLucene(Query query) {
+        if (query instanceof BaseQuery) {
+            String search = ((BaseQuery) query).getQuery();
+            return search == null || search.trim().length() == 0 ? null : search;
+        }
+
+        if (!(query instanceof AndQuery || query instanceof OrQuery || query instanceof AndNotQuery)) {
+            return null;
+        }
+
+        BinaryQuery binary = (BinaryQuery) query;
+        String left = toLucene(binary.getLeftQuery());
+        String right = toLucene(binary.getRightQuery());
+        if (left == null || right == null) {
+            return null;
+        }
+
+        StringBuilder buf = new StringBuilder();
+        if (query instanceof OrQuery) {
+            buf.append('(').append(left).append(") (").append(right).append(')');
+        } else {
+            buf.append("+(").append(left).append(')');
+            buf.append(query instanceof AndQuery ? " +(" : " -(").append(right).append(')');
+        }
+        return buf.toString();
+    }
+
+    private final Query tree;
+}
@@ -25,13 +25,29 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
@@ -51,11 +67,15 @@ import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookData;
 import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.FeatureType;
+import org.crosswire.jsword.book.KeyType;
 import org.crosswire.jsword.book.OSISUtil;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordBookMetaData;
 import org.crosswire.jsword.index.AbstractIndex;
 import org.crosswire.jsword.index.IndexPolicy;
 import org.crosswire.jsword.index.IndexStatus;
 import org.crosswire.jsword.index.lucene.analysis.LuceneAnalyzer;
+import org.crosswire.jsword.index.lucene.analysis.ReversedAnalyzer;
 import org.crosswire.jsword.index.search.SearchModifier;
 import org.crosswire.jsword.passage.AbstractPassage;
 import org.crosswire.jsword.passage.Key;
@@ -69,6 +89,7 @@ import org.crosswire.jsword.versification.system.Versifications;
 import org.jdom2.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
 
 /**
  * Implement the SearchEngine using Lucene as the search engine.
@@ -95,6 +116,12 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
      */
     public static final String FIELD_BODY_STEM = "contentStem";
 
+    /**
+     * The Lucene field for the text contents, with each word spelled backwards.
+     * Only present when the IndexPolicy asks for it.
+     */
+    public static final String FIELD_BODY_REVERSED = "contentReversed";
+
     /**
      * The Lucene field for the strong numbers
      */
@@ -135,12 +162,32 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
 
     public static final String FIELD_INTRO_STEM = "introStem";
 
+    /**
+     * Loads only the key of a document, passing over any text kept with it.
+     */
+    static final FieldSelector KEY_SELECTOR = new MapFieldSelector(FIELD_KEY);
+
+    /**
+     * Loads only the text of a document.
+     */
+    private static final FieldSelector TEXT_SELECTOR = new MapFieldSelector(FIELD_BODY, FIELD_INTRO);
+
     /**
      * An estimate of the percent of time spent indexing.
      * The remaining time, if any, is spent doing cleanup.
      */
     private static final int WORK_ESTIMATE = 98;
 
+    /**
+     * The most keys indexed by a worker at a time, when indexing in parallel.
+     */
+    private static final int RUN_SIZE = 1000;
+
+    /**
+     * The number of seconds to wait for workers to stop when indexing is cancelled.
+     */
+    private static final long STOP_WAIT = 60;
+
     /**
      * Read an existing index and use it.
      * 
@@ -218,7 +265,11 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
                     writer = new IndexWriter(destination, analyzer, true, IndexWriter.MaxFieldLength.UNLIMITED);
                     writer.setRAMBufferSizeMB(policy.getRAMBufferSize());
 
-                    generateSearchIndexImpl(job, errors, writer, book.getGlobalKeyList(), 0, policy);
+                    if (policy.getParallelism() > 1) {
+                        generateSearchIndexParallel(job, errors, writer, book.getGlobalKeyList(), policy);
+                    } else {
+                        generateSearchIndexImpl(job, errors, writer, book.getGlobalKeyList(), 0, new KeyIndexer(policy));
+                    }
 
                 } finally {
                     if (writer != null) {
@@ -228,6 +279,7 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
 
                 job.setCancelable(false);
                 if (!job.isFinished()) {
+                    writeConcordance(tempPath);
                     if (!tempPath.renameTo(finalPath)) {
                         // TRANSLATOR: The search index could not be moved to it's final location.
                         throw new BookException(JSMsg.gettext("Installation failed."));
@@ -270,46 +322,144 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
     private void initDirectoryAndSearcher() {
         try {
             directory = FSDirectory.open(new File(path));
-            searcher = new IndexSearcher(directory, true);
+            IndexSearcher indexSearcher = new IndexSearcher(directory, true);
+            reversed = hasField(indexSearcher.getIndexReader(), FIELD_BODY_REVERSED);
+            searcher = indexSearcher;
         } catch (IOException ex) {
             log.warn("second load failure", ex);
         }
     }
 
+    /**
+     * @return whether any document of the index has the field
+     */
+    private static boolean hasField(IndexReader reader, String field) throws IOException {
+        TermEnum terms = reader.terms(new Term(field, ""));
+        try {
+            Term term = terms.term();
+            return term != null && field.equals(term.field());
+        } finally {
+            terms.close();
+        }
+    }
+
+    /**
+     * Write the concordance of the Strong's numbers of a Bible alongside its
+     * index. The index is still good without it, so failing to write it is
+     * not an error.
+     * 
+     * @param indexPath the directory of the index that was just written
+     */
+    private void writeConcordance(File indexPath) {
+        if (book.getBookMetaData().getKeyType() != KeyType.VERSE || !book.getBookMetaData().hasFeature(FeatureType.STRONGS_NUMBERS)) {
+            return;
+        }
+
+        Directory dir = null;
+        IndexReader reader = null;
+        try {
+            dir = FSDirectory.open(indexPath);
+            reader = IndexReader.open(dir, true);
+            StrongsConcordance.build(reader, getVersification(), new File(indexPath, StrongsConcordance.FILE_NAME));
+        } catch (IOException e) {
+            log.warn("Unable to write the Strong's concordance of {}", book.getInitials(), e);
+        } finally {
+            IOUtil.close(reader);
+            IOUtil.close(dir);
+        }
+    }
+
+    /**
+     * Get the concordance of the Strong's numbers of the Bible, which answers
+     * questions such as "all the occurrences of G26" without searching. It is
+     * written along with the index, so indexes that were built elsewhere or
+     * by older versions do not have one.
+     * 
+     * @return the concordance or null if the index has none
+     */
+    public synchronized StrongsConcordance getConcordance() {
+        if (!concordanceRead) {
+            concordanceRead = true;
+            try {
+                concordance = StrongsConcordance.load(new File(path, StrongsConcordance.FILE_NAME), getVersification());
+            } catch (IOException e) {
+                log.warn("Unable to read the Strong's concordance of {}", book.getInitials(), e);
+            }
+        }
+        return concordance;
+    }
+
+    /**
+     * @return the versification of the book
+     */
+    private Versification getVersification() {
+        return Versifications.instance().getVersification(book.getBookMetaData().getProperty("Versification"));
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.index.Index#find(java.lang.String)
      */
     public Key find(String search) throws BookException {
+        return find(search, null, false);
+    }
+
+    /**
+     * Find the set of references that satisfy the query, within or outside of
+     * a passage. The restriction is applied by Lucene while searching, so
+     * that, for example, ranked results are the best within the passage.
+     * 
+     * @param search
+     *            The text to search for
+     * @param restriction
+     *            The verses to search within or outside of, or null to search all
+     * @param excluded
+     *            Whether to search outside of the verses rather than within
+     * @return The references to the word
+     * @throws BookException
+     *             If the search failed
+     */
+    public Key find(String search, Key restriction, boolean excluded) throws BookException {
         String v11nName = book.getBookMetaData().getProperty("Versification").toString();
         Versification v11n = Versifications.instance().getVersification(v11nName);
 
         SearchModifier modifier = getSearchModifier();
         Key results = null;
 
+        boolean ranked = modifier != null && modifier.isRanked();
+        int maxResults = ranked ? modifier.getMaxResults() : 0;
+        String cacheKey = null;
+        Filter filter = null;
         if (search != null) {
+            cacheKey = normalize(search);
+            if (restriction != null) {
+                filter = new PassageFilter(v11n, restriction, excluded);
+                cacheKey += (excluded ? " -[" : " +[") + restriction.getOsisRef() + ']';
+            }
+            results = QueryCache.instance().get(book, v11n, cacheKey, ranked, maxResults);
+        }
+
+        if (search != null && results == null) {
             Throwable theCause = null;
             try {
-                Analyzer analyzer = new LuceneAnalyzer(book);
-
-                QueryParser parser = new QueryParser(Version.LUCENE_29, LuceneIndex.FIELD_BODY, analyzer);
+                QueryParser parser = new ReversingQueryParser(getAnalyzer(), reversed);
                 parser.setAllowLeadingWildcard(true);
                 Query query = parser.parse(search);
                 log.info("ParsedQuery- {}", query.toString());
 
                 // For ranking we use a PassageTally
-                if (modifier != null && modifier.isRanked()) {
+                if (ranked) {
                     PassageTally tally = new PassageTally(v11n);
                     tally.raiseEventSuppresion();
                     tally.raiseNormalizeProtection();
                     results = tally;
 
-                    TopScoreDocCollector collector = TopScoreDocCollector.create(modifier.getMaxResults(), false);
-                    searcher.search(query, collector);
+                    TopScoreDocCollector collector = TopScoreDocCollector.create(maxResults, false);
+                    searcher.search(query, filter, collector);
                     tally.setTotal(collector.getTotalHits());
                     ScoreDoc[] hits = collector.topDocs().scoreDocs;
                     for (int i = 0; i < hits.length; i++) {
                         int docId = hits[i].doc;
-                        Document doc = searcher.doc(docId);
+                        Document doc = searcher.doc(docId, KEY_SELECTOR);
                         Key key = VerseFactory.fromString(v11n, doc.get(LuceneIndex.FIELD_KEY));
                         // PassageTally understands a score of 0 as the verse
                         // not participating
@@ -328,7 +478,7 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
                         passage.raiseEventSuppresion();
                         passage.raiseNormalizeProtection();
                     }
-                    searcher.search(query, new VerseCollector(v11n, searcher, results));
+                    searcher.search(query, filter, new VerseCollector(v11n, searcher, results));
                     if (passage != null) {
                         passage.lowerNormalizeProtection();
                         passage.lowerEventSuppressionAndTest();
@@ -348,10 +498,12 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
                 // TRANSLATOR: Error condition: An unexpected error happened that caused search to fail.
                 throw new BookException(JSMsg.gettext("Search failed."), theCause);
             }
+
+            QueryCache.instance().put(book, cacheKey, ranked, maxResults, results);
         }
 
         if (results == null) {
-            if (modifier != null && modifier.isRanked()) {
+            if (ranked) {
                 results = new PassageTally(v11n);
             } else {
                 results = book.createEmptyKeyList();
@@ -360,6 +512,66 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
         return results;
     }
 
+    /**
+     * Get the analyzer for queries, which is made once since it can be shared.
+     */
+    private synchronized Analyzer getAnalyzer() {
+        if (analyzer == null) {
+            analyzer = new LuceneAnalyzer(book);
+        }
+        return analyzer;
+    }
+
+    /**
+     * Reduce a search to a form that is the same for equivalent searches,
+     * so that they share a cached result. Runs of white space do not matter.
+     */
+    private static String normalize(String search) {
+        return WHITESPACE.matcher(search.trim()).replaceAll(" ");
+    }
+
+    /**
+     * Get the canonical text of a verse, such as for highlighting the words
+     * that were found in it. It is read from the index when the index keeps
+     * it, and from the book otherwise.
+     * 
+     * @param key the verse
+     * @return the text of the verse, or of its introduction
+     * @throws BookException
+     *             If the text could not be read from the book
+     */
+    public String getText(Key key) throws BookException {
+        if (searcher instanceof IndexSearcher) {
+            try {
+                String text = getStoredText(((IndexSearcher) searcher).getIndexReader(), key.getOsisRef());
+                if (text != null) {
+                    return text;
+                }
+            } catch (IOException e) {
+                log.warn("Failed to read {} from the index, reading it from the book", key.getOsisRef(), e);
+            }
+        }
+
+        return OSISUtil.getCanonicalText(new BookData(book, key).getOsisFragment(false));
+    }
+
+    /**
+     * @return the text kept in the index for the key, or null if it is not kept
+     */
+    private static String getStoredText(IndexReader reader, String osisRef) throws IOException {
+        TermDocs docs = reader.termDocs(new Term(FIELD_KEY, osisRef));
+        try {
+            if (!docs.next()) {
+                return null;
+            }
+            Document doc = reader.document(docs.doc(), TEXT_SELECTOR);
+            String text = doc.get(FIELD_BODY);
+            return text != null ? text : doc.get(FIELD_INTRO);
+        } finally {
+            docs.close();
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.index.Index#getKey(java.lang.String)
      */
@@ -379,39 +591,11 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
 
     /**
      * Dig down into a Key indexing as we go.
-     * @param policy 
      */
-    private void generateSearchIndexImpl(Progress job, List<Key> errors, IndexWriter writer, Key key, int count, IndexPolicy policy) throws BookException, IOException {
-        String v11nName = null;
-        if (book.getBookMetaData().getProperty("Versification") != null) {
-            v11nName = book.getBookMetaData().getProperty("Versification").toString();
-        }
-        Versification v11n = Versifications.instance().getVersification(v11nName);
-        boolean includeStrongs = book.getBookMetaData().hasFeature(FeatureType.STRONGS_NUMBERS) && policy.isStrongsIndexed();
-        boolean includeXrefs = book.getBookMetaData().hasFeature(FeatureType.SCRIPTURE_REFERENCES) && policy.isXrefIndexed();
-        boolean includeNotes = book.getBookMetaData().hasFeature(FeatureType.FOOTNOTES) && policy.isNoteIndexed();
-        boolean includeHeadings = book.getBookMetaData().hasFeature(FeatureType.HEADINGS) && policy.isTitleIndexed();
-        boolean includeMorphology = book.getBookMetaData().hasFeature(FeatureType.MORPHOLOGY) && policy.isMorphIndexed();
-
+    private void generateSearchIndexImpl(Progress job, List<Key> errors, IndexWriter writer, Key key, int count, KeyIndexer indexer) throws IOException {
         String oldRootName = "";
         int percent = 0;
         String rootName = "";
-        BookData data = null;
-        Element osis = null;
-
-        // Set up for reuse.
-        Document doc = new Document();
-        Field keyField = new Field(FIELD_KEY, "", Field.Store.YES, Field.Index.NOT_ANALYZED, Field.TermVector.NO);
-        Field bodyField = new Field(FIELD_BODY, "", Field.Store.YES, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field bodyStemField = new Field(FIELD_BODY_STEM, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field introField = new Field(FIELD_INTRO, "", Field.Store.YES, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field introStemField = new Field(FIELD_INTRO_STEM, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field strongField = new Field(FIELD_STRONG, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.YES);
-        Field xrefField = new Field(FIELD_XREF, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field noteField = new Field(FIELD_NOTE, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field headingField = new Field(FIELD_HEADING, "", Field.Store.YES, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field headingStemField = new Field(FIELD_HEADING_STEM, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field morphologyField  = new Field(FIELD_MORPHOLOGY , "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
 
         int size = key.getCardinality();
         int subCount = count;
@@ -421,19 +605,262 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
             // However, tree keyed Books do. So we only index the leaf keys.
             // FIXME(DMS): Should not use recursion!!!!
             if (subkey.canHaveChildren()) {
-                generateSearchIndexImpl(job, errors, writer, subkey, subCount, policy);
+                generateSearchIndexImpl(job, errors, writer, subkey, subCount, indexer);
                 continue;
             }
 
-            data = new BookData(book, subkey);
-
-            try {
-                osis = data.getOsisFragment(false);
-            } catch (BookException e) {
+            if (!indexer.index(writer, subkey)) {
                 errors.add(subkey);
                 continue;
             }
 
+            // report progress
+            rootName = subkey.getRootName();
+            if (!rootName.equals(oldRootName)) {
+                oldRootName = rootName;
+                // Note, this does not cause progress to be updated
+                // It will show up the next time progress is updated.
+                job.setSectionName(rootName);
+            }
+
+            subCount++;
+            int oldPercent = percent;
+            percent = WORK_ESTIMATE * subCount / size;
+
+            // Only send out a max of 95 progress updates
+            if (oldPercent != percent) {
+                job.setWork(percent);
+            }
+
+            // This could take a long time ...
+            Thread.yield();
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Index the Book on several threads. The leaf keys are split into runs,
+     * by Bible book for verses, and each run is indexed by a worker into the
+     * shared writer. Progress is reported as runs finish, in order.
+     */
+    private void generateSearchIndexParallel(Progress job, List<Key> errors, IndexWriter writer, Key keys, final IndexPolicy policy) throws BookException, IOException {
+        List<List<Key>> runs = new ArrayList<List<Key>>();
+        int size = split(keys, runs);
+        log.debug("Number of keys = {} in {} runs", Integer.toString(size), Integer.toString(runs.size()));
+
+        final IndexWriter sharedWriter = writer;
+        ExecutorService executor = Executors.newFixedThreadPool(policy.getParallelism(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "jsword-index-" + book.getInitials());
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+
+        List<Future<List<Key>>> results = new ArrayList<Future<List<Key>>>(runs.size());
+        try {
+            for (final List<Key> run : runs) {
+                results.add(executor.submit(new Callable<List<Key>>() {
+                    public List<Key> call() throws IOException {
+                        // Each worker fills its own Document
+                        KeyIndexer indexer = new KeyIndexer(policy);
+                        List<Key> failed = new ArrayList<Key>();
+                        for (Key subkey : run) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                break;
+                            }
+                            if (!indexer.index(sharedWriter, subkey)) {
+                                failed.add(subkey);
+                            }
+                        }
+                        return failed;
+                    }
+                }));
+            }
+
+            int done = 0;
+            for (int i = 0; i < runs.size(); i++) {
+                List<Key> run = runs.get(i);
+                job.setSectionName(run.get(0).getRootName());
+                errors.addAll(results.get(i).get());
+                done += run.size();
+                job.setWork(WORK_ESTIMATE * done / size);
+            }
+        } catch (InterruptedException e) {
+            // The job was cancelled. Stop the workers before the writer is closed.
+            stop(executor, results);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            stop(executor, results);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            // TRANSLATOR: Common error condition: Some error happened while creating a search index.
+            throw new BookException(JSMsg.gettext("Failed to initialize Lucene search engine."), cause);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Gather the leaf keys into runs that belong together: verses of the same
+     * Bible book, up to a fixed number of keys.
+     * 
+     * @return the number of leaf keys
+     */
+    private int split(Key keys, List<List<Key>> runs) {
+        List<Key> leaves = new ArrayList<Key>();
+        gather(keys, leaves);
+        List<Key> run = null;
+        for (Key leaf : leaves) {
+            if (run == null || run.size() >= RUN_SIZE || !isSameBook(run.get(0), leaf)) {
+                run = new ArrayList<Key>();
+                runs.add(run);
+            }
+            run.add(leaf);
+        }
+        return leaves.size();
+    }
+
+    /**
+     * Dig down into a Key collecting the leaf keys, which are the ones that are indexed.
+     */
+    private void gather(Key key, List<Key> leaves) {
+        for (Key subkey : key) {
+            if (subkey.canHaveChildren()) {
+                gather(subkey, leaves);
+            } else {
+                leaves.add(subkey);
+            }
+        }
+    }
+
+    /**
+     * Stop the workers and wait for them, so that none is still adding to
+     * the writer.
+     */
+    private void stop(ExecutorService executor, List<Future<List<Key>>> results) {
+        for (Future<List<Key>> result : results) {
+            result.cancel(true);
+        }
+        executor.shutdownNow();
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (!executor.awaitTermination(STOP_WAIT, TimeUnit.SECONDS)) {
+                log.warn("Indexing threads for {} did not stop", book.getInitials());
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return whether the two keys are verses of the same Bible book, or are not verses
+     */
+    private static boolean isSameBook(Key first, Key second) {
+        if (first instanceof Verse && second instanceof Verse) {
+            return ((Verse) first).getBook() == ((Verse) second).getBook();
+        }
+        return !(first instanceof Verse) && !(second instanceof Verse);
+    }
+
+    /**
+     * Turns one key at a time into a Lucene Document and adds it to the index.
+     * The Document and its Fields are reused from key to key, so an indexer
+     * must only be used by one thread.
+     */
+    private final class KeyIndexer {
+        KeyIndexer(IndexPolicy policy) {
+            String v11nName = null;
+            if (book.getBookMetaData().getProperty("Versification") != null) {
+                v11nName = book.getBookMetaData().getProperty("Versification").toString();
+            }
+            v11n = Versifications.instance().getVersification(v11nName);
+            includeStrongs = book.getBookMetaData().hasFeature(FeatureType.STRONGS_NUMBERS) && policy.isStrongsIndexed();
+            includeXrefs = book.getBookMetaData().hasFeature(FeatureType.SCRIPTURE_REFERENCES) && policy.isXrefIndexed();
+            includeNotes = book.getBookMetaData().hasFeature(FeatureType.FOOTNOTES) && policy.isNoteIndexed();
+            includeHeadings = book.getBookMetaData().hasFeature(FeatureType.HEADINGS) && policy.isTitleIndexed();
+            includeMorphology = book.getBookMetaData().hasFeature(FeatureType.MORPHOLOGY) && policy.isMorphIndexed();
+            includeReversed = policy.isReversedIndexed();
+            Field.Store textStore = policy.isTextStored() ? Field.Store.YES : Field.Store.NO;
+
+            // Set up for reuse.
+            doc = new Document();
+            keyField = new Field(FIELD_KEY, "", Field.Store.YES, Field.Index.NOT_ANALYZED, Field.TermVector.NO);
+            bodyField = new Field(FIELD_BODY, "", textStore, Field.Index.ANALYZED, Field.TermVector.NO);
+            bodyStemField = new Field(FIELD_BODY_STEM, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+            // Only ever searched by wildcard, which neither scores nor needs positions.
+            bodyReversedField = new Field(FIELD_BODY_REVERSED, "", Field.Store.NO, Field.Index.ANALYZED_NO_NORMS, Field.TermVector.NO);
+            bodyReversedField.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+            introField = new Field(FIELD_INTRO, "", textStore, Field.Index.ANALYZED, Field.TermVector.NO);
+            introStemField = new Field(FIELD_INTRO_STEM, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+            strongField = new Field(FIELD_STRONG, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.YES);
+            xrefField = new Field(FIELD_XREF, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+            noteField = new Field(FIELD_NOTE, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+            headingField = new Field(FIELD_HEADING, "", textStore, Field.Index.ANALYZED, Field.TermVector.NO);
+            headingStemField = new Field(FIELD_HEADING_STEM, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+            morphologyField  = new Field(FIELD_MORPHOLOGY , "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+
+            // OSIS verses can be read straight from the raw text.
+            OSISFieldExtractor osis = null;
+            if (book instanceof SwordBook && OSIS_SOURCE_TYPE.equalsIgnoreCase(book.getProperty(SwordBookMetaData.KEY_SOURCE_TYPE))) {
+                try {
+                    osis = new OSISFieldExtractor();
+                } catch (SAXException e) {
+                    log.warn("Unable to stream the text of {}, building it instead", book.getInitials(), e);
+                }
+            }
+            extractor = osis;
+        }
+
+        /**
+         * Index a leaf key.
+         * 
+         * @param writer the index being built
+         * @param subkey the key to index
+         * @return false if the key could not be read
+         * @throws IOException if the index could not be written
+         */
+        boolean index(IndexWriter writer, Key subkey) throws IOException {
+            String canonicalText = null;
+            String strongs = null;
+            String xrefs = null;
+            String notes = null;
+            String headings = null;
+            String morphology = null;
+            if (isExtracted(subkey)) {
+                // Everything was gathered in one pass over the raw text.
+                canonicalText = extractor.getCanonicalText();
+                strongs = extractor.getStrongsNumbers();
+                // We pass book and key because the xref may not be valid and it needs to be reported.
+                xrefs = includeXrefs ? OSISUtil.getReferences(book, subkey, v11n, extractor.getReferences()) : null;
+                notes = extractor.getNotes();
+                headings = extractor.getHeadings();
+                morphology = extractor.getMorphologiesWithStrong();
+            } else {
+                BookData data = new BookData(book, subkey);
+                Element osis = null;
+                try {
+                    osis = data.getOsisFragment(false);
+                } catch (BookException e) {
+                    return false;
+                }
+
+                canonicalText = OSISUtil.getCanonicalText(osis);
+                strongs = includeStrongs ? OSISUtil.getStrongsNumbers(osis) : null;
+                xrefs = includeXrefs ? OSISUtil.getReferences(book, subkey, v11n, osis) : null;
+                notes = includeNotes ? OSISUtil.getNotes(osis) : null;
+                headings = includeHeadings ? OSISUtil.getHeadings(osis) : null;
+                morphology = includeMorphology ? OSISUtil.getMorphologiesWithStrong(osis) : null;
+            }
+
             // Remove all fields from the document
             doc.getFields().clear();
 
@@ -442,67 +869,85 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
             keyField.setValue(subkey.getOsisRef());
             doc.add(keyField);
 
-            final String canonicalText = OSISUtil.getCanonicalText(osis);
             if (subkey instanceof Verse && ((Verse) subkey).getVerse() == 0) {
                 addField(doc, introField, canonicalText);
                 addField(doc, introStemField, canonicalText);
             } else {
                 addField(doc, bodyField, canonicalText);
                 addField(doc, bodyStemField, canonicalText);
+                if (includeReversed) {
+                    addField(doc, bodyReversedField, canonicalText);
+                }
             }
 
             if (includeStrongs) {
-                addField(doc, strongField, OSISUtil.getStrongsNumbers(osis));
+                addField(doc, strongField, strongs);
             }
 
             if (includeXrefs) {
-                // We pass book and key because the xref may not be valid and it needs to be reported.
-                addField(doc, xrefField, OSISUtil.getReferences(this.book, subkey, v11n, osis));
+                addField(doc, xrefField, xrefs);
             }
 
             if (includeNotes) {
-                addField(doc, noteField, OSISUtil.getNotes(osis));
+                addField(doc, noteField, notes);
             }
 
             if (includeHeadings) {
-                final String headings = OSISUtil.getHeadings(osis);
                 addField(doc, headingField, headings);
                 addField(doc, headingStemField, headings);
             }
 
             if (includeMorphology) {
-                addField(doc, morphologyField, OSISUtil.getMorphologiesWithStrong(osis));
+                addField(doc, morphologyField, morphology);
             }
 
             // Add the document if we added more than just the key.
             if (doc.getFields().size() > 1) {
                 writer.addDocument(doc);
             }
+            return true;
+        }
 
-            // report progress
-            rootName = subkey.getRootName();
-            if (!rootName.equals(oldRootName)) {
-                oldRootName = rootName;
-                // Note, this does not cause progress to be updated
-                // It will show up the next time progress is updated.
-                job.setSectionName(rootName);
-            }
-
-            subCount++;
-            int oldPercent = percent;
-            percent = WORK_ESTIMATE * subCount / size;
-
-            // Only send out a max of 95 progress updates
-            if (oldPercent != percent) {
-                job.setWork(percent);
+        /**
+         * Read the raw text of a verse and gather its fields without rendering it.
+         * 
+         * @param subkey the key to index
+         * @return false if the key has to be rendered to be indexed
+         */
+        private boolean isExtracted(Key subkey) {
+            if (extractor == null || !(subkey instanceof Verse)) {
+                return false;
             }
 
-            // This could take a long time ...
-            Thread.yield();
-            if (Thread.currentThread().isInterrupted()) {
-                break;
+            try {
+                return extractor.extract(book.getRawText(subkey));
+            } catch (BookException e) {
+                // Rendering it will decide whether it can be indexed.
+                return false;
             }
         }
+
+        private final Versification v11n;
+        private final boolean includeStrongs;
+        private final boolean includeXrefs;
+        private final boolean includeNotes;
+        private final boolean includeHeadings;
+        private final boolean includeMorphology;
+        private final boolean includeReversed;
+        private final Document doc;
+        private final Field keyField;
+        private final Field bodyField;
+        private final Field bodyStemField;
+        private final Field bodyReversedField;
+        private final Field introField;
+        private final Field introStemField;
+        private final Field strongField;
+        private final Field xrefField;
+        private final Field noteField;
+        private final Field headingField;
+        private final Field headingStemField;
+        private final Field morphologyField;
+        private final OSISFieldExtractor extractor;
     }
 
     /**
@@ -520,6 +965,47 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
         }
     }
 
+    /**
+     * Parses searches, turning those for words by their ending, such as
+     * *salem, into searches of the words spelled backwards, such as melas*.
+     * Lucene finds the words of a prefix directly, while a leading wildcard
+     * has it look at every word of the text.
+     */
+    static final class ReversingQueryParser extends QueryParser {
+        ReversingQueryParser(Analyzer analyzer, boolean reversed) {
+            super(Version.LUCENE_29, LuceneIndex.FIELD_BODY, analyzer);
+            this.reversed = reversed;
+        }
+
+        /* (non-Javadoc)
+         * @see org.apache.lucene.queryParser.QueryParser#getWildcardQuery(java.lang.String, java.lang.String)
+         */
+        @Override
+        protected Query getWildcardQuery(String field, String termStr) throws ParseException {
+            if (!reversed || !FIELD_BODY.equals(field) || termStr.length() < 2 || !isWildcard(termStr.charAt(0))) {
+                return super.getWildcardQuery(field, termStr);
+            }
+
+            String pattern = ReversedAnalyzer.reverse(getLowercaseExpandedTerms() ? termStr.toLowerCase(getLocale()) : termStr);
+            // Wildcards at both ends gain nothing from being reversed.
+            if (isWildcard(pattern.charAt(0))) {
+                return super.getWildcardQuery(field, termStr);
+            }
+
+            int last = pattern.length() - 1;
+            if (pattern.charAt(last) == '*' && pattern.indexOf('*') == last && pattern.indexOf('?') < 0) {
+                return newPrefixQuery(new Term(FIELD_BODY_REVERSED, pattern.substring(0, last)));
+            }
+            return newWildcardQuery(new Term(FIELD_BODY_REVERSED, pattern));
+        }
+
+        private static boolean isWildcard(char c) {
+            return c == '*' || c == '?';
+        }
+
+        private final boolean reversed;
+    }
+
     /**
      * Could be null if the index has been closed down. This is helpful to third party applications which wish to have greater control over 
      * the underlying Lucene functionality.
@@ -552,6 +1038,32 @@ public class LuceneIndex extends AbstractIndex implements Closeable {
      */
     private Searcher searcher;
 
+    /**
+     * Whether the index has the text spelled backwards
+     */
+    private boolean reversed;
+
+    /**
+     * The concordance of the Strong's numbers, read on first use.
+     */
+    private StrongsConcordance concordance;
+    private boolean concordanceRead;
+
+    /**
+     * The analyzer used to parse queries
+     */
+    private Analyzer analyzer;
+
+    /**
+     * The SourceType of books whose raw text is OSIS.
+     */
+    private static final String OSIS_SOURCE_TYPE = "OSIS";
+
+    /**
+     * Runs of white space in a search
+     */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
     /**
      * A synchronization lock point to prevent us from doing 2 index runs at a
      * time.
@@ -38,6 +38,7 @@ import org.crosswire.jsword.index.Index;
 import org.crosswire.jsword.index.IndexManager;
 import org.crosswire.jsword.index.IndexPolicy;
 import org.crosswire.jsword.index.IndexPolicyAdapter;
+import org.crosswire.jsword.index.IndexScheduler;
 import org.crosswire.jsword.index.IndexStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -149,6 +150,7 @@ public class LuceneIndexManager implements IndexManager {
             if (NetUtil.getAsFile(storage).exists()) {
                 finalStatus = IndexStatus.DONE;
                 INDEXES.put(book, index);
+                QueryCache.instance().invalidate(book);
 
                 //update IndexVersion
                 InstalledIndex.instance().storeLatestVersionAsInstalledIndexMetadata(book);
@@ -162,6 +164,16 @@ public class LuceneIndexManager implements IndexManager {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.index.IndexManager#getIndexScheduler()
+     */
+    public synchronized IndexScheduler getIndexScheduler() {
+        if (scheduler == null) {
+            scheduler = new IndexScheduler(this, 1);
+        }
+        return scheduler;
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.index.IndexManager#installDownloadedIndex(org.crosswire.jsword.book.Book, java.net.URI)
      */
@@ -170,6 +182,7 @@ public class LuceneIndexManager implements IndexManager {
             URI storage = getStorageArea(book);
             File zip = NetUtil.getAsFile(tempDest);
             IOUtil.unpackZip(zip, NetUtil.getAsFile(storage));
+            QueryCache.instance().invalidate(book);
             //todo Index.Version management??
         } catch (IOException ex) {
             // TRANSLATOR: The search index could not be moved to it's final location.
@@ -211,6 +224,7 @@ public class LuceneIndexManager implements IndexManager {
             book.setIndexStatus(IndexStatus.UNDONE);
             book.resetSearcher();
             INDEXES.remove(book);
+            QueryCache.instance().invalidate(book);
 
             //Delete index Version metadata (InstalledIndex)
             InstalledIndex.instance().removeFromInstalledIndexMetadata(book);
@@ -266,6 +280,7 @@ public class LuceneIndexManager implements IndexManager {
 
     private IndexPolicy policy;
     private URI baseFolderURI;
+    private IndexScheduler scheduler;
 
     /**
      * The created indexes
@@ -37,6 +37,12 @@ import org.crosswire.jsword.index.query.RangeQuery;
  * blur specifier is either ~ or ~n, where ~ means adjacent verses, but ~n means
  * to blur by n verses.
  * 
+ * <p>
+ * When compiled, the query is searched as a whole in a Lucene index, with
+ * the range applied by Lucene while searching. Otherwise, and by default, each
+ * part of the query is searched for on its own and the results combined.
+ * </p>
+ * 
  * @see gnu.lgpl.License The GNU Lesser General Public License for details.
  * @author DM Smith
  */
@@ -92,9 +98,30 @@ public final class LuceneQueryBuilder implements QueryBuilder {
             }
         }
 
+        if (compiled && !NULL_QUERY.equals(query)) {
+            query = new CompiledQuery(query);
+        }
+
         return query;
     }
 
+    /**
+     * @return whether parsed queries are searched as a whole in Lucene indexes
+     */
+    public static boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Set whether parsed queries are searched as a whole in Lucene indexes,
+     * rather than part by part. Default: false.
+     * 
+     * @param compiled true to search queries as a whole
+     */
+    public static void setCompiled(boolean compiled) {
+        LuceneQueryBuilder.compiled = compiled;
+    }
+
     /**
      * The pattern of a range. This is anything that is contained between a
      * leading [] (but not containing a [ or ]), with a + or - optional prefix,
@@ -113,4 +140,9 @@ public final class LuceneQueryBuilder implements QueryBuilder {
      */
     private static final Query NULL_QUERY = new NullQuery();
 
+    /**
+     * Whether queries are searched as a whole.
+     */
+    private static volatile boolean compiled;
+
 }
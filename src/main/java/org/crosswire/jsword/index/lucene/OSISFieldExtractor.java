@@ -0,0 +1,319 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.crosswire.jsword.book.OSISUtil;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Gathers the text of every indexed field from the raw OSIS of a verse in a
+ * single pass of a SAX parser, without building a JDOM tree. The results are
+ * the same as those of {@link OSISUtil#getCanonicalText(org.jdom2.Element)},
+ * {@link OSISUtil#getStrongsNumbers(org.jdom2.Element)},
+ * {@link OSISUtil#getMorphologiesWithStrong(org.jdom2.Element)},
+ * {@link OSISUtil#getNotes(org.jdom2.Element)},
+ * {@link OSISUtil#getHeadings(org.jdom2.Element)} and the osisRefs of
+ * {@link OSISUtil#getReferences(org.crosswire.jsword.book.Book, org.crosswire.jsword.passage.Key, org.crosswire.jsword.versification.Versification, org.jdom2.Element)}
+ * on the verse as rendered by the OSISFilter.
+ *
+ * <p>
+ * Only well-formed text is handled. Text that is not is left to the
+ * OSISFilter, which knows how to repair it. An extractor is reused from one
+ * verse to the next and is not thread safe.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+final class OSISFieldExtractor extends DefaultHandler {
+    /**
+     * Create an extractor with its own parser.
+     *
+     * @throws SAXException if no parser can be had
+     */
+    OSISFieldExtractor() throws SAXException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setValidating(false);
+        try {
+            reader = factory.newSAXParser().getXMLReader();
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+        reader.setFeature("http://xml.org/sax/features/external-general-entities", false);
+        reader.setContentHandler(this);
+        reader.setErrorHandler(this);
+
+        text = new StringBuilder();
+        canonical = new StringBuilder();
+        strongs = new StringBuilder();
+        morphology = new StringBuilder();
+        notes = new ArrayList<StringBuilder>();
+        headings = new ArrayList<StringBuilder>();
+        references = new ArrayList<String>();
+        names = new ArrayList<String>();
+        excluded = new BitSet();
+        collectors = new ArrayList<StringBuilder>();
+        collecting = new BitSet();
+    }
+
+    /**
+     * Gather the fields of the raw text of a verse.
+     *
+     * @param raw the raw OSIS text of the verse
+     * @return false if the text is not well-formed, in which case the fields are not to be used
+     */
+    boolean extract(String raw) {
+        reset();
+        try {
+            // The text is a fragment, so house it as the OSISFilter does.
+            reader.parse(new InputSource(new StringReader(WRAPPER_START + raw + WRAPPER_END)));
+            return true;
+        } catch (SAXException e) {
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the canonical text of the verse
+     */
+    String getCanonicalText() {
+        return canonical.toString().trim();
+    }
+
+    /**
+     * @return the space separated Strong's numbers of the verse
+     */
+    String getStrongsNumbers() {
+        return strongs.toString().trim();
+    }
+
+    /**
+     * @return the space separated Strong's numbers of the verse, each with its morphology
+     */
+    String getMorphologiesWithStrong() {
+        return morphology.toString().trim();
+    }
+
+    /**
+     * @return the text of the notes of the verse that are not cross references
+     */
+    String getNotes() {
+        return join(notes);
+    }
+
+    /**
+     * @return the text of the titles of the verse
+     */
+    String getHeadings() {
+        return join(headings);
+    }
+
+    /**
+     * @return the osisRefs of the references of the verse
+     */
+    List<String> getReferences() {
+        return references;
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String, java.lang.String, java.lang.String, org.xml.sax.Attributes)
+     */
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attrs) throws SAXException {
+        flushText();
+        int depth = names.size();
+        names.add(localName);
+
+        // Notes, titles and references are not a part of the text unless they say so.
+        if (OSISUtil.OSIS_ELEMENT_NOTE.equals(localName) || OSISUtil.OSIS_ELEMENT_TITLE.equals(localName) || OSISUtil.OSIS_ELEMENT_REFERENCE.equals(localName)) {
+            if (!Boolean.valueOf(attrs.getValue("", OSISUtil.OSIS_ATTR_CANONICAL)).booleanValue()) {
+                excluded.set(depth);
+                nonCanonical++;
+            }
+        }
+
+        if (OSISUtil.OSIS_ELEMENT_W.equals(localName)) {
+            String lemma = attrs.getValue("", OSISUtil.ATTRIBUTE_W_LEMMA);
+            OSISUtil.appendLexicalInformation(strongs, lemma, null, false);
+            OSISUtil.appendLexicalInformation(morphology, lemma, attrs.getValue("", OSISUtil.ATTRIBUTE_W_MORPH), true);
+        } else if (OSISUtil.OSIS_ELEMENT_REFERENCE.equals(localName)) {
+            String ref = attrs.getValue("", OSISUtil.OSIS_ATTR_REF);
+            if (ref != null) {
+                references.add(ref);
+            }
+        } else if (OSISUtil.OSIS_ELEMENT_NOTE.equals(localName)) {
+            if (!OSISUtil.NOTETYPE_REFERENCE.equals(attrs.getValue("", OSISUtil.OSIS_ATTR_TYPE))) {
+                collect(depth, notes);
+            }
+        } else if (OSISUtil.OSIS_ELEMENT_TITLE.equals(localName)) {
+            collect(depth, headings);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String, java.lang.String, java.lang.String)
+     */
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        flushText();
+        int depth = names.size() - 1;
+        names.remove(depth);
+        if (excluded.get(depth)) {
+            excluded.clear(depth);
+            nonCanonical--;
+        }
+        if (collecting.get(depth)) {
+            collecting.clear(depth);
+            collectors.remove(collectors.size() - 1);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+     */
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        // A text node may come in several pieces.
+        text.append(ch, start, length);
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#ignorableWhitespace(char[], int, int)
+     */
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        text.append(ch, start, length);
+    }
+
+    /**
+     * Hand a whole text node to the fields it belongs to.
+     */
+    private void flushText() {
+        if (text.length() == 0) {
+            return;
+        }
+
+        if (nonCanonical == 0) {
+            // Adjacent text is separated by whitespace, except within a seg.
+            int lastIndex = canonical.length() - 1;
+            if (lastIndex >= 0 && !Character.isWhitespace(canonical.charAt(lastIndex)) && !Character.isWhitespace(text.charAt(0))
+                    && !OSISUtil.OSIS_ELEMENT_SEG.equals(names.get(names.size() - 1)))
+            {
+                canonical.append(' ');
+            }
+            canonical.append(text);
+        }
+
+        for (StringBuilder collector : collectors) {
+            collector.append(text);
+        }
+
+        text.setLength(0);
+    }
+
+    /**
+     * Start gathering the text of an element, in document order.
+     */
+    private void collect(int depth, List<StringBuilder> into) {
+        StringBuilder collector = new StringBuilder();
+        into.add(collector);
+        collectors.add(collector);
+        collecting.set(depth);
+    }
+
+    private static String join(List<StringBuilder> parts) {
+        StringBuilder buffer = new StringBuilder();
+        for (StringBuilder part : parts) {
+            if (buffer.length() > 0) {
+                buffer.append(' ');
+            }
+            buffer.append(part);
+        }
+        return buffer.toString();
+    }
+
+    private void reset() {
+        text.setLength(0);
+        canonical.setLength(0);
+        strongs.setLength(0);
+        morphology.setLength(0);
+        notes.clear();
+        headings.clear();
+        references.clear();
+        names.clear();
+        excluded.clear();
+        collectors.clear();
+        collecting.clear();
+        nonCanonical = 0;
+    }
+
+    private static final String WRAPPER_START = "<xxx>";
+    private static final String WRAPPER_END = "</xxx>";
+
+    private final XMLReader reader;
+
+    /**
+     * The text node being read.
+     */
+    private final StringBuilder text;
+    private final StringBuilder canonical;
+    private final StringBuilder strongs;
+    private final StringBuilder morphology;
+    private final List<StringBuilder> notes;
+    private final List<StringBuilder> headings;
+    private final List<String> references;
+
+    /**
+     * The names of the open elements, outermost first.
+     */
+    private final List<String> names;
+
+    /**
+     * The depths of the open elements that are not canonical.
+     */
+    private final BitSet excluded;
+
+    /**
+     * The number of open elements that are not canonical.
+     */
+    private int nonCanonical;
+
+    /**
+     * The notes and titles that are open, and the depths at which they were opened.
+     */
+    private final List<StringBuilder> collectors;
+    private final BitSet collecting;
+}
@@ -0,0 +1,92 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.Versification;
+
+/**
+ * Restricts a Lucene search to the documents of some verses, or to those of
+ * all other verses. The verse of each document is taken from its
+ * {@link VerseOrdinals}, so the filter works on any index, however old, and
+ * the restriction is applied while searching rather than to the results.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class PassageFilter extends Filter {
+    /**
+     * Create a filter for the verses of a passage.
+     *
+     * @param v11n the versification of the book being searched
+     * @param passage the verses
+     * @param excluded true to keep the documents of the verses not in the passage
+     */
+    public PassageFilter(Versification v11n, Key passage, boolean excluded) {
+        this.v11n = v11n;
+        this.excluded = excluded;
+        this.verses = new BitSet(v11n.maximumOrdinal() + 1);
+        for (Key key : passage) {
+            if (key instanceof Verse) {
+                verses.set(((Verse) key).getOrdinal());
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.lucene.search.Filter#getDocIdSet(org.apache.lucene.index.IndexReader)
+     */
+    @Override
+    public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+        int[] ordinals = VerseOrdinals.get(reader, v11n);
+        OpenBitSet docs = new OpenBitSet(ordinals.length);
+        for (int doc = 0; doc < ordinals.length; doc++) {
+            int ordinal = ordinals[doc];
+            if (ordinal != VerseOrdinals.NONE && verses.get(ordinal) != excluded) {
+                docs.fastSet(doc);
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * @return whether the filter keeps the verses not in the passage
+     */
+    public boolean isExcluded() {
+        return excluded;
+    }
+
+    /**
+     * Serialization ID
+     */
+    private static final long serialVersionUID = 4208164573927313108L;
+
+    private final transient Versification v11n;
+    private final BitSet verses;
+    private final boolean excluded;
+}
@@ -0,0 +1,362 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.crosswire.common.util.Filter;
+import org.crosswire.common.util.SegmentedCache;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.passage.AbstractPassage;
+import org.crosswire.jsword.passage.BitwisePassage;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.Versification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A process wide cache of the results of searching Lucene indexes. The same
+ * searches are asked for over and over, and each one otherwise means parsing
+ * the query and running it against the index.
+ *
+ * <p>
+ * Results are kept as the ordinals of the verses found, along with their
+ * scores for ranked searches. Callers are free to change what they are given,
+ * so each request gets a new Key built from the cached ordinals. The cache is
+ * bounded by the total number of verses that it holds. It is split into a few
+ * separately locked segments, each of which evicts its least recently used
+ * results first, so searches running at once seldom wait for each other. A
+ * segment is large enough to hold every verse of a Bible. The results of a
+ * book must be invalidated when its index is built, installed or deleted.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public final class QueryCache {
+    /**
+     * Create a cache holding at most maxVerses verses across all results.
+     *
+     * @param maxVerses the upper bound of the number of verses cached
+     */
+    private QueryCache(int maxVerses) {
+        this.results = new SegmentedCache<QueryKey, Result>(SEGMENTS, maxVerses) {
+            @Override
+            protected long weigh(Result result) {
+                return result.size();
+            }
+        };
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Allow the caller to initialize with their own settings. Should the
+     * QueryCache already be initialized a no-op will occur.
+     *
+     * @param maxVerses the upper bound of the number of verses cached
+     */
+    public static synchronized void init(int maxVerses) {
+        if (cache == null) {
+            cache = new QueryCache(maxVerses);
+        } else {
+            LOGGER.warn("The QueryCache has already been initialised, potentially with its default settings. The following value was ignored: maxVerses [{}]", Integer.toString(maxVerses));
+        }
+    }
+
+    /**
+     * Singleton instance method to return the one and only query cache
+     *
+     * @return the singleton
+     */
+    public static QueryCache instance() {
+        if (cache == null) {
+            init(DEFAULT_MAX_VERSES);
+        }
+        return cache;
+    }
+
+    /**
+     * Get the results of an earlier search.
+     *
+     * @param book the book that was searched
+     * @param v11n the versification of the book
+     * @param query the Lucene query
+     * @param ranked whether the results are ranked
+     * @param maxResults the most results of a ranked search
+     * @return a new copy of the results or null if they are not cached
+     */
+    public Key get(Book book, Versification v11n, String query, boolean ranked, int maxResults) {
+        Result result = results.get(new QueryKey(book, query, ranked, maxResults));
+
+        if (result == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return result.toKey(book, v11n);
+    }
+
+    /**
+     * Keep the results of a search, evicting the least recently used results
+     * to make room for them. Results that are not made of verses or that are
+     * too large for a segment are not kept.
+     *
+     * @param book the book that was searched
+     * @param query the Lucene query
+     * @param ranked whether the results are ranked
+     * @param maxResults the most results of a ranked search
+     * @param found the results of the search
+     */
+    public void put(Book book, String query, boolean ranked, int maxResults, Key found) {
+        Result result = Result.fromKey(found);
+        if (result != null) {
+            results.put(new QueryKey(book, query, ranked, maxResults), result);
+        }
+    }
+
+    /**
+     * Remove all the results of a book from the cache. This needs to be
+     * called when the index of a book is built, installed or deleted.
+     *
+     * @param book the book whose results are to be removed
+     */
+    public void invalidate(final Book book) {
+        results.removeAll(new Filter<QueryKey>() {
+            public boolean test(QueryKey key) {
+                return key.book.equals(book);
+            }
+        });
+    }
+
+    /**
+     * Remove all the results from the cache.
+     */
+    public void clear() {
+        results.clear();
+    }
+
+    /**
+     * @return the upper bound of the number of verses cached
+     */
+    public int getMaxVerses() {
+        return (int) results.getMaxWeight();
+    }
+
+    /**
+     * Change the upper bound of the number of verses cached, evicting
+     * results if needed. A bound of 0 turns the cache off.
+     *
+     * @param maxVerses the upper bound of the number of verses cached
+     */
+    public void setMaxVerses(int maxVerses) {
+        results.setMaxWeight(maxVerses);
+    }
+
+    /**
+     * @return the number of verses that are currently cached
+     */
+    public long getSize() {
+        return results.getWeight();
+    }
+
+    /**
+     * @return the number of results that are currently cached
+     */
+    public int getResultCount() {
+        return results.size();
+    }
+
+    /**
+     * @return the number of searches that were found in the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of searches that were not found in the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of results evicted to make room for others
+     */
+    public long getEvictions() {
+        return results.getEvictions();
+    }
+
+    /**
+     * The key of a cached result.
+     */
+    private static final class QueryKey {
+        QueryKey(Book book, String query, boolean ranked, int maxResults) {
+            this.book = book;
+            this.query = query;
+            this.ranked = ranked;
+            // The bound only matters to ranked searches
+            this.maxResults = ranked ? maxResults : 0;
+            int result = book.hashCode();
+            result = 31 * result + query.hashCode();
+            result = 31 * result + (ranked ? 1 : 0);
+            this.hash = 31 * result + this.maxResults;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey that = (QueryKey) obj;
+            return ranked == that.ranked && maxResults == that.maxResults && query.equals(that.query) && book.equals(that.book);
+        }
+
+        private final Book book;
+        private final String query;
+        private final boolean ranked;
+        private final int maxResults;
+        private final int hash;
+    }
+
+    /**
+     * The verses of a result, with their scores and total if ranked.
+     */
+    private static final class Result {
+        private Result(int[] ordinals, int[] tallies, int total) {
+            this.ordinals = ordinals;
+            this.tallies = tallies;
+            this.total = total;
+        }
+
+        /**
+         * @return the compact form of the results or null if they are not verses
+         */
+        static Result fromKey(Key found) {
+            if (!(found instanceof Passage)) {
+                return null;
+            }
+
+            PassageTally tally = found instanceof PassageTally ? (PassageTally) found : null;
+            int count = found.getCardinality();
+            int[] ordinals = new int[count];
+            int[] tallies = tally == null ? null : new int[count];
+            int i = 0;
+            for (Key key : found) {
+                if (!(key instanceof Verse) || i == count) {
+                    return null;
+                }
+                Verse verse = (Verse) key;
+                ordinals[i] = verse.getOrdinal();
+                if (tally != null) {
+                    tallies[i] = tally.getTallyOf(verse);
+                }
+                i++;
+            }
+            if (i != count) {
+                return null;
+            }
+            return new Result(ordinals, tallies, tally == null ? 0 : tally.getTotal());
+        }
+
+        /**
+         * Build a new Key holding the results.
+         */
+        Key toKey(Book book, Versification v11n) {
+            if (tallies != null) {
+                PassageTally tally = new PassageTally(v11n);
+                tally.raiseEventSuppresion();
+                tally.raiseNormalizeProtection();
+                tally.setTotal(total);
+                for (int i = 0; i < ordinals.length; i++) {
+                    tally.add(v11n.decodeOrdinal(ordinals[i]), tallies[i]);
+                }
+                tally.lowerNormalizeProtection();
+                tally.lowerEventSuppressionAndTest();
+                return tally;
+            }
+
+            Key key = book.createEmptyKeyList();
+            AbstractPassage passage = null;
+            if (key instanceof AbstractPassage) {
+                passage = (AbstractPassage) key;
+                passage.raiseEventSuppresion();
+                passage.raiseNormalizeProtection();
+            }
+            if (key instanceof BitwisePassage && ((BitwisePassage) key).getVersification().equals(v11n)) {
+                BitwisePassage bits = (BitwisePassage) key;
+                for (int ordinal : ordinals) {
+                    bits.addVersifiedOrdinal(ordinal);
+                }
+            } else {
+                for (int ordinal : ordinals) {
+                    key.addAll(v11n.decodeOrdinal(ordinal));
+                }
+            }
+            if (passage != null) {
+                passage.lowerNormalizeProtection();
+                passage.lowerEventSuppressionAndTest();
+            }
+            return key;
+        }
+
+        /**
+         * @return the number of verses in the result, counting an empty result as one
+         */
+        int size() {
+            return Math.max(1, ordinals.length);
+        }
+
+        private final int[] ordinals;
+        private final int[] tallies;
+        private final int total;
+    }
+
+    /**
+     * The default upper bound of the cache: a quarter of a million verses.
+     */
+    private static final int DEFAULT_MAX_VERSES = 256 * 1024;
+
+    /**
+     * The number of separately locked segments. Few enough that each holds a
+     * whole Bible by default.
+     */
+    private static final int SEGMENTS = 4;
+
+    private final SegmentedCache<QueryKey, Result> results;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    private static volatile QueryCache cache;
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryCache.class);
+}
@@ -0,0 +1,411 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.crosswire.common.util.IOUtil;
+import org.crosswire.jsword.book.study.StrongsNumber;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.versification.Versification;
+
+/**
+ * A concordance of the Strong's numbers of a Bible, and of each Strong's
+ * number with its morphology. For each it has the verses in which it is found
+ * and how many times it is found in each, so that questions such as "all the
+ * occurrences of G26" are answered without searching.
+ *
+ * <p>
+ * The concordance is written along with the search index, from its strong and
+ * morph fields. On disk and in memory, the verses of each entry are kept as
+ * the variable length differences of their ordinals, each followed by its
+ * count. They are only expanded when asked for.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public final class StrongsConcordance {
+    /**
+     * Create a concordance from what was read from disk.
+     */
+    private StrongsConcordance(Versification v11n, Map<String, Entry> strongs, Map<String, Entry> morphs) {
+        this.v11n = v11n;
+        this.strongs = strongs;
+        this.morphs = morphs;
+    }
+
+    /**
+     * Write the concordance of an index.
+     *
+     * @param reader the index of the Bible
+     * @param v11n the versification of the Bible
+     * @param file where the concordance is to be written
+     * @return false if the index has no Strong's numbers, in which case nothing was written
+     * @throws IOException if the index cannot be read or the concordance cannot be written
+     */
+    static boolean build(IndexReader reader, Versification v11n, File file) throws IOException {
+        int[] ordinals = VerseOrdinals.get(reader, v11n);
+        Map<String, Postings> strongs = new TreeMap<String, Postings>();
+        Map<String, Postings> morphs = new TreeMap<String, Postings>();
+        gather(reader, ordinals, LuceneIndex.FIELD_STRONG, strongs);
+        gather(reader, ordinals, LuceneIndex.FIELD_MORPHOLOGY, morphs);
+        if (strongs.isEmpty() && morphs.isEmpty()) {
+            return false;
+        }
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(v11n.getName());
+            write(out, strongs);
+            write(out, morphs);
+        } finally {
+            IOUtil.close(out);
+        }
+        return true;
+    }
+
+    /**
+     * Read a concordance that was written with an index.
+     *
+     * @param file the concordance
+     * @param v11n the versification of the Bible
+     * @return the concordance or null if there is none or it is not for this versification
+     * @throws IOException if the concordance cannot be read
+     */
+    static StrongsConcordance load(File file, Versification v11n) throws IOException {
+        if (!file.canRead()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !v11n.getName().equals(in.readUTF())) {
+                return null;
+            }
+            Map<String, Entry> strongs = read(in);
+            Map<String, Entry> morphs = read(in);
+            return new StrongsConcordance(v11n, strongs, morphs);
+        } finally {
+            IOUtil.close(in);
+        }
+    }
+
+    /**
+     * Get the verses in which a Strong's number is found, each ranked by how
+     * many times it is found there.
+     *
+     * @param strongsNumber the Strong's number, such as G26 or H07225
+     * @return the verses, which are empty if the number is not found
+     */
+    public PassageTally getOccurrences(String strongsNumber) {
+        return toTally(strongs.get(toKey(strongsNumber)));
+    }
+
+    /**
+     * Get the verses in which a Strong's number is found with a morphology,
+     * each ranked by how many times it is found there.
+     *
+     * @param strongsNumber the Strong's number, such as G26
+     * @param morph the morphology, such as robinson:N-ASF
+     * @return the verses, which are empty if the pair is not found
+     */
+    public PassageTally getOccurrences(String strongsNumber, String morph) {
+        return toTally(morphs.get(toKey(strongsNumber, morph)));
+    }
+
+    /**
+     * @param strongsNumber the Strong's number
+     * @return the number of verses in which the Strong's number is found
+     */
+    public int getVerseCount(String strongsNumber) {
+        Entry entry = strongs.get(toKey(strongsNumber));
+        return entry == null ? 0 : entry.verses;
+    }
+
+    /**
+     * @param strongsNumber the Strong's number
+     * @return the number of times the Strong's number is found
+     */
+    public int getOccurrenceCount(String strongsNumber) {
+        Entry entry = strongs.get(toKey(strongsNumber));
+        return entry == null ? 0 : entry.occurrences;
+    }
+
+    /**
+     * @param strongsNumber the Strong's number
+     * @param morph the morphology
+     * @return the number of times the Strong's number is found with the morphology
+     */
+    public int getOccurrenceCount(String strongsNumber, String morph) {
+        Entry entry = morphs.get(toKey(strongsNumber, morph));
+        return entry == null ? 0 : entry.occurrences;
+    }
+
+    /**
+     * @return the versification of the concordance
+     */
+    public Versification getVersification() {
+        return v11n;
+    }
+
+    /**
+     * Expand an entry into the verses it is found in.
+     */
+    private PassageTally toTally(Entry entry) {
+        PassageTally tally = new PassageTally(v11n);
+        if (entry == null) {
+            return tally;
+        }
+
+        tally.raiseEventSuppresion();
+        tally.raiseNormalizeProtection();
+        tally.setTotal(entry.verses);
+        byte[] data = entry.data;
+        int[] pos = new int[1];
+        int ordinal = 0;
+        for (int i = 0; i < entry.verses; i++) {
+            ordinal += readVInt(data, pos);
+            tally.add(v11n.decodeOrdinal(ordinal), readVInt(data, pos));
+        }
+        tally.lowerNormalizeProtection();
+        tally.lowerEventSuppressionAndTest();
+        return tally;
+    }
+
+    /**
+     * Collect the verses and counts of the terms of a field.
+     */
+    private static void gather(IndexReader reader, int[] ordinals, String field, Map<String, Postings> into) throws IOException {
+        boolean morph = LuceneIndex.FIELD_MORPHOLOGY.equals(field);
+        TermEnum terms = reader.terms(new Term(field, ""));
+        TermDocs docs = reader.termDocs();
+        try {
+            do {
+                Term term = terms.term();
+                // The terms are sorted by field, so those of the field are together.
+                if (term == null || !field.equals(term.field())) {
+                    break;
+                }
+
+                String key = morph ? toMorphKey(term.text()) : toKey(term.text());
+                if (key == null) {
+                    continue;
+                }
+
+                Postings postings = into.get(key);
+                if (postings == null) {
+                    postings = new Postings();
+                    into.put(key, postings);
+                }
+
+                docs.seek(terms);
+                while (docs.next()) {
+                    int ordinal = ordinals[docs.doc()];
+                    if (ordinal != VerseOrdinals.NONE) {
+                        postings.add(ordinal, docs.freq());
+                    }
+                }
+            } while (terms.next());
+        } finally {
+            terms.close();
+            docs.close();
+        }
+    }
+
+    private static void write(DataOutputStream out, Map<String, Postings> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Postings> entry : entries.entrySet()) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().write(out);
+        }
+    }
+
+    private static Map<String, Entry> read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, Entry> entries = new HashMap<String, Entry>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            int verses = in.readInt();
+            int occurrences = in.readInt();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            entries.put(key, new Entry(verses, occurrences, data));
+        }
+        return entries;
+    }
+
+    /**
+     * The form in which a Strong's number is kept, which is that of the
+     * strong field.
+     *
+     * @return the key or null if it is not a Strong's number
+     */
+    private static String toKey(String strongsNumber) {
+        if (strongsNumber == null) {
+            return null;
+        }
+        StrongsNumber number = new StrongsNumber(strongsNumber);
+        if (!number.isValid()) {
+            return null;
+        }
+        return number.isPart() ? number.getFullStrongsNumber() : number.getStrongsNumber();
+    }
+
+    /**
+     * The form in which a Strong's number and morphology pair is kept.
+     */
+    private static String toKey(String strongsNumber, String morph) {
+        String key = toKey(strongsNumber);
+        if (key == null || morph == null) {
+            return null;
+        }
+        return (key + MORPH_SEPARATOR + morph.replace(' ', MORPH_SEPARATOR)).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Terms of the morph field are a Strong's number and its morphology, separated by a '@'.
+     */
+    private static String toMorphKey(String term) {
+        int split = term.indexOf(MORPH_SEPARATOR);
+        if (split <= 0 || split == term.length() - 1) {
+            return null;
+        }
+        return toKey(term.substring(0, split), term.substring(split + 1));
+    }
+
+    private static void writeVInt(DataOutputStream out, int value) throws IOException {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVInt(byte[] data, int[] pos) {
+        int b = data[pos[0]++];
+        int value = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    /**
+     * The verses of an entry, as they are gathered from the index. A verse
+     * may be given more than once when several terms share an entry.
+     */
+    private static final class Postings {
+        Postings() {
+            pairs = new long[16];
+        }
+
+        void add(int ordinal, int count) {
+            if (size == pairs.length) {
+                pairs = Arrays.copyOf(pairs, size * 2);
+            }
+            pairs[size++] = ((long) ordinal << 32) | count;
+        }
+
+        /**
+         * Write the verses in order, with the counts of a verse summed.
+         */
+        void write(DataOutputStream out) throws IOException {
+            Arrays.sort(pairs, 0, size);
+            int verses = 0;
+            int occurrences = 0;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            int previous = 0;
+            int i = 0;
+            while (i < size) {
+                int ordinal = (int) (pairs[i] >>> 32);
+                int count = 0;
+                while (i < size && (int) (pairs[i] >>> 32) == ordinal) {
+                    count += (int) pairs[i++];
+                }
+                writeVInt(data, ordinal - previous);
+                writeVInt(data, count);
+                previous = ordinal;
+                verses++;
+                occurrences += count;
+            }
+            data.flush();
+            out.writeInt(verses);
+            out.writeInt(occurrences);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+
+        private long[] pairs;
+        private int size;
+    }
+
+    /**
+     * The verses of an entry, as they are kept in memory.
+     */
+    private static final class Entry {
+        Entry(int verses, int occurrences, byte[] data) {
+            this.verses = verses;
+            this.occurrences = occurrences;
+            this.data = data;
+        }
+
+        final int verses;
+        final int occurrences;
+        final byte[] data;
+    }
+
+    /**
+     * The name of the concordance within the index directory.
+     */
+    static final String FILE_NAME = "strongs.dat";
+
+    private static final int MAGIC = 0x4A53434E;
+    private static final int VERSION = 1;
+    private static final char MORPH_SEPARATOR = '@';
+
+    private final Versification v11n;
+    private final Map<String, Entry> strongs;
+    private final Map<String, Entry> morphs;
+}
@@ -26,6 +26,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Searcher;
+import org.crosswire.jsword.passage.BitwisePassage;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.NoSuchVerseException;
 import org.crosswire.jsword.passage.VerseFactory;
@@ -34,6 +35,12 @@ import org.crosswire.jsword.versification.Versification;
 /**
  * A simple collector of verses that stores the verses in a Key.
  * 
+ * <p>
+ * The verse of a hit is looked up in a table of verse ordinals for the
+ * segment, so neither the stored document is loaded nor its key parsed. A
+ * BitwisePassage of the same versification has the ordinal set directly.
+ * </p>
+ * 
  * @see gnu.lgpl.License The GNU Lesser General Public License for details.
  * @author DM Smith
  */
@@ -50,6 +57,9 @@ public class VerseCollector extends Collector {
         this.v11n = v11n;
         this.searcher = searcher;
         this.results = results;
+        if (results instanceof BitwisePassage && ((BitwisePassage) results).getVersification().equals(v11n)) {
+            this.bits = (BitwisePassage) results;
+        }
     }
 
     /*
@@ -70,7 +80,18 @@ public class VerseCollector extends Collector {
      */
     @Override
     public void collect(int docId) throws IOException {
-        Document doc = searcher.doc(docBase + docId);
+        int ordinal = ordinals[docId];
+        if (ordinal != VerseOrdinals.NONE) {
+            if (bits != null) {
+                bits.addVersifiedOrdinal(ordinal);
+            } else {
+                results.addAll(v11n.decodeOrdinal(ordinal));
+            }
+            return;
+        }
+
+        // The key is not a verse in this versification, so let it be reported.
+        Document doc = searcher.doc(docBase + docId, LuceneIndex.KEY_SELECTOR);
         try {
             Key key = VerseFactory.fromString(v11n, doc.get(LuceneIndex.FIELD_KEY));
             results.addAll(key);
@@ -95,6 +116,7 @@ public class VerseCollector extends Collector {
     @Override
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
         this.docBase = docBase;
+        this.ordinals = VerseOrdinals.get(reader, v11n);
     }
 
     /*
@@ -110,6 +132,8 @@ public class VerseCollector extends Collector {
     }
 
     private int docBase;
+    private int[] ordinals;
+    private BitwisePassage bits;
     private Versification v11n;
     private Searcher searcher;
     private Key results;
@@ -0,0 +1,147 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.crosswire.jsword.passage.NoSuchVerseException;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseFactory;
+import org.crosswire.jsword.versification.Versification;
+
+/**
+ * The verse of each document of an index, as an ordinal in the versification
+ * of the book. The table for a segment is built once, from the terms of the
+ * key field, so that hits can be turned into verses without loading the
+ * stored document or parsing its key. Tables are kept for as long as their
+ * segment is open.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+final class VerseOrdinals {
+    /**
+     * Prevent instantiation
+     */
+    private VerseOrdinals() {
+    }
+
+    /**
+     * Get the ordinal of the verse of each document in a segment.
+     *
+     * @param reader the reader of a single segment
+     * @param v11n the versification of the book
+     * @return the ordinals by document number, with {@link #NONE} for documents whose key is not a verse
+     * @throws IOException if the index cannot be read
+     */
+    static int[] get(IndexReader reader, Versification v11n) throws IOException {
+        Object segment = reader.getCoreCacheKey();
+        synchronized (TABLES) {
+            Table table = TABLES.get(segment);
+            if (table != null && table.v11n.equals(v11n)) {
+                return table.ordinals;
+            }
+        }
+
+        // Build outside of the lock; at worst two threads build the same table.
+        int[] ordinals = build(reader, v11n);
+        synchronized (TABLES) {
+            TABLES.put(segment, new Table(v11n, ordinals));
+        }
+        return ordinals;
+    }
+
+    /**
+     * Walk the terms of the key field, parsing each key once.
+     */
+    private static int[] build(IndexReader reader, Versification v11n) throws IOException {
+        int[] ordinals = new int[reader.maxDoc()];
+        Arrays.fill(ordinals, NONE);
+
+        TermEnum terms = reader.terms(new Term(LuceneIndex.FIELD_KEY, ""));
+        TermDocs docs = reader.termDocs();
+        try {
+            do {
+                Term term = terms.term();
+                // The terms are sorted by field, so the keys are together.
+                if (term == null || !LuceneIndex.FIELD_KEY.equals(term.field())) {
+                    break;
+                }
+
+                int ordinal = toOrdinal(v11n, term.text());
+                if (ordinal == NONE) {
+                    continue;
+                }
+
+                docs.seek(terms);
+                while (docs.next()) {
+                    ordinals[docs.doc()] = ordinal;
+                }
+            } while (terms.next());
+        } finally {
+            terms.close();
+            docs.close();
+        }
+        return ordinals;
+    }
+
+    /**
+     * @return the ordinal of the verse or NONE if the key is not a single verse
+     */
+    private static int toOrdinal(Versification v11n, String osisRef) {
+        try {
+            // An empty key, such as that of an introduction, has no verse.
+            Verse verse = VerseFactory.fromString(v11n, osisRef);
+            return verse == null ? NONE : verse.getOrdinal();
+        } catch (NoSuchVerseException e) {
+            return NONE;
+        }
+    }
+
+    /**
+     * The ordinals of a segment along with the versification they belong to.
+     */
+    private static final class Table {
+        Table(Versification v11n, int[] ordinals) {
+            this.v11n = v11n;
+            this.ordinals = ordinals;
+        }
+
+        final Versification v11n;
+        final int[] ordinals;
+    }
+
+    /**
+     * The ordinal of a document that has no verse.
+     */
+    static final int NONE = -1;
+
+    /**
+     * The tables by the core of their segment, so that they go when the segment does.
+     */
+    private static final Map<Object, Table> TABLES = new WeakHashMap<Object, Table>();
+}
@@ -42,22 +42,27 @@ import org.slf4j.LoggerFactory;
  * @see gnu.lgpl.License The GNU Lesser General Public License for details.
  * @author DM Smith
  */
-public class LuceneAnalyzer extends Analyzer {
+public final class LuceneAnalyzer extends Analyzer {
 
     public LuceneAnalyzer(Book book) {
         // The default analysis
-        analyzer = new PerFieldAnalyzerWrapper(new SimpleAnalyzer());
+        Analyzer bodyAnalyzer = new SimpleAnalyzer();
+        analyzer = new PerFieldAnalyzerWrapper(bodyAnalyzer);
 
         if (InstalledIndex.instance().getInstalledIndexDefaultVersion() > IndexMetadata.INDEX_VERSION_1_1) {
             // Content is analyzed using natural language analyzer
             // (stemming, stopword etc)
             Analyzer myNaturalLanguageAnalyzer = AnalyzerFactory.getInstance().createAnalyzer(book);
             analyzer.addAnalyzer(LuceneIndex.FIELD_BODY, myNaturalLanguageAnalyzer);
+            bodyAnalyzer = myNaturalLanguageAnalyzer;
             //analyzer.addAnalyzer(LuceneIndex.FIELD_HEADING, myNaturalLanguageAnalyzer);  //heading to use same analyzer as BODY
             //analyzer.addAnalyzer(LuceneIndex.FIELD_INTRO, myNaturalLanguageAnalyzer);
             log.debug("{}: Using languageAnalyzer: {}", book.getBookMetaData().getInitials(), myNaturalLanguageAnalyzer.getClass().getName());
         }
 
+        // Content is also indexed backwards, for searching by the end of words
+        analyzer.addAnalyzer(LuceneIndex.FIELD_BODY_REVERSED, new ReversedAnalyzer(bodyAnalyzer, LuceneIndex.FIELD_BODY));
+
         // Keywords are normalized to osisIDs
         analyzer.addAnalyzer(LuceneIndex.FIELD_KEY, new KeyAnalyzer());
 
@@ -0,0 +1,74 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene.analysis;
+
+import java.io.Reader;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.reverse.ReverseStringFilter;
+import org.apache.lucene.util.Version;
+
+/**
+ * Produces the words of another analyzer spelled backwards. A field analyzed
+ * this way finds words by their ending with a prefix search: *salem is melas*
+ * backwards.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public final class ReversedAnalyzer extends Analyzer {
+    /**
+     * Reverse the words of an analyzer.
+     *
+     * @param analyzer the analyzer whose words are reversed
+     * @param field the field whose analysis is reversed
+     */
+    public ReversedAnalyzer(Analyzer analyzer, String field) {
+        this.analyzer = analyzer;
+        this.field = field;
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.lucene.analysis.Analyzer#tokenStream(java.lang.String, java.io.Reader)
+     */
+    @Override
+    public TokenStream tokenStream(String fieldName, Reader reader) {
+        return new ReverseStringFilter(MATCH_VERSION, analyzer.tokenStream(field, reader));
+    }
+
+    /**
+     * Spell a word, or a search pattern, backwards as this analyzer does.
+     *
+     * @param word the word
+     * @return the word backwards
+     */
+    public static String reverse(String word) {
+        return ReverseStringFilter.reverse(MATCH_VERSION, word);
+    }
+
+    private final Analyzer analyzer;
+    private final String field;
+
+    /**
+     * Surrogate pairs are kept together from 3.1 on.
+     */
+    private static final Version MATCH_VERSION = Version.LUCENE_31;
+}
@@ -63,7 +63,7 @@ public class StrongsNumberFilter extends AbstractBookTokenFilter {
      * @see org.apache.lucene.analysis.TokenStream#incrementToken()
      */
     @Override
-    public boolean incrementToken() throws IOException {
+    public final boolean incrementToken() throws IOException {
         // If the term is suffixed with '!a' or 'a', where 'a' is a sequence of
         // 1 or more letters
         // then create a token without the suffix and also for the whole.
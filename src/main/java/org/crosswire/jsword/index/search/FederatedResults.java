@@ -0,0 +1,117 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageTally;
+
+/**
+ * The results of searching several books at once. Each book either has its
+ * results, failed with an error, or did not finish before the deadline. The
+ * verses found in all books are also merged into one ranked PassageTally.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class FederatedResults {
+    /**
+     * Create empty results, to be filled in by the FederatedSearcher.
+     *
+     * @param merged the tally into which the results of all books are merged
+     */
+    FederatedResults(PassageTally merged) {
+        this.merged = merged;
+        this.results = new LinkedHashMap<Book, Key>();
+        this.errors = new LinkedHashMap<Book, BookException>();
+        this.unfinished = new ArrayList<Book>();
+    }
+
+    /**
+     * @return the results of each book that finished, in the order the books were given
+     */
+    public Map<Book, Key> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * @param book the book that was searched
+     * @return the results of the book or null if it did not finish
+     */
+    public Key getResult(Book book) {
+        return results.get(book);
+    }
+
+    /**
+     * @return the books that could not be searched, with the reason why
+     */
+    public Map<Book, BookException> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * @return the books that were still being searched when time ran out
+     */
+    public List<Book> getUnfinished() {
+        return Collections.unmodifiableList(unfinished);
+    }
+
+    /**
+     * @return whether every book was searched in time
+     */
+    public boolean isComplete() {
+        return unfinished.isEmpty();
+    }
+
+    /**
+     * Get the verses of all books, in the chosen versification. A verse is
+     * ranked by the sum of its scores in ranked results, or by the number of
+     * books it was found in otherwise.
+     *
+     * @return the merged results
+     */
+    public PassageTally getMerged() {
+        return merged;
+    }
+
+    void addResult(Book book, Key result) {
+        results.put(book, result);
+    }
+
+    void addError(Book book, BookException error) {
+        errors.put(book, error);
+    }
+
+    void addUnfinished(Book book) {
+        unfinished.add(book);
+    }
+
+    private final PassageTally merged;
+    private final Map<Book, Key> results;
+    private final Map<Book, BookException> errors;
+    private final List<Book> unfinished;
+}
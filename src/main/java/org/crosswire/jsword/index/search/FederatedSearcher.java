@@ -0,0 +1,238 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.crosswire.jsword.JSMsg;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.VersificationsMapper;
+
+/**
+ * Searches several books at once, such as every installed Bible for a
+ * comparison of how each renders a word. Each book is searched on its own
+ * index, on a bounded pool of threads, and the search as a whole can be given
+ * a deadline. The verses found are merged into one versification.
+ *
+ * <p>
+ * Books are searched through {@link Book#find(SearchRequest)}, so each is
+ * searched the way it would be on its own. A book should not be searched by
+ * two searches at the same time, since its searcher holds the search
+ * modifier for the duration of a search.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class FederatedSearcher {
+    /**
+     * Create a searcher that searches as many books at once as there are
+     * processors.
+     */
+    public FederatedSearcher() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a searcher that searches at most the given number of books at once.
+     *
+     * @param threads the number of books searched at once
+     */
+    public FederatedSearcher(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Search books without a deadline.
+     *
+     * @param books the books to search
+     * @param request the search, which is made of each book
+     * @param target the versification into which the verses found are merged
+     * @return the results of each book and the merged results
+     */
+    public FederatedResults search(Collection<Book> books, SearchRequest request, Versification target) {
+        return search(books, request, target, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Search books, giving up on those that have not finished by the deadline.
+     *
+     * @param books the books to search
+     * @param request the search, which is made of each book
+     * @param target the versification into which the verses found are merged
+     * @param timeout how long the search may take, or 0 for no limit
+     * @param unit the unit of the timeout
+     * @return the results of each book and the merged results
+     */
+    public FederatedResults search(Collection<Book> books, SearchRequest request, Versification target, long timeout, TimeUnit unit) {
+        long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : 0;
+
+        List<Book> searched = new ArrayList<Book>(books);
+        List<Future<Key>> pending = new ArrayList<Future<Key>>(searched.size());
+        ExecutorService executor = getExecutor();
+        for (Book book : searched) {
+            pending.add(executor.submit(new BookSearch(book, request)));
+        }
+
+        PassageTally merged = new PassageTally(target);
+        merged.raiseEventSuppresion();
+        merged.raiseNormalizeProtection();
+        FederatedResults results = new FederatedResults(merged);
+        int total = 0;
+        boolean interrupted = false;
+        for (int i = 0; i < searched.size(); i++) {
+            Book book = searched.get(i);
+            Future<Key> future = pending.get(i);
+            try {
+                Key found;
+                if (interrupted) {
+                    future.cancel(true);
+                    results.addUnfinished(book);
+                    continue;
+                } else if (deadline == 0) {
+                    found = future.get();
+                } else {
+                    found = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+                results.addResult(book, found);
+                total += merge(merged, found, target);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                results.addUnfinished(book);
+            } catch (InterruptedException e) {
+                // Give up on what is left, but let the caller know.
+                interrupted = true;
+                future.cancel(true);
+                results.addUnfinished(book);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof BookException) {
+                    results.addError(book, (BookException) cause);
+                } else {
+                    // TRANSLATOR: Error condition: An unexpected error happened that caused search to fail.
+                    results.addError(book, new BookException(JSMsg.gettext("Search failed."), cause));
+                }
+            }
+        }
+        merged.setTotal(total);
+        merged.lowerNormalizeProtection();
+        merged.lowerEventSuppressionAndTest();
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+
+    /**
+     * Stop the threads of this searcher. Searches in progress carry on.
+     */
+    public synchronized void shutDown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Add the verses found in a book to the merged results.
+     *
+     * @return the number of hits the results stand for
+     */
+    private int merge(PassageTally merged, Key found, Versification target) {
+        if (found instanceof PassageTally) {
+            PassageTally tally = (PassageTally) found;
+            for (Key key : tally) {
+                Verse verse = (Verse) key;
+                merged.add(MAPPER.mapVerse(verse, target), tally.getTallyOf(verse));
+            }
+            return tally.getTotal();
+        }
+
+        int count = 0;
+        for (Key key : found) {
+            // Only verses can be merged; other books only have their own results.
+            if (!(key instanceof Verse)) {
+                return 0;
+            }
+            merged.add(MAPPER.mapVerse((Verse) key, target));
+            count++;
+        }
+        return count;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "jsword-federated-search");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            // let the threads go when nothing is being searched
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+
+    /**
+     * The search of a single book.
+     */
+    private static final class BookSearch implements Callable<Key> {
+        BookSearch(Book book, SearchRequest request) {
+            this.book = book;
+            this.request = request;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Callable#call()
+         */
+        public Key call() throws BookException {
+            return book.find(request);
+        }
+
+        private final Book book;
+        private final SearchRequest request;
+    }
+
+    private static final long KEEP_ALIVE = 30;
+    private static final VersificationsMapper MAPPER = VersificationsMapper.instance();
+
+    private final int threads;
+    private ExecutorService executor;
+}
@@ -383,6 +383,15 @@ public abstract class AbstractPassage implements Passage {
         return (Verse) retcode;
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.passage.Passage#visitOrdinals(org.crosswire.jsword.passage.OrdinalVisitor)
+     */
+    public void visitOrdinals(OrdinalVisitor visitor) {
+        for (Key key : this) {
+            visitor.visitOrdinal(((Verse) key).getOrdinal());
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.passage.Passage#getRangeAt(int, org.crosswire.jsword.passage.RestrictionType)
      */
@@ -515,8 +524,9 @@ public abstract class AbstractPassage implements Passage {
         raiseNormalizeProtection();
 
 
-        if (key instanceof RangedPassage) {
-            Iterator<VerseRange> it = ((RangedPassage) key).rangeIterator(RestrictionType.NONE);
+        if (key instanceof RangedPassage || key instanceof CompressedPassage) {
+            // Both find their ranges without going through every verse.
+            Iterator<VerseRange> it = ((Passage) key).rangeIterator(RestrictionType.NONE);
             while (it.hasNext()) {
                 // Avoid touching store to make thread safety easier.
                 add(it.next());
@@ -0,0 +1,303 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.passage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+
+/**
+ * Blurs a set of ordinals held as the 64 bit words of a bit set, a word at a
+ * time rather than a verse at a time.
+ *
+ * <p>
+ * Blurring up by d is done by or-ing the set with itself shifted up by 1, 2,
+ * 4, ... verses, each shift doubling the distance covered, and then by the
+ * binary digits of what is left over. So it takes about 2 log2(d) passes over
+ * the words. Where blurring is restricted to a chapter or a book, each shift is
+ * and-ed with a mask of the verses whose neighbour that distance below is in
+ * the same chapter or book. Those masks are built from a mask of where the
+ * chapters or books of the versification start, which is made once for each
+ * versification.
+ * </p>
+ *
+ * <p>
+ * Before blurring, verses that are adjacent but for the introductions to a
+ * chapter or a book between them are joined, as the ranges of a passage join
+ * them, so that the result is that of blurring the ranges of the passage.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+final class BitwiseBlur {
+    /**
+     * Prevent instantiation
+     */
+    private BitwiseBlur() {
+    }
+
+    /**
+     * Blur the verses of a bit set.
+     *
+     * @param v11n the versification of the ordinals
+     * @param words the bit set as from {@link java.util.BitSet#toLongArray()}
+     * @param blurDown the number of verses to blur toward the start of the Bible
+     * @param blurUp the number of verses to blur toward the end of the Bible
+     * @param restrict how far blurring may go
+     * @return the blurred bit set, with no ordinal past the end of the versification
+     */
+    static long[] blur(Versification v11n, long[] words, int blurDown, int blurUp, RestrictionType restrict) {
+        int maximumOrdinal = v11n.maximumOrdinal();
+        long[] result = new long[(maximumOrdinal >> 6) + 1];
+        System.arraycopy(words, 0, result, 0, Math.min(words.length, result.length));
+        clearTail(result, maximumOrdinal);
+
+        join(result, getIntros(v11n));
+
+        // No blur can go further than the whole of the Bible.
+        long[] starts = getStarts(v11n, restrict);
+        dilate(result, Math.min(blurDown, maximumOrdinal), starts, false);
+        dilate(result, Math.min(blurUp, maximumOrdinal), starts, true);
+        clearTail(result, maximumOrdinal);
+        return result;
+    }
+
+    /**
+     * Add the introductions that lie between two verses of the bit set and
+     * nothing else, as {@link Versification#isAdjacentVerse(Verse, Verse)}
+     * takes such verses to be adjacent.
+     *
+     * @param words the bit set
+     * @param intros the introductions that may be joined over
+     */
+    private static void join(long[] words, long[] intros) {
+        long[] below = words;
+        long[] above = words;
+        // A book introduction and that of its first chapter is the longest run to join over.
+        for (int i = 0; i < 2; i++) {
+            below = or(below, and(shiftUp(below, 1), intros));
+            above = or(above, and(shiftDown(above, 1), intros));
+        }
+        long[] joined = and(below, above);
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= joined[i];
+        }
+    }
+
+    /**
+     * Blur the words in place in one direction.
+     *
+     * @param words the bit set
+     * @param distance the number of verses to blur
+     * @param starts where the chapters or books start, or null when unrestricted
+     * @param up whether to blur toward the end of the Bible
+     */
+    private static void dilate(long[] words, int distance, long[] starts, boolean up) {
+        // same.get(j)[i] is set when ordinals i - 2^j to i are in the same chapter or book
+        List<long[]> same = new ArrayList<long[]>();
+        long[] mask = starts == null ? null : not(starts);
+
+        // Blur by 1, 2, 4, ... doubling what has been covered each time.
+        int done = 0;
+        int shift = 1;
+        while (distance - done >= shift) {
+            step(words, shift, mask, up);
+            same.add(mask);
+            done += shift;
+            if (mask != null) {
+                mask = and(mask, shiftUp(mask, shift));
+            }
+            shift <<= 1;
+        }
+
+        // The rest is less than what has been covered, so each of its digits joins on.
+        int rest = distance - done;
+        for (int j = 0; rest != 0; j++, rest >>>= 1) {
+            if ((rest & 1) != 0) {
+                step(words, 1 << j, same.get(j), up);
+            }
+        }
+    }
+
+    /**
+     * Or the words with themselves shifted by a distance, keeping only what
+     * stays within the chapter or book.
+     */
+    private static void step(long[] words, int shift, long[] mask, boolean up) {
+        long[] moved;
+        if (up) {
+            moved = shiftUp(words, shift);
+            if (mask != null) {
+                moved = and(moved, mask);
+            }
+        } else {
+            // What is kept is what is in the same chapter or book as the verse shift above it.
+            moved = shiftDown(mask == null ? words : and(words, mask), shift);
+        }
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= moved[i];
+        }
+    }
+
+    /**
+     * @return the words moved toward the end of the Bible, bits falling off of the end
+     */
+    private static long[] shiftUp(long[] words, int shift) {
+        long[] result = new long[words.length];
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        for (int i = words.length - 1; i >= wordShift; i--) {
+            long word = words[i - wordShift] << bitShift;
+            if (bitShift != 0 && i > wordShift) {
+                word |= words[i - wordShift - 1] >>> (64 - bitShift);
+            }
+            result[i] = word;
+        }
+        return result;
+    }
+
+    /**
+     * @return the words moved toward the start of the Bible, bits falling off of the start
+     */
+    private static long[] shiftDown(long[] words, int shift) {
+        long[] result = new long[words.length];
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        for (int i = 0; i + wordShift < words.length; i++) {
+            long word = words[i + wordShift] >>> bitShift;
+            if (bitShift != 0 && i + wordShift + 1 < words.length) {
+                word |= words[i + wordShift + 1] << (64 - bitShift);
+            }
+            result[i] = word;
+        }
+        return result;
+    }
+
+    private static long[] and(long[] a, long[] b) {
+        long[] result = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] & b[i];
+        }
+        return result;
+    }
+
+    private static long[] or(long[] a, long[] b) {
+        long[] result = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] | b[i];
+        }
+        return result;
+    }
+
+    private static long[] not(long[] words) {
+        long[] result = new long[words.length];
+        for (int i = 0; i < words.length; i++) {
+            result[i] = ~words[i];
+        }
+        return result;
+    }
+
+    /**
+     * Clear the bits after the last ordinal.
+     */
+    private static void clearTail(long[] words, int maximumOrdinal) {
+        int bits = (maximumOrdinal + 1) & 63;
+        if (bits != 0) {
+            words[words.length - 1] &= (1L << bits) - 1;
+        }
+    }
+
+    /**
+     * Get where the chapters or books of a versification start.
+     *
+     * @param v11n the versification
+     * @param restrict the restriction
+     * @return the ordinals of the starts as a bit set, or null when unrestricted
+     */
+    private static synchronized long[] getStarts(Versification v11n, RestrictionType restrict) {
+        if (restrict == RestrictionType.NONE) {
+            return null;
+        }
+
+        Map<String, long[]> cache = restrict == RestrictionType.BOOK ? bookStarts : chapterStarts;
+        long[] starts = cache.get(v11n.getName());
+        if (starts == null) {
+            starts = new long[(v11n.maximumOrdinal() >> 6) + 1];
+            Iterator<BibleBook> iter = v11n.getBookIterator();
+            while (iter.hasNext()) {
+                BibleBook book = iter.next();
+                int lastChapter = restrict == RestrictionType.BOOK ? 0 : v11n.getLastChapter(book);
+                for (int chapter = 0; chapter <= lastChapter; chapter++) {
+                    int ordinal = v11n.getOrdinal(new Verse(v11n, book, chapter, 0));
+                    starts[ordinal >> 6] |= 1L << ordinal;
+                }
+            }
+            cache.put(v11n.getName(), starts);
+        }
+        return starts;
+    }
+
+    /**
+     * Get the introductions to the books and chapters of a versification,
+     * leaving out books that are nothing but an introduction, such as that to
+     * the New Testament, as the books either side of them are not adjacent.
+     *
+     * @param v11n the versification
+     * @return the ordinals of the introductions as a bit set
+     */
+    private static synchronized long[] getIntros(Versification v11n) {
+        long[] intros = introductions.get(v11n.getName());
+        if (intros == null) {
+            intros = new long[(v11n.maximumOrdinal() >> 6) + 1];
+            Iterator<BibleBook> iter = v11n.getBookIterator();
+            while (iter.hasNext()) {
+                BibleBook book = iter.next();
+                int lastChapter = v11n.getLastChapter(book);
+                for (int chapter = lastChapter == 0 ? 1 : 0; chapter <= lastChapter; chapter++) {
+                    int ordinal = v11n.getOrdinal(new Verse(v11n, book, chapter, 0));
+                    intros[ordinal >> 6] |= 1L << ordinal;
+                }
+            }
+            introductions.put(v11n.getName(), intros);
+        }
+        return intros;
+    }
+
+    /**
+     * The introductions that may be joined over, by versification name.
+     */
+    private static Map<String, long[]> introductions = new HashMap<String, long[]>();
+
+    /**
+     * The starts of chapters, by versification name.
+     */
+    private static Map<String, long[]> chapterStarts = new HashMap<String, long[]>();
+
+    /**
+     * The starts of books, by versification name.
+     */
+    private static Map<String, long[]> bookStarts = new HashMap<String, long[]>();
+}
@@ -136,6 +136,13 @@ public class BitwisePassage extends AbstractPassage {
         return new VerseIterator();
     }
 
+    @Override
+    public void visitOrdinals(OrdinalVisitor visitor) {
+        for (int i = store.nextSetBit(0); i >= 0; i = store.nextSetBit(i + 1)) {
+            visitor.visitOrdinal(i);
+        }
+    }
+
     @Override
     public boolean contains(Key obj) {
         for (Key aKey : obj) {
@@ -226,6 +233,13 @@ public class BitwisePassage extends AbstractPassage {
         if (key instanceof BitwisePassage) {
             BitwisePassage thatRef = (BitwisePassage) key;
             store.or(thatRef.store);
+        } else if (key instanceof Passage) {
+            // Set the bits directly rather than making a Verse of each
+            ((Passage) key).visitOrdinals(new OrdinalVisitor() {
+                public void visitOrdinal(int ordinal) {
+                    store.set(ordinal);
+                }
+            });
         } else {
             super.addAll(key);
         }
@@ -321,33 +335,16 @@ public class BitwisePassage extends AbstractPassage {
     public synchronized void blur(int verses, RestrictionType restrict, boolean blurDown, boolean blurUp) {
         assert verses >= 0;
         optimizeWrites();
+        raiseEventSuppresion();
         raiseNormalizeProtection();
 
-        if (!restrict.equals(RestrictionType.NONE)) {
-            super.blur(verses, restrict);
-        } else {
-            optimizeWrites();
-            raiseEventSuppresion();
-            raiseNormalizeProtection();
-
-            int maximumOrdinal = getVersification().maximumOrdinal();
-            BitSet newStore = new BitSet(maximumOrdinal + 1);
+        // Blur a word of 64 verses at a time, keeping within the chapter or book when restricted.
+        long[] words = BitwiseBlur.blur(getVersification(), store.toLongArray(), blurDown ? verses : 0, blurUp ? verses : 0, restrict);
+        store = BitSet.valueOf(words);
 
-            for (int i = store.nextSetBit(0); i >= 0; i = store.nextSetBit(i + 1)) {
-                int start = Math.max(1, i - (blurDown ? verses : 0));
-                int end = Math.min(maximumOrdinal, i + (blurUp ? verses : 0));
-
-                for (int j = start; j <= end; j++) {
-                    newStore.set(j);
-                }
-            }
-
-            store = newStore;
-
-            lowerNormalizeProtection();
-            if (lowerEventSuppressionAndTest()) {
-                fireIntervalAdded(this, null, null);
-            }
+        lowerNormalizeProtection();
+        if (lowerEventSuppressionAndTest()) {
+            fireIntervalAdded(this, null, null);
         }
     }
 
@@ -0,0 +1,1127 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.passage;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.crosswire.jsword.JSOtherMsg;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+
+/**
+ * A Passage that is implemented as a compressed bitmap, after the fashion of
+ * Roaring bitmaps. The ordinals of the Versification are split into blocks of
+ * 1024 and each block that has verses keeps them in whichever container is
+ * the smallest:
+ * <ul>
+ * <li>an array of the verses, for a few verses here and there,
+ * <li>a list of runs of verses, for whole chapters and books,
+ * <li>a bitmap, for many verses here and there.
+ * </ul>
+ * The attributes of the style are:
+ * <ul>
+ * <li>Fast manipulation, a word at a time with another CompressedPassage
+ * <li>Fast countVerses(), countRanges() and range iteration
+ * <li>Small for both sparse and huge Passages
+ * </ul>
+ *
+ * <p>
+ * Adding a verse at a time may leave a block as a bitmap when another
+ * container would be smaller. {@link #optimizeReads()} makes every block as
+ * small as it can be.
+ * </p>
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class CompressedPassage extends AbstractPassage {
+    /**
+     * Create an empty CompressedPassage. There are no ctors from either Verse
+     * or VerseRange so you need to do new <code>CompressedPassage().add(...);</code>
+     *
+     * @param v11n
+     *            The Versification to which this Passage belongs.
+     */
+    public CompressedPassage(Versification v11n) {
+        super(v11n);
+        blocks = new Container[v11n.maximumOrdinal() / BLOCK_SIZE + 1];
+    }
+
+    /**
+     * Create a Verse from a human readable string. The opposite of getName(),
+     * Given any CompressedPassage v1, and the following
+     * <code>CompressedPassage v2 = new CompressedPassage(v1.getName());</code>
+     * Then <code>v1.equals(v2);</code> We don't need to worry about thread
+     * safety in a ctor since we don't exist yet.
+     *
+     * @param v11n
+     *            The Versification to which this Passage belongs.
+     * @param refs
+     *            A String containing the text of the CompressedPassage
+     * @param basis
+     *           The basis by which to interpret refs
+     * @throws NoSuchVerseException
+     *             If the string is not parsable
+     */
+    protected CompressedPassage(Versification v11n, String refs, Key basis) throws NoSuchVerseException {
+        super(v11n, refs);
+        blocks = new Container[v11n.maximumOrdinal() / BLOCK_SIZE + 1];
+        addVerses(refs, basis);
+    }
+
+    /**
+     * Create a Verse from a human readable string. The opposite of getName().
+     *
+     * @param v11n
+     *            The Versification to which this Passage belongs.
+     * @param refs
+     *            A String containing the text of the CompressedPassage
+     * @throws NoSuchVerseException
+     *             If the string is not parsable
+     */
+    protected CompressedPassage(Versification v11n, String refs) throws NoSuchVerseException {
+        this(v11n, refs, null);
+    }
+
+    @Override
+    public CompressedPassage clone() {
+        // This gets us a shallow copy
+        CompressedPassage copy = (CompressedPassage) super.clone();
+
+        copy.blocks = new Container[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] != null) {
+                copy.blocks[i] = blocks[i].copy();
+            }
+        }
+
+        return copy;
+    }
+
+    @Override
+    public int countVerses() {
+        int count = 0;
+        for (Container block : blocks) {
+            if (block != null) {
+                count += block.cardinality();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int countRanges(RestrictionType restrict) {
+        if (!RestrictionType.NONE.equals(restrict)) {
+            return super.countRanges(restrict);
+        }
+
+        int count = 0;
+        int start = nextVerse(0);
+        while (start >= 0) {
+            count++;
+            start = nextVerse(rangeEnd(start) + 1);
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Container block : blocks) {
+            if (block != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Verse getVerseAt(int offset) throws ArrayIndexOutOfBoundsException {
+        if (offset >= 0) {
+            int remaining = offset;
+            for (int b = 0; b < blocks.length; b++) {
+                Container block = blocks[b];
+                if (block == null) {
+                    continue;
+                }
+                int cardinality = block.cardinality();
+                if (remaining < cardinality) {
+                    int found = block.nextSetBit(0);
+                    while (remaining-- > 0) {
+                        found = block.nextSetBit(found + 1);
+                    }
+                    return getVersification().decodeOrdinal((b << BLOCK_BITS) + found);
+                }
+                remaining -= cardinality;
+            }
+        }
+
+        throw new ArrayIndexOutOfBoundsException(JSOtherMsg.lookupText("Index out of range (Given {0,number,integer}, Max {1,number,integer}).", Integer.valueOf(offset), Integer.valueOf(countVerses())));
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#iterator()
+     */
+    public Iterator<Key> iterator() {
+        return new VerseIterator();
+    }
+
+    @Override
+    public void visitOrdinals(OrdinalVisitor visitor) {
+        for (int b = 0; b < blocks.length; b++) {
+            Container block = blocks[b];
+            if (block != null) {
+                int base = b << BLOCK_BITS;
+                for (int i = block.nextSetBit(0); i >= 0; i = block.nextSetBit(i + 1)) {
+                    visitor.visitOrdinal(base + i);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Iterator<VerseRange> rangeIterator(RestrictionType restrict) {
+        if (!RestrictionType.NONE.equals(restrict)) {
+            return super.rangeIterator(restrict);
+        }
+        return new RangeIterator();
+    }
+
+    @Override
+    public boolean contains(Key obj) {
+        if (obj instanceof VerseRange) {
+            VerseRange range = (VerseRange) obj;
+            return nextGap(range.getStart().getOrdinal()) > range.getEnd().getOrdinal();
+        }
+
+        for (Key aKey : obj) {
+            Verse verse = (Verse) aKey;
+            if (!contains(verse.getOrdinal())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.passage.Passage#add(org.crosswire.jsword.passage.Key)
+     */
+    public void add(Key obj) {
+        optimizeWrites();
+
+        Verse[] bounds = set(obj, true);
+
+        // we do an extra check here because the cost of calculating the
+        // params is non-zero and may be wasted
+        if (suppressEvents == 0) {
+            fireIntervalAdded(this, bounds[0], bounds[1]);
+        }
+    }
+
+    /**
+     * A shortcut to adding a key, by ordinal. The ordinal needs to be taken
+     * from the same versification as the passage being created.
+     *
+     * @param ordinal
+     *            the ordinal
+     */
+    public void addVersifiedOrdinal(int ordinal) {
+        optimizeWrites();
+        set(ordinal, ordinal, true);
+
+        // we do an extra check here because the cost of calculating the
+        // params is non-zero and may be wasted
+        if (suppressEvents == 0) {
+            Verse verse = getVersification().decodeOrdinal(ordinal);
+            fireIntervalAdded(this, verse, verse);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.passage.Passage#remove(org.crosswire.jsword.passage.Key)
+     */
+    public void remove(Key obj) {
+        optimizeWrites();
+
+        Verse[] bounds = set(obj, false);
+
+        // we do an extra check here because the cost of calculating the
+        // params is non-zero and may be wasted
+        if (suppressEvents == 0) {
+            fireIntervalRemoved(this, bounds[0], bounds[1]);
+        }
+    }
+
+    @Override
+    public void addAll(Key key) {
+        //check for key empty. This avoids the AIOBounds with that.getVerseAt, during event firing
+        if (key.isEmpty()) {
+            //nothing to add
+            return;
+        }
+
+        optimizeWrites();
+
+        if (isCompatible(key)) {
+            Container[] those = ((CompressedPassage) key).blocks;
+            for (int b = 0; b < blocks.length; b++) {
+                Container that = those[b];
+                if (that == null) {
+                    continue;
+                }
+                if (blocks[b] == null) {
+                    blocks[b] = that.copy();
+                } else {
+                    long[] words = blocks[b].toWords();
+                    that.fill(words);
+                    blocks[b] = Container.of(words);
+                }
+            }
+        } else {
+            set(key, true);
+        }
+
+        // we do an extra check here because the cost of calculating the
+        // params is non-zero and may be wasted
+        if (suppressEvents == 0) {
+            fireIntervalAdded(this, null, null);
+        }
+    }
+
+    @Override
+    public void removeAll(Key key) {
+        optimizeWrites();
+
+        if (isCompatible(key)) {
+            Container[] those = ((CompressedPassage) key).blocks;
+            for (int b = 0; b < blocks.length; b++) {
+                if (blocks[b] != null && those[b] != null) {
+                    long[] words = blocks[b].toWords();
+                    long[] thatWords = those[b].toWords();
+                    for (int i = 0; i < WORDS; i++) {
+                        words[i] &= ~thatWords[i];
+                    }
+                    blocks[b] = Container.of(words);
+                }
+            }
+        } else {
+            set(key, false);
+        }
+
+        // we do an extra check here because the cost of calculating the
+        // params is non-zero and may be wasted
+        if (suppressEvents == 0) {
+            fireIntervalRemoved(this, null, null);
+        }
+    }
+
+    @Override
+    public void retainAll(Key key) {
+        optimizeWrites();
+
+        CompressedPassage thatRef = null;
+        if (isCompatible(key)) {
+            thatRef = (CompressedPassage) key;
+        } else {
+            thatRef = new CompressedPassage(getVersification());
+            thatRef.set(key, true);
+        }
+
+        Container[] those = thatRef.blocks;
+        for (int b = 0; b < blocks.length; b++) {
+            if (blocks[b] == null) {
+                continue;
+            }
+            if (those[b] == null) {
+                blocks[b] = null;
+            } else {
+                long[] words = blocks[b].toWords();
+                long[] thatWords = those[b].toWords();
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] &= thatWords[i];
+                }
+                blocks[b] = Container.of(words);
+            }
+        }
+
+        fireIntervalRemoved(this, null, null);
+    }
+
+    @Override
+    public void clear() {
+        optimizeWrites();
+
+        Arrays.fill(blocks, null);
+
+        fireIntervalRemoved(this, null, null);
+    }
+
+    /**
+     * Make every block as small as it can be.
+     *
+     * @see org.crosswire.jsword.passage.AbstractPassage#optimizeReads()
+     */
+    @Override
+    public void optimizeReads() {
+        for (int b = 0; b < blocks.length; b++) {
+            if (blocks[b] != null) {
+                blocks[b] = Container.of(blocks[b].toWords());
+            }
+        }
+    }
+
+    /**
+     * An estimate of the memory used by this Passage.
+     *
+     * @return the number of bytes
+     */
+    int getMemorySize() {
+        int size = OBJECT_SIZE + ARRAY_SIZE + 4 * blocks.length;
+        for (Container block : blocks) {
+            if (block != null) {
+                size += OBJECT_SIZE + ARRAY_SIZE + block.getSize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Whether word at a time operations can be used with the key.
+     */
+    private boolean isCompatible(Key key) {
+        return key instanceof CompressedPassage && getVersification().equals(((CompressedPassage) key).getVersification());
+    }
+
+    /**
+     * Add or remove every verse of a key.
+     *
+     * @return the first and last verses that were added or removed
+     */
+    private Verse[] set(Key key, final boolean value) {
+        Verse[] bounds = new Verse[2];
+        if (key instanceof BitwisePassage) {
+            // Runs of ordinals are found without making a Verse of each.
+            final int[] run = {
+                    -1, -1, -1
+            };
+            ((Passage) key).visitOrdinals(new OrdinalVisitor() {
+                public void visitOrdinal(int ordinal) {
+                    if (ordinal != run[1] + 1 || run[0] < 0) {
+                        if (run[0] >= 0) {
+                            set(run[0], run[1], value);
+                        } else {
+                            run[2] = ordinal;
+                        }
+                        run[0] = ordinal;
+                    }
+                    run[1] = ordinal;
+                }
+            });
+            if (run[0] >= 0) {
+                set(run[0], run[1], value);
+                Versification v11n = ((Passage) key).getVersification();
+                bounds[0] = v11n.decodeOrdinal(run[2]);
+                bounds[1] = v11n.decodeOrdinal(run[1]);
+            }
+        } else if (key instanceof VerseRange) {
+            VerseRange range = (VerseRange) key;
+            bounds[0] = range.getStart();
+            bounds[1] = range.getEnd();
+            set(bounds[0].getOrdinal(), bounds[1].getOrdinal(), value);
+        } else if (key instanceof Passage && !(key instanceof PassageTally)) {
+            // Ranges are set a block at a time. A PassageTally is not in order.
+            Iterator<VerseRange> it = ((Passage) key).rangeIterator(RestrictionType.NONE);
+            while (it.hasNext()) {
+                VerseRange range = it.next();
+                if (bounds[0] == null) {
+                    bounds[0] = range.getStart();
+                }
+                bounds[1] = range.getEnd();
+                set(range.getStart().getOrdinal(), bounds[1].getOrdinal(), value);
+            }
+        } else {
+            for (Key aKey : key) {
+                Verse verse = (Verse) aKey;
+                if (bounds[0] == null) {
+                    bounds[0] = verse;
+                }
+                bounds[1] = verse;
+                set(verse.getOrdinal(), verse.getOrdinal(), value);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Add or remove the verses between two ordinals, inclusive.
+     */
+    private void set(int from, int to, boolean value) {
+        int first = from >>> BLOCK_BITS;
+        // Ordinals of a larger Versification are ignored, as ever.
+        int last = Math.min(to >>> BLOCK_BITS, blocks.length - 1);
+        for (int b = first; b <= last; b++) {
+            int start = b == first ? from & BLOCK_MASK : 0;
+            int end = b == to >>> BLOCK_BITS ? to & BLOCK_MASK : BLOCK_MASK;
+            Container block = blocks[b];
+            if (value) {
+                blocks[b] = block == null ? Container.range(start, end) : block.add(start, end);
+            } else if (block != null) {
+                blocks[b] = block.remove(start, end);
+            }
+        }
+    }
+
+    private boolean contains(int ordinal) {
+        Container block = blocks[ordinal >>> BLOCK_BITS];
+        return block != null && block.contains(ordinal & BLOCK_MASK);
+    }
+
+    /**
+     * @return the first ordinal from the given one that is in the Passage, or -1 if none
+     */
+    private int nextVerse(int ordinal) {
+        if (ordinal >= blocks.length << BLOCK_BITS) {
+            return -1;
+        }
+        int from = ordinal & BLOCK_MASK;
+        for (int b = ordinal >>> BLOCK_BITS; b < blocks.length; b++) {
+            if (blocks[b] != null) {
+                int found = blocks[b].nextSetBit(from);
+                if (found >= 0) {
+                    return (b << BLOCK_BITS) + found;
+                }
+            }
+            from = 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the end of the range that starts at an ordinal. The Versification
+     * counts the last verse of a chapter and the first verse of the next as
+     * adjacent, even with a verse 0 or an introduction between them.
+     *
+     * @return the last ordinal of the range
+     */
+    private int rangeEnd(int start) {
+        Versification v11n = getVersification();
+        int max = v11n.maximumOrdinal();
+        int end = Math.min(nextGap(start), max + 1) - 1;
+        while (end < max) {
+            int next = nextVerse(end + 1);
+            if (next < 0 || !v11n.isAdjacentVerse(v11n.decodeOrdinal(end), v11n.decodeOrdinal(next))) {
+                break;
+            }
+            end = Math.min(nextGap(next), max + 1) - 1;
+        }
+        return end;
+    }
+
+    /**
+     * @return the first ordinal from the given one that is not in the Passage
+     */
+    private int nextGap(int ordinal) {
+        int from = ordinal & BLOCK_MASK;
+        for (int b = ordinal >>> BLOCK_BITS; b < blocks.length; b++) {
+            if (blocks[b] == null) {
+                return (b << BLOCK_BITS) + from;
+            }
+            int found = blocks[b].nextClearBit(from);
+            if (found < BLOCK_SIZE) {
+                return (b << BLOCK_BITS) + found;
+            }
+            from = 0;
+        }
+        return blocks.length << BLOCK_BITS;
+    }
+
+    /**
+     * Set the bits from one offset to another, inclusive.
+     */
+    static void setRange(long[] words, int from, int to, boolean value) {
+        int first = from >>> 6;
+        int last = to >>> 6;
+        for (int i = first; i <= last; i++) {
+            long mask = -1L;
+            if (i == first) {
+                mask &= -1L << from;
+            }
+            if (i == last) {
+                mask &= -1L >>> (63 - (to & 63));
+            }
+            words[i] = value ? words[i] | mask : words[i] & ~mask;
+        }
+    }
+
+    /**
+     * The verses of one block, as offsets from the start of the block.
+     * Array and run containers are not changed once made, so they can be
+     * shared. A bitmap is changed in place.
+     */
+    private abstract static class Container {
+        /**
+         * @return the number of verses
+         */
+        abstract int cardinality();
+
+        abstract boolean contains(int offset);
+
+        /**
+         * @return the first offset from the given one that is set, or -1 if none
+         */
+        abstract int nextSetBit(int from);
+
+        /**
+         * @return the first offset from the given one that is not set, or BLOCK_SIZE if none
+         */
+        abstract int nextClearBit(int from);
+
+        /**
+         * @return the number of bytes of the data of the container
+         */
+        abstract int getSize();
+
+        /**
+         * Set the verses of this container in a bitmap.
+         */
+        abstract void fill(long[] words);
+
+        /**
+         * @return a container that can be changed without changing this one
+         */
+        Container copy() {
+            return this;
+        }
+
+        /**
+         * @return the container with the offsets added, which may be this one
+         */
+        Container add(int from, int to) {
+            long[] words = toWords();
+            setRange(words, from, to, true);
+            return of(words);
+        }
+
+        /**
+         * @return the container with the offsets removed, which may be this one, or null if it is empty
+         */
+        Container remove(int from, int to) {
+            long[] words = toWords();
+            setRange(words, from, to, false);
+            return of(words);
+        }
+
+        long[] toWords() {
+            long[] words = new long[WORDS];
+            fill(words);
+            return words;
+        }
+
+        /**
+         * @return the smallest container for the offsets
+         */
+        static Container range(int from, int to) {
+            if (from == to) {
+                return new ArrayContainer(new char[] { (char) from });
+            }
+            return new RunContainer(new char[] { (char) from, (char) to }, to - from + 1);
+        }
+
+        /**
+         * @return the smallest container for the bitmap, or null if it is empty
+         */
+        static Container of(long[] words) {
+            int cardinality = 0;
+            int runs = 0;
+            long carry = 0;
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                cardinality += Long.bitCount(word);
+                // A run starts where a bit is set but the one before is not.
+                runs += Long.bitCount(word & ~((word << 1) | carry));
+                carry = word >>> 63;
+            }
+
+            if (cardinality == 0) {
+                return null;
+            }
+
+            // If some come out equal, the bitmap is the fastest.
+            int arraySize = 2 * cardinality;
+            int runSize = 4 * runs;
+            if (BITMAP_SIZE <= arraySize && BITMAP_SIZE <= runSize) {
+                return new BitmapContainer(words.clone(), cardinality);
+            }
+
+            if (arraySize <= runSize) {
+                char[] values = new char[cardinality];
+                int count = 0;
+                for (int i = 0; i < WORDS; i++) {
+                    long word = words[i];
+                    while (word != 0) {
+                        values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+                return new ArrayContainer(values);
+            }
+
+            char[] bounds = new char[2 * runs];
+            int count = 0;
+            int start = nextSetBit(words, 0);
+            while (start >= 0) {
+                int end = nextClearBit(words, start);
+                bounds[count++] = (char) start;
+                bounds[count++] = (char) (end - 1);
+                start = nextSetBit(words, end);
+            }
+            return new RunContainer(bounds, cardinality);
+        }
+
+        static int nextSetBit(long[] words, int from) {
+            int i = from >>> 6;
+            if (i >= WORDS) {
+                return -1;
+            }
+            long word = words[i] & (-1L << from);
+            while (true) {
+                if (word != 0) {
+                    return (i << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++i == WORDS) {
+                    return -1;
+                }
+                word = words[i];
+            }
+        }
+
+        static int nextClearBit(long[] words, int from) {
+            int i = from >>> 6;
+            if (i >= WORDS) {
+                return BLOCK_SIZE;
+            }
+            long word = ~words[i] & (-1L << from);
+            while (true) {
+                if (word != 0) {
+                    return (i << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++i == WORDS) {
+                    return BLOCK_SIZE;
+                }
+                word = ~words[i];
+            }
+        }
+    }
+
+    /**
+     * The verses as a sorted array.
+     */
+    private static final class ArrayContainer extends Container {
+        ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        boolean contains(int offset) {
+            return Arrays.binarySearch(values, (char) offset) >= 0;
+        }
+
+        @Override
+        int nextSetBit(int from) {
+            int i = Arrays.binarySearch(values, (char) from);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return i < values.length ? values[i] : -1;
+        }
+
+        @Override
+        int nextClearBit(int from) {
+            int i = Arrays.binarySearch(values, (char) from);
+            if (i < 0) {
+                return from;
+            }
+            while (i + 1 < values.length && values[i + 1] == values[i] + 1) {
+                i++;
+            }
+            return values[i] + 1;
+        }
+
+        @Override
+        int getSize() {
+            return 2 * values.length;
+        }
+
+        @Override
+        void fill(long[] words) {
+            for (char value : values) {
+                words[value >>> 6] |= 1L << value;
+            }
+        }
+
+        @Override
+        Container add(int from, int to) {
+            if (from != to || values.length >= ARRAY_MAX) {
+                return super.add(from, to);
+            }
+
+            int i = Arrays.binarySearch(values, (char) from);
+            if (i >= 0) {
+                return this;
+            }
+            i = -i - 1;
+            char[] grown = new char[values.length + 1];
+            System.arraycopy(values, 0, grown, 0, i);
+            grown[i] = (char) from;
+            System.arraycopy(values, i, grown, i + 1, values.length - i);
+            return new ArrayContainer(grown);
+        }
+
+        private final char[] values;
+    }
+
+    /**
+     * The verses as pairs of the first and last offsets of each run.
+     */
+    private static final class RunContainer extends Container {
+        RunContainer(char[] bounds, int cardinality) {
+            this.bounds = bounds;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(int offset) {
+            int run = find(offset);
+            return run >= 0 && offset <= bounds[2 * run + 1];
+        }
+
+        @Override
+        int nextSetBit(int from) {
+            int run = find(from);
+            if (run >= 0 && from <= bounds[2 * run + 1]) {
+                return from;
+            }
+            run++;
+            return 2 * run < bounds.length ? bounds[2 * run] : -1;
+        }
+
+        @Override
+        int nextClearBit(int from) {
+            int run = find(from);
+            if (run >= 0 && from <= bounds[2 * run + 1]) {
+                return bounds[2 * run + 1] + 1;
+            }
+            return from;
+        }
+
+        @Override
+        int getSize() {
+            return 2 * bounds.length;
+        }
+
+        @Override
+        void fill(long[] words) {
+            for (int i = 0; i < bounds.length; i += 2) {
+                setRange(words, bounds[i], bounds[i + 1], true);
+            }
+        }
+
+        /**
+         * @return the last run that starts at or before the offset, or -1 if none
+         */
+        private int find(int offset) {
+            int low = 0;
+            int high = bounds.length / 2 - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (bounds[2 * mid] <= offset) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+
+        private final char[] bounds;
+        private final int cardinality;
+    }
+
+    /**
+     * The verses as a bitmap, which is changed in place.
+     */
+    private static final class BitmapContainer extends Container {
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(int offset) {
+            return (words[offset >>> 6] & (1L << offset)) != 0;
+        }
+
+        @Override
+        int nextSetBit(int from) {
+            return nextSetBit(words, from);
+        }
+
+        @Override
+        int nextClearBit(int from) {
+            return nextClearBit(words, from);
+        }
+
+        @Override
+        int getSize() {
+            return BITMAP_SIZE;
+        }
+
+        @Override
+        void fill(long[] into) {
+            for (int i = 0; i < WORDS; i++) {
+                into[i] |= words[i];
+            }
+        }
+
+        @Override
+        Container copy() {
+            return of(words);
+        }
+
+        @Override
+        Container add(int from, int to) {
+            setRange(words, from, to, true);
+            count();
+            return this;
+        }
+
+        @Override
+        Container remove(int from, int to) {
+            setRange(words, from, to, false);
+            count();
+            return cardinality == 0 ? null : this;
+        }
+
+        private void count() {
+            cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+        }
+
+        private final long[] words;
+        private int cardinality;
+    }
+
+    /**
+     * Iterate over the Verses
+     */
+    private final class VerseIterator implements Iterator<Key> {
+        /**
+         * Find the first verse
+         */
+        VerseIterator() {
+            current = -1;
+            next = nextVerse(0);
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#hasNext()
+         */
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#next()
+         */
+        public Key next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            current = next;
+            next = nextVerse(current + 1);
+            return getVersification().decodeOrdinal(current);
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#remove()
+         */
+        public void remove() throws UnsupportedOperationException {
+            if (current < 0) {
+                throw new IllegalStateException();
+            }
+            set(current, current, false);
+            current = -1;
+        }
+
+        /**
+         * The Verse last returned
+         */
+        private int current;
+
+        /**
+         * What is the next Verse to be considered
+         */
+        private int next;
+    }
+
+    /**
+     * Iterate over the ranges of Verses, which are found a block at a time.
+     */
+    private final class RangeIterator implements Iterator<VerseRange> {
+        /**
+         * Find the first range
+         */
+        RangeIterator() {
+            next = nextVerse(0);
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#hasNext()
+         */
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#next()
+         */
+        public VerseRange next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Versification v11n = getVersification();
+            int end = rangeEnd(next);
+            VerseRange range = new VerseRange(v11n, v11n.decodeOrdinal(next), v11n.decodeOrdinal(end));
+            next = nextVerse(end + 1);
+            return range;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#remove()
+         */
+        public void remove() throws UnsupportedOperationException {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * The start of the next range
+         */
+        private int next;
+    }
+
+    /**
+     * Call the support mechanism in AbstractPassage
+     *
+     * @param out
+     *            The stream to write our state to
+     * @serialData Write the ordinal number of this verse
+     * @see AbstractPassage#writeObjectSupport(ObjectOutputStream)
+     * @throws IOException
+     *             if the read fails
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        // Save off the versification by name
+        out.writeUTF(getVersification().getName());
+
+        writeObjectSupport(out);
+    }
+
+    /**
+     * Call the support mechanism in AbstractPassage
+     *
+     * @param in
+     *            The stream to read our state from
+     * @throws IOException
+     *             if the read fails
+     * @throws ClassNotFoundException
+     *             If the read data is incorrect
+     * @serialData Write the ordinal number of this verse
+     * @see AbstractPassage#readObjectSupport(ObjectInputStream)
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        optimizeWrites();
+
+        in.defaultReadObject();
+
+        // Read the versification by name
+        String v11nName = in.readUTF();
+        Versification v11n = Versifications.instance().getVersification(v11nName);
+
+        blocks = new Container[v11n.maximumOrdinal() / BLOCK_SIZE + 1];
+
+        readObjectSupport(in);
+    }
+
+    /**
+     * The number of bits of an ordinal that are its offset in a block.
+     */
+    private static final int BLOCK_BITS = 10;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    private static final int WORDS = BLOCK_SIZE / 64;
+    private static final int BITMAP_SIZE = WORDS * 8;
+
+    /**
+     * Beyond this an array is larger than a bitmap.
+     */
+    private static final int ARRAY_MAX = BITMAP_SIZE / 2;
+
+    /**
+     * The rough size in bytes of the header of an object and of an array.
+     */
+    private static final int OBJECT_SIZE = 16;
+    private static final int ARRAY_SIZE = 16;
+
+    /**
+     * To make serialization work across new versions
+     */
+    private static final long serialVersionUID = 2460617640227428104L;
+
+    /**
+     * The containers of the blocks, null where a block has no verses
+     */
+    private transient Container[] blocks;
+}
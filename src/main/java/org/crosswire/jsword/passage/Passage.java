@@ -162,6 +162,16 @@ public interface Passage extends VerseKey<Passage> {
      */
     Verse getVerseAt(int offset) throws ArrayIndexOutOfBoundsException;
 
+    /**
+     * Visit the verses of this Passage by their ordinal, in Biblical order.
+     * Unlike iterating over the Passage, no Verse need be made for each, so
+     * this is the cheaper way to go through the verses of a large Passage.
+     * 
+     * @param visitor
+     *            The visitor to notify of each verse
+     */
+    void visitOrdinals(OrdinalVisitor visitor);
+
     /**
      * Get a specific VerseRange from this collection
      * 
@@ -21,9 +21,16 @@ package org.crosswire.jsword.passage;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
+import org.crosswire.common.util.SegmentedCache;
 import org.crosswire.jsword.JSOtherMsg;
+import org.crosswire.jsword.internationalisation.LocaleProviderManager;
 import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.system.Versifications;
 
@@ -37,6 +44,14 @@ import org.crosswire.jsword.versification.system.Versifications;
  * if there is no driving need to create them for a specific purpose.
  * </p>
  * <p>
+ * Passages that are kept for a long time are better held in whichever type
+ * takes the least memory, which for a sparse Passage is a CompressedPassage.
+ * {@link #getCompactPassage(Passage)} makes that choice. It is made for the
+ * Passages of {@link #getKeys(Versification, List)}. It is not made for search
+ * results, which are blurred and intersected a word at a time while they are
+ * still BitwisePassages, and are cached as no more than their verse ordinals.
+ * </p>
+ * <p>
  * Most of the methods take the same arguments:
  * </p>
  * <ul>
@@ -70,6 +85,7 @@ public final class PassageKeyFactory {
      * This class implements a Singleton pattern. So the ctor is private
      */
     private PassageKeyFactory() {
+        parsed = new SegmentedCache<ParsedKey, Passage>(PARSED_CACHE_SEGMENTS, PARSED_CACHE_SIZE);
     }
 
     /**
@@ -156,6 +172,89 @@ public final class PassageKeyFactory {
      *             If the passageReference has anything that could not be understood as a Verse
      */
     public Passage getKey(Versification v11n, String passageReference, Key basis) throws NoSuchKeyException {
+        // A reference such as "v. 3" means something else with every basis,
+        // so only those without one are remembered.
+        if (basis != null || passageReference == null) {
+            return parse(v11n, passageReference, basis);
+        }
+
+        ParsedKey key = new ParsedKey(v11n, LocaleProviderManager.getLocale(), passageReference);
+        Passage found = parsed.get(key);
+        if (found != null) {
+            return copy(found);
+        }
+
+        Passage passage = parse(v11n, passageReference, null);
+        parsed.put(key, compact(passage));
+        return passage;
+    }
+
+    /**
+     * Convert many passageReferences into Passages at once. This is like
+     * calling {@link #getKey(Versification, String)} for each, but for a
+     * reference that is repeated only being parsed once. As a list of many
+     * Passages tends to be kept, each is of whichever type holds it in the
+     * least memory, as with {@link #getCompactPassage(Passage)}, rather than
+     * of the default type.
+     * 
+     * @param v11n
+     *            The Versification to which the Passages belong.
+     * @param passageReferences
+     *            Strings containing the text for the Passages
+     * @return a new Passage for each reference, in the same order
+     * @throws NoSuchKeyException
+     *             If any passageReference has anything that could not be understood as a Verse
+     */
+    public List<Passage> getKeys(Versification v11n, List<String> passageReferences) throws NoSuchKeyException {
+        Locale locale = LocaleProviderManager.getLocale();
+        int count = passageReferences.size();
+        ParsedKey[] keys = new ParsedKey[count];
+        Passage[] found = new Passage[count];
+        for (int i = 0; i < count; i++) {
+            String passageReference = passageReferences.get(i);
+            if (passageReference != null) {
+                keys[i] = new ParsedKey(v11n, locale, passageReference);
+                found[i] = parsed.get(keys[i]);
+            }
+        }
+
+        // Parse what is not known, each reference once.
+        Map<ParsedKey, Passage> parsedNow = new HashMap<ParsedKey, Passage>();
+        for (int i = 0; i < count; i++) {
+            if (keys[i] != null && found[i] == null) {
+                found[i] = parsedNow.get(keys[i]);
+                if (found[i] == null) {
+                    found[i] = compact(parse(v11n, passageReferences.get(i), null));
+                    parsedNow.put(keys[i], found[i]);
+                }
+            }
+        }
+        for (Map.Entry<ParsedKey, Passage> entry : parsedNow.entrySet()) {
+            parsed.put(entry.getKey(), entry.getValue());
+        }
+
+        List<Passage> passages = new ArrayList<Passage>(count);
+        for (int i = 0; i < count; i++) {
+            // The cached Passage is already compact, but is not to be changed.
+            passages.add(keys[i] == null ? parse(v11n, null, null) : (Passage) found[i].clone());
+        }
+        return passages;
+    }
+
+    /**
+     * Forget the Passages of the references that have been converted. They are
+     * remembered by Versification, reference and locale, but not by the
+     * settings that alter how book names are understood, such as whether they
+     * may be fuzzy. Changing those should be followed by a call to this.
+     */
+    public void clearCache() {
+        parsed.clear();
+    }
+
+    /**
+     * Convert the passageReference into a Passage, without the cache.
+     */
+    private Passage parse(Versification v11n, String passageReference, Key basis) throws NoSuchKeyException {
         // since normalization is relatively expensive
         // don't try it unless it solves a problem.
         try {
@@ -214,6 +313,7 @@ public final class PassageKeyFactory {
      * <li>PassageType.SIZE
      * <li>PassageType.MIX
      * <li>PassageType.TALLY
+     * <li>PassageType.COMPRESSED
      * </ul>
      * 
      * @param newDefaultType
@@ -259,6 +359,46 @@ public final class PassageKeyFactory {
         return new ReadOnlyPassage(ref, ignore);
     }
 
+    /**
+     * Get a copy of a Passage in whichever type of Passage holds it in the
+     * least memory. This suits Passages that are kept for a long time, such
+     * as the results of searches and lists of the user. A DistinctPassage is
+     * the smallest for a few verses, a RangedPassage for a few ranges and a
+     * CompressedPassage for everything else. A PassageTally is returned as it
+     * is, as a copy would lose its tallies.
+     * 
+     * @param ref
+     *            The passage to copy
+     * @return the smallest copy of the passage
+     */
+    public static Passage getCompactPassage(Passage ref) {
+        if (ref instanceof PassageTally) {
+            return ref;
+        }
+
+        Versification v11n = ref.getVersification();
+        CompressedPassage compressed = new CompressedPassage(v11n);
+        compressed.raiseEventSuppresion();
+        compressed.addAll(ref);
+        compressed.optimizeReads();
+        compressed.lowerEventSuppressionAndTest();
+
+        int compressedSize = compressed.getMemorySize();
+        int distinctSize = DISTINCT_VERSE_SIZE * compressed.countVerses();
+        int rangedSize = RANGED_RANGE_SIZE * compressed.countRanges(RestrictionType.NONE);
+        if (compressedSize <= distinctSize && compressedSize <= rangedSize) {
+            return compressed;
+        }
+
+        AbstractPassage smallest = distinctSize <= rangedSize ? new DistinctPassage(v11n) : new RangedPassage(v11n);
+        smallest.raiseEventSuppresion();
+        smallest.raiseNormalizeProtection();
+        smallest.addAll(compressed);
+        smallest.lowerNormalizeProtection();
+        smallest.lowerEventSuppressionAndTest();
+        return smallest;
+    }
+
     /**
      * Convert us to a binary representation. There are some distinctly
      * endianist happenings here, but that is OK because we are reading the
@@ -283,23 +423,20 @@ public final class PassageKeyFactory {
         // if bitwise is equal smallest
         if (bitwiseSize <= rangedSize && bitwiseSize <= distinctSize) {
             int arraySize = binarySize(AbstractPassage.METHOD_COUNT) + (maxOrdinal / 8) + 1;
-            byte[] buffer = new byte[arraySize];
-            int index = 0;
+            final byte[] buffer = new byte[arraySize];
+            final int index = toBinary(buffer, 0, AbstractPassage.BITWISE, AbstractPassage.METHOD_COUNT);
 
-            index += toBinary(buffer, index, AbstractPassage.BITWISE, AbstractPassage.METHOD_COUNT);
+            ref.visitOrdinals(new OrdinalVisitor() {
+                public void visitOrdinal(int ord) {
+                    // Which byte should we be altering
+                    int idx0 = (ord / 8) + index;
 
-            for (Key aKey : ref) {
-                Verse verse = (Verse) aKey;
-                int ord = verse.getOrdinal();
+                    // Which bit within that byte (0-7)
+                    int bit = (ord % 8) - 1;
 
-                // Which byte should we be altering
-                int idx0 = (ord / 8) + index;
-
-                // Which bit within that byte (0-7)
-                int bit = (ord % 8) - 1;
-
-                buffer[idx0] |= 1 << bit;
-            }
+                    buffer[idx0] |= 1 << bit;
+                }
+            });
 
             return buffer;
         } else if (distinctSize <= rangedSize) {
@@ -553,6 +690,43 @@ public final class PassageKeyFactory {
         return (b0 << 24) + (b1 << 16) + (b2 << 8) + (b3 << 0);
     }
 
+    /**
+     * Get the copy of a parsed Passage that is remembered. It is only ever
+     * read, so it is held in whichever type of Passage is smallest.
+     */
+    private static Passage compact(Passage passage) {
+        Passage compact = getCompactPassage(passage);
+        if (compact == passage) {
+            // A PassageTally is not copied, but the caller is free to change it.
+            compact = (Passage) passage.clone();
+        } else if (compact instanceof AbstractPassage && passage instanceof AbstractPassage) {
+            ((AbstractPassage) compact).originalName = ((AbstractPassage) passage).originalName;
+        }
+        return compact;
+    }
+
+    /**
+     * Get a Passage of the default type from one that is remembered.
+     */
+    private static Passage copy(Passage compact) {
+        Passage copy = defaultType.createEmptyPassage(compact.getVersification());
+        if (copy instanceof AbstractPassage) {
+            // Nothing can be listening to a new Passage.
+            AbstractPassage abstractCopy = (AbstractPassage) copy;
+            abstractCopy.raiseEventSuppresion();
+            abstractCopy.raiseNormalizeProtection();
+            abstractCopy.addAll(compact);
+            abstractCopy.lowerNormalizeProtection();
+            abstractCopy.lowerEventSuppressionAndTest();
+            if (compact instanceof AbstractPassage) {
+                abstractCopy.originalName = ((AbstractPassage) compact).originalName;
+            }
+        } else {
+            copy.addAll(compact);
+        }
+        return copy;
+    }
+
     /**
      * Replace spaces with semi-colons, because the parser expects them.
      * 
@@ -652,6 +826,77 @@ public final class PassageKeyFactory {
         return buf.toString();
     }
 
+    /**
+     * What a Passage was parsed from.
+     */
+    private static final class ParsedKey {
+        ParsedKey(Versification v11n, Locale locale, String passageReference) {
+            this.v11nName = v11n.getName();
+            this.locale = locale;
+            this.passageReference = passageReference;
+            // A PassageTally is kept as one, as its tallies would be lost in
+            // any other type, so it is not shared with the other types.
+            this.tally = defaultType == PassageType.TALLY;
+            int result = v11nName.hashCode();
+            result = 31 * result + (locale == null ? 0 : locale.hashCode());
+            result = 31 * result + (tally ? 1 : 0);
+            this.hash = 31 * result + passageReference.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ParsedKey)) {
+                return false;
+            }
+            ParsedKey that = (ParsedKey) obj;
+            return tally == that.tally && passageReference.equals(that.passageReference) && v11nName.equals(that.v11nName)
+                    && (locale == null ? that.locale == null : locale.equals(that.locale));
+        }
+
+        private final String v11nName;
+        private final Locale locale;
+        private final String passageReference;
+        private final boolean tally;
+        private final int hash;
+    }
+
+    /**
+     * The Passages of the references most recently converted, in the
+     * smallest form. The cache is split into separately locked segments so
+     * that threads converting references seldom wait for each other.
+     */
+    private final SegmentedCache<ParsedKey, Passage> parsed;
+
+    /**
+     * The number of converted references that are remembered.
+     */
+    private static final int PARSED_CACHE_SIZE = 1000;
+
+    /**
+     * The number of separately locked segments of the cache.
+     */
+    private static final int PARSED_CACHE_SEGMENTS = 8;
+
+    /**
+     * The rough size in bytes of a verse of a DistinctPassage, the entry of
+     * the TreeSet and the Verse.
+     */
+    private static final int DISTINCT_VERSE_SIZE = 80;
+
+    /**
+     * The rough size in bytes of a range of a RangedPassage, the entry of
+     * the TreeSet, the VerseRange and its two Verses.
+     */
+    private static final int RANGED_RANGE_SIZE = 160;
+
     /**
      * The default type
      */
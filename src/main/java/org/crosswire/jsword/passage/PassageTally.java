@@ -23,10 +23,19 @@ package org.crosswire.jsword.passage;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.crosswire.jsword.JSOtherMsg;
 import org.crosswire.jsword.versification.Versification;
@@ -94,6 +103,14 @@ import org.slf4j.LoggerFactory;
  * program. I'm not sure why it was originally 100?
  * 
  * <p>
+ * While few verses are ranked, the tally also remembers which they are, so
+ * that going through the verses, adding tallies together and finding the
+ * highest ranked does not mean looking at every place on the board. Asking for
+ * the first few verses in rank order finds them with a heap rather than by
+ * sorting every ranked verse.
+ * </p>
+ * 
+ * <p>
  * LATER(joe): Specify how passage ranks work.
  * 
  * @see gnu.lgpl.License The GNU Lesser General Public License for details.
@@ -109,6 +126,7 @@ public class PassageTally extends AbstractPassage {
     public PassageTally(Versification v11n) {
         super(v11n);
         board = new int[v11n.maximumOrdinal() + 1];
+        scored = new int[SCORED_START];
     }
 
     /**
@@ -126,6 +144,7 @@ public class PassageTally extends AbstractPassage {
     protected PassageTally(Versification v11n, String refs, Key basis) throws NoSuchVerseException {
         super(v11n, refs);
         board = new int[v11n.maximumOrdinal() + 1];
+        scored = new int[SCORED_START];
         addVerses(refs, basis);
     }
 
@@ -187,6 +206,9 @@ public class PassageTally extends AbstractPassage {
         PassageTally copy = (PassageTally) super.clone();
 
         copy.board = board.clone();
+        if (scored != null) {
+            copy.scored = scored.clone();
+        }
 
         return copy;
     }
@@ -235,7 +257,7 @@ public class PassageTally extends AbstractPassage {
                 maxCount = Integer.MAX_VALUE;
             }
 
-            Iterator<Key> it = new OrderedVerseIterator(getVersification(), board);
+            Iterator<Key> it = iterator(maxCount);
             Key current = null;
             int count = 0;
 
@@ -280,7 +302,7 @@ public class PassageTally extends AbstractPassage {
             maxCount = Integer.MAX_VALUE;
         }
 
-        OrderedVerseIterator it = new OrderedVerseIterator(getVersification(), board);
+        OrderedVerseIterator it = new OrderedVerseIterator(getVersification(), board, getScored(), maxCount);
         int count = 0;
 
         while (it.hasNext() && count < maxCount) {
@@ -306,10 +328,37 @@ public class PassageTally extends AbstractPassage {
      * @return A verse Iterator
      */
     public Iterator<Key> iterator() {
+        return iterator(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Iterate through the first verse elements in the current sort order. In
+     * Order.TALLY, only the highest ranked are found and put in order, so this
+     * is quicker than going through all of them.
+     * 
+     * @param count
+     *            The most verses to iterate through
+     * @return A verse Iterator
+     */
+    public Iterator<Key> iterator(int count) {
         if (order == Order.BIBLICAL) {
-            return new VerseIterator();
+            return new VerseIterator(count);
+        }
+        return new OrderedVerseIterator(getVersification(), board, getScored(), count);
+    }
+
+    /**
+     * Visit the verses by their ordinal, in Biblical order whatever the
+     * order of this PassageTally.
+     * 
+     * @param visitor
+     *            The visitor to notify of each verse
+     */
+    @Override
+    public void visitOrdinals(OrdinalVisitor visitor) {
+        for (int ord : getScored()) {
+            visitor.visitOrdinal(ord);
         }
-        return new OrderedVerseIterator(getVersification(), board);
     }
 
     @Override
@@ -431,9 +480,8 @@ public class PassageTally extends AbstractPassage {
         if (that instanceof PassageTally) {
             PassageTally tally = (PassageTally) that;
 
-            int vib = getVersification().maximumOrdinal();
-            for (int i = 0; i <= vib; i++) {
-                increment(i, tally.board[i]);
+            for (int ord : tally.getScored()) {
+                increment(ord, tally.board[ord]);
             }
 
             incrementMax(tally.max);
@@ -461,9 +509,8 @@ public class PassageTally extends AbstractPassage {
         if (that instanceof PassageTally) {
             PassageTally tally = (PassageTally) that;
 
-            int vib = getVersification().maximumOrdinal();
-            for (int i = 0; i <= vib; i++) {
-                increment(i, -tally.board[i]);
+            for (int ord : tally.getScored()) {
+                increment(ord, -tally.board[ord]);
             }
         } else {
             for (Key aKey : that) {
@@ -486,11 +533,8 @@ public class PassageTally extends AbstractPassage {
         if (key instanceof PassageTally) {
             PassageTally tally = (PassageTally) key;
 
-            int vib = getVersification().maximumOrdinal();
-            for (int i = 0; i <= vib; i++) {
-                if (tally.board[i] != 0) {
-                    kill(i);
-                }
+            for (int ord : tally.getScored()) {
+                kill(ord);
             }
         } else {
             for (Key aKey : key) {
@@ -510,11 +554,7 @@ public class PassageTally extends AbstractPassage {
     public void clear() {
         optimizeWrites();
 
-        for (int i = 0; i < board.length; i++) {
-            board[i] = 0;
-        }
-
-        size = 0;
+        wipe();
 
         fireIntervalRemoved(this, null, null);
     }
@@ -535,26 +575,37 @@ public class PassageTally extends AbstractPassage {
     public Passage trimVerses(int count) {
         optimizeWrites();
 
-        int i = 0;
-        boolean overflow = false;
-
-        Passage remainder = this.clone();
+        if (size <= count) {
+            return null;
+        }
 
-        for (Key verse : this) {
-            i++;
-            if (i > count) {
-                remove(verse);
-                overflow = true;
-            } else {
-                remainder.remove(verse);
+        // Only the verses that are kept need to be found in order.
+        int[] kept;
+        if (order == Order.BIBLICAL) {
+            kept = Arrays.copyOf(getScored(), Math.max(count, 0));
+        } else {
+            TalliedVerse[] top = getTop(board, getScored(), count);
+            kept = new int[top.length];
+            for (int i = 0; i < top.length; i++) {
+                kept[i] = top[i].ord;
             }
+        }
 
+        PassageTally remainder = this.clone();
+        int[] tallies = new int[kept.length];
+        for (int i = 0; i < kept.length; i++) {
+            tallies[i] = board[kept[i]];
+            remainder.kill(kept[i]);
         }
 
-        if (overflow) {
-            return remainder;
+        wipe();
+        for (int i = 0; i < kept.length; i++) {
+            increment(kept[i], tallies[i]);
         }
-        return null;
+
+        fireIntervalRemoved(this, null, null);
+        remainder.fireIntervalRemoved(remainder, null, null);
+        return remainder;
     }
 
     /**
@@ -564,10 +615,8 @@ public class PassageTally extends AbstractPassage {
     public void flatten() {
         optimizeWrites();
 
-        for (int i = 0; i < board.length; i++) {
-            if (board[i] != 0) {
-                board[i] = 1;
-            }
+        for (int ord : getScored()) {
+            board[ord] = 1;
         }
 
         max = 1;
@@ -603,31 +652,29 @@ public class PassageTally extends AbstractPassage {
         } else {
             int[] newBoard = new int[board.length];
 
-            for (int i = 0; i < board.length; i++) {
-                if (board[i] != 0) {
-                    // This could be re-written more simply:
-                    // for (int j = -verses; j <= verses; j++) {
-                    //     int k = i + j;
-                    //     if (k >= 0 && k <= BibleInfo.maximumOrdinal()) {
-                    //         new_board[k] += board[i] + verses - mod(j);
-                    //     }
-                    // }
-                    // However splitting the loop in 2 will speed it up quite a bit.
-
-                    for (int j = (blurDown ? -verses : 0); j < 0; j++) {
-                        int k = i + j;
-                        if (k >= 0) {
-                            newBoard[k] += board[i] + verses + j;
-                        }
+            for (int i : getScored()) {
+                // This could be re-written more simply:
+                // for (int j = -verses; j <= verses; j++) {
+                //     int k = i + j;
+                //     if (k >= 0 && k <= BibleInfo.maximumOrdinal()) {
+                //         new_board[k] += board[i] + verses - mod(j);
+                //     }
+                // }
+                // However splitting the loop in 2 will speed it up quite a bit.
+
+                for (int j = (blurDown ? -verses : 0); j < 0; j++) {
+                    int k = i + j;
+                    if (k >= 0) {
+                        newBoard[k] += board[i] + verses + j;
                     }
+                }
 
-                    newBoard[i] += board[i] + verses;
+                newBoard[i] += board[i] + verses;
 
-                    for (int j = 1; j <= (blurUp ? verses : 0); j++) {
-                        int k = i + j;
-                        if (k < board.length - 1) {
-                            newBoard[k] += board[i] + verses - j;
-                        }
+                for (int j = 1; j <= (blurUp ? verses : 0); j++) {
+                    int k = i + j;
+                    if (k < board.length - 1) {
+                        newBoard[k] += board[i] + verses - j;
                     }
                 }
             }
@@ -652,9 +699,12 @@ public class PassageTally extends AbstractPassage {
 
         max = 0;
         size = 0;
+        scored = new int[SCORED_START];
+        scoredCount = 0;
         for (int i = 0; i < board.length; i++) {
             if (board[i] > 0) {
                 size++;
+                note(i);
             }
             if (board[i] > max) {
                 max = board[i];
@@ -704,6 +754,7 @@ public class PassageTally extends AbstractPassage {
             size--;
         } else if (!exists && board[ord] > 0) {
             size++;
+            note(ord);
         }
     }
 
@@ -737,6 +788,188 @@ public class PassageTally extends AbstractPassage {
         board[ord] = 0;
     }
 
+    /**
+     * Set the rank of every verse to zero, without telling anyone.
+     */
+    private void wipe() {
+        if (scored == null) {
+            Arrays.fill(board, 0);
+        } else {
+            for (int i = 0; i < scoredCount; i++) {
+                board[scored[i]] = 0;
+            }
+        }
+
+        size = 0;
+        scored = new int[SCORED_START];
+        scoredCount = 0;
+    }
+
+    /**
+     * Remember that a verse has been ranked, until too many have been.
+     * 
+     * @param ord
+     *            The verse that now has a rank
+     */
+    private void note(int ord) {
+        if (scored == null) {
+            return;
+        }
+
+        if (scoredCount == scored.length) {
+            if (scoredCount >= board.length / SPARSE_SHARE) {
+                // From now on it is as quick to look at the whole board.
+                scored = null;
+                return;
+            }
+            scored = Arrays.copyOf(scored, scoredCount * 2);
+        }
+        scored[scoredCount++] = ord;
+    }
+
+    /**
+     * Get the verses that have a rank, in Biblical order.
+     * 
+     * @return the ordinals of the ranked verses
+     */
+    private int[] getScored() {
+        int[] ordinals;
+        int count = 0;
+        if (scored == null) {
+            ordinals = new int[size];
+            for (int i = 0; i < board.length && count < ordinals.length; i++) {
+                if (board[i] > 0) {
+                    ordinals[count++] = i;
+                }
+            }
+        } else {
+            // A verse may have been removed, or removed and ranked again.
+            ordinals = Arrays.copyOf(scored, scoredCount);
+            Arrays.sort(ordinals);
+            int last = -1;
+            for (int ord : ordinals) {
+                if (ord != last && board[ord] > 0) {
+                    ordinals[count++] = ord;
+                }
+                last = ord;
+            }
+        }
+
+        return count == ordinals.length ? ordinals : Arrays.copyOf(ordinals, count);
+    }
+
+    /**
+     * Find the highest ranked verses with a heap that holds the best found so
+     * far, the worst of them at the top. So it takes O(n log count) rather
+     * than the O(n log n) of sorting all n of them.
+     * 
+     * @param board
+     *            The ranks by ordinal
+     * @param ordinals
+     *            The ranked verses, in Biblical order
+     * @param count
+     *            The most verses to find
+     * @return the highest ranked verses, highest first
+     */
+    private static TalliedVerse[] getTop(int[] board, int[] ordinals, int count) {
+        TalliedVerse[] top;
+        if (count >= ordinals.length) {
+            top = new TalliedVerse[ordinals.length];
+            for (int i = 0; i < ordinals.length; i++) {
+                top[i] = new TalliedVerse(ordinals[i], board[ordinals[i]]);
+            }
+        } else if (count <= 0) {
+            top = new TalliedVerse[0];
+        } else {
+            PriorityQueue<TalliedVerse> heap = new PriorityQueue<TalliedVerse>(count, Collections.reverseOrder());
+            for (int ord : ordinals) {
+                if (heap.size() < count) {
+                    heap.add(new TalliedVerse(ord, board[ord]));
+                } else if (board[ord] > heap.peek().tally) {
+                    // The ordinals are in order, so an equal rank comes after the worst.
+                    heap.poll();
+                    heap.add(new TalliedVerse(ord, board[ord]));
+                }
+            }
+            top = heap.toArray(new TalliedVerse[heap.size()]);
+        }
+
+        Arrays.sort(top);
+        return top;
+    }
+
+    /**
+     * Add up tallies, such as the results of searches made on several threads
+     * or in several books. The board is split into parts that are added up at
+     * the same time, each part only looking at the ranked verses of each tally
+     * that fall within it.
+     * 
+     * @param v11n
+     *            The Versification of all the tallies
+     * @param tallies
+     *            The tallies to add up, which are not changed
+     * @param executor
+     *            What adds up the parts, or null to add them up on this thread
+     * @return a new tally of the ranks of all of them
+     * @throws InterruptedException
+     *             if interrupted while waiting for the parts to be added up
+     * @throws IllegalArgumentException
+     *             if a tally is not of the given Versification
+     */
+    public static PassageTally merge(Versification v11n, List<PassageTally> tallies, ExecutorService executor) throws InterruptedException {
+        PassageTally merged = new PassageTally(v11n);
+        int[][] boards = new int[tallies.size()][];
+        int[][] ordinals = new int[tallies.size()][];
+        for (int i = 0; i < boards.length; i++) {
+            PassageTally tally = tallies.get(i);
+            // The boards are added up ordinal by ordinal, which only makes sense in the same Versification.
+            if (!v11n.equals(tally.getVersification())) {
+                throw new IllegalArgumentException(JSOtherMsg.lookupText("Cannot merge a tally of {0} into one of {1}.", tally.getVersification().getName(), v11n.getName()));
+            }
+            boards[i] = tally.board;
+            ordinals[i] = tally.getScored();
+            merged.total += tally.total;
+            merged.incrementMax(tally.max);
+        }
+
+        int length = merged.board.length;
+        int parts = executor == null ? 1 : Runtime.getRuntime().availableProcessors();
+        int step = (length + parts - 1) / parts;
+        List<MergePart> work = new ArrayList<MergePart>(parts);
+        for (int start = 0; start < length; start += step) {
+            work.add(new MergePart(merged.board, boards, ordinals, start, Math.min(start + step, length)));
+        }
+
+        List<int[]> found = new ArrayList<int[]>(work.size());
+        if (executor == null) {
+            for (MergePart part : work) {
+                found.add(part.call());
+            }
+        } else {
+            for (Future<int[]> future : executor.invokeAll(work)) {
+                try {
+                    found.add(future.get());
+                } catch (ExecutionException e) {
+                    // Adding up cannot throw a checked exception.
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw (RuntimeException) cause;
+                }
+            }
+        }
+
+        // The parts are in order, so their verses are too.
+        for (int[] part : found) {
+            for (int ord : part) {
+                merged.size++;
+                merged.note(ord);
+            }
+        }
+        return merged;
+    }
+
     /**
      * Call the support mechanism in AbstractPassage
      * 
@@ -793,6 +1026,17 @@ public class PassageTally extends AbstractPassage {
      */
     public static final int MAX_TALLY = 20000;
 
+    /**
+     * The initial room for remembering which verses are ranked.
+     */
+    private static final int SCORED_START = 16;
+
+    /**
+     * Which verses are ranked is remembered until more than this share of
+     * the board, as 1 in so many, has been ranked.
+     */
+    private static final int SPARSE_SHARE = 32;
+
     /*
      * The number of verses in the tally.
      */
@@ -813,6 +1057,18 @@ public class PassageTally extends AbstractPassage {
      */
     private int max;
 
+    /**
+     * The verses that have been ranked, in the order they were, while there
+     * are few enough of them. It may still hold verses that have since been
+     * removed. Null when the whole board has to be looked at instead.
+     */
+    private transient int[] scored;
+
+    /**
+     * The number of entries in scored.
+     */
+    private transient int scoredCount;
+
     /**
      * The maximum tally possible
      */
@@ -835,31 +1091,32 @@ public class PassageTally extends AbstractPassage {
      */
     private final class VerseIterator implements Iterator<Key> {
         /**
-         * Find the first unused verse
+         * Find the verses that are ranked
+         * 
+         * @param count
+         *            the most verses to iterate through
          */
-        protected VerseIterator() {
-            calculateNext();
+        protected VerseIterator(int count) {
+            ordinals = getScored();
+            end = Math.min(Math.max(count, 0), ordinals.length);
         }
 
         /* (non-Javadoc)
          * @see java.util.Iterator#hasNext()
          */
         public boolean hasNext() {
-            return next <= board.length - 1;
+            return next < end;
         }
 
         /* (non-Javadoc)
          * @see java.util.Iterator#next()
          */
         public Key next() throws NoSuchElementException {
-            if (next >= board.length) {
+            if (next >= end) {
                 throw new NoSuchElementException();
             }
 
-            Key retcode = getVersification().decodeOrdinal(next);
-            calculateNext();
-
-            return retcode;
+            return getVersification().decodeOrdinal(ordinals[next++]);
         }
 
         /* (non-Javadoc)
@@ -869,14 +1126,11 @@ public class PassageTally extends AbstractPassage {
             throw new UnsupportedOperationException();
         }
 
-        /**
-         * Find the next bit
-         */
-        private void calculateNext() {
-            do {
-                next++;
-            } while (next < board.length && board[next] == 0);
-        }
+        /** The ranked verses */
+        private int[] ordinals;
+
+        /** Where to stop */
+        private int end;
 
         /** What is the next Verse to be considered */
         private int next;
@@ -891,18 +1145,9 @@ public class PassageTally extends AbstractPassage {
         /**
          * Find the first unused verse
          */
-        protected OrderedVerseIterator(Versification v11n, int[] board) {
+        protected OrderedVerseIterator(Versification v11n, int[] board, int[] ordinals, int count) {
             referenceSystem = v11n;
-            TreeSet<TalliedVerse> output = new TreeSet<TalliedVerse>();
-
-            int vib = board.length - 1;
-            for (int i = 0; i <= vib; i++) {
-                if (board[i] != 0) {
-                    output.add(new TalliedVerse(i, board[i]));
-                }
-            }
-
-            it = output.iterator();
+            it = Arrays.asList(getTop(board, ordinals, count)).iterator();
             last = null;
         }
 
@@ -1022,6 +1267,66 @@ public class PassageTally extends AbstractPassage {
         protected int tally;
     }
 
+    /**
+     * Add up the tallies of one part of the board.
+     */
+    private static final class MergePart implements Callable<int[]> {
+        /**
+         * @param board
+         *            the board to add to
+         * @param boards
+         *            the boards to add up
+         * @param ordinals
+         *            the ranked verses of each board, in order
+         * @param start
+         *            the first ordinal of the part
+         * @param end
+         *            the ordinal after the part
+         */
+        protected MergePart(int[] board, int[][] boards, int[][] ordinals, int start, int end) {
+            this.board = board;
+            this.boards = boards;
+            this.ordinals = ordinals;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return the ordinals in this part that are now ranked, in order
+         */
+        public int[] call() {
+            int[] found = new int[SCORED_START];
+            int count = 0;
+            for (int t = 0; t < boards.length; t++) {
+                int[] from = boards[t];
+                int[] ords = ordinals[t];
+                int i = Arrays.binarySearch(ords, start);
+                if (i < 0) {
+                    i = -i - 1;
+                }
+                for (; i < ords.length && ords[i] < end; i++) {
+                    int ord = ords[i];
+                    if (board[ord] == 0) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = ord;
+                    }
+                    board[ord] = Math.min(board[ord] + from[ord], MAX_TALLY);
+                }
+            }
+
+            Arrays.sort(found, 0, count);
+            return Arrays.copyOf(found, count);
+        }
+
+        private int[] board;
+        private int[][] boards;
+        private int[][] ordinals;
+        private int start;
+        private int end;
+    }
+
     /**
      * Iterate over the Ranges in order of their rank in the tally
      * 
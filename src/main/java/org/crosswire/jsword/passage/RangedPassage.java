@@ -142,6 +142,16 @@ public class RangedPassage extends AbstractPassage {
         return new VerseIterator(getVersification(), rangeIterator(RestrictionType.NONE));
     }
 
+    @Override
+    public void visitOrdinals(OrdinalVisitor visitor) {
+        for (VerseRange range : store) {
+            int end = range.getEnd().getOrdinal();
+            for (int i = range.getStart().getOrdinal(); i <= end; i++) {
+                visitor.visitOrdinal(i);
+            }
+        }
+    }
+
     @Override
     public final Iterator<VerseRange> rangeIterator(RestrictionType restrict) {
         if (restrict.equals(RestrictionType.NONE)) {
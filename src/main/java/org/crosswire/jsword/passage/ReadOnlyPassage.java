@@ -266,6 +266,13 @@ final class ReadOnlyPassage implements Passage {
         return ref.getVerseAt(offset);
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.passage.Passage#visitOrdinals(org.crosswire.jsword.passage.OrdinalVisitor)
+     */
+    public void visitOrdinals(OrdinalVisitor visitor) {
+        ref.visitOrdinals(visitor);
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.passage.Passage#getRangeAt(int, org.crosswire.jsword.passage.RestrictionType)
      */
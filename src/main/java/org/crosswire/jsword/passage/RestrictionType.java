@@ -107,6 +107,45 @@ public enum RestrictionType {
             return new VerseRange(v11n, start, end);
         }
 
+        @Override
+        public VerseRange toRange(Versification v11n, Verse verse, int count) {
+            Verse end = v11n.add(verse, count - 1);
+            return new VerseRange(v11n, verse, end);
+        }
+    },
+
+    /**
+     * Blurring is restricted to the book
+     */
+    BOOK {
+        @Override
+        public boolean isSameScope(Versification v11n, Verse start, Verse end) {
+            return v11n.isSameBook(start, end);
+        }
+
+        @Override
+        public VerseRange blur(Versification v11n, VerseRange range, int blurDown, int blurUp) {
+            Verse start = range.getStart();
+            BibleBook startBook = start.getBook();
+            int startOrdinal = v11n.getOrdinal(start) - blurDown;
+
+            Verse end = range.getEnd();
+            BibleBook endBook = end.getBook();
+            int endOrdinal = v11n.getOrdinal(end) + blurUp;
+
+            // A book runs from its introduction to the last verse of its last chapter.
+            int lastChapter = v11n.getLastChapter(endBook);
+            startOrdinal = Math.max(startOrdinal, v11n.getOrdinal(new Verse(v11n, startBook, 0, 0)));
+            endOrdinal = Math.min(endOrdinal, v11n.getOrdinal(new Verse(v11n, endBook, lastChapter, v11n.getLastVerse(endBook, lastChapter))));
+
+            return new VerseRange(v11n, v11n.decodeOrdinal(startOrdinal), v11n.decodeOrdinal(endOrdinal));
+        }
+
+        @Override
+        public VerseRange blur(Versification v11n, Verse verse, int blurDown, int blurUp) {
+            return blur(v11n, new VerseRange(v11n, verse), blurDown, blurUp);
+        }
+
         @Override
         public VerseRange toRange(Versification v11n, Verse verse, int count) {
             Verse end = v11n.add(verse, count - 1);
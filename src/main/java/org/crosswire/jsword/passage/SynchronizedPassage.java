@@ -248,6 +248,13 @@ final class SynchronizedPassage implements Passage {
         return ref.getVerseAt(offset);
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.passage.Passage#visitOrdinals(org.crosswire.jsword.passage.OrdinalVisitor)
+     */
+    public synchronized void visitOrdinals(OrdinalVisitor visitor) {
+        ref.visitOrdinals(visitor);
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.passage.Passage#getRangeAt(int, org.crosswire.jsword.passage.RestrictionType)
      */
@@ -292,47 +292,7 @@ public final class BibleNames {
         BibleBook getBook(String find, boolean fuzzy) {
             String match = BookName.normalize(find, locale);
 
-            BookName bookName = fullNT.get(match);
-            if (bookName != null) {
-                return bookName.getBook();
-            }
-
-            bookName = shortNT.get(match);
-            if (bookName != null) {
-                return bookName.getBook();
-            }
-
-            bookName = altNT.get(match);
-            if (bookName != null) {
-                return bookName.getBook();
-            }
-
-            bookName = fullOT.get(match);
-            if (bookName != null) {
-                return bookName.getBook();
-            }
-
-            bookName = shortOT.get(match);
-            if (bookName != null) {
-                return bookName.getBook();
-            }
-
-            bookName = altOT.get(match);
-            if (bookName != null) {
-                return bookName.getBook();
-            }
-
-            bookName = fullNC.get(match);
-            if (bookName != null) {
-                return bookName.getBook();
-            }
-
-            bookName = shortNC.get(match);
-            if (bookName != null) {
-                return bookName.getBook();
-            }
-
-            bookName = altNC.get(match);
+            BookName bookName = names.get(match);
             if (bookName != null) {
                 return bookName.getBook();
             }
@@ -377,25 +337,25 @@ public final class BibleNames {
             String shortClassName = ClassUtil.getShortClassName(className);
             ResourceBundle resources = ResourceBundle.getBundle(shortClassName, locale, CWClassLoader.instance(BibleNames.class));
 
-            fullNT = new HashMap<String, BookName>(ntCount);
-            shortNT = new HashMap<String, BookName>(ntCount);
-            altNT = new HashMap<String, BookName>(ntCount);
+            Map<String, BookName> fullNT = new HashMap<String, BookName>(ntCount);
+            Map<String, BookName> shortNT = new HashMap<String, BookName>(ntCount);
+            Map<String, BookName> altNT = new HashMap<String, BookName>(ntCount);
             for (int i = BibleBook.MATT.ordinal(); i <= BibleBook.REV.ordinal(); ++i) {
                 BibleBook book = bibleBooks[i];
                 store(resources, book, fullNT, shortNT, altNT);
             }
 
-            fullOT = new HashMap<String, BookName>(otCount);
-            shortOT = new HashMap<String, BookName>(otCount);
-            altOT = new HashMap<String, BookName>(otCount);
+            Map<String, BookName> fullOT = new HashMap<String, BookName>(otCount);
+            Map<String, BookName> shortOT = new HashMap<String, BookName>(otCount);
+            Map<String, BookName> altOT = new HashMap<String, BookName>(otCount);
             for (int i = BibleBook.GEN.ordinal(); i <= BibleBook.MAL.ordinal(); ++i) {
                 BibleBook book = bibleBooks[i];
                 store(resources, book, fullOT, shortOT, altOT);
             }
 
-            fullNC = new HashMap<String, BookName>(ncCount);
-            shortNC = new HashMap<String, BookName>(ncCount);
-            altNC = new HashMap<String, BookName>(ncCount);
+            Map<String, BookName> fullNC = new HashMap<String, BookName>(ncCount);
+            Map<String, BookName> shortNC = new HashMap<String, BookName>(ncCount);
+            Map<String, BookName> altNC = new HashMap<String, BookName>(ncCount);
             store(resources, BibleBook.INTRO_BIBLE, fullNC, shortNC, altNC);
             store(resources, BibleBook.INTRO_OT, fullNC, shortNC, altNC);
             store(resources, BibleBook.INTRO_NT, fullNC, shortNC, altNC);
@@ -403,6 +363,20 @@ public final class BibleNames {
                 BibleBook book = bibleBooks[i];
                 store(resources, book, fullNC, shortNC, altNC);
             }
+
+            // Merge the names so that a book is found with one lookup.
+            // Where a name is in several of the maps, the one that used to be
+            // searched first is put last, so that it still wins.
+            names = new HashMap<String, BookName>();
+            names.putAll(altNC);
+            names.putAll(shortNC);
+            names.putAll(fullNC);
+            names.putAll(altOT);
+            names.putAll(shortOT);
+            names.putAll(fullOT);
+            names.putAll(altNT);
+            names.putAll(shortNT);
+            names.putAll(fullNT);
         }
 
         private void store(ResourceBundle resources, BibleBook book, Map fullMap, Map shortMap, Map altMap) {
@@ -459,58 +433,12 @@ public final class BibleNames {
         private LinkedHashMap<BibleBook, BookName> books;
 
         /**
-         * The full names of the New Testament books of the Bible normalized,
-         * generated at runtime
-         */
-        private Map<String, BookName> fullNT;
-
-        /**
-         * The full names of the Old Testament books of the Bible normalized,
-         * generated at runtime
-         */
-        private Map<String, BookName> fullOT;
-
-        /**
-         * The full names of the Deuterocanonical books of the Bible normalized,
-         * generated at runtime
-         */
-        private Map<String, BookName> fullNC;
-
-        /**
-         * Standard shortened names for the New Testament books of the Bible,
-         * normalized, generated at runtime.
-         */
-        private Map<String, BookName> shortNT;
-
-        /**
-         * Standard shortened names for the Old Testament books of the Bible
-         * normalized, generated at runtime.
-         */
-        private Map<String, BookName> shortOT;
-
-        /**
-         * Standard shortened names for the Deuterocanonical books of the Bible
-         * normalized, generated at runtime.
-         */
-        private Map<String, BookName> shortNC;
-
-        /**
-         * Alternative shortened names for the New Testament books of the Bible
-         * normalized, generated at runtime.
-         */
-        private Map<String, BookName> altNT;
-
-        /**
-         * Alternative shortened names for the Old Testament books of the Bible
-         * normalized, generated at runtime.
-         */
-        private Map<String, BookName> altOT;
-
-        /**
-         * Alternative shortened names for the Deuterocanonical books of the
-         * Bible normalized, generated at runtime.
+         * The full, short and alternative names of all the books of the Bible
+         * normalized, generated at runtime. Where a name is shared, the New
+         * Testament is preferred to the Old, the Old to the rest, and full
+         * names to short ones and short ones to alternatives.
          */
-        private Map<String, BookName> altNC;
+        private Map<String, BookName> names;
     }
 
     /** we cache the Localized Bible Names because there is quite a bit of processing going on for each individual Locale */
@@ -20,7 +20,6 @@
 package org.crosswire.jsword.versification;
 
 import java.util.Locale;
-import java.util.regex.Pattern;
 
 import org.crosswire.common.util.StringUtil;
 import org.crosswire.jsword.book.CaseType;
@@ -243,7 +242,17 @@ public final class BookName {
      * @return the normalized string
      */
     public static String normalize(String str, Locale locale) {
-        return normPattern.matcher(str).replaceAll("").toLowerCase(locale);
+        // This is done for every book name of every reference parsed, so without a regular expression.
+        int size = str.length();
+        StringBuilder buf = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            char c = str.charAt(i);
+            // remove spaces and some punctuation in Book Name (make sure , is allowed)
+            if (c != '.' && c != ' ') {
+                buf.append(c);
+            }
+        }
+        return buf.toString().toLowerCase(locale);
     }
 
     /**
@@ -317,9 +326,6 @@ public final class BookName {
         return BookName.bookCase;
     }
 
-    /** remove spaces and some punctuation in Book Name (make sure , is allowed) */
-    private static Pattern normPattern = Pattern.compile("[. ]");
-
     private BibleBook book;
     private String longName;
     private String normalizedLongName;
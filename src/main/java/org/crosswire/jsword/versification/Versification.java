@@ -935,6 +935,7 @@ public class Versification implements ReferenceSystem, Serializable {
      * Where does this verse come in the Bible. This will unwind the value returned by getOrdinal(Verse).
      * If the ordinal value is less than 0 or greater than the last verse in this Versification,
      * then constrain it to the first or last verse in this Versification.
+     * The Verse returned is shared, so decoding does not create one.
      *
      * @param ordinal
      *            The ordinal number of the verse
@@ -949,72 +950,34 @@ public class Versification implements ReferenceSystem, Serializable {
             ord = ntMaxOrdinal;
         }
 
-        // Handle three special cases
-        // Book/Module introduction
-        if (ord == 0) {
-            return new Verse(this, BibleBook.INTRO_BIBLE, 0, 0);
-        }
-
-        // OT introduction
-        if (ord == 1) {
-            return new Verse(this, BibleBook.INTRO_OT, 0, 0);
-        }
-
-        // NT introduction
-        if (ord == otMaxOrdinal + 1) {
-            return new Verse(this, BibleBook.INTRO_NT, 0, 0);
-        }
-
-        // To find the book, do a binary search in chapterStarts against chapter 0
-        int low = 0;
-        int high = chapterStarts.length;
-        int match = -1;
-
-        while (high - low > 1) {
-            // use >>> to keep mid always in range
-            int mid = (low + high) >>> 1;
-
-            // Compare the for the item at "mid"
-            int cmp = chapterStarts[mid][0] - ord;
-            if (cmp < 0) {
-                low = mid;
-            } else if (cmp > 0) {
-                high = mid;
-            } else {
-                match = mid;
-                break;
-            }
-        }
+        return getVerses()[ord];
+    }
 
-        // If we didn't have an exact match then use the low value
-        int bookIndex = match >= 0 ? match : low;
-        BibleBook book = bookList.getBook(bookIndex);
-
-        // To find the chapter, do a binary search in chapterStarts against bookIndex
-        low = 0;
-        high = chapterStarts[bookIndex].length;
-        match = -1;
-
-        while (high - low > 1) {
-            // use >>> to keep mid always in range
-            int mid = (low + high) >>> 1;
-
-            // Compare the for the item at "mid"
-            int cmp = chapterStarts[bookIndex][mid] - ord;
-            if (cmp < 0) {
-                low = mid;
-            } else if (cmp > 0) {
-                high = mid;
-            } else {
-                match = mid;
-                break;
+    /**
+     * Get every verse in this Versification, indexed by ordinal. The table is
+     * built the first time it is needed and then shared by every caller, as a
+     * Verse cannot be changed. Concurrent first callers may each build it;
+     * all but one of the tables is then dropped.
+     *
+     * @return the verses of this Versification
+     */
+    private Verse[] getVerses() {
+        Verse[] table = verses;
+        if (table == null) {
+            table = new Verse[ntMaxOrdinal + 1];
+            int ordinal = 0;
+            for (int bookIndex = 0; bookIndex < lastVerse.length; bookIndex++) {
+                BibleBook book = bookList.getBook(bookIndex);
+                int[] lastVerseInChapter = lastVerse[bookIndex];
+                for (int chapter = 0; chapter < lastVerseInChapter.length; chapter++) {
+                    for (int verse = 0; verse <= lastVerseInChapter[chapter]; verse++) {
+                        table[ordinal++] = new Verse(this, book, chapter, verse);
+                    }
+                }
             }
+            verses = table;
         }
-
-        // If we didn't have an exact match then use the low value
-        int chapterIndex = match >= 0 ? match : low;
-        int verse = chapterIndex == 0 ? 0 : ord - chapterStarts[bookIndex][chapterIndex];
-        return new Verse(this, book, chapterIndex, verse);
+        return table;
     }
 
     /**
@@ -1315,6 +1278,12 @@ public class Versification implements ReferenceSystem, Serializable {
      * The number of chapters in the NT, not counting chapter 0
      */
     private int ntChapterCount;
+
+    /**
+     * Every verse by ordinal, built on first use.
+     */
+    private transient volatile Verse[] verses;
+
     /**
      * Serialization ID
      */
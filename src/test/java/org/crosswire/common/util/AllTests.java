@@ -34,7 +34,9 @@ import org.junit.runners.Suite.SuiteClasses;
     StringUtilTest.class,
     PropertyMapTest.class,
     LanguageTest.class,
-    LanguagesTest.class
+    LanguagesTest.class,
+    SegmentedCacheTest.class,
+    OrderedParallelWriterTest.class
 })
 public class AllTests {
 }
@@ -0,0 +1,190 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.common.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.crosswire.common.progress.JobManager;
+import org.crosswire.common.progress.Progress;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class OrderedParallelWriterTest {
+
+    @Test
+    public void testSameAsSingleThreaded() throws Exception {
+        byte[] expected = piecesInOrder().getBytes(UTF_8.name());
+        Assert.assertArrayEquals(expected, writePieces(1));
+        Assert.assertArrayEquals(expected, writePieces(4));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OrderedParallelWriter writer = new OrderedParallelWriter(Channels.newChannel(out), UTF_8, 2, null);
+        writer.write(new Piece("before"), 1);
+        writer.write(new Callable<String>() {
+            public String call() throws IOException {
+                throw new IOException("unreadable");
+            }
+        }, 1);
+        writer.write(new Piece("after"), 1);
+        try {
+            writer.flush();
+            Assert.fail("The failure of a piece was not reported");
+        } catch (IOException e) {
+            Assert.assertEquals("unreadable", e.getMessage());
+        } finally {
+            writer.close();
+        }
+        // What came before the failure is written and nothing after it.
+        Assert.assertEquals("before", out.toString(UTF_8.name()));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Progress job = JobManager.createJob("Exporting");
+        job.beginJob("Exporting", 10);
+        OrderedParallelWriter writer = new OrderedParallelWriter(Channels.newChannel(out), UTF_8, 1, job);
+
+        Assert.assertTrue(writer.write(new Piece("first"), 1));
+        writer.flush();
+        Assert.assertEquals(1, job.getWorkDone());
+
+        // The only thread is held by the next piece, so the one after it waits.
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger rendered = new AtomicInteger();
+        Assert.assertTrue(writer.write(new Callable<String>() {
+            public String call() throws InterruptedException {
+                started.countDown();
+                gate.await();
+                rendered.incrementAndGet();
+                return "held";
+            }
+        }, 1));
+        Assert.assertTrue(writer.write(new Callable<String>() {
+            public String call() {
+                rendered.incrementAndGet();
+                return "waiting";
+            }
+        }, 1));
+        Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        job.cancel();
+        Assert.assertTrue(writer.isCancelled());
+        Assert.assertFalse(writer.write(new Piece("refused"), 1));
+        writer.close();
+        gate.countDown();
+
+        // The pieces in hand were abandoned, unwritten.
+        Assert.assertEquals("first", out.toString(UTF_8.name()));
+        Assert.assertEquals(0, rendered.get());
+    }
+
+    /**
+     * Write the pieces on the given number of threads, each taking a while
+     * that varies, so that they finish out of order.
+     */
+    private byte[] writePieces(int threads) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OrderedParallelWriter writer = new OrderedParallelWriter(Channels.newChannel(out), UTF_8, threads, null);
+        try {
+            Random random = new Random(PIECES);
+            for (int i = 0; i < PIECES; i++) {
+                Assert.assertTrue(writer.write(new Piece(piece(i), random.nextInt(3)), 1));
+            }
+        } finally {
+            writer.close();
+        }
+        return out.toByteArray();
+    }
+
+    private String piecesInOrder() {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < PIECES; i++) {
+            buf.append(piece(i));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Some pieces are empty and some are bigger than the writer's buffer.
+     * Characters of more than one byte and surrogate pairs fall across the
+     * ends of the buffer.
+     */
+    private String piece(int i) {
+        if (i % 17 == 0) {
+            return "";
+        }
+        StringBuilder buf = new StringBuilder();
+        int repeat = i % 50 == 1 ? 3000 : i % 7 + 1;
+        for (int j = 0; j < repeat; j++) {
+            buf.append("$$$Piece ").append(i).append(" \u00fc\u03b1\u05d0 \ud834\udd1e\n");
+        }
+        return buf.toString();
+    }
+
+    /**
+     * A piece of text, rendered after an optional pause.
+     */
+    private static final class Piece implements Callable<String> {
+        Piece(String text) {
+            this(text, 0);
+        }
+
+        Piece(String text, int pause) {
+            this.text = text;
+            this.pause = pause;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Callable#call()
+         */
+        public String call() throws InterruptedException {
+            if (pause > 0) {
+                Thread.sleep(pause);
+            }
+            return text;
+        }
+
+        private final String text;
+        private final int pause;
+    }
+
+    private static final int PIECES = 300;
+    private static final long TIMEOUT = 10000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+}
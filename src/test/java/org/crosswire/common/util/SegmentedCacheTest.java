@@ -0,0 +1,159 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.common.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class SegmentedCacheTest {
+
+    @Test
+    public void testEvictionOrder() {
+        SegmentedCache<String, String> cache = new SegmentedCache<String, String>(1, 3);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+
+        // Using a makes b the least recently used.
+        Assert.assertEquals("A", cache.get("a"));
+        cache.put("d", "D");
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(1, cache.getEvictions());
+
+        // Asking whether c is there is not a use of it.
+        Assert.assertTrue(cache.containsKey("c"));
+        cache.put("e", "E");
+        Assert.assertFalse(cache.containsKey("c"));
+        Assert.assertEquals("A", cache.get("a"));
+        Assert.assertEquals("D", cache.get("d"));
+        Assert.assertEquals("E", cache.get("e"));
+    }
+
+    @Test
+    public void testWeight() {
+        SegmentedCache<String, String> cache = new SegmentedCache<String, String>(1, 10) {
+            @Override
+            protected long weigh(String value) {
+                return value.length();
+            }
+        };
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        Assert.assertEquals(8, cache.getWeight());
+
+        // Replacing an entry only counts the new value.
+        cache.put("a", "a");
+        Assert.assertEquals(5, cache.getWeight());
+
+        // Too heavy for the cache, so not kept and nothing evicted.
+        cache.put("c", "ccccccccccc");
+        Assert.assertNull(cache.get("c"));
+        Assert.assertEquals(2, cache.size());
+
+        // Replacing a was a use of it, so b goes to make room.
+        cache.put("d", "dddddd");
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(7, cache.getWeight());
+        cache.put("e", "e");
+        Assert.assertEquals(8, cache.getWeight());
+
+        cache.setMaxWeight(2);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals("e", cache.get("e"));
+
+        cache.remove("e");
+        Assert.assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testRemoveAll() {
+        SegmentedCache<String, String> cache = new SegmentedCache<String, String>(4, 100);
+        for (int i = 0; i < 20; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        cache.removeAll(new Filter<String>() {
+            public boolean test(String key) {
+                return key.endsWith("1");
+            }
+        });
+        Assert.assertEquals(18, cache.size());
+        Assert.assertNull(cache.get("key1"));
+        Assert.assertNull(cache.get("key11"));
+        Assert.assertEquals("value2", cache.get("key2"));
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testConcurrentBound() throws Exception {
+        final long maxWeight = 1000;
+        final SegmentedCache<Integer, int[]> cache = new SegmentedCache<Integer, int[]>(8, maxWeight) {
+            @Override
+            protected long weigh(int[] value) {
+                return value.length;
+            }
+        };
+        final AtomicBoolean exceeded = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 20000; i++) {
+                        Integer key = Integer.valueOf(random.nextInt(500));
+                        if (random.nextBoolean()) {
+                            cache.put(key, new int[1 + random.nextInt(50)]);
+                        } else {
+                            cache.get(key);
+                        }
+                        if (cache.getWeight() > maxWeight) {
+                            exceeded.set(true);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertFalse(exceeded.get());
+        Assert.assertTrue(cache.getWeight() <= maxWeight);
+        Assert.assertTrue(cache.getEvictions() > 0);
+    }
+}
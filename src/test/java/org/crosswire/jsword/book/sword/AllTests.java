@@ -32,11 +32,16 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({
     BackendTest.class,
+    BlockCacheTest.class,
     ConfigEntryTableTest.class,
+    DataKeyIndexTest.class,
+    RawBackendTest.class,
+    RawLDBackendTest.class,
     RawFileBackendTest.class,
     SwordBookDriverTest.class,
     SwordBookMetaDataTest.class,
-    SwordBookTest.class
+    SwordBookTest.class,
+    SwordUtilTest.class
 })
 public class AllTests {
 }
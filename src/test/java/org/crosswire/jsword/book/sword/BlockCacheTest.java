@@ -0,0 +1,134 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.crosswire.jsword.book.BookMetaData;
+import org.crosswire.jsword.book.sword.state.BlockCache;
+import org.crosswire.jsword.versification.Testament;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class BlockCacheTest {
+
+    @Before
+    public void setUp() throws Exception {
+        cache = BlockCache.instance();
+        savedMaxBytes = cache.getMaxBytes();
+        cache.clear();
+        kjv = new SwordBookMetaData("[KJV]\nDataPath=./modules/texts/ztext/kjv/\nModDrv=zText\n".getBytes(), "KJV");
+        web = new SwordBookMetaData("[WEB]\nDataPath=./modules/texts/ztext/web/\nModDrv=zText\n".getBytes(), "WEB");
+    }
+
+    @After
+    public void tearDown() {
+        cache.setMaxBytes(savedMaxBytes);
+        cache.clear();
+    }
+
+    @Test
+    public void testGetAndPut() {
+        cache.setMaxBytes(1024 * 1024);
+        byte[] block = new byte[100];
+        cache.put(kjv, Testament.OLD, 3, block);
+        Assert.assertTrue(cache.contains(kjv, Testament.OLD, 3));
+        Assert.assertFalse(cache.contains(kjv, Testament.NEW, 3));
+        Assert.assertFalse(cache.contains(web, Testament.OLD, 3));
+        Assert.assertSame(block, cache.get(kjv, Testament.OLD, 3));
+        Assert.assertEquals(100, cache.getSize());
+        Assert.assertEquals(1, cache.getBlockCount());
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.setMaxBytes(1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            cache.put(kjv, Testament.NEW, i, new byte[10]);
+            cache.put(web, Testament.NEW, i, new byte[10]);
+        }
+        cache.invalidate(kjv);
+        Assert.assertEquals(10, cache.getBlockCount());
+        Assert.assertEquals(100, cache.getSize());
+        Assert.assertNull(cache.get(kjv, Testament.NEW, 5));
+        Assert.assertNotNull(cache.get(web, Testament.NEW, 5));
+    }
+
+    @Test
+    public void testTooLarge() {
+        cache.setMaxBytes(16 * 1024);
+        // Each of the segments holds a share of 1K.
+        cache.put(kjv, null, 1, new byte[2048]);
+        Assert.assertFalse(cache.contains(kjv, null, 1));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testConcurrentBound() throws Exception {
+        final long maxBytes = 64 * 1024;
+        cache.setMaxBytes(maxBytes);
+        final AtomicBoolean exceeded = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 20000; i++) {
+                        BookMetaData bmd = random.nextBoolean() ? kjv : web;
+                        long blockNum = random.nextInt(1000);
+                        if (cache.get(bmd, Testament.OLD, blockNum) == null) {
+                            cache.put(bmd, Testament.OLD, blockNum, new byte[1 + random.nextInt(1024)]);
+                        }
+                        if (cache.getSize() > maxBytes) {
+                            exceeded.set(true);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertFalse(exceeded.get());
+        Assert.assertTrue(cache.getSize() <= maxBytes);
+        Assert.assertTrue(cache.getEvictions() > 0);
+    }
+
+    private BlockCache cache;
+    private long savedMaxBytes;
+    private BookMetaData kjv;
+    private BookMetaData web;
+}
@@ -0,0 +1,94 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class DataKeyIndexTest {
+
+    @Before
+    public void setUp() {
+        // An introduction, a bogus empty entry, then keys out of order.
+        String[] keys = {
+            "Intro", "", "G0026", "G0025", "g0027", "G0100"
+        };
+        String[] normalized = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            normalized[i] = keys[i].toUpperCase(Locale.US);
+        }
+        int[] offsets = {
+            0, 10, 10, 20, 30, 40
+        };
+        int[] sizes = {
+            10, 0, 10, 10, 10, 10
+        };
+        index = new DataKeyIndex(keys, normalized, offsets, sizes);
+    }
+
+    @Test
+    public void testFind() {
+        Assert.assertEquals(2, index.find("G0026"));
+        Assert.assertEquals(3, index.find("G0025"));
+        Assert.assertEquals(4, index.find("G0027"));
+        Assert.assertEquals(0, index.find("INTRO"));
+        // Not present: the insertion point is before G0026
+        Assert.assertEquals(-2 - 1, index.find("G00255"));
+        // Beyond all keys
+        Assert.assertEquals(-index.size() - 1, index.find("ZZZ"));
+        // The bogus entry is not searchable
+        Assert.assertTrue(index.find("") < 0);
+    }
+
+    @Test
+    public void testFindPrefix() {
+        int[] found = index.findPrefix("G002");
+        Assert.assertArrayEquals(new int[] {
+            3, 2, 4
+        }, found);
+        Assert.assertEquals(0, index.findPrefix("H").length);
+    }
+
+    @Test
+    public void testFindIgnoreCase() {
+        Assert.assertEquals(4, index.findIgnoreCase("G0027"));
+        Assert.assertEquals(0, index.findIgnoreCase("intro"));
+        Assert.assertEquals(-1, index.findIgnoreCase("G0028"));
+    }
+
+    @Test
+    public void testGetIndex() {
+        DataIndex dataIndex = index.getIndex(3);
+        Assert.assertEquals(20, dataIndex.getOffset());
+        Assert.assertEquals(10, dataIndex.getSize());
+        Assert.assertEquals("g0027", index.getKey(4));
+    }
+
+    private DataKeyIndex index;
+}
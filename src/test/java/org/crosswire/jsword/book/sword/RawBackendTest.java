@@ -0,0 +1,171 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.jsword.book.sword.processing.RawTextToXmlProcessor;
+import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
+import org.crosswire.jsword.book.sword.state.RawBackendState;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.jdom2.Content;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class RawBackendTest {
+
+    @Before
+    public void setUp() throws Exception {
+        v11n = Versifications.instance().getVersification("KJV");
+        root = File.createTempFile("jsword", "");
+        root.delete();
+        root.mkdirs();
+
+        // Gen 1:4, Mal 4:5 and Gen 3 have no text.
+        Map<Verse, String> verses = new LinkedHashMap<Verse, String>();
+        verses.put(new Verse(v11n, BibleBook.GEN, 0, 0), "The First Book of Moses, called Genesis");
+        verses.put(new Verse(v11n, BibleBook.GEN, 1, 1), "In the beginning God created the heaven and the earth.");
+        verses.put(new Verse(v11n, BibleBook.GEN, 1, 2), "And the earth was without form, and void.");
+        verses.put(new Verse(v11n, BibleBook.GEN, 1, 3), "And God said, Let there be light: and there was light.");
+        verses.put(new Verse(v11n, BibleBook.GEN, 1, 5), "And God called the light Day, and the darkness he called Night.");
+        verses.put(new Verse(v11n, BibleBook.GEN, 1, 31), "And God saw every thing that he had made, and, behold, it was very good.");
+        verses.put(new Verse(v11n, BibleBook.GEN, 2, 0), "Chapter 2");
+        verses.put(new Verse(v11n, BibleBook.GEN, 2, 1), "Thus the heavens and the earth were finished.");
+        verses.put(new Verse(v11n, BibleBook.MAL, 4, 4), "Remember ye the law of Moses my servant.");
+        verses.put(new Verse(v11n, BibleBook.MAL, 4, 6), "And he shall turn the heart of the fathers to the children.");
+        verses.put(new Verse(v11n, BibleBook.MATT, 1, 1), "The book of the generation of Jesus Christ, the son of David, the son of Abraham.");
+        verses.put(new Verse(v11n, BibleBook.MATT, 1, 2), "Abraham begat Isaac; and Isaac begat Jacob.");
+        verses.put(new Verse(v11n, BibleBook.REV, 22, 21), "The grace of our Lord Jesus Christ be with you all. Amen.");
+        ordered = SwordTestUtils.createRawText(root, "RAWR" + Long.toString(System.nanoTime(), 36).toUpperCase(), v11n, verses);
+
+        // Store a long verse between each of the others, so that reading
+        // the text of a range at once would mostly read what is not wanted.
+        Map<Verse, String> scatteredVerses = new LinkedHashMap<Verse, String>();
+        StringBuilder filler = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            filler.append("Blessed are the undefiled in the way. ");
+        }
+        int psalm = 1;
+        for (Map.Entry<Verse, String> entry : verses.entrySet()) {
+            scatteredVerses.put(entry.getKey(), entry.getValue());
+            scatteredVerses.put(new Verse(v11n, BibleBook.PS, 119, psalm++), filler.toString());
+        }
+        scattered = SwordTestUtils.createRawText(root, "RAWS" + Long.toString(System.nanoTime(), 36).toUpperCase(), v11n, scatteredVerses);
+    }
+
+    @After
+    public void tearDown() {
+        OpenFileStateManager.instance().discardShared(ordered.getBookMetaData());
+        OpenFileStateManager.instance().discardShared(scattered.getBookMetaData());
+        FileUtil.delete(root);
+    }
+
+    @Test
+    public void testReadRawRange() throws Exception {
+        for (SwordBook book : new SwordBook[] { ordered, scattered }) {
+            assertSameAsByVerse(book, BibleBook.GEN, 0, 0, BibleBook.GEN, 1, 5);
+            // Across a chapter and its introduction
+            assertSameAsByVerse(book, BibleBook.GEN, 1, 30, BibleBook.GEN, 2, 2);
+            // Across the testaments
+            assertSameAsByVerse(book, BibleBook.MAL, 4, 3, BibleBook.MATT, 1, 3);
+            // The start of the New Testament
+            assertSameAsByVerse(book, BibleBook.MATT, 0, 0, BibleBook.MATT, 1, 2);
+            // The end of the Bible
+            assertSameAsByVerse(book, BibleBook.REV, 22, 19, BibleBook.REV, 22, 21);
+            // Nothing but empty verses
+            assertSameAsByVerse(book, BibleBook.GEN, 3, 1, BibleBook.GEN, 3, 24);
+        }
+    }
+
+    @Test
+    public void testReadPassageOsis() throws Exception {
+        for (SwordBook book : new SwordBook[] { ordered, scattered }) {
+            Passage passage = PassageKeyFactory.instance().getKey(v11n, "Gen 1:1-2:2, Gen 3:1-3, Mal 4:3-Matt 1:3, Rev 22:21");
+            final List<Key> keys = new ArrayList<Key>();
+            final List<String> texts = new ArrayList<String>();
+            book.getBackend().readToOsis(passage, new RawTextToXmlProcessor() {
+                public void init(List<Content> partialDom) {
+                }
+
+                public void preRange(VerseRange range, List<Content> partialDom) {
+                }
+
+                public void postVerse(Key verse, List<Content> partialDom, String rawText) {
+                    keys.add(verse);
+                    texts.add(rawText);
+                }
+            });
+
+            Assert.assertEquals(passage.getCardinality(), keys.size());
+            int i = 0;
+            for (Key verse : passage) {
+                Assert.assertEquals(verse, keys.get(i));
+                Assert.assertEquals(verse.getName(), book.getRawText(verse), texts.get(i));
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Check that reading a range at once gives the text of each of its
+     * verses, as reading it a verse at a time does.
+     */
+    private void assertSameAsByVerse(SwordBook book, BibleBook startBook, int startChapter, int startVerse, BibleBook endBook, int endChapter, int endVerse) throws Exception {
+        VerseRange range = new VerseRange(v11n, new Verse(v11n, startBook, startChapter, startVerse), new Verse(v11n, endBook, endChapter, endVerse));
+        @SuppressWarnings("unchecked")
+        RawBackend<RawBackendState> backend = (RawBackend<RawBackendState>) book.getBackend();
+        RawBackendState state = backend.initState();
+        try {
+            String[] texts = backend.readRawRange(state, range);
+            Assert.assertArrayEquals(range.getName(), backend.readRawRangeByVerse(state, range), texts);
+            int i = 0;
+            for (Key verse : range) {
+                Assert.assertEquals(verse.getName(), book.getRawText(verse), texts[i++]);
+            }
+        } finally {
+            OpenFileStateManager.instance().release(state);
+        }
+    }
+
+    private Versification v11n;
+    private File root;
+    private SwordBook ordered;
+    private SwordBook scattered;
+}
@@ -0,0 +1,94 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
+import org.crosswire.jsword.book.sword.state.RawLDBackendState;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class RawLDBackendTest {
+
+    @Before
+    public void setUp() throws Exception {
+        root = File.createTempFile("jsword", "");
+        root.delete();
+        root.mkdirs();
+
+        // Enough entries for several runs of the export.
+        entries = new LinkedHashMap<String, String>();
+        for (int i = 1; i <= 700; i++) {
+            String key = String.format("G%04d", Integer.valueOf(i));
+            entries.put(key, "Entry " + key + " \u00fc\u03b1\u05d0");
+        }
+        dictionary = SwordTestUtils.createRawLD(root, "LD" + Long.toString(System.nanoTime(), 36).toUpperCase(), entries);
+    }
+
+    @After
+    public void tearDown() {
+        OpenFileStateManager.instance().discardShared(dictionary.getBookMetaData());
+        FileUtil.delete(root);
+    }
+
+    @Test
+    public void testToIMP() throws Exception {
+        byte[] serial = toIMP(1);
+        Assert.assertArrayEquals(serial, toIMP(4));
+
+        // Each entry is written as its key and the whole of the entry, as read one at a time.
+        StringBuilder expected = new StringBuilder();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            byte[] data = (entry.getKey() + "\r\n" + entry.getValue()).getBytes(UTF_8.name());
+            String rawText = new DataEntry(entry.getKey(), data, UTF_8.name()).getRawText(null);
+            expected.append("$$$").append(entry.getKey()).append('\n').append(rawText).append(System.getProperty("line.separator"));
+        }
+        Assert.assertEquals(expected.toString(), new String(serial, UTF_8.name()));
+    }
+
+    private byte[] toIMP(int threads) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        @SuppressWarnings("unchecked")
+        RawLDBackend<RawLDBackendState> backend = (RawLDBackend<RawLDBackendState>) dictionary.getBackend();
+        backend.toIMP(Channels.newChannel(out), UTF_8, threads);
+        return out.toByteArray();
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File root;
+    private Map<String, String> entries;
+    private SwordDictionary dictionary;
+}
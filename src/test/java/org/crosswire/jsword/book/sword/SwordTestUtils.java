@@ -0,0 +1,234 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.crosswire.common.compress.Zip;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.sword.state.RawBackendState;
+import org.crosswire.jsword.book.sword.state.RawLDBackendState;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.Testament;
+import org.crosswire.jsword.versification.Versification;
+import org.junit.Ignore;
+
+/**
+ * Writes small SWORD modules for tests, so that a test can read, index and
+ * search a real book without any being installed.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+@Ignore
+public final class SwordTestUtils {
+    private SwordTestUtils() {
+    }
+
+    /**
+     * Write a RawText module of the given verses and open it.
+     *
+     * @param root the directory holding mods.d and modules
+     * @param initials the initials of the book
+     * @param v11n the versification of the book
+     * @param verses the text of each verse that has any
+     * @return the book
+     * @throws IOException
+     * @throws BookException
+     */
+    public static SwordBook createRawText(File root, String initials, Versification v11n, Map<Verse, String> verses) throws IOException, BookException {
+        String dataPath = "./modules/texts/rawtext/" + initials.toLowerCase() + '/';
+        File dir = new File(root, dataPath);
+        dir.mkdirs();
+        for (Testament testament : new Testament[] { Testament.OLD, Testament.NEW }) {
+            writeRawTestament(dir, v11n, testament, verses);
+        }
+        SwordBookMetaData sbmd = writeConf(root, initials, dataPath, "RawText", v11n);
+        return new SwordBook(sbmd, new RawBackend<RawBackendState>(sbmd, 2));
+    }
+
+    /**
+     * Write a zText module of the given verses, compressed with zip and
+     * stored a few verses to a block, and open it.
+     *
+     * @param root the directory holding mods.d and modules
+     * @param initials the initials of the book
+     * @param v11n the versification of the book
+     * @param verses the text of each verse that has any, in the order of the Bible
+     * @param versesPerBlock the number of verses to put in each block
+     * @return the book
+     * @throws IOException
+     * @throws BookException
+     */
+    public static SwordBook createZText(File root, String initials, Versification v11n, Map<Verse, String> verses, int versesPerBlock) throws IOException, BookException {
+        String dataPath = "./modules/texts/ztext/" + initials.toLowerCase() + '/';
+        File dir = new File(root, dataPath);
+        dir.mkdirs();
+        for (Testament testament : new Testament[] { Testament.OLD, Testament.NEW }) {
+            writeZTestament(dir, v11n, testament, verses, versesPerBlock);
+        }
+        SwordBookMetaData sbmd = writeConf(root, initials, dataPath, "zText", v11n, "CompressType=ZIP", "BlockType=BOOK");
+        return new SwordBook(sbmd, new ZVerseBackend(sbmd, BlockType.BLOCK_BOOK, 2));
+    }
+
+    /**
+     * Write a RawLD dictionary of the given entries and open it.
+     *
+     * @param root the directory holding mods.d and modules
+     * @param initials the initials of the book
+     * @param entries the text of each entry, in the order of the index
+     * @return the dictionary
+     * @throws IOException
+     * @throws BookException
+     */
+    public static SwordDictionary createRawLD(File root, String initials, Map<String, String> entries) throws IOException, BookException {
+        String dataPath = "./modules/lexdict/rawld/" + initials.toLowerCase() + '/';
+        File dir = new File(root, dataPath);
+        dir.mkdirs();
+
+        // Each entry is its key and its text, indexed by offset and size.
+        byte[] index = new byte[entries.size() * 6];
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int i = 0;
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            byte[] bytes = (entry.getKey() + "\r\n" + entry.getValue()).getBytes("UTF-8");
+            SwordUtil.encodeLittleEndian32(data.size(), index, i * 6);
+            SwordUtil.encodeLittleEndian16(bytes.length, index, i * 6 + 4);
+            data.write(bytes);
+            i++;
+        }
+        String name = initials.toLowerCase();
+        write(new File(dir, name + SwordConstants.EXTENSION_INDEX), index);
+        write(new File(dir, name + SwordConstants.EXTENSION_DATA), data.toByteArray());
+
+        SwordBookMetaData sbmd = writeConf(root, initials, dataPath + name, "RawLD", null);
+        return new SwordDictionary(sbmd, new RawLDBackend<RawLDBackendState>(sbmd, 2));
+    }
+
+    /**
+     * Write the compressed text, the block index and the verse index of one
+     * testament. Each entry of the block index is the offset and the size of
+     * a block and its size when uncompressed. Each entry of the verse index
+     * is the block of a verse and the offset and the size of the verse in the
+     * uncompressed block.
+     */
+    private static void writeZTestament(File dir, Versification v11n, Testament testament, Map<Verse, String> verses, int versesPerBlock) throws IOException {
+        String name = (testament == Testament.OLD ? SwordConstants.FILE_OT : SwordConstants.FILE_NT) + ".bz";
+        int count = v11n.getCount(testament) + 1;
+        byte[] index = new byte[count * 10];
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        int inBlock = 0;
+        for (Map.Entry<Verse, String> entry : verses.entrySet()) {
+            int ordinal = entry.getKey().getOrdinal();
+            if (v11n.getTestament(ordinal) != testament) {
+                continue;
+            }
+            byte[] data = entry.getValue().getBytes("UTF-8");
+            int entryStart = v11n.getTestamentOrdinal(ordinal) * 10;
+            SwordUtil.encodeLittleEndian32(blocks.size() / 12, index, entryStart);
+            SwordUtil.encodeLittleEndian32(block.size(), index, entryStart + 4);
+            SwordUtil.encodeLittleEndian16(data.length, index, entryStart + 8);
+            block.write(data);
+            if (++inBlock == versesPerBlock) {
+                writeBlock(blocks, text, block);
+                inBlock = 0;
+            }
+        }
+        if (inBlock > 0) {
+            writeBlock(blocks, text, block);
+        }
+        write(new File(dir, name + 's'), blocks.toByteArray());
+        write(new File(dir, name + 'v'), index);
+        write(new File(dir, name + 'z'), text.toByteArray());
+    }
+
+    /**
+     * Compress a block onto the text and add its entry to the block index.
+     */
+    private static void writeBlock(ByteArrayOutputStream blocks, ByteArrayOutputStream text, ByteArrayOutputStream block) throws IOException {
+        byte[] compressed = new Zip(new ByteArrayInputStream(block.toByteArray())).compress().toByteArray();
+        byte[] entry = new byte[12];
+        SwordUtil.encodeLittleEndian32(text.size(), entry, 0);
+        SwordUtil.encodeLittleEndian32(compressed.length, entry, 4);
+        SwordUtil.encodeLittleEndian32(block.size(), entry, 8);
+        blocks.write(entry);
+        text.write(compressed);
+        block.reset();
+    }
+
+    /**
+     * Write the text and the index of one testament. Each entry of the index
+     * is the offset and the size of the text of a verse, or 0 for both when
+     * the verse is empty.
+     */
+    private static void writeRawTestament(File dir, Versification v11n, Testament testament, Map<Verse, String> verses) throws IOException {
+        String name = testament == Testament.OLD ? SwordConstants.FILE_OT : SwordConstants.FILE_NT;
+        int count = v11n.getCount(testament) + 1;
+        byte[] index = new byte[count * 6];
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        for (Map.Entry<Verse, String> entry : verses.entrySet()) {
+            int ordinal = entry.getKey().getOrdinal();
+            if (v11n.getTestament(ordinal) != testament) {
+                continue;
+            }
+            byte[] data = entry.getValue().getBytes("UTF-8");
+            int entryStart = v11n.getTestamentOrdinal(ordinal) * 6;
+            SwordUtil.encodeLittleEndian32(text.size(), index, entryStart);
+            SwordUtil.encodeLittleEndian16(data.length, index, entryStart + 4);
+            text.write(data);
+        }
+        write(new File(dir, name), text.toByteArray());
+        write(new File(dir, name + SwordConstants.EXTENSION_VSS), index);
+    }
+
+    private static SwordBookMetaData writeConf(File root, String initials, String dataPath, String driver, Versification v11n, String... entries) throws IOException, BookException {
+        File confDir = new File(root, SwordConstants.DIR_CONF);
+        confDir.mkdirs();
+        File conf = new File(confDir, initials.toLowerCase() + SwordConstants.EXTENSION_CONF);
+        StringBuilder text = new StringBuilder();
+        text.append('[').append(initials).append("]\nDataPath=").append(dataPath).append("\nModDrv=").append(driver);
+        text.append("\nEncoding=UTF-8\nLang=en\nDescription=").append(initials).append('\n');
+        if (v11n != null) {
+            text.append("Versification=").append(v11n.getName()).append('\n');
+        }
+        for (String entry : entries) {
+            text.append(entry).append('\n');
+        }
+        write(conf, text.toString().getBytes("UTF-8"));
+        return new SwordBookMetaData(conf, root.toURI());
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
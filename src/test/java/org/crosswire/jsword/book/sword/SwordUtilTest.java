@@ -0,0 +1,74 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.UnsupportedEncodingException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class SwordUtilTest {
+
+    @Test
+    public void testDecodeSlice() throws UnsupportedEncodingException {
+        byte[] block = "In the beginning בראשית God created".getBytes("UTF-8");
+        byte[] before = block.clone();
+
+        Assert.assertEquals(SwordUtil.decode("Gen.1.1", block.clone(), 3, 30, "UTF-8"), SwordUtil.decodeSlice("Gen.1.1", block, 3, 30, "UTF-8"));
+        Assert.assertEquals("In the", SwordUtil.decodeSlice("Gen.1.1", block, 0, 6, "UTF-8"));
+        Assert.assertArrayEquals(before, block);
+    }
+
+    @Test
+    public void testDecodeSliceAppends() throws UnsupportedEncodingException {
+        byte[] block = "abcdef".getBytes("UTF-8");
+        StringBuilder buf = new StringBuilder("x");
+        SwordUtil.decodeSlice("key", block, 1, 2, "UTF-8", buf);
+        SwordUtil.decodeSlice("key", block, 4, 2, "UTF-8", buf);
+        Assert.assertEquals("xbcef", buf.toString());
+    }
+
+    @Test
+    public void testDecodeSliceOutOfRange() {
+        byte[] block = new byte[4];
+        Assert.assertEquals("", SwordUtil.decodeSlice("key", block, 2, 3, "UTF-8"));
+        Assert.assertEquals("", SwordUtil.decodeSlice("key", block, 0, 0, "UTF-8"));
+    }
+
+    @Test
+    public void testDecodeSlice1252() {
+        // a control character and a byte that is undefined in cp1252
+        byte[] block = {
+            'a', 0x01, 'b', (byte) 0x81, 'c', 0x09, (byte) 0xE9
+        };
+        byte[] before = block.clone();
+
+        String sliced = SwordUtil.decodeSlice("key", block, 0, block.length, "WINDOWS-1252");
+        Assert.assertEquals(SwordUtil.decode("key", block.clone(), 0, block.length, "WINDOWS-1252"), sliced);
+        Assert.assertEquals("a b c\té", sliced);
+        Assert.assertArrayEquals(before, block);
+    }
+}
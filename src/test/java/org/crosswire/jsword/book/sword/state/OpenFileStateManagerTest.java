@@ -0,0 +1,305 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword.state;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.jsword.book.BookMetaData;
+import org.crosswire.jsword.book.sword.SwordTestUtils;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Testament;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class OpenFileStateManagerTest {
+
+    @Before
+    public void setUp() throws Exception {
+        manager = OpenFileStateManager.instance();
+        savedSharedMode = manager.isSharedMode();
+        savedMaxIdlePerBook = manager.getMaxIdlePerBook();
+        savedMaxOpenFiles = manager.getMaxOpenFiles();
+        savedMaxWait = manager.getMaxWait();
+        manager.setSharedMode(false);
+        // Only the states of this test are to be open.
+        manager.closeIdleStates();
+        v11n = Versifications.instance().getVersification("KJV");
+        root = File.createTempFile("jsword", "");
+        root.delete();
+        root.mkdirs();
+
+        gen1v1 = new Verse(v11n, BibleBook.GEN, 1, 1);
+        Map<Verse, String> verses = new LinkedHashMap<Verse, String>();
+        verses.put(gen1v1, GEN_1_1);
+        verses.put(new Verse(v11n, BibleBook.JOHN, 1, 1), "In the beginning was the Word.");
+        raw = SwordTestUtils.createRawText(root, "RAW", v11n, verses).getBookMetaData();
+        rawB = SwordTestUtils.createRawText(root, "RAWB", v11n, verses).getBookMetaData();
+        rawC = SwordTestUtils.createRawText(root, "RAWC", v11n, verses).getBookMetaData();
+    }
+
+    @After
+    public void tearDown() {
+        manager.discardShared(raw);
+        manager.closeIdleStates();
+        manager.setSharedMode(savedSharedMode);
+        manager.setMaxIdlePerBook(savedMaxIdlePerBook);
+        manager.setMaxOpenFiles(savedMaxOpenFiles);
+        manager.setMaxWait(savedMaxWait);
+        FileUtil.delete(root);
+    }
+
+    @Test
+    public void testIdlePerBook() throws Exception {
+        int open = manager.getOpenStateCount();
+        int files = manager.getOpenFileCount();
+        manager.setMaxIdlePerBook(2);
+
+        RawBackendState[] states = new RawBackendState[4];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = manager.getRawBackendState(raw);
+        }
+        Assert.assertEquals(open + 4, manager.getOpenStateCount());
+        // Each state of a Bible counts an index and a text file for each testament.
+        Assert.assertEquals(files + 16, manager.getOpenFileCount());
+        Assert.assertEquals(0, manager.getIdleStateCount());
+
+        for (RawBackendState state : states) {
+            manager.release(state);
+        }
+        // Those released beyond the cap are closed.
+        Assert.assertEquals(2, manager.getIdleStateCount());
+        Assert.assertEquals(open + 2, manager.getOpenStateCount());
+        Assert.assertEquals(files + 8, manager.getOpenFileCount());
+        Assert.assertNull(states[2].getIdxRaf(Testament.OLD));
+        Assert.assertNull(states[3].getIdxRaf(Testament.OLD));
+
+        // The most recently released is the first reused.
+        RawBackendState reused = manager.getRawBackendState(raw);
+        Assert.assertSame(states[1], reused);
+        Assert.assertEquals(1, manager.getIdleStateCount());
+        manager.release(reused);
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        long evictions = manager.getEvictionCount();
+        long overBudget = manager.getOverBudgetCount();
+        // Room for the files of two states.
+        manager.setMaxOpenFiles(manager.getOpenFileCount() + 8);
+
+        RawBackendState a = manager.getRawBackendState(raw);
+        manager.release(a);
+        Thread.sleep(5);
+        RawBackendState b = manager.getRawBackendState(rawB);
+        manager.release(b);
+        Assert.assertEquals(2, manager.getIdleStateCount());
+
+        // The state of another book that was used longest ago makes room.
+        RawBackendState c = manager.getRawBackendState(rawC);
+        Assert.assertEquals(evictions + 1, manager.getEvictionCount());
+        Assert.assertEquals(overBudget, manager.getOverBudgetCount());
+        Assert.assertEquals(1, manager.getIdleStateCount());
+        Assert.assertNull(a.getIdxRaf(Testament.OLD));
+        Assert.assertSame(b, manager.getRawBackendState(rawB));
+        Assert.assertEquals(0, manager.getIdleStateCount());
+        manager.release(b);
+        manager.release(c);
+    }
+
+    @Test
+    public void testWaitForRelease() throws Exception {
+        long evictions = manager.getEvictionCount();
+        long overBudget = manager.getOverBudgetCount();
+        manager.setMaxOpenFiles(manager.getOpenFileCount() + 4);
+        manager.setMaxWait(TIMEOUT);
+
+        final RawBackendState a = manager.getRawBackendState(raw);
+        Thread releaser = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // release it now
+                }
+                manager.release(a);
+            }
+        });
+        releaser.start();
+
+        // Everything is in use, so this waits for a to be released and closes it.
+        long start = System.currentTimeMillis();
+        RawBackendState b = manager.getRawBackendState(rawB);
+        Assert.assertTrue(System.currentTimeMillis() - start >= 50);
+        releaser.join();
+        Assert.assertEquals(evictions + 1, manager.getEvictionCount());
+        Assert.assertEquals(overBudget, manager.getOverBudgetCount());
+        Assert.assertNull(a.getIdxRaf(Testament.OLD));
+        manager.release(b);
+    }
+
+    @Test
+    public void testOverBudget() throws Exception {
+        long overBudget = manager.getOverBudgetCount();
+        int files = manager.getOpenFileCount();
+        manager.setMaxOpenFiles(files + 4);
+        manager.setMaxWait(100);
+
+        RawBackendState a = manager.getRawBackendState(raw);
+        // Nothing is released in time, so the state is opened beyond the budget rather than fail.
+        long start = System.currentTimeMillis();
+        RawBackendState b = manager.getRawBackendState(rawB);
+        Assert.assertTrue(System.currentTimeMillis() - start >= 50);
+        Assert.assertNotNull(b.getIdxRaf(Testament.OLD));
+        Assert.assertEquals(overBudget + 1, manager.getOverBudgetCount());
+        Assert.assertEquals(files + 8, manager.getOpenFileCount());
+
+        // Once released, the files beyond the budget are given back.
+        manager.setMaxIdlePerBook(0);
+        manager.release(a);
+        manager.release(b);
+        Assert.assertEquals(files, manager.getOpenFileCount());
+    }
+
+    @Test
+    public void testDiscardWhileReading() throws Exception {
+        manager.setSharedMode(true);
+        int open = manager.getOpenStateCount();
+
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < READS; j++) {
+                            RawBackendState state = manager.getRawBackendState(raw);
+                            try {
+                                Assert.assertTrue(state.isShared());
+                                // The state is not closed under a reader that has it.
+                                Thread.yield();
+                                Assert.assertEquals(GEN_1_1, readGen1v1(state));
+                                Thread.yield();
+                                Assert.assertEquals(GEN_1_1, readGen1v1(state));
+                            } finally {
+                                manager.release(state);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        boolean reading = true;
+        while (reading) {
+            manager.discardShared(raw);
+            // Everything has expired, but only the states nobody is using are closed.
+            manager.sweepShared(Long.MAX_VALUE);
+            reading = false;
+            for (Thread reader : readers) {
+                reading |= reader.isAlive();
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.get(0));
+        }
+
+        // Every state that was retired has been closed.
+        manager.discardShared(raw);
+        Assert.assertEquals(open, manager.getOpenStateCount());
+    }
+
+    @Test
+    public void testCloseOnLastRelease() throws Exception {
+        manager.setSharedMode(true);
+        int open = manager.getOpenStateCount();
+
+        RawBackendState first = manager.getRawBackendState(raw);
+        RawBackendState second = manager.getRawBackendState(raw);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(open + 1, manager.getOpenStateCount());
+
+        // A state in use is not swept, however long ago it was last used.
+        manager.sweepShared(Long.MAX_VALUE);
+        Assert.assertSame(first, manager.getRawBackendState(raw));
+        manager.release(first);
+
+        // Turning shared mode off waits for the readers.
+        manager.setSharedMode(false);
+        Assert.assertEquals(GEN_1_1, readGen1v1(first));
+        manager.release(first);
+        Assert.assertEquals(GEN_1_1, readGen1v1(second));
+        Assert.assertEquals(open + 1, manager.getOpenStateCount());
+        manager.release(second);
+        Assert.assertEquals(open, manager.getOpenStateCount());
+        Assert.assertNull(first.getSharedIdx(Testament.OLD));
+
+        // A new one is opened for the next reader.
+        manager.setSharedMode(true);
+        RawBackendState third = manager.getRawBackendState(raw);
+        Assert.assertNotSame(first, third);
+        Assert.assertEquals(GEN_1_1, readGen1v1(third));
+        manager.release(third);
+    }
+
+    private String readGen1v1(RawBackendState state) throws Exception {
+        SharedFile idx = state.getSharedIdx(Testament.OLD);
+        long entry = 6L * v11n.getTestamentOrdinal(gen1v1.getOrdinal());
+        int offset = idx.getInt(entry);
+        int size = idx.getUnsignedShort(entry + 4);
+        return new String(state.getSharedText(Testament.OLD).read(offset, size), "UTF-8");
+    }
+
+    private static final int READS = 2000;
+    private static final long TIMEOUT = 10000;
+    private static final String GEN_1_1 = "In the beginning God created the heaven and the earth.";
+
+    private OpenFileStateManager manager;
+    private boolean savedSharedMode;
+    private int savedMaxIdlePerBook;
+    private int savedMaxOpenFiles;
+    private long savedMaxWait;
+    private Versification v11n;
+    private File root;
+    private Verse gen1v1;
+    private BookMetaData raw;
+    private BookMetaData rawB;
+    private BookMetaData rawC;
+}
@@ -0,0 +1,272 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.book.sword.state;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.jsword.book.BookMetaData;
+import org.crosswire.jsword.book.sword.BlockType;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordTestUtils;
+import org.crosswire.jsword.book.sword.ZVerseBackend;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Testament;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class ReadAheadTest {
+
+    @Before
+    public void setUp() throws Exception {
+        readAhead = ReadAhead.instance();
+        savedEnabled = readAhead.isEnabled();
+        savedBlocksAhead = readAhead.getBlocksAhead();
+        savedQueueDepth = readAhead.getQueueDepth();
+        savedMaxBytesInFlight = readAhead.getMaxBytesInFlight();
+        readAhead.setEnabled(true);
+
+        manager = OpenFileStateManager.instance();
+        savedSharedMode = manager.isSharedMode();
+        savedMaxOpenFiles = manager.getMaxOpenFiles();
+        manager.setSharedMode(false);
+        manager.closeIdleStates();
+
+        v11n = Versifications.instance().getVersification("KJV");
+        root = File.createTempFile("jsword", "");
+        root.delete();
+        root.mkdirs();
+
+        // Each verse is a block of its own.
+        Map<Verse, String> verses = new LinkedHashMap<Verse, String>();
+        for (int verse = 1; verse <= BLOCKS; verse++) {
+            verses.put(new Verse(v11n, BibleBook.GEN, 1, verse), "Genesis 1:" + verse);
+        }
+        book = SwordTestUtils.createZText(root, "ZAHEAD" + Long.toString(System.nanoTime(), 36).toUpperCase(), v11n, verses, 1);
+        bmd = book.getBookMetaData();
+        backend = (ZVerseBackend) book.getBackend();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        readAhead.shutDown();
+        readAhead.setEnabled(savedEnabled);
+        readAhead.setBlocksAhead(savedBlocksAhead);
+        readAhead.setQueueDepth(savedQueueDepth);
+        readAhead.setMaxBytesInFlight(savedMaxBytesInFlight);
+        BlockCache.instance().invalidate(bmd);
+        manager.discardShared(bmd);
+        manager.closeIdleStates();
+        manager.setSharedMode(savedSharedMode);
+        manager.setMaxOpenFiles(savedMaxOpenFiles);
+        FileUtil.delete(root);
+    }
+
+    @Test
+    public void testQueueDepth() throws Exception {
+        readAhead.setQueueDepth(2);
+        long dropped = readAhead.getDropped();
+        Blocker blocker = new Blocker();
+
+        Assert.assertTrue(readAhead.submit(bmd, Testament.OLD, 1, blocker));
+        Assert.assertTrue(blocker.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(readAhead.submit(bmd, Testament.OLD, 2, blocker));
+        // A block that is already asked for is not asked for again.
+        Assert.assertFalse(readAhead.submit(bmd, Testament.OLD, 2, blocker));
+        // The queue is full.
+        Assert.assertFalse(readAhead.submit(bmd, Testament.OLD, 3, blocker));
+        Assert.assertEquals(2, readAhead.getQueued());
+        Assert.assertEquals(dropped + 1, readAhead.getDropped());
+
+        blocker.gate.countDown();
+        waitUntilDone();
+        Assert.assertEquals(2, blocker.runs.get());
+        Assert.assertTrue(readAhead.submit(bmd, Testament.OLD, 3, blocker));
+        waitUntilDone();
+        Assert.assertEquals(3, blocker.runs.get());
+    }
+
+    @Test
+    public void testReserveBytes() {
+        readAhead.setMaxBytesInFlight(100);
+        long dropped = readAhead.getDropped();
+
+        Assert.assertTrue(readAhead.reserveBytes(60));
+        Assert.assertFalse(readAhead.reserveBytes(50));
+        Assert.assertEquals(60, readAhead.getBytesInFlight());
+        Assert.assertEquals(dropped + 1, readAhead.getDropped());
+        Assert.assertTrue(readAhead.reserveBytes(40));
+        readAhead.releaseBytes(60);
+        readAhead.releaseBytes(40);
+        Assert.assertEquals(0, readAhead.getBytesInFlight());
+        Assert.assertTrue(readAhead.reserveBytes(100));
+        readAhead.releaseBytes(100);
+    }
+
+    @Test
+    public void testShutDown() throws Exception {
+        readAhead.setQueueDepth(4);
+        Blocker blocker = new Blocker();
+        Assert.assertTrue(readAhead.submit(bmd, Testament.OLD, 1, blocker));
+        Assert.assertTrue(blocker.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(readAhead.submit(bmd, Testament.OLD, 2, blocker));
+        Assert.assertTrue(readAhead.submit(bmd, Testament.OLD, 3, blocker));
+
+        // The running block is interrupted and the waiting ones are abandoned.
+        readAhead.shutDown();
+        Assert.assertFalse(readAhead.submit(bmd, Testament.OLD, 4, blocker));
+        waitUntilDone();
+        Assert.assertEquals(1, blocker.runs.get());
+
+        // Their places in the queue are free again.
+        readAhead.setEnabled(true);
+        blocker.gate.countDown();
+        for (int block = 2; block <= 5; block++) {
+            Assert.assertTrue(readAhead.submit(bmd, Testament.OLD, block, blocker));
+        }
+        waitUntilDone();
+        Assert.assertEquals(5, blocker.runs.get());
+    }
+
+    @Test
+    public void testReadAhead() throws Exception {
+        readAhead.setBlocksAhead(2);
+        ZVerseBackendState state = manager.getZVerseBackendState(bmd, BlockType.BLOCK_BOOK);
+        try {
+            readSequentially(state);
+            waitUntilDone();
+            Assert.assertTrue(BlockCache.instance().contains(bmd, Testament.OLD, 2));
+            Assert.assertTrue(BlockCache.instance().contains(bmd, Testament.OLD, 3));
+            Assert.assertFalse(BlockCache.instance().contains(bmd, Testament.OLD, 4));
+            Assert.assertEquals(0, readAhead.getBytesInFlight());
+            Assert.assertEquals("Genesis 1:4", backend.readRawContent(state, new Verse(v11n, BibleBook.GEN, 1, 4)));
+        } finally {
+            manager.release(state);
+        }
+    }
+
+    @Test
+    public void testNoRoomForFiles() throws Exception {
+        ZVerseBackendState state = manager.getZVerseBackendState(bmd, BlockType.BLOCK_BOOK);
+        try {
+            // There is no idle state of the book and no room to open another.
+            manager.setMaxOpenFiles(manager.getOpenFileCount());
+            int files = manager.getOpenFileCount();
+            long overBudget = manager.getOverBudgetCount();
+            long submitted = readAhead.getSubmitted();
+
+            readSequentially(state);
+            waitUntilDone();
+            Assert.assertEquals(submitted + 1, readAhead.getSubmitted());
+            Assert.assertFalse(BlockCache.instance().contains(bmd, Testament.OLD, 2));
+            Assert.assertEquals(overBudget, manager.getOverBudgetCount());
+            Assert.assertEquals(files, manager.getOpenFileCount());
+        } finally {
+            manager.release(state);
+        }
+    }
+
+    @Test
+    public void testSharedState() throws Exception {
+        manager.setSharedMode(true);
+        ZVerseBackendState state = manager.getZVerseBackendState(bmd, BlockType.BLOCK_BOOK);
+        try {
+            Assert.assertTrue(state.isShared());
+            // The shared state is used, so no more files are needed.
+            manager.setMaxOpenFiles(manager.getOpenFileCount());
+            int files = manager.getOpenFileCount();
+
+            readSequentially(state);
+            waitUntilDone();
+            Assert.assertTrue(BlockCache.instance().contains(bmd, Testament.OLD, 2));
+            Assert.assertEquals(files, manager.getOpenFileCount());
+        } finally {
+            manager.release(state);
+        }
+    }
+
+    /**
+     * Read the first two blocks, which asks for those after them to be read ahead.
+     */
+    private void readSequentially(ZVerseBackendState state) throws Exception {
+        Assert.assertEquals("Genesis 1:1", backend.readRawContent(state, new Verse(v11n, BibleBook.GEN, 1, 1)));
+        Assert.assertEquals("Genesis 1:2", backend.readRawContent(state, new Verse(v11n, BibleBook.GEN, 1, 2)));
+    }
+
+    private void waitUntilDone() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (readAhead.getQueued() > 0) {
+            Assert.assertTrue("Read ahead did not finish", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Work that waits to be let through, counting how often it ran.
+     */
+    private static class Blocker implements Runnable {
+        public void run() {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+    }
+
+    private static final int BLOCKS = 6;
+    private static final long TIMEOUT = 10000;
+
+    private ReadAhead readAhead;
+    private boolean savedEnabled;
+    private int savedBlocksAhead;
+    private int savedQueueDepth;
+    private long savedMaxBytesInFlight;
+    private OpenFileStateManager manager;
+    private boolean savedSharedMode;
+    private int savedMaxOpenFiles;
+    private Versification v11n;
+    private File root;
+    private SwordBook book;
+    private BookMetaData bmd;
+    private ZVerseBackend backend;
+}
@@ -30,8 +30,9 @@ import org.junit.runners.Suite.SuiteClasses;
  * @author DM Smith
  */
 @RunWith(Suite.class)
-@SuiteClasses(
+@SuiteClasses({
+    BookExporterTest.class,
     DwrBridgeMissingAssetsTest.class
-)
+})
 public class AllTests {
 }
@@ -0,0 +1,111 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.bridge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordTestUtils;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.BookName;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class BookExporterTest {
+
+    @Before
+    public void setUp() throws Exception {
+        savedFullBookName = BookName.isFullBookName();
+        v11n = Versifications.instance().getVersification("KJV");
+        root = File.createTempFile("jsword", "");
+        root.delete();
+        root.mkdirs();
+
+        // Genesis is exported in several runs, the other books in one each.
+        Map<Verse, String> verses = new LinkedHashMap<Verse, String>();
+        int genesis = v11n.getOrdinal(new Verse(v11n, BibleBook.GEN, 0, 0));
+        for (int ordinal = genesis; ordinal < genesis + 700; ordinal++) {
+            if (ordinal % 9 != 0) {
+                Verse verse = v11n.decodeOrdinal(ordinal);
+                verses.put(verse, "Text of " + verse.getOsisID() + " \u00fc\u03b1\u05d0");
+            }
+        }
+        verses.put(new Verse(v11n, BibleBook.PS, 23, 1), "The LORD is my shepherd; I shall not want.");
+        verses.put(new Verse(v11n, BibleBook.PS, 23, 2), "   ");
+        verses.put(new Verse(v11n, BibleBook.MATT, 1, 1), "The book of the generation of Jesus Christ.");
+        verses.put(new Verse(v11n, BibleBook.REV, 22, 21), "The grace of our Lord Jesus Christ be with you all. Amen.");
+        book = SwordTestUtils.createRawText(root, "EXPORT" + Long.toString(System.nanoTime(), 36).toUpperCase(), v11n, verses);
+    }
+
+    @After
+    public void tearDown() {
+        BookName.setFullBookName(savedFullBookName);
+        FileUtil.delete(root);
+    }
+
+    @Test
+    public void testSameAsSingleThreaded() throws Exception {
+        byte[] serial = export(1);
+        Assert.assertArrayEquals(serial, export(4));
+
+        // The entries are those of mod2imp, in the order of the book.
+        StringBuilder expected = new StringBuilder();
+        for (Key key : book.getGlobalKeyList()) {
+            String rawText = book.getRawText(key);
+            if (rawText.trim().length() > 0) {
+                expected.append("$$$").append(key).append('\n').append(rawText).append(System.getProperty("line.separator"));
+            }
+        }
+        Assert.assertEquals(expected.toString(), new String(serial, UTF_8.name()));
+    }
+
+    private byte[] export(int threads) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BookExporter exporter = new BookExporter(book);
+        exporter.setThreads(threads);
+        exporter.mod2imp(Channels.newChannel(out), UTF_8);
+        return out.toByteArray();
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private boolean savedFullBookName;
+    private Versification v11n;
+    private File root;
+    private SwordBook book;
+}
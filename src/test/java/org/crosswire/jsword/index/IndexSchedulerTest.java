@@ -0,0 +1,283 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.crosswire.common.progress.JobManager;
+import org.crosswire.common.progress.Progress;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.sword.RawBackend;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordBookMetaData;
+import org.crosswire.jsword.book.sword.state.RawBackendState;
+import org.crosswire.jsword.index.IndexScheduler.Priority;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class IndexSchedulerTest {
+
+    @Before
+    public void setUp() throws Exception {
+        manager = new BlockingManager();
+        scheduler = new IndexScheduler(manager, 1);
+        // Nothing is to be held back by how busy the machine running the tests is.
+        scheduler.setMaxLoad(0);
+        scheduler.setMinFreeMemory(0);
+    }
+
+    @After
+    public void tearDown() {
+        manager.release.countDown();
+        scheduler.shutDown();
+    }
+
+    @Test
+    public void testPriorityOrder() throws Exception {
+        Book a = createBook("A");
+        Book x = createBook("X");
+        Book b = createBook("B");
+        Book c = createBook("C");
+        Book d = createBook("D");
+
+        Assert.assertTrue(scheduler.schedule(a, Priority.BACKGROUND));
+        waitForStarted(1);
+        // The user has a worker of their own.
+        Assert.assertTrue(scheduler.schedule(x, Priority.INTERACTIVE));
+        waitForStarted(2);
+
+        Assert.assertTrue(scheduler.schedule(b, Priority.BACKGROUND));
+        Assert.assertTrue(scheduler.schedule(c, Priority.BACKGROUND));
+        Assert.assertTrue(scheduler.schedule(d, Priority.INTERACTIVE));
+        Assert.assertEquals(Arrays.asList(d, b, c), scheduler.getQueue());
+        Assert.assertEquals(IndexStatus.SCHEDULED, b.getIndexStatus());
+
+        manager.release.countDown();
+        waitForIdle();
+        Assert.assertEquals(Arrays.asList("A", "X", "D", "B", "C"), manager.started);
+    }
+
+    @Test
+    public void testDedupe() throws Exception {
+        Book a = createBook("A");
+        Book b = createBook("B");
+        Book c = createBook("C");
+
+        Assert.assertTrue(scheduler.schedule(a, Priority.BACKGROUND));
+        waitForStarted(1);
+        Assert.assertFalse(scheduler.schedule(a, Priority.BACKGROUND));
+        Assert.assertFalse(scheduler.schedule(a, Priority.INTERACTIVE));
+        Assert.assertEquals(Collections.singletonList(a), scheduler.getRunning());
+
+        Assert.assertTrue(scheduler.schedule(b, Priority.BACKGROUND));
+        Assert.assertFalse(scheduler.schedule(b, Priority.BACKGROUND));
+        Assert.assertTrue(scheduler.schedule(c, Priority.BACKGROUND));
+        Assert.assertEquals(Arrays.asList(b, c), scheduler.getQueue());
+
+        // Asking again for a book that is waiting only makes it more urgent.
+        Assert.assertFalse(scheduler.schedule(c, Priority.INTERACTIVE));
+        waitForStarted(2);
+        Assert.assertEquals(Collections.singletonList(b), scheduler.getQueue());
+
+        manager.release.countDown();
+        waitForIdle();
+        Assert.assertEquals(Arrays.asList("A", "C", "B"), manager.started);
+    }
+
+    @Test
+    public void testCancelWaiting() throws Exception {
+        Book a = createBook("A");
+        Book b = createBook("B");
+        IndexStatus previous = b.getIndexStatus();
+
+        Assert.assertTrue(scheduler.schedule(a, Priority.BACKGROUND));
+        waitForStarted(1);
+        Assert.assertTrue(scheduler.schedule(b, Priority.BACKGROUND));
+        Assert.assertTrue(scheduler.cancel(b));
+        Assert.assertFalse(scheduler.isScheduled(b));
+        Assert.assertEquals(previous, b.getIndexStatus());
+        Assert.assertFalse(scheduler.cancel(b));
+
+        manager.release.countDown();
+        waitForIdle();
+        Assert.assertEquals(Collections.singletonList("A"), manager.started);
+    }
+
+    @Test
+    public void testCancelBuilding() throws Exception {
+        manager.createJob = true;
+        Book a = createBook("A");
+
+        Assert.assertTrue(scheduler.schedule(a, Priority.INTERACTIVE));
+        waitForStarted(1);
+        Progress job = waitForJob("A");
+        Assert.assertTrue(scheduler.cancel(a));
+
+        // The build stops without being released.
+        waitForIdle();
+        Assert.assertTrue(job.isFinished());
+        Assert.assertTrue(manager.cancelled.contains("A"));
+    }
+
+    @Test
+    public void testCancelBeforeProgress() throws Exception {
+        manager.createJob = true;
+        manager.beforeJob = new CountDownLatch(1);
+        Book a = createBook("A");
+
+        Assert.assertTrue(scheduler.schedule(a, Priority.INTERACTIVE));
+        waitForStarted(1);
+        // The build is under way, but has no Progress to cancel yet.
+        Assert.assertTrue(scheduler.cancel(a));
+        manager.beforeJob.countDown();
+
+        waitForIdle();
+        Assert.assertTrue(manager.jobs.get("A").isFinished());
+        Assert.assertTrue(manager.cancelled.contains("A"));
+    }
+
+    private void waitForStarted(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (manager.started.size() < count) {
+            Assert.assertTrue("Timed out waiting for a build to start", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+
+    private Progress waitForJob(String initials) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (!manager.jobs.containsKey(initials)) {
+            Assert.assertTrue("Timed out waiting for a Progress", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+        return manager.jobs.get(initials);
+    }
+
+    private void waitForIdle() throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (!scheduler.getRunning().isEmpty() || !scheduler.getQueue().isEmpty()) {
+            Assert.assertTrue("Timed out waiting for the builds to end", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+
+    private static Book createBook(String initials) throws Exception {
+        String conf = "[" + initials + "]\nDataPath=./modules/texts/rawtext/" + initials.toLowerCase() + "/\nModDrv=RawText\nVersification=KJV\n";
+        SwordBookMetaData sbmd = new SwordBookMetaData(conf.getBytes(), initials);
+        return new SwordBook(sbmd, new RawBackend<RawBackendState>(sbmd, 2));
+    }
+
+    /**
+     * An IndexManager whose builds last until they are released or cancelled.
+     */
+    private static final class BlockingManager implements IndexManager {
+        BlockingManager() {
+            started = Collections.synchronizedList(new ArrayList<String>());
+            cancelled = Collections.synchronizedList(new ArrayList<String>());
+            jobs = new ConcurrentHashMap<String, Progress>();
+            release = new CountDownLatch(1);
+        }
+
+        public void scheduleIndexCreation(Book book) {
+            String initials = book.getInitials();
+            started.add(initials);
+            try {
+                if (beforeJob != null) {
+                    beforeJob.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                }
+                if (createJob) {
+                    // Like LuceneIndex, whose Progress interrupts it when cancelled.
+                    Progress job = JobManager.createJob(String.format(Progress.CREATE_INDEX, initials), "Indexing " + initials, Thread.currentThread());
+                    jobs.put(initials, job);
+                    job.beginJob("Indexing " + initials);
+                    try {
+                        release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                    } finally {
+                        job.done();
+                    }
+                } else {
+                    release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                cancelled.add(initials);
+            }
+        }
+
+        public boolean isIndexed(Book book) {
+            return false;
+        }
+
+        public Index getIndex(Book book) {
+            return null;
+        }
+
+        public boolean needsReindexing(Book book) {
+            return false;
+        }
+
+        public IndexScheduler getIndexScheduler() {
+            return null;
+        }
+
+        public void installDownloadedIndex(Book book, URI tempDest) {
+        }
+
+        public void deleteIndex(Book book) {
+        }
+
+        public void closeAllIndexes() {
+        }
+
+        public IndexPolicy getIndexPolicy() {
+            return null;
+        }
+
+        public void setIndexPolicy(IndexPolicy policy) {
+        }
+
+        final List<String> started;
+        final List<String> cancelled;
+        final Map<String, Progress> jobs;
+        final CountDownLatch release;
+        volatile CountDownLatch beforeJob;
+        volatile boolean createJob;
+    }
+
+    private static final long TIMEOUT = 10000;
+
+    private BlockingManager manager;
+    private IndexScheduler scheduler;
+}
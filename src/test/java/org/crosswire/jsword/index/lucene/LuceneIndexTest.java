@@ -0,0 +1,223 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordTestUtils;
+import org.crosswire.jsword.index.IndexPolicyAdapter;
+import org.crosswire.jsword.index.query.BaseQuery;
+import org.crosswire.jsword.index.query.BlurQuery;
+import org.crosswire.jsword.index.query.Query;
+import org.crosswire.jsword.passage.BitwisePassage;
+import org.crosswire.jsword.passage.DistinctPassage;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.RestrictionType;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class LuceneIndexTest {
+
+    @Before
+    public void setUp() throws Exception {
+        v11n = Versifications.instance().getVersification("KJV");
+        root = File.createTempFile("jsword", "");
+        root.delete();
+        root.mkdirs();
+
+        verses = new LinkedHashMap<Verse, String>();
+        verses.put(new Verse(v11n, BibleBook.GEN, 1, 2), "And the earth was without form, and void; and darkness was upon the face of the deep.");
+        verses.put(new Verse(v11n, BibleBook.GEN, 1, 3), "And God said, Let there be light: and there was light.");
+        verses.put(new Verse(v11n, BibleBook.GEN, 1, 4), "And God saw the light, that it was good: and God divided the light from the darkness.");
+        verses.put(new Verse(v11n, BibleBook.GEN, 1, 31), "And God saw every thing that he had made, and, behold, it was very good. And there was light.");
+        verses.put(new Verse(v11n, BibleBook.GEN, 2, 1), "Thus the heavens and the earth were finished, and all the host of them, and the darkness.");
+        verses.put(new Verse(v11n, BibleBook.PS, 139, 12), "Yea, the darkness hideth not from thee; but the night shineth as the day.");
+        verses.put(new Verse(v11n, BibleBook.MATT, 5, 14), "Ye are the light of the world.");
+        verses.put(new Verse(v11n, BibleBook.JOHN, 1, 5), "And the light shineth in darkness; and the darkness comprehended it not.");
+        verses.put(new Verse(v11n, BibleBook.JOHN, 8, 12), "I am the light of the world: he that followeth me shall not walk in darkness.");
+        verses.put(new Verse(v11n, BibleBook.REV, 22, 5), "And there shall be no night there; for the Lord God giveth them light.");
+        book = SwordTestUtils.createRawText(new File(root, "library"), "LITE" + Long.toString(System.nanoTime(), 36).toUpperCase(), v11n, verses);
+        QueryCache.instance().clear();
+    }
+
+    @After
+    public void tearDown() {
+        if (index != null) {
+            index.close();
+        }
+        QueryCache.instance().clear();
+        FileUtil.delete(root);
+    }
+
+    @Test
+    public void testBlur() throws Exception {
+        index = new LuceneIndex(book, new File(root, "index").toURI(), new IndexPolicyAdapter());
+
+        // Verses found by a search are blurred and intersected a word at a time.
+        Key darkness = index.find("darkness");
+        Assert.assertTrue(darkness instanceof BitwisePassage);
+        Assert.assertEquals(6, darkness.getCardinality());
+
+        Key found = new BlurQuery(new BaseQuery("light"), new BaseQuery("darkness"), 1).find(index);
+        Assert.assertTrue(found instanceof BitwisePassage);
+
+        // The same as blurring a Passage that is not a BitwisePassage.
+        Passage light = new DistinctPassage(v11n);
+        light.addAll(index.find("light"));
+        Passage blurred = new DistinctPassage(v11n);
+        blurred.addAll(darkness);
+        blurred.blur(1, RestrictionType.getDefaultBlurRestriction());
+        light.retainAll(blurred);
+        Assert.assertEquals(light, found);
+        Assert.assertEquals(4, found.getCardinality());
+        Assert.assertFalse(found.contains(new Verse(v11n, BibleBook.MATT, 5, 14)));
+        // Verse 0 of Genesis 2 lies between Genesis 1:31 and 2:1.
+        Assert.assertFalse(found.contains(new Verse(v11n, BibleBook.GEN, 1, 31)));
+        found = new BlurQuery(new BaseQuery("light"), new BaseQuery("darkness"), 2).find(index);
+        Assert.assertTrue(found instanceof BitwisePassage);
+        Assert.assertTrue(found.contains(new Verse(v11n, BibleBook.GEN, 1, 31)));
+
+        // As it is when the results come from the cache.
+        Assert.assertTrue(index.find("darkness") instanceof BitwisePassage);
+    }
+
+    @Test
+    public void testParallelBuild() throws Exception {
+        index = new LuceneIndex(book, new File(root, "serial").toURI(), new IndexPolicyAdapter());
+        LuceneIndex parallel = new LuceneIndex(book, new File(root, "parallel").toURI(), new IndexPolicyAdapter() {
+            /* (non-Javadoc)
+             * @see org.crosswire.jsword.index.IndexPolicyAdapter#getParallelism()
+             */
+            @Override
+            public int getParallelism() {
+                return 4;
+            }
+        });
+        try {
+            for (String query : PARITY_QUERIES) {
+                // Both indexes are of the same book, so they would share cached results.
+                QueryCache.instance().clear();
+                Key expected = index.find(query);
+                QueryCache.instance().clear();
+                Key actual = parallel.find(query);
+                Assert.assertFalse(query, expected.isEmpty());
+                Assert.assertEquals(query, expected, actual);
+            }
+        } finally {
+            parallel.close();
+        }
+    }
+
+    @Test
+    public void testCompiledQuery() throws Exception {
+        index = new LuceneIndex(book, new File(root, "index").toURI(), new IndexPolicyAdapter());
+        boolean compiled = LuceneQueryBuilder.isCompiled();
+        try {
+            for (String search : RANGE_QUERIES) {
+                LuceneQueryBuilder.setCompiled(false);
+                QueryCache.instance().clear();
+                Key expected = new LuceneQueryBuilder().parse(search).find(index);
+
+                // Searched as a whole, with the range as a filter.
+                LuceneQueryBuilder.setCompiled(true);
+                QueryCache.instance().clear();
+                Query query = new LuceneQueryBuilder().parse(search);
+                Assert.assertTrue(search, query instanceof CompiledQuery);
+                Assert.assertEquals(search, expected, query.find(index));
+            }
+        } finally {
+            LuceneQueryBuilder.setCompiled(compiled);
+        }
+    }
+
+    @Test
+    public void testCompactIndex() throws Exception {
+        File compactPath = new File(root, "compact");
+        index = new LuceneIndex(book, compactPath.toURI(), new IndexPolicyAdapter() {
+            /* (non-Javadoc)
+             * @see org.crosswire.jsword.index.IndexPolicyAdapter#isTextStored()
+             */
+            @Override
+            public boolean isTextStored() {
+                return false;
+            }
+        });
+        LuceneIndex stored = new LuceneIndex(book, new File(root, "stored").toURI(), new IndexPolicyAdapter());
+        try {
+            // The compact index keeps no text.
+            Directory directory = FSDirectory.open(compactPath);
+            IndexReader reader = IndexReader.open(directory, true);
+            try {
+                Assert.assertEquals(verses.size(), reader.numDocs());
+                for (int i = 0; i < reader.maxDoc(); i++) {
+                    Assert.assertNull(reader.document(i).get(LuceneIndex.FIELD_BODY));
+                }
+            } finally {
+                reader.close();
+                directory.close();
+            }
+
+            // It still finds the verses, and their text comes from the book.
+            Assert.assertEquals(6, index.find("darkness").getCardinality());
+            for (Map.Entry<Verse, String> entry : verses.entrySet()) {
+                Verse verse = entry.getKey();
+                Assert.assertEquals(verse.getName(), entry.getValue(), index.getText(verse));
+                Assert.assertEquals(verse.getName(), stored.getText(verse), index.getText(verse));
+            }
+        } finally {
+            stored.close();
+        }
+    }
+
+    private static final String[] RANGE_QUERIES = {
+        "light", "[Gen-Ps] light", "+[Matt-Rev] darkness", "-[Gen] light", "[Gen-Rev] +light +darkness", "[John] light -night",
+        "-[Matt-John] dark*", "[Gen 1] light ~ darkness", "-[John] light ~2 darkness", "[Obad] light", "-[Gen-Rev] light",
+    };
+
+    private static final String[] PARITY_QUERIES = {
+        "light", "darkness", "+light +darkness", "light -darkness", "dark*", "\"the light\"", "night", "God", "world", "the",
+    };
+
+    private Versification v11n;
+    private File root;
+    private Map<Verse, String> verses;
+    private SwordBook book;
+    private LuceneIndex index;
+}
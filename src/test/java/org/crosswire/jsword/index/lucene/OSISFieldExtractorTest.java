@@ -0,0 +1,132 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.crosswire.jsword.book.OSISUtil;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+/**
+ * Test that the fields of a verse are gathered as OSISUtil gathers them.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class OSISFieldExtractorTest {
+
+    private OSISFieldExtractor extractor;
+
+    @Before
+    public void setUp() throws SAXException {
+        extractor = new OSISFieldExtractor();
+    }
+
+    @Test
+    public void testLexicalInformation() {
+        Assert.assertTrue(extractor.extract("Hello <w lemma=\"strong:G26\" morph=\"robinson:N-NSF\">love</w> <w lemma=\"strong:G2316 lemma.TR:theos\">God</w>"));
+        Assert.assertEquals("Hello love God", extractor.getCanonicalText());
+        Assert.assertEquals("G26 G2316", extractor.getStrongsNumbers());
+        Assert.assertEquals("G26@robinson:N-NSF G2316", extractor.getMorphologiesWithStrong());
+    }
+
+    @Test
+    public void testNotesAndTitles() {
+        Assert.assertTrue(extractor.extract("<title>The Creation</title>In the beginning<note type=\"x-study\">A <hi type=\"italic\">study</hi> note</note> God"));
+        Assert.assertEquals("In the beginning God", extractor.getCanonicalText());
+        Assert.assertEquals("A study note", extractor.getNotes());
+        Assert.assertEquals("The Creation", extractor.getHeadings());
+    }
+
+    @Test
+    public void testCanonicalTitle() {
+        Assert.assertTrue(extractor.extract("<title canonical=\"true\">A Psalm of David.</title>The LORD is my shepherd"));
+        Assert.assertEquals("A Psalm of David. The LORD is my shepherd", extractor.getCanonicalText());
+        Assert.assertEquals("A Psalm of David.", extractor.getHeadings());
+    }
+
+    @Test
+    public void testReferences() {
+        Assert.assertTrue(extractor.extract("Text<note type=\"crossReference\"><reference osisRef=\"Gen.1.1\">Gen 1:1</reference>; <reference osisRef=\"John.1.1\">John 1:1</reference></note>"));
+        Assert.assertEquals("Text", extractor.getCanonicalText());
+        Assert.assertEquals("", extractor.getNotes());
+        Assert.assertEquals(Arrays.asList("Gen.1.1", "John.1.1"), extractor.getReferences());
+    }
+
+    @Test
+    public void testSeg() {
+        Assert.assertTrue(extractor.extract("x<seg><hi type=\"bold\">a</hi>b</seg>"));
+        Assert.assertEquals("x ab", extractor.getCanonicalText());
+    }
+
+    @Test
+    public void testReuse() {
+        Assert.assertTrue(extractor.extract("<title>Heading</title><w lemma=\"strong:H7225\">beginning</w>"));
+        Assert.assertTrue(extractor.extract("plain"));
+        Assert.assertEquals("plain", extractor.getCanonicalText());
+        Assert.assertEquals("", extractor.getStrongsNumbers());
+        Assert.assertEquals("", extractor.getHeadings());
+        Assert.assertEquals(Collections.emptyList(), extractor.getReferences());
+    }
+
+    @Test
+    public void testSameAsOSISUtil() throws JDOMException, IOException {
+        for (String raw : FRAGMENTS) {
+            // Parse the fragment the way the OSISFilter does for OSISUtil.
+            Element root = new SAXBuilder().build(new StringReader("<xxx>" + raw + "</xxx>")).getRootElement();
+            Assert.assertTrue(raw, extractor.extract(raw));
+            Assert.assertEquals(raw, OSISUtil.getCanonicalText(root), extractor.getCanonicalText());
+            Assert.assertEquals(raw, OSISUtil.getStrongsNumbers(root), extractor.getStrongsNumbers());
+            Assert.assertEquals(raw, OSISUtil.getMorphologiesWithStrong(root), extractor.getMorphologiesWithStrong());
+            Assert.assertEquals(raw, OSISUtil.getNotes(root), extractor.getNotes());
+            Assert.assertEquals(raw, OSISUtil.getHeadings(root), extractor.getHeadings());
+        }
+    }
+
+    @Test
+    public void testNotWellFormed() {
+        Assert.assertFalse(extractor.extract("<w lemma=\"strong:G26\">love"));
+        Assert.assertFalse(extractor.extract("love&nbsp;God"));
+        Assert.assertTrue(extractor.extract(""));
+        Assert.assertEquals("", extractor.getCanonicalText());
+    }
+
+    private static final String[] FRAGMENTS = {
+        "Hello <w lemma=\"strong:G26\" morph=\"robinson:N-NSF\">love</w> <w lemma=\"strong:G2316 lemma.TR:theos\">God</w>",
+        "<title>The Creation</title>In the beginning<note type=\"x-study\">A <hi type=\"italic\">study</hi> note</note> God",
+        "<title canonical=\"true\">A Psalm of David.</title>The LORD is my shepherd",
+        "Text<note type=\"crossReference\"><reference osisRef=\"Gen.1.1\">Gen 1:1</reference>; <reference osisRef=\"John.1.1\">John 1:1</reference></note>",
+        "x<seg><hi type=\"bold\">a</hi>b</seg>",
+        "<title>Heading</title><w lemma=\"strong:H7225\">beginning</w>",
+        "<w lemma=\"strong:H0430\" morph=\"strongMorph:TH8799\">God</w> <transChange type=\"added\">was</transChange> <w lemma=\"strong:H7307 strong:H3068\">good</w>",
+        "<note type=\"x-study\">first</note>between<note>second</note><title type=\"psalm\">one</title><title>two</title>",
+        "plain",
+        "",
+    };
+}
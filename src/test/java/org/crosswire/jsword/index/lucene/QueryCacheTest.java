@@ -0,0 +1,160 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.sword.RawBackend;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordBookMetaData;
+import org.crosswire.jsword.book.sword.state.RawBackendState;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.RocketPassage;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class QueryCacheTest {
+
+    @Before
+    public void setUp() throws Exception {
+        cache = QueryCache.instance();
+        savedMaxVerses = cache.getMaxVerses();
+        cache.clear();
+        v11n = Versifications.instance().getVersification("KJV");
+        kjv = createBook("KJV");
+        web = createBook("WEB");
+    }
+
+    @After
+    public void tearDown() {
+        cache.setMaxVerses(savedMaxVerses);
+        cache.clear();
+    }
+
+    @Test
+    public void testVerseBound() {
+        // Each of the segments holds a share of 100 verses.
+        cache.setMaxVerses(400);
+        for (int i = 0; i < 100; i++) {
+            cache.put(kjv, "query" + i, false, 0, createPassage(i, 60));
+            Assert.assertTrue(cache.getSize() <= 400);
+        }
+        Assert.assertTrue(cache.getEvictions() > 0);
+        Assert.assertTrue(cache.getResultCount() <= 4);
+
+        // Too many verses for a segment, so not kept.
+        cache.clear();
+        cache.put(kjv, "large", false, 0, createPassage(0, 150));
+        Assert.assertNull(cache.get(kjv, v11n, "large", false, 0));
+        Assert.assertEquals(0, cache.getSize());
+
+        cache.put(kjv, "small", false, 0, createPassage(0, 50));
+        Assert.assertEquals(50, cache.getSize());
+        cache.setMaxVerses(0);
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testGetCopy() {
+        Passage found = createPassage(10, 20);
+        cache.put(kjv, "light", false, 0, found);
+        Key first = cache.get(kjv, v11n, "light", false, 0);
+        Assert.assertEquals(found, first);
+
+        // Changing what was given does not change what is cached.
+        first.clear();
+        Assert.assertEquals(found, cache.get(kjv, v11n, "light", false, 0));
+
+        // A ranked search is a different search.
+        Assert.assertNull(cache.get(kjv, v11n, "light", true, 0));
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.put(kjv, "light", false, 0, createPassage(0, 10));
+        cache.put(kjv, "dark", false, 0, createPassage(20, 10));
+        cache.put(web, "light", false, 0, createPassage(40, 10));
+        Assert.assertEquals(3, cache.getResultCount());
+
+        cache.invalidate(kjv);
+        Assert.assertEquals(1, cache.getResultCount());
+        Assert.assertEquals(10, cache.getSize());
+        Assert.assertNull(cache.get(kjv, v11n, "light", false, 0));
+        Assert.assertNull(cache.get(kjv, v11n, "dark", false, 0));
+        Assert.assertNotNull(cache.get(web, v11n, "light", false, 0));
+    }
+
+    @Test
+    public void testRankedToKey() {
+        PassageTally found = new PassageTally(v11n);
+        Verse first = v11n.decodeOrdinal(100);
+        Verse second = v11n.decodeOrdinal(200);
+        Verse third = v11n.decodeOrdinal(300);
+        found.add(first, 5);
+        found.add(second, 2);
+        found.add(third, 9);
+        found.setTotal(1234);
+
+        cache.put(kjv, "love", true, 50, found);
+        // The bound of a ranked search is part of the search.
+        Assert.assertNull(cache.get(kjv, v11n, "love", true, 20));
+
+        Key key = cache.get(kjv, v11n, "love", true, 50);
+        Assert.assertTrue(key instanceof PassageTally);
+        PassageTally tally = (PassageTally) key;
+        Assert.assertEquals(3, tally.getCardinality());
+        Assert.assertEquals(5, tally.getTallyOf(first));
+        Assert.assertEquals(2, tally.getTallyOf(second));
+        Assert.assertEquals(9, tally.getTallyOf(third));
+        Assert.assertEquals(1234, tally.getTotal());
+    }
+
+    private Passage createPassage(int start, int count) {
+        Passage passage = new RocketPassage(v11n);
+        for (int i = 0; i < count; i++) {
+            passage.add(v11n.decodeOrdinal(start + i + 1));
+        }
+        return passage;
+    }
+
+    private static Book createBook(String initials) throws Exception {
+        String conf = "[" + initials + "]\nDataPath=./modules/texts/rawtext/" + initials.toLowerCase() + "/\nModDrv=RawText\nVersification=KJV\n";
+        SwordBookMetaData sbmd = new SwordBookMetaData(conf.getBytes(), initials);
+        return new SwordBook(sbmd, new RawBackend<RawBackendState>(sbmd, 2));
+    }
+
+    private QueryCache cache;
+    private int savedMaxVerses;
+    private Versification v11n;
+    private Book kjv;
+    private Book web;
+}
@@ -0,0 +1,151 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.SimpleAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.crosswire.jsword.index.lucene.LuceneIndex.ReversingQueryParser;
+import org.crosswire.jsword.index.lucene.analysis.ReversedAnalyzer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class ReversingQueryParserTest {
+
+    @Before
+    public void setUp() throws Exception {
+        // The fields as LuceneAnalyzer analyzes them.
+        SimpleAnalyzer body = new SimpleAnalyzer(Version.LUCENE_29);
+        analyzer = new PerFieldAnalyzerWrapper(body);
+        analyzer.addAnalyzer(LuceneIndex.FIELD_BODY_REVERSED, new ReversedAnalyzer(body, LuceneIndex.FIELD_BODY));
+
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_29, analyzer));
+        addDocument(writer, "Gen.1.3", "And God said, Let there be light");
+        addDocument(writer, "Ps.121.8", "The LORD shall preserve thy going out");
+        addDocument(writer, "Matt.7.8", "For every one that asketh receiveth");
+        addDocument(writer, "John.3.8", "The wind bloweth where it listeth");
+        addDocument(writer, "Rev.1.8", "I am Alpha and Omega, saith the Lord");
+        writer.close();
+
+        reader = IndexReader.open(directory);
+        searcher = new IndexSearcher(reader);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        searcher.close();
+        reader.close();
+    }
+
+    @Test
+    public void testSuffix() throws Exception {
+        Query query = parse(true, "*ETH");
+        Assert.assertEquals(new PrefixQuery(new Term(LuceneIndex.FIELD_BODY_REVERSED, "hte")), query);
+        Assert.assertEquals(listOf("Matt.7.8", "John.3.8"), search(query));
+
+        // The same verses as found by looking at every word.
+        Query unreversed = parse(false, "*eth");
+        Assert.assertEquals(new WildcardQuery(new Term(LuceneIndex.FIELD_BODY, "*eth")), unreversed);
+        Assert.assertEquals(search(query), search(unreversed));
+    }
+
+    @Test
+    public void testWildcard() throws Exception {
+        // Other wildcards are reversed with the word.
+        Query query = parse(true, "*?eth");
+        Assert.assertEquals(new WildcardQuery(new Term(LuceneIndex.FIELD_BODY_REVERSED, "hte?*")), query);
+        Assert.assertEquals(listOf("Matt.7.8", "John.3.8"), search(query));
+
+        Query ending = parse(true, "?aith");
+        Assert.assertEquals(new WildcardQuery(new Term(LuceneIndex.FIELD_BODY_REVERSED, "htia?")), ending);
+        Assert.assertEquals(listOf("Rev.1.8"), search(ending));
+    }
+
+    @Test
+    public void testNotReversed() throws Exception {
+        // Wildcards at both ends, and words without a leading wildcard, are searched as written.
+        Assert.assertEquals(new WildcardQuery(new Term(LuceneIndex.FIELD_BODY, "*ig*")), parse(true, "*ig*"));
+        Assert.assertEquals(new PrefixQuery(new Term(LuceneIndex.FIELD_BODY, "pre")), parse(true, "pre*"));
+        Assert.assertEquals(listOf("Gen.1.3"), search(parse(true, "*ig*")));
+        Assert.assertEquals(listOf("Ps.121.8"), search(parse(true, "pre*")));
+
+        // Only the text of verses is indexed backwards.
+        Query key = parse(true, LuceneIndex.FIELD_KEY + ":*8");
+        Assert.assertEquals(LuceneIndex.FIELD_KEY, ((WildcardQuery) key).getTerm().field());
+    }
+
+    private Query parse(boolean reversed, String search) throws Exception {
+        ReversingQueryParser parser = new ReversingQueryParser(analyzer, reversed);
+        parser.setAllowLeadingWildcard(true);
+        return parser.parse(search);
+    }
+
+    private List<String> search(Query query) throws Exception {
+        List<String> found = new ArrayList<String>();
+        for (ScoreDoc hit : searcher.search(query, 10).scoreDocs) {
+            found.add(searcher.doc(hit.doc).get(LuceneIndex.FIELD_KEY));
+        }
+        return found;
+    }
+
+    private static List<String> listOf(String... keys) {
+        List<String> list = new ArrayList<String>();
+        for (String key : keys) {
+            list.add(key);
+        }
+        return list;
+    }
+
+    private static void addDocument(IndexWriter writer, String key, String text) throws Exception {
+        Document doc = new Document();
+        doc.add(new Field(LuceneIndex.FIELD_KEY, key, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field(LuceneIndex.FIELD_BODY, text, Field.Store.NO, Field.Index.ANALYZED));
+        doc.add(new Field(LuceneIndex.FIELD_BODY_REVERSED, text, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+
+    private PerFieldAnalyzerWrapper analyzer;
+    private IndexReader reader;
+    private IndexSearcher searcher;
+}
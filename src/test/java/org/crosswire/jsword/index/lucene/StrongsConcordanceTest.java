@@ -0,0 +1,171 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.File;
+
+import org.apache.lucene.analysis.KeywordAnalyzer;
+import org.apache.lucene.analysis.PerFieldAnalyzerWrapper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.crosswire.jsword.index.lucene.analysis.MorphologyAnalyzer;
+import org.crosswire.jsword.index.lucene.analysis.StrongsNumberAnalyzer;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class StrongsConcordanceTest {
+
+    @Before
+    public void setUp() throws Exception {
+        v11n = Versifications.instance().getVersification("KJV");
+        file = File.createTempFile("strongs", ".dat");
+        gen1v1 = new Verse(v11n, BibleBook.GEN, 1, 1);
+        gen1v2 = new Verse(v11n, BibleBook.GEN, 1, 2);
+        gen1v3 = new Verse(v11n, BibleBook.GEN, 1, 3);
+        matt1v1 = new Verse(v11n, BibleBook.MATT, 1, 1);
+        rev22v21 = new Verse(v11n, BibleBook.REV, 22, 21);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        // The fields as LuceneIndex fills them from the OSIS of each verse.
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = createWriter(directory);
+        addDocument(writer, gen1v1.getOsisRef(), "H7225 H1254a H430", "H7225@strongMorph:TH8675 H1254a@strongMorph:TH8804 H430");
+        addDocument(writer, gen1v2.getOsisRef(), "H1254a H776 H1254a", "H1254a@strongMorph:TH8804 H776 H1254a@strongMorph:TH8804");
+        addDocument(writer, gen1v3.getOsisRef(), "H430", "H430@strongMorph:TH8799");
+        // A document without a verse is left out.
+        addDocument(writer, "", "H430", "H430");
+        addDocument(writer, matt1v1.getOsisRef(), "G26", "G26@robinson:N-ASF");
+        addDocument(writer, rev22v21.getOsisRef(), "G26", "G26@robinson:N-NSF");
+        writer.close();
+
+        IndexReader reader = IndexReader.open(directory);
+        try {
+            Assert.assertTrue(StrongsConcordance.build(reader, v11n, file));
+        } finally {
+            reader.close();
+        }
+
+        StrongsConcordance concordance = StrongsConcordance.load(file, v11n);
+        Assert.assertNotNull(concordance);
+
+        // A Strong's number with a part, found twice in one verse.
+        PassageTally part = concordance.getOccurrences("H1254a");
+        Assert.assertEquals(2, part.getCardinality());
+        Assert.assertEquals(1, part.getTallyOf(gen1v1));
+        Assert.assertEquals(2, part.getTallyOf(gen1v2));
+        Assert.assertEquals(2, concordance.getVerseCount("H1254!a"));
+        Assert.assertEquals(3, concordance.getOccurrenceCount("h1254a"));
+        // The number without its part is indexed as well.
+        Assert.assertEquals(2, concordance.getVerseCount("H1254"));
+
+        PassageTally elohim = concordance.getOccurrences("H430");
+        Assert.assertEquals(2, elohim.getCardinality());
+        Assert.assertEquals(1, elohim.getTallyOf(gen1v1));
+        Assert.assertEquals(1, elohim.getTallyOf(gen1v3));
+
+        // Verses far apart need several bytes for the difference of their ordinals.
+        PassageTally agape = concordance.getOccurrences("G0026");
+        Assert.assertEquals(2, agape.getCardinality());
+        Assert.assertEquals(1, agape.getTallyOf(matt1v1));
+        Assert.assertEquals(1, agape.getTallyOf(rev22v21));
+
+        // The morph field is lower cased, and so is the key of each pair.
+        PassageTally created = concordance.getOccurrences("H1254a", "strongMorph:TH8804");
+        Assert.assertEquals(2, created.getCardinality());
+        Assert.assertEquals(2, created.getTallyOf(gen1v2));
+        Assert.assertEquals(3, concordance.getOccurrenceCount("h1254a", "strongmorph:th8804"));
+        Assert.assertEquals(1, concordance.getOccurrenceCount("G26", "robinson:N-NSF"));
+        Assert.assertEquals(rev22v21, concordance.getOccurrences("G26", "robinson:N-NSF").getVerseAt(0));
+
+        Assert.assertTrue(concordance.getOccurrences("G9999").isEmpty());
+        Assert.assertEquals(0, concordance.getOccurrenceCount("H430", "strongMorph:TH8804"));
+
+        // A concordance is only for the versification it was written with.
+        Assert.assertNull(StrongsConcordance.load(file, Versifications.instance().getVersification("Vulg")));
+    }
+
+    @Test
+    public void testNoStrongs() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = createWriter(directory);
+        Document doc = new Document();
+        doc.add(new Field(LuceneIndex.FIELD_KEY, gen1v1.getOsisRef(), Field.Store.YES, Field.Index.NOT_ANALYZED));
+        writer.addDocument(doc);
+        writer.close();
+
+        file.delete();
+        IndexReader reader = IndexReader.open(directory);
+        try {
+            Assert.assertFalse(StrongsConcordance.build(reader, v11n, file));
+        } finally {
+            reader.close();
+        }
+        Assert.assertFalse(file.exists());
+        Assert.assertNull(StrongsConcordance.load(file, v11n));
+    }
+
+    private static IndexWriter createWriter(RAMDirectory directory) throws Exception {
+        PerFieldAnalyzerWrapper analyzer = new PerFieldAnalyzerWrapper(new KeywordAnalyzer());
+        analyzer.addAnalyzer(LuceneIndex.FIELD_STRONG, new StrongsNumberAnalyzer());
+        analyzer.addAnalyzer(LuceneIndex.FIELD_MORPHOLOGY, new MorphologyAnalyzer());
+        return new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_29, analyzer));
+    }
+
+    private static void addDocument(IndexWriter writer, String key, String strongs, String morphology) throws Exception {
+        Document doc = new Document();
+        doc.add(new Field(LuceneIndex.FIELD_KEY, key, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field(LuceneIndex.FIELD_STRONG, strongs, Field.Store.NO, Field.Index.ANALYZED));
+        doc.add(new Field(LuceneIndex.FIELD_MORPHOLOGY, morphology, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+
+    private Versification v11n;
+    private File file;
+    private Verse gen1v1;
+    private Verse gen1v2;
+    private Verse gen1v3;
+    private Verse matt1v1;
+    private Verse rev22v21;
+}
@@ -0,0 +1,80 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.lucene;
+
+import org.apache.lucene.analysis.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class VerseOrdinalsTest {
+
+    @Test
+    public void testOrdinals() throws Exception {
+        Versification v11n = Versifications.instance().getVersification("KJV");
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_29, new KeywordAnalyzer()));
+        addDocument(writer, "Gen.1.1");
+        // The key of a document that has no verse, such as an introduction.
+        addDocument(writer, "");
+        addDocument(writer, "Gen.1.2");
+        addDocument(writer, "not a verse");
+        addDocument(writer, "Rev.22.21");
+        writer.close();
+
+        IndexReader reader = IndexReader.open(directory);
+        try {
+            int[] ordinals = VerseOrdinals.get(reader, v11n);
+            Assert.assertEquals(5, ordinals.length);
+            Assert.assertEquals(new Verse(v11n, BibleBook.GEN, 1, 1).getOrdinal(), ordinals[0]);
+            Assert.assertEquals(VerseOrdinals.NONE, ordinals[1]);
+            Assert.assertEquals(new Verse(v11n, BibleBook.GEN, 1, 2).getOrdinal(), ordinals[2]);
+            Assert.assertEquals(VerseOrdinals.NONE, ordinals[3]);
+            Assert.assertEquals(new Verse(v11n, BibleBook.REV, 22, 21).getOrdinal(), ordinals[4]);
+
+            // The table is built once for the segment.
+            Assert.assertSame(ordinals, VerseOrdinals.get(reader, v11n));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void addDocument(IndexWriter writer, String key) throws Exception {
+        Document doc = new Document();
+        doc.add(new Field(LuceneIndex.FIELD_KEY, key, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        writer.addDocument(doc);
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.index.search;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.sword.RawBackend;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordBookMetaData;
+import org.crosswire.jsword.book.sword.state.RawBackendState;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.RocketPassage;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class FederatedSearcherTest {
+
+    @Before
+    public void setUp() throws Exception {
+        kjv = Versifications.instance().getVersification("KJV");
+        vulg = Versifications.instance().getVersification("Vulg");
+        searcher = new FederatedSearcher(2);
+        request = new DefaultSearchRequest("light");
+        release = new CountDownLatch(1);
+        interrupted = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        searcher.shutDown();
+        // Do not leave an interrupt behind for the next test.
+        Thread.interrupted();
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        PassageTally ranked = new PassageTally(kjv);
+        ranked.add(new Verse(kjv, BibleBook.GEN, 1, 1), 3);
+        ranked.add(new Verse(kjv, BibleBook.PS, 51, 1), 1);
+        ranked.setTotal(4);
+        Book english = createBook("KJV", "KJV", ranked);
+
+        // Psalm 50 in the Vulgate is Psalm 51 in the KJV, with the title as verses 1 and 2.
+        Passage found = new RocketPassage(vulg);
+        found.add(new Verse(vulg, BibleBook.GEN, 1, 1));
+        found.add(new Verse(vulg, BibleBook.PS, 50, 3));
+        Book latin = createBook("Vulgate", "Vulg", found);
+
+        FederatedResults results = searcher.search(Arrays.asList(english, latin), request, kjv);
+        Assert.assertTrue(results.isComplete());
+        Assert.assertSame(ranked, results.getResult(english));
+        Assert.assertSame(found, results.getResult(latin));
+
+        PassageTally merged = results.getMerged();
+        Assert.assertEquals(kjv, merged.getVersification());
+        Assert.assertEquals(2, merged.getCardinality());
+        Assert.assertEquals(4, merged.getTallyOf(new Verse(kjv, BibleBook.GEN, 1, 1)));
+        Assert.assertEquals(2, merged.getTallyOf(new Verse(kjv, BibleBook.PS, 51, 1)));
+        Assert.assertEquals(0, merged.getTallyOf(new Verse(kjv, BibleBook.PS, 50, 3)));
+        Assert.assertEquals(6, merged.getTotal());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        Passage found = new RocketPassage(kjv);
+        found.add(new Verse(kjv, BibleBook.JOHN, 1, 5));
+        Book fast = createBook("Fast", "KJV", found);
+        Book slow = createBook("Slow", "KJV", null);
+
+        long start = System.nanoTime();
+        FederatedResults results = searcher.search(Arrays.asList(slow, fast), request, kjv, 200, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(TIMEOUT));
+
+        // What finished in time is kept.
+        Assert.assertFalse(results.isComplete());
+        Assert.assertEquals(Arrays.asList(slow), results.getUnfinished());
+        Assert.assertTrue(results.getErrors().isEmpty());
+        Assert.assertNull(results.getResult(slow));
+        Assert.assertSame(found, results.getResult(fast));
+        Assert.assertEquals(1, results.getMerged().getCardinality());
+        Assert.assertEquals(1, results.getMerged().getTallyOf(new Verse(kjv, BibleBook.JOHN, 1, 5)));
+
+        // The search that was given up on is stopped.
+        Assert.assertTrue(interrupted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testInterrupt() throws Exception {
+        Book first = createBook("First", "KJV", null);
+        Book second = createBook("Second", "Vulg", null);
+
+        Thread.currentThread().interrupt();
+        FederatedResults results = searcher.search(Arrays.asList(first, second), request, kjv);
+
+        // The caller is told of the interrupt, and nothing is waited for.
+        Assert.assertTrue(Thread.interrupted());
+        Assert.assertFalse(results.isComplete());
+        Assert.assertEquals(Arrays.asList(first, second), results.getUnfinished());
+        Assert.assertTrue(results.getResults().isEmpty());
+        Assert.assertTrue(results.getMerged().isEmpty());
+    }
+
+    /**
+     * Create a book that finds the given key, or that searches until it is
+     * released or interrupted when there is no key.
+     */
+    private Book createBook(String initials, String versification, final Key found) throws Exception {
+        String conf = "[" + initials + "]\nDataPath=./modules/texts/rawtext/" + initials.toLowerCase() + "/\nModDrv=RawText\nVersification=" + versification + "\n";
+        SwordBookMetaData sbmd = new SwordBookMetaData(conf.getBytes(), initials);
+        return new SwordBook(sbmd, new RawBackend<RawBackendState>(sbmd, 2)) {
+            /* (non-Javadoc)
+             * @see org.crosswire.jsword.book.basic.AbstractBook#find(org.crosswire.jsword.index.search.SearchRequest)
+             */
+            @Override
+            public Key find(SearchRequest search) throws BookException {
+                if (found != null) {
+                    return found;
+                }
+                try {
+                    release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return new RocketPassage(getVersification());
+            }
+        };
+    }
+
+    private static final long TIMEOUT = 10000;
+
+    private Versification kjv;
+    private Versification vulg;
+    private FederatedSearcher searcher;
+    private SearchRequest request;
+    private CountDownLatch release;
+    private CountDownLatch interrupted;
+}
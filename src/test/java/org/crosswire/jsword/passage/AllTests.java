@@ -32,6 +32,8 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({
     AccuracyTypeTest.class,
+    BitwiseBlurTest.class,
+    PassageCompressedTest.class,
     PassageConstantsTest.class,
     PassageMixTest.class,
     PassageSizeTest.class,
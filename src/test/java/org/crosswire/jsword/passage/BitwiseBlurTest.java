@@ -0,0 +1,116 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 or later
+ * as published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *      http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * © CrossWire Bible Society, 2005 - 2016
+ *
+ */
+package org.crosswire.jsword.passage;
+
+import java.util.Random;
+
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test.
+ *
+ * @see gnu.lgpl.License The GNU Lesser General Public License for details.
+ * @author agent [agent at local]
+ */
+public class BitwiseBlurTest {
+
+    @Before
+    public void setUp() {
+        v11n = Versifications.instance().getVersification("KJV");
+    }
+
+    @Test
+    public void testEdges() {
+        Passage edges = new DistinctPassage(v11n);
+        // The very first and last ordinals of the versification.
+        edges.add(v11n.decodeOrdinal(0));
+        edges.add(v11n.decodeOrdinal(v11n.maximumOrdinal()));
+        // The ends and starts of chapters, of books and of the testaments.
+        edges.add(new Verse(v11n, BibleBook.GEN, 1, 1));
+        edges.add(new Verse(v11n, BibleBook.GEN, 1, 31));
+        edges.add(new Verse(v11n, BibleBook.GEN, 2, 0));
+        edges.add(new Verse(v11n, BibleBook.GEN, 50, 26));
+        edges.add(new Verse(v11n, BibleBook.EXOD, 1, 1));
+        edges.add(new Verse(v11n, BibleBook.MAL, 4, 6));
+        edges.add(new Verse(v11n, BibleBook.MATT, 1, 1));
+        edges.add(new Verse(v11n, BibleBook.OBAD, 1, 21));
+        edges.add(new Verse(v11n, BibleBook.JUDE, 1, 1));
+        // Verses at the ends of the words of 64 verses.
+        edges.add(v11n.decodeOrdinal(63));
+        edges.add(v11n.decodeOrdinal(64));
+        edges.add(v11n.decodeOrdinal(128));
+        assertSameBlur(edges);
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(12345);
+        for (int i = 0; i < 5; i++) {
+            Passage passage = new DistinctPassage(v11n);
+            int count = 1 + random.nextInt(200);
+            for (int j = 0; j < count; j++) {
+                passage.add(v11n.decodeOrdinal(random.nextInt(v11n.maximumOrdinal() + 1)));
+            }
+            assertSameBlur(passage);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        assertSameBlur(new DistinctPassage(v11n));
+    }
+
+    /**
+     * Check that a BitwisePassage blurs the passage as AbstractPassage does,
+     * for each restriction, in each direction and by amounts within a word of
+     * 64 verses, across two words and beyond the longest chapter.
+     */
+    private void assertSameBlur(Passage passage) {
+        for (RestrictionType restrict : new RestrictionType[] { RestrictionType.NONE, RestrictionType.CHAPTER, RestrictionType.BOOK }) {
+            for (int verses : BLURS) {
+                for (int direction = 0; direction < 4; direction++) {
+                    boolean down = (direction & 1) != 0;
+                    boolean up = (direction & 2) != 0;
+
+                    Passage expected = new DistinctPassage(v11n);
+                    expected.addAll(passage);
+                    expected.blur(verses, restrict, down, up);
+
+                    BitwisePassage bitwise = new BitwisePassage(v11n);
+                    bitwise.addAll(passage);
+                    bitwise.blur(verses, restrict, down, up);
+
+                    String message = passage.getOsisRef() + " by " + verses + ' ' + restrict + (down ? " down" : "") + (up ? " up" : "");
+                    Assert.assertEquals(message, expected.getOsisRef(), bitwise.getOsisRef());
+                    Assert.assertEquals(message, expected.getCardinality(), bitwise.getCardinality());
+                }
+            }
+        }
+    }
+
+    private static final int[] BLURS = { 0, 1, 2, 5, 63, 64, 65, 130, 200 };
+
+    private Versification v11n;
+}
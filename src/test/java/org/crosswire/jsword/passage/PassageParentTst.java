@@ -26,7 +26,9 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 import org.crosswire.jsword.book.CaseType;
 import org.crosswire.jsword.versification.BibleBook;
@@ -285,6 +287,39 @@ import org.junit.Test;
         Assert.assertEquals(exoC2V11, exoC2V1To10C2V1To11r.getVerseAt(20));
     }
 
+    @Test
+    public void testReadVisitOrdinals() throws Exception {
+        final StringBuilder buf = new StringBuilder();
+        OrdinalVisitor visitor = new OrdinalVisitor() {
+            public void visitOrdinal(int ordinal) {
+                buf.append(v11n.decodeOrdinal(ordinal).getOsisID()).append(' ');
+            }
+        };
+        genC1V135r.visitOrdinals(visitor);
+        Assert.assertEquals("Gen.1.1 Gen.1.3 Gen.1.5 ", buf.toString());
+        buf.setLength(0);
+        exoC2V1To10C2V1To11r.visitOrdinals(visitor);
+        Assert.assertEquals(exoC2V1To10C2V1To11r.getOsisID() + ' ', buf.toString());
+        Assert.assertSame(v11n.decodeOrdinal(exoC2V1.getOrdinal()), v11n.decodeOrdinal(exoC2V1.getOrdinal()));
+    }
+
+    @Test
+    public void testReadGetKeys() throws Exception {
+        List<Passage> keys = keyf.getKeys(v11n, Arrays.asList("Gen 1:1, Gen 1:3, Gen 1:5", "Exo 2:1-10, Exo 3:1-11", "Gen 1:1, Gen 1:3, Gen 1:5"));
+        Assert.assertEquals(3, keys.size());
+        Assert.assertEquals(genC1V135r, keys.get(0));
+        Assert.assertEquals(exoC2V1To10C2V1To11r, keys.get(1));
+        Assert.assertEquals(genC1V135r, keys.get(2));
+        Assert.assertTrue(keys.get(0) != keys.get(2));
+        // They are in whichever type is smallest.
+        Assert.assertEquals(PassageKeyFactory.getCompactPassage(exoC2V1To10C2V1To11r).getClass(), keys.get(1).getClass());
+
+        // Changing a Passage does not change the next one of the same reference
+        keys.get(0).add(exoC2V1);
+        Assert.assertEquals(genC1V135r, keyf.getKey(v11n, "Gen 1:1, Gen 1:3, Gen 1:5"));
+        Assert.assertEquals(empty.getClass(), keyf.getKey(v11n, "Gen 1:1, Gen 1:3, Gen 1:5").getClass());
+    }
+
     @Test
     public void testReadGetVerseRangeAt() throws Exception {
         Assert.assertEquals(genC1V1r, genC1V135r.getRangeAt(0, RestrictionType.NONE));
@@ -23,7 +23,13 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.crosswire.jsword.book.CaseType;
 import org.crosswire.jsword.versification.BibleBook;
@@ -146,6 +152,132 @@ public class PassageTally2Test {
         Assert.assertEquals("", empty.getNameAndTally());
     }
 
+    @Test
+    public void testGetTopNameAndTally() {
+        Assert.assertEquals("Gen 1:1 (100%), Gen 1:5 (66%), Gen 1:3 (33%)", tally.getNameAndTally(3));
+        Assert.assertEquals("Gen 1:1 (100%)", tally.getNameAndTally(1));
+        Assert.assertEquals("", empty.getNameAndTally(3));
+    }
+
+    @Test
+    public void testTrimVerses() throws Exception {
+        temp = tally.clone();
+        Passage remainder = temp.trimVerses(3);
+        Assert.assertEquals("Gen 1:1, 5, 3", temp.getName());
+        Assert.assertEquals(3, temp.countVerses());
+        Assert.assertEquals(keyf.getKey(v11n, "Gen 1:7, Gen 2:1, Gen 3:1"), remainder);
+        Assert.assertEquals(3, remainder.countVerses());
+        Assert.assertNull(temp.trimVerses(3));
+
+        temp = tally.clone();
+        temp.setOrdering(PassageTally.Order.BIBLICAL);
+        remainder = temp.trimVerses(2);
+        Assert.assertEquals("Gen 1:1, 3", temp.getName());
+        Assert.assertEquals(keyf.getKey(v11n, "Gen 1:5, Gen 1:7, Gen 2:1, Gen 3:1"), remainder);
+    }
+
+    @Test
+    public void testManyVerses() throws Exception {
+        // Enough verses that the whole board is looked at.
+        temp = tally.clone();
+        temp.addAll(keyf.getKey(v11n, "Gen-Exo"));
+        Passage genExo = keyf.getKey(v11n, "Gen-Exo");
+        Assert.assertEquals(genExo.countVerses(), temp.countVerses());
+        Assert.assertEquals("Gen 1:1 (100%), Gen 1:5 (75%)", temp.getNameAndTally(2));
+        temp.removeAll(genExo);
+        Assert.assertTrue(temp.isEmpty());
+        temp.add(genC1V2);
+        Assert.assertEquals("Gen 1:2", temp.getName());
+        temp.clear();
+        Assert.assertEquals("", temp.getName());
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        PassageTally other = new PassageTally(v11n);
+        other.add(genC1V2, 4);
+        other.add(keyf.getKey(v11n, "Rev 22:21"));
+        other.setTotal(2);
+        tally.setTotal(6);
+
+        PassageTally merged = PassageTally.merge(v11n, Arrays.asList(tally, other, empty), null);
+        merged.setOrdering(PassageTally.Order.TALLY);
+        Assert.assertEquals("Gen 1:2, 1, 5, 3, 7, 2:1, 3:1, Rev 22:21", merged.getName());
+        Assert.assertEquals(8, merged.countVerses());
+        Assert.assertEquals(3, merged.getTallyOf(genC1V1));
+        Assert.assertEquals(8, merged.getTotal());
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            PassageTally parallel = PassageTally.merge(v11n, Arrays.asList(tally, other, empty), executor);
+            parallel.setOrdering(PassageTally.Order.TALLY);
+            Assert.assertEquals(merged, parallel);
+            Assert.assertEquals(merged.getNameAndTally(), parallel.getNameAndTally());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMergeSameAsAddAll() throws Exception {
+        // Tallies of verses from all over the Bible, with ranks of all sizes.
+        Random random = new Random(917);
+        List<PassageTally> tallies = new ArrayList<PassageTally>();
+        for (int i = 0; i < 5; i++) {
+            PassageTally part = new PassageTally(v11n);
+            for (int j = 0; j < 500; j++) {
+                part.add(v11n.decodeOrdinal(random.nextInt(v11n.maximumOrdinal() + 1)), 1 + random.nextInt(20));
+            }
+            tallies.add(part);
+        }
+        tallies.add(empty);
+
+        PassageTally expected = new PassageTally(v11n);
+        for (PassageTally part : tallies) {
+            expected.addAll(part);
+        }
+        expected.setOrdering(PassageTally.Order.TALLY);
+
+        PassageTally merged = PassageTally.merge(v11n, tallies, null);
+        merged.setOrdering(PassageTally.Order.TALLY);
+        Assert.assertEquals(expected.getNameAndTally(), merged.getNameAndTally());
+        Assert.assertEquals(expected.countVerses(), merged.countVerses());
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            PassageTally parallel = PassageTally.merge(v11n, tallies, executor);
+            parallel.setOrdering(PassageTally.Order.TALLY);
+            Assert.assertEquals(expected.getNameAndTally(), parallel.getNameAndTally());
+            Assert.assertEquals(expected.countVerses(), parallel.countVerses());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMergeOtherVersification() throws Exception {
+        PassageTally vulgate = new PassageTally(Versifications.instance().getVersification("Vulg"));
+        vulgate.add(new Verse(vulgate.getVersification(), BibleBook.PS, 50, 3));
+        List<PassageTally> tallies = Arrays.asList(tally, vulgate);
+
+        try {
+            PassageTally.merge(v11n, tallies, null);
+            Assert.fail("A tally of another versification was merged");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            PassageTally.merge(v11n, tallies, executor);
+            Assert.fail("A tally of another versification was merged");
+        } catch (IllegalArgumentException e) {
+            // expected
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void testAddPassageListener() throws Exception {
         FixturePassageListener li = new FixturePassageListener();
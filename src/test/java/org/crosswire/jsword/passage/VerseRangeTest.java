@@ -283,6 +283,12 @@ public class VerseRangeTest {
         Assert.assertEquals(rangeGenC1V1to31, RestrictionType.CHAPTER.blur(v11n, genC1V1, 0, 32357));
         Assert.assertEquals(rangeGenC1V1toRevEnd, RestrictionType.NONE.blur(v11n, genC1V1, 0, 32357));
         Assert.assertEquals(rangeGenC1V0to31, RestrictionType.CHAPTER.blur(v11n, genC1V1, 1, 32357));
+        Assert.assertEquals(rangeGenC1V1, RestrictionType.BOOK.blur(v11n, genC1V1, 0, 0));
+        Assert.assertEquals(rangeGenC1V0to31, RestrictionType.BOOK.blur(v11n, genC1V1, 1, 30));
+        Assert.assertEquals(rangeGenC1V0to34, RestrictionType.BOOK.blur(v11n, genC1V1, 1, 32));
+        Assert.assertEquals(rangeGenC0V0toEnd, RestrictionType.BOOK.blur(v11n, genC1V1, 9, 32356));
+        Assert.assertEquals(rangeRevC22V21, RestrictionType.BOOK.blur(v11n, revC22V21, 0, 9));
+        Assert.assertEquals(rangeRevC0V0toEnd, RestrictionType.BOOK.blur(v11n, revC22V21, 32356, 9));
         Assert.assertEquals(rangeGenC1V1toRevEnd, RestrictionType.NONE.blur(v11n, genC1V1, 0, 32357));
         Assert.assertEquals(rangeGenC1V0to31, RestrictionType.CHAPTER.blur(v11n, genC1V1, 9, 32357));
         Assert.assertEquals(rangeGenC1V1toRevEnd, RestrictionType.NONE.blur(v11n, genC1V1, 0, 99999));